@@ -0,0 +1,211 @@
+package bch;
+
+import java.util.ArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import cls.Aircraft;
+import cls.AircraftBuffer;
+
+/**
+ * <h1>AircraftBufferBenchmark</h1>
+ * <p>
+ * Contention microbenchmark comparing {@link AircraftBuffer} against the
+ * locking buffer it replaced.
+ * </p>
+ * <p>
+ * Reader threads walk the buffer by index, as the game's update loop does,
+ * whilst a writer thread adds and removes an aircraft, as the network thread
+ * does when syncing. Reports the number of aircraft read per second.
+ * </p>
+ * <p>
+ * Usage: <code>AircraftBufferBenchmark [aircraft] [readers] [seconds]</code>
+ * </p>
+ */
+public class AircraftBufferBenchmark {
+
+	/**
+	 * The operations the benchmark needs from either buffer.
+	 */
+	private interface Buffer {
+		Aircraft get(int index);
+		int size();
+		void add(Aircraft aircraft);
+		void remove(int index);
+	}
+
+	/**
+	 * The buffer as it was before copy-on-write snapshots, kept here as a baseline.
+	 * A synchronized get which also spins on a wait/notify lock.
+	 */
+	private static class LockingBuffer implements Buffer {
+		private ArrayList<Aircraft> buffer = new ArrayList<Aircraft>();
+		private boolean locked = false;
+
+		public synchronized Aircraft get(int index) {
+			lockBuffer();
+			Aircraft a;
+			if (index < buffer.size()) {
+				a = buffer.get(index);
+			} else {
+				a = buffer.get(Math.max(0, buffer.size() - 1));
+			}
+			unlockBuffer();
+			return a;
+		}
+
+		public int size() {
+			return buffer.size();
+		}
+
+		public void add(Aircraft obj) {
+			lockBuffer();
+			buffer.add(obj);
+			unlockBuffer();
+		}
+
+		public void remove(int index) {
+			lockBuffer();
+			try {
+				buffer.remove(index);
+			} catch (IndexOutOfBoundsException e) {
+				// Raced with another remove - ignored, as the original did
+			}
+			unlockBuffer();
+		}
+
+		private synchronized void lockBuffer() {
+			while (locked) {
+				try {
+					wait();
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					return;
+				}
+			}
+			locked = true;
+		}
+
+		private synchronized void unlockBuffer() {
+			locked = false;
+			notifyAll();
+		}
+	}
+
+	/**
+	 * Adapts the current buffer to the benchmark's interface.
+	 */
+	private static class SnapshotBuffer implements Buffer {
+		private AircraftBuffer buffer = new AircraftBuffer();
+
+		public Aircraft get(int index) {
+			return buffer.get(index);
+		}
+
+		public int size() {
+			return buffer.size();
+		}
+
+		public void add(Aircraft aircraft) {
+			buffer.add(aircraft);
+		}
+
+		public void remove(int index) {
+			buffer.remove(index);
+		}
+	}
+
+	public static void main(String[] args) throws InterruptedException {
+		int aircraftCount = args.length > 0 ? Integer.parseInt(args[0]) : 200;
+		int readers = args.length > 1 ? Integer.parseInt(args[1])
+				: Runtime.getRuntime().availableProcessors();
+		double seconds = args.length > 2 ? Double.parseDouble(args[2]) : 3;
+
+		System.out.println("Aircraft: " + aircraftCount + ", readers: " + readers
+				+ ", writer: 1, " + seconds + "s per run");
+
+		// Warm both up first so neither is measured whilst being compiled
+		run(new LockingBuffer(), aircraftCount, readers, seconds / 3);
+		run(new SnapshotBuffer(), aircraftCount, readers, seconds / 3);
+
+		double locking = run(new LockingBuffer(), aircraftCount, readers, seconds);
+		double snapshot = run(new SnapshotBuffer(), aircraftCount, readers, seconds);
+
+		System.out.println(String.format("Locking buffer:  %,.0f reads/s", locking));
+		System.out.println(String.format("Snapshot buffer: %,.0f reads/s", snapshot));
+		System.out.println(String.format("Speedup: %.1fx", snapshot / locking));
+	}
+
+	/**
+	 * Runs readers and a writer against a buffer.
+	 * @param buffer the buffer to contend over
+	 * @param aircraftCount the number of aircraft to fill the buffer with
+	 * @param readers the number of reader threads
+	 * @param seconds how long to run for
+	 * @return the number of aircraft read per second across all readers
+	 */
+	private static double run(final Buffer buffer, int aircraftCount, int readers,
+			double seconds) throws InterruptedException {
+		final Aircraft[] fleet = new Aircraft[aircraftCount];
+		for (int i = 0; i < aircraftCount; i++) {
+			fleet[i] = new Aircraft();
+			buffer.add(fleet[i]);
+		}
+
+		final AtomicBoolean running = new AtomicBoolean(true);
+		final AtomicLong reads = new AtomicLong();
+		final CountDownLatch start = new CountDownLatch(1);
+		Thread[] threads = new Thread[readers + 1];
+
+		for (int r = 0; r < readers; r++) {
+			threads[r] = new Thread() {
+				@Override
+				public void run() {
+					long local = 0;
+					double sink = 0;
+					awaitQuietly(start);
+					while (running.get()) {
+						for (int i = 0; i < buffer.size(); i++) {
+							sink += buffer.get(i).position().x();
+							local++;
+						}
+					}
+					reads.addAndGet(local + (sink == -1 ? 1 : 0));
+				}
+			};
+		}
+
+		// The writer syncs one aircraft in and out, as the network thread does
+		threads[readers] = new Thread() {
+			@Override
+			public void run() {
+				awaitQuietly(start);
+				while (running.get()) {
+					buffer.add(fleet[0]);
+					buffer.remove(buffer.size() - 1);
+					Thread.yield();
+				}
+			}
+		};
+
+		for (Thread t : threads) t.start();
+		long begin = System.nanoTime();
+		start.countDown();
+		Thread.sleep((long) (seconds * 1000));
+		running.set(false);
+		for (Thread t : threads) t.join();
+		double elapsed = (System.nanoTime() - begin) / 1e9;
+
+		return reads.get() / elapsed;
+	}
+
+	private static void awaitQuietly(CountDownLatch latch) {
+		try {
+			latch.await();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+}
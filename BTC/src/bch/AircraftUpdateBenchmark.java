@@ -0,0 +1,56 @@
+package bch;
+
+import java.util.Random;
+
+import cls.Aircraft;
+import cls.Vector;
+
+/**
+ * <h1>AircraftUpdateBenchmark</h1>
+ * <p>
+ * Benchmarks {@link Aircraft#update(double)} across a fleet of aircraft in
+ * flight, turning towards targets they never reach. One operation updates
+ * the whole fleet for one frame.
+ * </p>
+ */
+public class AircraftUpdateBenchmark extends Benchmark {
+
+	/** The number of aircraft in the fleet */
+	private final int size;
+
+	private Aircraft[] fleet;
+
+	/**
+	 * Constructor for the benchmark
+	 * @param size the number of aircraft to update each operation
+	 */
+	public AircraftUpdateBenchmark(int size) {
+		super("Aircraft.update:" + size);
+		this.size = size;
+	}
+
+	@Override
+	public void setup() {
+		Random random = new Random(42);
+		fleet = new Aircraft[size];
+		for (int i = 0; i < size; i++) {
+			Aircraft aircraft = new Aircraft();
+			aircraft.setStatus(Aircraft.AirportState.NORMAL);
+			aircraft.setVelocity(new Vector(random.nextDouble() * 60 - 30,
+					random.nextDouble() * 60 - 30, 0));
+			aircraft.setCurrentTarget(new Vector(random.nextDouble() * 1e7 - 5e6,
+					random.nextDouble() * 1e7 - 5e6, 0));
+			aircraft.setTurnSpeed(Math.PI / 4);
+			fleet[i] = aircraft;
+		}
+	}
+
+	@Override
+	public double op() {
+		for (Aircraft aircraft : fleet) {
+			aircraft.update(1 / 60d);
+		}
+		return fleet[0].position().x();
+	}
+
+}
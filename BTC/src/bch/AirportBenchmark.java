@@ -0,0 +1,65 @@
+package bch;
+
+import cls.Aircraft;
+import cls.Airport;
+import cls.Waypoint;
+import scn.Game;
+import scn.HeadlessGame;
+
+/**
+ * <h1>AirportBenchmark</h1>
+ * <p>
+ * Benchmarks {@link Airport#update(double)} for an airport with every bay
+ * full, with aircraft parked in each bay and more waiting to land.
+ * </p>
+ * <p>
+ * Waiting aircraft are moved onto their target before each update, so the
+ * airport sends each one on to its next entry point every operation.
+ * </p>
+ */
+public class AirportBenchmark extends Benchmark {
+
+	/** The number of aircraft waiting to land */
+	private static final int WAITING = 8;
+
+	private Airport airport;
+	private Aircraft[] waiting;
+
+	public AirportBenchmark() {
+		super("Airport.update:fullBays");
+	}
+
+	@Override
+	public void setup() {
+		HeadlessGame game = new HeadlessGame(Game.DIFFICULTY_MEDIUM);
+		game.start();
+		airport = game.context().airports()[0];
+
+		for (Waypoint bay : airport.parkingPoints()) {
+			Aircraft aircraft = new Aircraft();
+			airport.addAircraft(aircraft);
+			aircraft.setStatus(Aircraft.AirportState.PARKED);
+			aircraft.position().setTo(bay.position().x(), bay.position().y(), 0);
+			aircraft.setCurrentTarget(bay.position());
+		}
+
+		Waypoint[] entryPoints = airport.entryPoints();
+		waiting = new Aircraft[WAITING];
+		for (int i = 0; i < WAITING; i++) {
+			waiting[i] = new Aircraft();
+			airport.addAircraft(waiting[i]);
+			waiting[i].setCurrentTarget(entryPoints[i % entryPoints.length].position());
+		}
+	}
+
+	@Override
+	public double op() {
+		for (Aircraft aircraft : waiting) {
+			aircraft.position().setTo(aircraft.getCurrentTarget().x(),
+					aircraft.getCurrentTarget().y(), 28000);
+		}
+		airport.update(1 / 60d);
+		return airport.aircraft().size();
+	}
+
+}
@@ -0,0 +1,49 @@
+package bch;
+
+/**
+ * <h1>Benchmark</h1>
+ * <p>
+ * A single benchmark, run repeatedly by {@link BenchmarkRunner}.
+ * </p>
+ * <p>
+ * Subclasses set up any state they need in {@link #setup()}, and do one
+ * operation's worth of work in {@link #op()}. The value returned by
+ * {@link #op()} is consumed by the runner, so that the JIT can't remove
+ * the work as unused.
+ * </p>
+ */
+public abstract class Benchmark {
+
+	/** The name to report the benchmark under */
+	private final String name;
+
+	/**
+	 * Constructor for a benchmark
+	 * @param name the name to report the benchmark under
+	 */
+	protected Benchmark(String name) {
+		this.name = name;
+	}
+
+	/**
+	 * Gets the benchmark's name.
+	 * @return the name to report the benchmark under
+	 */
+	public String name() {
+		return name;
+	}
+
+	/**
+	 * Sets up the benchmark's state. Called once, before the benchmark is
+	 * warmed up. Not included in the results.
+	 */
+	public void setup() throws Exception {
+	}
+
+	/**
+	 * Does one operation.
+	 * @return any result of the operation, to be consumed by the runner
+	 */
+	public abstract double op() throws Exception;
+
+}
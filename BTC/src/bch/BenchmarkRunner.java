@@ -0,0 +1,189 @@
+package bch;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.regex.Pattern;
+
+import btc.Main;
+import cls.WaypointGraph;
+
+/**
+ * <h1>BenchmarkRunner</h1>
+ * <p>
+ * Runs the game's benchmarks headlessly, and reports their throughput and
+ * allocation rate.
+ * </p>
+ * <p>
+ * Each benchmark is warmed up for a number of timed iterations, so that it
+ * is measured once compiled, then measured for a number more. Throughput is
+ * reported as the mean and standard deviation of operations per second
+ * across the measured iterations. Allocation is measured for the benchmark's
+ * thread, and reported per operation and per second.
+ * </p>
+ * <p>
+ * Usage: <code>BenchmarkRunner [name=value ...]</code>, where the options are
+ * <ul>
+ * <li><code>filter</code> a regular expression the benchmarks to run must
+ * contain, default all</li>
+ * <li><code>warmup</code> the number of warmup iterations, default 3</li>
+ * <li><code>iterations</code> the number of measured iterations, default 5</li>
+ * <li><code>time</code> the length of each iteration in milliseconds, default 500</li>
+ * </ul>
+ * </p>
+ */
+public class BenchmarkRunner {
+
+	/** The shortest time to run a batch of operations for between timings, in nanoseconds */
+	private static final long MIN_BATCH_NANOS = 100000;
+
+	/** Consumes the benchmarks' results, so that their work can't be removed */
+	private static volatile double sink;
+
+	private int warmupIterations = 3;
+	private int measuredIterations = 5;
+	private long iterationNanos = 500000000L;
+
+	/**
+	 * Gets every benchmark.
+	 * @return the benchmarks, in the order to run them
+	 */
+	private static ArrayList<Benchmark> benchmarks() {
+		ArrayList<Benchmark> benchmarks = new ArrayList<Benchmark>();
+		benchmarks.add(new VectorBenchmark(false));
+		benchmarks.add(new VectorBenchmark(true));
+		benchmarks.add(new RouteBenchmark(null, false));
+		benchmarks.add(new RouteBenchmark(WaypointGraph.Planner.GREEDY, false));
+		benchmarks.add(new RouteBenchmark(WaypointGraph.Planner.SHORTEST, false));
+		benchmarks.add(new RouteBenchmark(WaypointGraph.Planner.GREEDY, true));
+		benchmarks.add(new AircraftUpdateBenchmark(100));
+		benchmarks.add(new CollisionBenchmark(10));
+		benchmarks.add(new CollisionBenchmark(100));
+		benchmarks.add(new CollisionBenchmark(1000));
+		benchmarks.add(new AirportBenchmark());
+		benchmarks.add(new SerializationBenchmark(false));
+		benchmarks.add(new SerializationBenchmark(true));
+		benchmarks.add(new FlightCodecBenchmark(true));
+		benchmarks.add(new FlightCodecBenchmark(false));
+		benchmarks.add(new LoopbackBenchmark(false, 1));
+		benchmarks.add(new LoopbackBenchmark(true, 1));
+		benchmarks.add(new LoopbackBenchmark(false, 64));
+		benchmarks.add(new LoopbackBenchmark(true, 64));
+		return benchmarks;
+	}
+
+	public static void main(String[] args) throws Exception {
+		BenchmarkRunner runner = new BenchmarkRunner();
+		Pattern filter = Pattern.compile("");
+
+		for (String arg : args) {
+			String[] option = arg.split("=", 2);
+			if (option.length != 2) {
+				throw new IllegalArgumentException("Expected name=value, got " + arg);
+			}
+			String name = option[0];
+			String value = option[1];
+			if (name.equals("filter")) filter = Pattern.compile(value);
+			else if (name.equals("warmup")) runner.warmupIterations = Integer.parseInt(value);
+			else if (name.equals("iterations")) runner.measuredIterations = Integer.parseInt(value);
+			else if (name.equals("time")) runner.iterationNanos = Long.parseLong(value) * 1000000L;
+			else throw new IllegalArgumentException("Unknown option " + name);
+		}
+
+		// Benchmarks use the game's classes, which expect a screen size
+		Main.initialiseHeadless();
+
+		System.out.println(String.format("%-28s %14s %12s %12s %12s",
+				"Benchmark", "ops/s", "+-", "alloc B/op", "alloc MB/s"));
+		for (Benchmark benchmark : benchmarks()) {
+			if (!filter.matcher(benchmark.name()).find()) continue;
+			double[] result = runner.run(benchmark);
+			System.out.println(String.format("%-28s %,14.0f %,12.0f %12s %12s",
+					benchmark.name(), result[0], result[1],
+					result[2] < 0 ? "n/a" : String.format("%,.1f", result[2]),
+					result[2] < 0 ? "n/a" : String.format("%,.1f", result[2] * result[0] / 1e6)));
+		}
+	}
+
+	/**
+	 * Runs a benchmark.
+	 * @param benchmark the benchmark to run
+	 * @return the mean operations per second, their standard deviation,
+	 * 			and the bytes allocated per operation, or -1 if allocation
+	 * 			can't be measured
+	 */
+	public double[] run(Benchmark benchmark) throws Exception {
+		benchmark.setup();
+
+		// Find a batch size long enough that timing it is insignificant,
+		// whilst warming up
+		int batch = 1;
+		for (int i = 0; i < warmupIterations; i++) {
+			long end = System.nanoTime() + iterationNanos;
+			long now;
+			do {
+				long start = System.nanoTime();
+				runBatch(benchmark, batch);
+				now = System.nanoTime();
+				if (now - start < MIN_BATCH_NANOS && batch < (1 << 24)) batch *= 2;
+			} while (now < end);
+		}
+
+		double[] opsPerSecond = new double[measuredIterations];
+		long totalOps = 0;
+		long allocatedBefore = allocatedBytes();
+		for (int i = 0; i < measuredIterations; i++) {
+			long ops = 0;
+			long start = System.nanoTime();
+			long end = start + iterationNanos;
+			long now;
+			do {
+				runBatch(benchmark, batch);
+				ops += batch;
+				now = System.nanoTime();
+			} while (now < end);
+			opsPerSecond[i] = ops / ((now - start) / 1e9);
+			totalOps += ops;
+		}
+		long allocatedAfter = allocatedBytes();
+
+		double mean = 0;
+		for (double o : opsPerSecond) mean += o;
+		mean /= opsPerSecond.length;
+		double variance = 0;
+		for (double o : opsPerSecond) variance += (o - mean) * (o - mean);
+		double deviation = opsPerSecond.length > 1
+				? Math.sqrt(variance / (opsPerSecond.length - 1)) : 0;
+		double bytesPerOp = (allocatedBefore < 0 || allocatedAfter < 0) ? -1
+				: (allocatedAfter - allocatedBefore) / (double) totalOps;
+
+		return new double[] { mean, deviation, bytesPerOp };
+	}
+
+	/**
+	 * Runs a number of operations of a benchmark.
+	 * @param benchmark the benchmark to run
+	 * @param ops the number of operations
+	 */
+	private static void runBatch(Benchmark benchmark, int ops) throws Exception {
+		double result = 0;
+		for (int i = 0; i < ops; i++) {
+			result += benchmark.op();
+		}
+		sink = result;
+	}
+
+	/**
+	 * Gets the bytes allocated by this thread so far.
+	 * @return the bytes allocated, or -1 if the JVM can't measure it
+	 */
+	private static long allocatedBytes() {
+		ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+		if (threads instanceof com.sun.management.ThreadMXBean) {
+			return ((com.sun.management.ThreadMXBean) threads)
+					.getThreadAllocatedBytes(Thread.currentThread().getId());
+		}
+		return -1;
+	}
+
+}
@@ -0,0 +1,69 @@
+package bch;
+
+import java.util.Random;
+
+import cls.Aircraft;
+import cls.AircraftBuffer;
+import cls.CollisionGrid;
+
+/**
+ * <h1>CollisionBenchmark</h1>
+ * <p>
+ * Benchmarks a frame of collision checks, as done by the game: rebuilding the
+ * collision grid, then {@link Aircraft#updateCollisions(double, CollisionGrid)}
+ * for every aircraft.
+ * </p>
+ * <p>
+ * Aircraft are spread over the screen on a jittered grid, so none crash but
+ * many break separation, as in a busy airspace.
+ * </p>
+ */
+public class CollisionBenchmark extends Benchmark {
+
+	/** The number of aircraft in the airspace */
+	private final int size;
+
+	private AircraftBuffer airspace;
+	private CollisionGrid grid;
+
+	/**
+	 * Constructor for the benchmark
+	 * @param size the number of aircraft in the airspace
+	 */
+	public CollisionBenchmark(int size) {
+		super("Aircraft.updateCollisions:" + size);
+		this.size = size;
+	}
+
+	@Override
+	public void setup() {
+		Random random = new Random(42);
+		airspace = new AircraftBuffer();
+		grid = new CollisionGrid();
+
+		int columns = (int) Math.ceil(Math.sqrt(size * 4 / 3d));
+		double spacing = 1280d / columns;
+		for (int i = 0; i < size; i++) {
+			Aircraft aircraft = new Aircraft();
+			aircraft.setStatus(Aircraft.AirportState.NORMAL);
+			// Keep jitter small enough that neighbours never come within RADIUS
+			double jitter = Math.max(0, (spacing - 2 * Aircraft.RADIUS) / 2);
+			aircraft.position().setTo(
+					(i % columns) * spacing + random.nextDouble() * jitter,
+					(i / columns) * spacing + random.nextDouble() * jitter,
+					28000);
+			airspace.add(aircraft);
+		}
+	}
+
+	@Override
+	public double op() {
+		grid.rebuild(airspace, airspace.get(0).separationRule());
+		int crashes = 0;
+		for (int i = 0; i < grid.size(); i++) {
+			if (grid.get(i).updateCollisions(1 / 60d, grid) != -1) crashes++;
+		}
+		return crashes;
+	}
+
+}
@@ -0,0 +1,166 @@
+package bch;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.Arrays;
+import java.util.concurrent.DelayQueue;
+import java.util.concurrent.Delayed;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <h1>DelayProxy</h1>
+ * <p>
+ * Forwards one TCP connection on the loopback interface to another port,
+ * delaying everything sent in either direction, to see how the sync
+ * protocols behave on a slower network than the loopback.
+ * </p>
+ * <p>
+ * Data is read as soon as it arrives and held until its delay has passed,
+ * so the delay adds latency without limiting throughput, as on a real link.
+ * </p>
+ */
+public class DelayProxy {
+
+	/** The listening socket players connect to */
+	private final ServerSocket server;
+
+	/** The port forwarded to */
+	private final int targetPort;
+
+	/** The delay added in each direction, in nanoseconds */
+	private final long delayNanos;
+
+	/**
+	 * Constructor for a proxy, which starts listening straight away
+	 * @param targetPort the port on the loopback interface to forward to
+	 * @param delayMillis the delay added in each direction, in milliseconds
+	 */
+	public DelayProxy(int targetPort, long delayMillis) throws IOException {
+		this.server = new ServerSocket(0, 1, InetAddress.getLoopbackAddress());
+		this.targetPort = targetPort;
+		this.delayNanos = TimeUnit.MILLISECONDS.toNanos(delayMillis);
+		Thread acceptor = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					Socket player = server.accept();
+					server.close();
+					Socket target = new Socket(InetAddress.getLoopbackAddress(),
+							DelayProxy.this.targetPort);
+					player.setTcpNoDelay(true);
+					target.setTcpNoDelay(true);
+					forward(player, target);
+					forward(target, player);
+				} catch (IOException e) {
+					// Closed before anyone connected
+				}
+			}
+		}, "DelayProxy accept");
+		acceptor.setDaemon(true);
+		acceptor.start();
+	}
+
+	/**
+	 * Gets the port to connect to, in place of the target port.
+	 * @return the port the proxy is listening on
+	 */
+	public int port() {
+		return server.getLocalPort();
+	}
+
+	/**
+	 * Starts forwarding one direction of the connection.
+	 * @param from the socket to read from
+	 * @param to the socket to write to, once the delay has passed
+	 */
+	private void forward(final Socket from, final Socket to) {
+		final DelayQueue<Chunk> queue = new DelayQueue<Chunk>();
+		Thread reader = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				byte[] buffer = new byte[8192];
+				try {
+					InputStream in = from.getInputStream();
+					int read;
+					while ((read = in.read(buffer)) != -1) {
+						queue.add(new Chunk(Arrays.copyOf(buffer, read), due()));
+					}
+				} catch (IOException e) {
+					// Connection closed
+				}
+				// Closes the other side once everything read has been written
+				queue.add(new Chunk(null, due()));
+			}
+
+			/** The last time due, so that chunks are never reordered */
+			private long last;
+
+			private long due() {
+				last = Math.max(System.nanoTime() + delayNanos, last + 1);
+				return last;
+			}
+		}, "DelayProxy read");
+		Thread writer = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					OutputStream out = to.getOutputStream();
+					while (true) {
+						Chunk chunk = queue.take();
+						if (chunk.data == null) break;
+						out.write(chunk.data);
+						out.flush();
+					}
+				} catch (IOException e) {
+					// Connection closed
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+				try {
+					to.close();
+					from.close();
+				} catch (IOException e) {
+					// Already closed
+				}
+			}
+		}, "DelayProxy write");
+		reader.setDaemon(true);
+		writer.setDaemon(true);
+		reader.start();
+		writer.start();
+	}
+
+	/**
+	 * Data read, waiting for its delay to pass.
+	 */
+	private static class Chunk implements Delayed {
+
+		/** The data, or null to close the connection */
+		final byte[] data;
+
+		/** When the data may be written, as {@link System#nanoTime()} */
+		final long due;
+
+		Chunk(byte[] data, long due) {
+			this.data = data;
+			this.due = due;
+		}
+
+		@Override
+		public long getDelay(TimeUnit unit) {
+			return unit.convert(due - System.nanoTime(), TimeUnit.NANOSECONDS);
+		}
+
+		@Override
+		public int compareTo(Delayed other) {
+			long difference = due - ((Chunk) other).due;
+			return difference < 0 ? -1 : difference > 0 ? 1 : 0;
+		}
+
+	}
+
+}
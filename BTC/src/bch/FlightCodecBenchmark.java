@@ -0,0 +1,58 @@
+package bch;
+
+import java.io.IOException;
+
+import cls.Aircraft;
+import cls.SimulationContext;
+import scn.Game;
+import thr.FlightCodec;
+
+/**
+ * <h1>FlightCodecBenchmark</h1>
+ * <p>
+ * Benchmarks writing an aircraft's sync message with {@link FlightCodec},
+ * to compare with {@link SerializationBenchmark}.
+ * </p>
+ * <p>
+ * Run either for a new flight, which is sent in full, or for a flight the
+ * other player already has which has moved, so only its position is sent.
+ * </p>
+ */
+public class FlightCodecBenchmark extends Benchmark {
+
+	/** Whether the flight is sent in full each time */
+	private final boolean full;
+
+	private Aircraft[] aircraft;
+	private FlightCodec codec;
+
+	/**
+	 * Constructor for the benchmark
+	 * @param full true to send a new flight, false to send a moved one
+	 */
+	public FlightCodecBenchmark(boolean full) {
+		super(full ? "FlightCodec.encode:full" : "FlightCodec.encode:delta");
+		this.full = full;
+	}
+
+	@Override
+	public void setup() throws IOException {
+		SimulationContext context = SimulationContext.standalone();
+		aircraft = new Aircraft[] { new Aircraft(Game.FLIGHT_EXIT_POINT_NAMES[1],
+				Game.FLIGHT_ENTRY_POINT_NAMES[0], context.flightExitPoints()[1],
+				context.flightEntryPoints()[0], 35, context.airspaceWaypoints(), null) };
+		codec = new FlightCodec();
+		codec.encode(aircraft);
+	}
+
+	@Override
+	public double op() throws IOException {
+		if (full) {
+			codec.reset();
+		} else {
+			aircraft[0].position().addInPlace(aircraft[0].getVelocity());
+		}
+		return codec.encode(aircraft).length;
+	}
+
+}
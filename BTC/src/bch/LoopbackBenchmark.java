@@ -0,0 +1,134 @@
+package bch;
+
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.channels.ServerSocketChannel;
+
+import thr.NioTransport;
+
+/**
+ * <h1>LoopbackBenchmark</h1>
+ * <p>
+ * Benchmarks sending sync messages to an echoing peer over the loopback
+ * interface, either with the object streams the network threads have
+ * always used, or with {@link NioTransport}.
+ * </p>
+ * <p>
+ * Each operation sends a batch of messages and waits for all of their
+ * echoes. With a batch of one this measures the round trip; with a larger
+ * batch, messages are pipelined, so this measures messages per second.
+ * </p>
+ */
+public class LoopbackBenchmark extends Benchmark {
+
+	/** The size of each message, about that of a few aircraft deltas */
+	private static final int MESSAGE_SIZE = 256;
+
+	/** Whether to use {@link NioTransport} rather than object streams */
+	private final boolean nio;
+
+	/** The number of messages sent before waiting for their echoes */
+	private final int batch;
+
+	private final byte[] message = new byte[MESSAGE_SIZE];
+
+	private ObjectOutputStream objectOut;
+	private ObjectInputStream objectIn;
+	private NioTransport transport;
+
+	/**
+	 * Constructor for the benchmark
+	 * @param nio true to use NioTransport, false for object streams
+	 * @param batch the number of messages sent before waiting for echoes
+	 */
+	public LoopbackBenchmark(boolean nio, int batch) {
+		super("Loopback." + (nio ? "nio" : "objectStream") + ":" + batch);
+		this.nio = nio;
+		this.batch = batch;
+	}
+
+	@Override
+	public void setup() throws Exception {
+		if (nio) {
+			final ServerSocketChannel server = ServerSocketChannel.open();
+			server.socket().bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+			Thread echo = new Thread(new Runnable() {
+				@Override
+				public void run() {
+					try {
+						NioTransport peer = NioTransport.accept(server);
+						server.close();
+						while (peer.isOpen()) {
+							byte[] received = peer.take(1000);
+							if (received != null) peer.send(received);
+						}
+					} catch (Exception e) {
+						// The benchmark has finished with the connection
+					}
+				}
+			}, "Loopback echo");
+			echo.setDaemon(true);
+			echo.start();
+			transport = NioTransport.connect(InetAddress.getLoopbackAddress().getHostAddress(),
+					server.socket().getLocalPort());
+		} else {
+			final ServerSocket server = new ServerSocket(0, 1, InetAddress.getLoopbackAddress());
+			Thread echo = new Thread(new Runnable() {
+				@Override
+				public void run() {
+					try {
+						Socket socket = server.accept();
+						server.close();
+						socket.setTcpNoDelay(true);
+						ObjectOutputStream out = new ObjectOutputStream(socket.getOutputStream());
+						out.flush();
+						ObjectInputStream in = new ObjectInputStream(socket.getInputStream());
+						while (true) {
+							out.writeUnshared(in.readUnshared());
+							out.flush();
+						}
+					} catch (Exception e) {
+						// The benchmark has finished with the connection
+					}
+				}
+			}, "Loopback echo");
+			echo.setDaemon(true);
+			echo.start();
+			Socket socket = new Socket(InetAddress.getLoopbackAddress(), server.getLocalPort());
+			socket.setTcpNoDelay(true);
+			objectOut = new ObjectOutputStream(socket.getOutputStream());
+			objectOut.flush();
+			objectIn = new ObjectInputStream(socket.getInputStream());
+		}
+	}
+
+	@Override
+	public double op() throws Exception {
+		int received = 0;
+		if (nio) {
+			for (int i = 0; i < batch; i++) {
+				transport.send(message);
+			}
+			for (int i = 0; i < batch; i++) {
+				byte[] echo = transport.take(5000);
+				if (echo == null) throw new IOException("Echo timed out");
+				received += echo.length;
+			}
+		} else {
+			for (int i = 0; i < batch; i++) {
+				objectOut.writeUnshared(message);
+				objectOut.flush();
+			}
+			for (int i = 0; i < batch; i++) {
+				received += ((byte[]) objectIn.readUnshared()).length;
+			}
+		}
+		return received;
+	}
+
+}
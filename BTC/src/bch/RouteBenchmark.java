@@ -0,0 +1,65 @@
+package bch;
+
+import cls.Aircraft;
+import cls.Waypoint;
+import cls.WaypointGraph;
+import cls.SimulationContext;
+
+/**
+ * <h1>RouteBenchmark</h1>
+ * <p>
+ * Benchmarks finding a route across the airspace, as is done for every
+ * new flight. The original greedy search is run uncached, straight from
+ * the waypoints, to compare against the planners of {@link WaypointGraph},
+ * which can also be run with their routes cached.
+ * </p>
+ */
+public class RouteBenchmark extends Benchmark {
+
+	/** The planner to benchmark, or null for the uncached greedy search */
+	private final WaypointGraph.Planner planner;
+
+	/** Whether to reuse cached routes */
+	private final boolean cached;
+
+	private Aircraft aircraft;
+
+	/** The entry point to route each operation from */
+	private int origin;
+
+	/**
+	 * Constructor for the benchmark
+	 * @param planner the planner to benchmark, or null for a greedy search
+	 * 			which builds a new graph every time
+	 * @param cached whether to reuse cached routes
+	 */
+	public RouteBenchmark(WaypointGraph.Planner planner, boolean cached) {
+		super(planner == null ? "Route.newGraph"
+				: "Route." + planner.name().toLowerCase() + (cached ? ".cached" : ""));
+		this.planner = planner;
+		this.cached = cached;
+	}
+
+	@Override
+	public void setup() {
+		aircraft = new Aircraft();
+	}
+
+	@Override
+	public double op() {
+		// Alternate between the routes across the airspace
+		origin = 1 - origin;
+		SimulationContext context = aircraft.context();
+		Waypoint from = context.flightEntryPoints()[origin];
+		Waypoint to = context.flightExitPoints()[origin];
+		if (planner == null) {
+			return new WaypointGraph(context.airspaceWaypoints()).greedyRoute(from, to).length;
+		}
+		if (cached) {
+			context.setRoutePlanner(planner);
+			return aircraft.findRoute(from, to, context.airspaceWaypoints()).length;
+		}
+		return WaypointGraph.of(context.airspaceWaypoints()).route(planner, from, to).length;
+	}
+
+}
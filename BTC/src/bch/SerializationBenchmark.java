@@ -0,0 +1,65 @@
+package bch;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+
+import cls.Aircraft;
+import cls.SimulationContext;
+import scn.Game;
+
+/**
+ * <h1>SerializationBenchmark</h1>
+ * <p>
+ * Benchmarks serialising an aircraft, as the network threads do when
+ * syncing the airspace.
+ * </p>
+ * <p>
+ * Run either on a new stream for each aircraft, which writes the aircraft's
+ * whole object graph and class descriptions, or on one long-lived stream with
+ * <code>writeUnshared</code>, as {@link thr.NetworkThread} does.
+ * </p>
+ */
+public class SerializationBenchmark extends Benchmark {
+
+	/** Whether to reuse one stream, as the network threads do */
+	private final boolean reuseStream;
+
+	private Aircraft aircraft;
+	private ByteArrayOutputStream bytes;
+	private ObjectOutputStream stream;
+
+	/**
+	 * Constructor for the benchmark
+	 * @param reuseStream true to write every aircraft to one stream
+	 */
+	public SerializationBenchmark(boolean reuseStream) {
+		super(reuseStream ? "NetworkThread.send:stream" : "NetworkThread.send:fresh");
+		this.reuseStream = reuseStream;
+	}
+
+	@Override
+	public void setup() throws IOException {
+		SimulationContext context = SimulationContext.standalone();
+		aircraft = new Aircraft(Game.FLIGHT_EXIT_POINT_NAMES[1],
+				Game.FLIGHT_ENTRY_POINT_NAMES[0], context.flightExitPoints()[1],
+				context.flightEntryPoints()[0], 35, context.airspaceWaypoints(), null);
+		bytes = new ByteArrayOutputStream();
+		stream = new ObjectOutputStream(bytes);
+	}
+
+	@Override
+	public double op() throws IOException {
+		bytes.reset();
+		if (reuseStream) {
+			stream.writeUnshared(aircraft);
+			stream.flush();
+		} else {
+			ObjectOutputStream fresh = new ObjectOutputStream(bytes);
+			fresh.writeUnshared(aircraft);
+			fresh.flush();
+		}
+		return bytes.size();
+	}
+
+}
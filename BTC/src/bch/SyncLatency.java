@@ -0,0 +1,328 @@
+package bch;
+
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.channels.ServerSocketChannel;
+import java.util.concurrent.TimeUnit;
+
+import thr.NioTransport;
+import thr.SyncFrame;
+
+/**
+ * <h1>SyncLatency</h1>
+ * <p>
+ * Compares the lock-step and pipelined sync protocols between two players
+ * over a {@link DelayProxy}, reporting how many syncs each player receives
+ * per second, and how old the changes in them are when they arrive.
+ * </p>
+ * <p>
+ * Both players tick as the network threads do, sending a sync holding a
+ * few aircraft's worth of changes and a score each tick. The lock-step
+ * players exchange the same orders, ACKs and replies as the object stream
+ * protocol; the pipelined players exchange {@link SyncFrame}s over
+ * {@link NioTransport}s.
+ * </p>
+ * <p>
+ * Usage: <code>SyncLatency [name=value ...]</code>, where the options are
+ * <ul>
+ * <li><code>delays</code> the one-way delays to try, in milliseconds,
+ * separated by commas, default 0,10,20,50</li>
+ * <li><code>seconds</code> how long to run each protocol for, default 3</li>
+ * <li><code>tick</code> the sleep between ticks, in milliseconds, default 100</li>
+ * </ul>
+ * </p>
+ */
+public class SyncLatency {
+
+	/** The size of the changes sent each tick, about that of a few aircraft deltas */
+	private static final int CHANGES_SIZE = 256;
+
+	private long runNanos = TimeUnit.SECONDS.toNanos(3);
+	private long tickMillis = 100;
+
+	public static void main(String[] args) throws Exception {
+		SyncLatency harness = new SyncLatency();
+		String delays = "0,10,20,50";
+		for (String arg : args) {
+			String[] option = arg.split("=", 2);
+			if (option.length != 2) {
+				throw new IllegalArgumentException("Expected name=value, got " + arg);
+			}
+			String name = option[0];
+			String value = option[1];
+			if (name.equals("delays")) delays = value;
+			else if (name.equals("seconds")) harness.runNanos = TimeUnit.SECONDS.toNanos(Long.parseLong(value));
+			else if (name.equals("tick")) harness.tickMillis = Long.parseLong(value);
+			else throw new IllegalArgumentException("Unknown option " + name);
+		}
+
+		System.out.println(String.format("%-10s %9s %12s %14s %14s",
+				"Protocol", "delay ms", "syncs/s", "mean age ms", "max age ms"));
+		for (String delay : delays.split(",")) {
+			long delayMillis = Long.parseLong(delay.trim());
+			report("lock-step", delayMillis, harness.run(false, delayMillis));
+			report("pipelined", delayMillis, harness.run(true, delayMillis));
+		}
+	}
+
+	private static void report(String protocol, long delayMillis, Stats stats) {
+		System.out.println(String.format("%-10s %9d %12.1f %14.1f %14.1f", protocol,
+				delayMillis, stats.perSecond(), stats.meanMillis(), stats.maxMillis()));
+	}
+
+	/**
+	 * Runs two players syncing through a proxy.
+	 * @param pipelined true for the pipelined protocol, false for lock-step
+	 * @param delayMillis the one-way delay added by the proxy
+	 * @return the syncs received by both players
+	 */
+	public Stats run(boolean pipelined, long delayMillis) throws Exception {
+		Stats stats = new Stats();
+		long end = System.nanoTime() + runNanos;
+		Player host;
+		Player client;
+		if (pipelined) {
+			ServerSocketChannel server = ServerSocketChannel.open();
+			server.socket().bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+			DelayProxy proxy = new DelayProxy(server.socket().getLocalPort(), delayMillis);
+			NioTransport clientTransport = NioTransport.connect(
+					InetAddress.getLoopbackAddress().getHostAddress(), proxy.port());
+			NioTransport hostTransport = NioTransport.accept(server);
+			server.close();
+			host = new PipelinedPlayer(hostTransport, stats, end);
+			client = new PipelinedPlayer(clientTransport, stats, end);
+		} else {
+			ServerSocket server = new ServerSocket(0, 1, InetAddress.getLoopbackAddress());
+			DelayProxy proxy = new DelayProxy(server.getLocalPort(), delayMillis);
+			Socket clientSocket = new Socket(InetAddress.getLoopbackAddress(), proxy.port());
+			Socket hostSocket = server.accept();
+			server.close();
+			host = new LockStepPlayer(hostSocket, true, stats, end);
+			client = new LockStepPlayer(clientSocket, false, stats, end);
+		}
+		Thread hostThread = new Thread(host, "Host");
+		Thread clientThread = new Thread(client, "Client");
+		hostThread.start();
+		clientThread.start();
+		hostThread.join();
+		clientThread.join();
+		stats.nanos = runNanos;
+		return stats;
+	}
+
+	/**
+	 * Writes the changes sent one tick, stamped with when they were made.
+	 * @return the changes
+	 */
+	private static byte[] changes() {
+		byte[] changes = new byte[CHANGES_SIZE];
+		ByteBuffer.wrap(changes).putLong(System.nanoTime());
+		return changes;
+	}
+
+	/**
+	 * The syncs received by both players, and how old they were on arrival.
+	 */
+	public static class Stats {
+		private long count;
+		private long totalAge;
+		private long maxAge;
+		private long nanos;
+
+		/**
+		 * Records the arrival of changes.
+		 * @param changes the changes, stamped with when they were made
+		 */
+		synchronized void received(byte[] changes) {
+			long age = System.nanoTime() - ByteBuffer.wrap(changes).getLong();
+			count++;
+			totalAge += age;
+			maxAge = Math.max(maxAge, age);
+		}
+
+		/** @return the syncs received per second by each player */
+		public double perSecond() {
+			return count / 2.0 / (nanos / 1e9);
+		}
+
+		/** @return the mean age of the changes when they arrived, in milliseconds */
+		public double meanMillis() {
+			return count == 0 ? Double.NaN : totalAge / (double) count / 1e6;
+		}
+
+		/** @return the greatest age of the changes when they arrived, in milliseconds */
+		public double maxMillis() {
+			return maxAge / 1e6;
+		}
+	}
+
+	/**
+	 * One player, syncing every tick until the run ends.
+	 */
+	private abstract class Player implements Runnable {
+		protected final Stats stats;
+		private final long end;
+		protected int score;
+
+		Player(Stats stats, long end) {
+			this.stats = stats;
+			this.end = end;
+		}
+
+		@Override
+		public void run() {
+			try {
+				open();
+				while (System.nanoTime() < end) {
+					tick();
+					score++;
+					pause();
+				}
+			} catch (Exception e) {
+				// The other player has finished and closed the connection
+			} finally {
+				// Closing tells a player still waiting on us to finish too
+				try {
+					close();
+				} catch (IOException e) {
+					// Already closed
+				}
+			}
+		}
+
+		/** Prepares to sync, once both players are running */
+		void open() throws IOException {
+		}
+
+		/** Waits between ticks */
+		void pause() throws Exception {
+			Thread.sleep(tickMillis);
+		}
+
+		/** Syncs with the other player once */
+		abstract void tick() throws Exception;
+
+		abstract void close() throws IOException;
+	}
+
+	/**
+	 * A player using the lock-step protocol of the object streams,
+	 * with the host receiving first as the host thread does.
+	 */
+	private class LockStepPlayer extends Player {
+		private final Socket socket;
+		private final boolean isHost;
+		private ObjectOutputStream out;
+		private ObjectInputStream in;
+
+		LockStepPlayer(Socket socket, boolean isHost, Stats stats, long end) {
+			super(stats, end);
+			this.socket = socket;
+			this.isHost = isHost;
+		}
+
+		@Override
+		void open() throws IOException {
+			// Waits for the other player's stream header, as the network threads do
+			socket.setTcpNoDelay(true);
+			out = new ObjectOutputStream(socket.getOutputStream());
+			out.flush();
+			in = new ObjectInputStream(socket.getInputStream());
+		}
+
+		@Override
+		void tick() throws Exception {
+			if (isHost) {
+				recieveChanges();
+				sendChanges();
+				// "score", ACK, our score, then theirs
+				send("score");
+				in.readObject();
+				send(score);
+				in.readObject();
+			} else {
+				sendChanges();
+				recieveChanges();
+				in.readObject();
+				send("ACK");
+				in.readObject();
+				send(score);
+			}
+		}
+
+		private void sendChanges() throws Exception {
+			send("aircraft");
+			in.readObject();
+			send(changes());
+		}
+
+		private void recieveChanges() throws Exception {
+			in.readObject();
+			send("ACK");
+			stats.received((byte[]) in.readObject());
+		}
+
+		private void send(Object object) throws IOException {
+			out.writeObject(object);
+			out.flush();
+			out.reset();
+		}
+
+		@Override
+		void close() throws IOException {
+			socket.close();
+		}
+	}
+
+	/**
+	 * A player using the pipelined protocol.
+	 */
+	private class PipelinedPlayer extends Player {
+		private final NioTransport transport;
+		private int sent;
+		private int recieved;
+
+		PipelinedPlayer(NioTransport transport, Stats stats, long end) {
+			super(stats, end);
+			this.transport = transport;
+		}
+
+		@Override
+		void tick() throws Exception {
+			byte[] message;
+			while ((message = transport.poll()) != null) {
+				recieve(message);
+			}
+			transport.send(SyncFrame.sync(++sent, recieved, score, changes()).encode());
+		}
+
+		@Override
+		void pause() throws Exception {
+			// Applies frames as they arrive, as the network threads do
+			long deadline = System.currentTimeMillis() + tickMillis;
+			long remaining;
+			while ((remaining = deadline - System.currentTimeMillis()) > 0) {
+				byte[] message = transport.take(remaining);
+				if (message != null) recieve(message);
+			}
+		}
+
+		private void recieve(byte[] message) throws IOException {
+			SyncFrame frame = SyncFrame.decode(message);
+			recieved = frame.sequence();
+			stats.received(frame.flights());
+		}
+
+		@Override
+		void close() {
+			transport.close();
+		}
+	}
+
+}
@@ -0,0 +1,51 @@
+package bch;
+
+import cls.Vector;
+
+/**
+ * <h1>VectorBenchmark</h1>
+ * <p>
+ * Benchmarks the vector arithmetic an aircraft does each frame: moving
+ * along its velocity, then rescaling its velocity to its speed.
+ * </p>
+ * <p>
+ * Run either with the immutable operations, which create new vectors, or
+ * with the in-place operations.
+ * </p>
+ */
+public class VectorBenchmark extends Benchmark {
+
+	/** Whether to use the in-place operations */
+	private final boolean inPlace;
+
+	private Vector position;
+	private Vector velocity;
+
+	/**
+	 * Constructor for the benchmark
+	 * @param inPlace true to use the in-place operations
+	 */
+	public VectorBenchmark(boolean inPlace) {
+		super(inPlace ? "Vector.inPlace" : "Vector.immutable");
+		this.inPlace = inPlace;
+	}
+
+	@Override
+	public void setup() {
+		position = new Vector(100, 100, 28000);
+		velocity = new Vector(30, 40, 0);
+	}
+
+	@Override
+	public double op() {
+		if (inPlace) {
+			position.addScaledInPlace(velocity, 1 / 60d);
+			velocity.normaliseInPlace().scaleByInPlace(50);
+		} else {
+			position = position.add(velocity.scaleBy(1 / 60d));
+			velocity = velocity.normalise().scaleBy(50);
+		}
+		return position.x();
+	}
+
+}
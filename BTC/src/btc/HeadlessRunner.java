@@ -0,0 +1,277 @@
+package btc;
+
+import java.util.ArrayList;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import cls.RandomStreams;
+import cls.WaypointGraph;
+import scn.Game;
+import scn.HeadlessGame;
+
+/**
+ * <h1>HeadlessRunner</h1>
+ * <p>
+ * Runs games without a window, stepping them with a fixed time step as fast
+ * as possible, and reports how much faster than real time they ran.
+ * Used for load testing, and for tuning difficulty and scoring.
+ * </p>
+ * <p>
+ * The seed each game was played with is reported, so that a game can be
+ * played again exactly by running it with the same seed and settings.
+ * </p>
+ * <p>
+ * Several independent games can be run at once in the same process, as
+ * each game keeps its airspace and settings in its own
+ * {@link cls.SimulationContext}.
+ * </p>
+ * <p>
+ * Usage: <code>HeadlessRunner [name=value ...]</code>, where the options are
+ * <ul>
+ * <li><code>difficulty</code> 0 (easy), 1 (medium) or 2 (hard), default 1</li>
+ * <li><code>seconds</code> simulated seconds to run each game for, default 600</li>
+ * <li><code>flights</code> flights after which the game is won, default 0 (unlimited)</li>
+ * <li><code>aircraft</code> most aircraft in the airspace at once, default the game's</li>
+ * <li><code>interval</code> seconds between new flights, default the game's</li>
+ * <li><code>dt</code> the time step, default 1/60</li>
+ * <li><code>routes</code> the route planner, greedy or shortest, default greedy</li>
+ * <li><code>games</code> the number of games to run, default 1</li>
+ * <li><code>threads</code> the number of games to run at once, default the number of cores</li>
+ * <li><code>seed</code> the seed for the first game's random numbers, each later game
+ * using the next seed, default a new seed each run</li>
+ * <li><code>batch</code> true to move each game's aircraft in one batch, default false</li>
+ * <li><code>parallel</code> true to also split each game's physics across the
+ * machine's cores, default false</li>
+ * </ul>
+ * </p>
+ */
+public class HeadlessRunner {
+
+	/** The settings for each game */
+	private int difficulty = Game.DIFFICULTY_MEDIUM;
+	private double seconds = 600;
+	private int flights = 0;
+	private int maxAircraft = -1;
+	private double interval = -1;
+	private double dt = 1.0 / 60;
+	private String routes = WaypointGraph.Planner.GREEDY.name();
+	private long seed = RandomStreams.newSeed();
+	private boolean batch = false;
+	private boolean parallel = false;
+
+	/**
+	 * Runs games as described by the command-line arguments.
+	 * @param args the options, as name=value pairs
+	 */
+	public static void main(String[] args) throws Exception {
+		HeadlessRunner runner = new HeadlessRunner();
+		int games = 1;
+		int threads = Runtime.getRuntime().availableProcessors();
+
+		for (String arg : args) {
+			String[] option = arg.split("=", 2);
+			if (option.length != 2) {
+				throw new IllegalArgumentException("Expected name=value, got " + arg);
+			}
+			String name = option[0];
+			String value = option[1];
+			if (name.equals("difficulty")) runner.difficulty = Integer.parseInt(value);
+			else if (name.equals("seconds")) runner.seconds = Double.parseDouble(value);
+			else if (name.equals("flights")) runner.flights = Integer.parseInt(value);
+			else if (name.equals("aircraft")) runner.maxAircraft = Integer.parseInt(value);
+			else if (name.equals("interval")) runner.interval = Double.parseDouble(value);
+			else if (name.equals("dt")) runner.dt = Double.parseDouble(value);
+			else if (name.equals("routes")) runner.routes = WaypointGraph.Planner.valueOf(value.toUpperCase()).name();
+			else if (name.equals("games")) games = Integer.parseInt(value);
+			else if (name.equals("threads")) threads = Integer.parseInt(value);
+			else if (name.equals("seed")) runner.seed = Long.parseLong(value);
+			else if (name.equals("batch")) runner.batch = Boolean.parseBoolean(value);
+			else if (name.equals("parallel")) runner.parallel = Boolean.parseBoolean(value);
+			else throw new IllegalArgumentException("Unknown option " + name);
+		}
+
+		Main.initialiseHeadless();
+		long start = System.nanoTime();
+		Result[] results = runner.run(games, threads);
+		double wallSeconds = (System.nanoTime() - start) / 1e9;
+
+		double simulatedSeconds = 0;
+		for (int i = 0; i < results.length; i++) {
+			Result result = results[i];
+			simulatedSeconds += result.simulatedSeconds();
+			System.out.println(String.format(
+					"Game %d (seed %d): %.0fs simulated in %.2fs (%.0fx real time), "
+					+ "%d flights, score %d%s",
+					i + 1, runner.seed + i, result.simulatedSeconds(), result.wallSeconds(),
+					result.realTimeFactor(), result.flights(), result.score(),
+					result.crashed() ? ", crashed" : ""));
+		}
+		System.out.println(String.format(
+				"%d games on %d threads: %.0f simulated seconds per wall second",
+				games, Math.min(threads, games), simulatedSeconds / wallSeconds));
+	}
+
+	/**
+	 * Runs a number of games.
+	 * {@link Main#initialiseHeadless()} must have been called first.
+	 * @param games the number of games to run
+	 * @param threads the number of games to run at once
+	 * @return the results of each game, as returned by
+	 * 			{@link #simulate(int, double, double, int, int, double, String, long, boolean, boolean)}
+	 */
+	public Result[] run(int games, int threads)
+			throws InterruptedException, ExecutionException {
+		ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, threads));
+		try {
+			ArrayList<Future<Result>> futures = new ArrayList<Future<Result>>();
+			for (int i = 0; i < games; i++) {
+				final long gameSeed = seed + i;
+				futures.add(executor.submit(new Callable<Result>() {
+					@Override
+					public Result call() {
+						return simulate(difficulty, seconds, dt, flights,
+								maxAircraft, interval, routes, gameSeed, batch, parallel);
+					}
+				}));
+			}
+			Result[] results = new Result[games];
+			for (int i = 0; i < games; i++) {
+				results[i] = futures.get(i).get();
+			}
+			return results;
+		} finally {
+			executor.shutdown();
+		}
+	}
+
+	/**
+	 * Runs a single headless game.
+	 * <p>
+	 * {@link Main#initialiseHeadless()} must have been called first, so this
+	 * should only be called in a process which isn't also running a real game.
+	 * </p>
+	 * @param difficulty the difficulty to play at
+	 * @param seconds the most simulated seconds to run for
+	 * @param dt the time step
+	 * @param flights the flights after which the game is won, or 0 for no limit
+	 * @param maxAircraft the most aircraft in the airspace at once,
+	 * 			or -1 for the game's default
+	 * @param interval the seconds between new flights, or -1 for the game's default
+	 * @param routes the name of the route planner to use
+	 * @param seed the seed for the game's random numbers
+	 * @param batch true to move aircraft in one batch
+	 * @param parallel true to update the fleet, collisions and airports in parallel
+	 * @return how the game went
+	 */
+	public static Result simulate(int difficulty, double seconds, double dt,
+			int flights, int maxAircraft, double interval, String routes, long seed,
+			boolean batch, boolean parallel) {
+		HeadlessGame game = new HeadlessGame(difficulty);
+		game.setSeed(seed);
+		game.context().setRoutePlanner(WaypointGraph.Planner.valueOf(routes));
+		game.setBatchPhysics(batch);
+		game.setParallelPhysics(parallel);
+		game.start();
+		game.setMaxTotalAircraft(flights > 0 ? flights : Integer.MAX_VALUE);
+		if (maxAircraft >= 0) game.setMaxAircraft(maxAircraft);
+		if (interval > 0) game.setFlightGenerationInterval(interval);
+
+		long start = System.nanoTime();
+		while (!game.hasEnded() && game.timeElapsed() < seconds) {
+			game.update(dt);
+		}
+		double wallSeconds = (System.nanoTime() - start) / 1e9;
+
+		return new Result(game.timeElapsed(), game.totalAircraft(),
+				game.finalScore(), game.hasCrashed(), wallSeconds);
+	}
+
+	/**
+	 * <h1>Result</h1>
+	 * <p>
+	 * How a single headless game went.
+	 * </p>
+	 */
+	public static final class Result {
+
+		/** The seconds simulated before the game ended or ran out of time */
+		private final double simulatedSeconds;
+
+		/** The flights finished */
+		private final int flights;
+
+		/** The score the game ended with */
+		private final int score;
+
+		/** Whether the game ended in a crash */
+		private final boolean crashed;
+
+		/** The wall-clock seconds the game took to run */
+		private final double wallSeconds;
+
+		/**
+		 * Constructor for a result
+		 * @param simulatedSeconds the seconds simulated
+		 * @param flights the flights finished
+		 * @param score the score the game ended with
+		 * @param crashed whether the game ended in a crash
+		 * @param wallSeconds the wall-clock seconds the game took to run
+		 */
+		public Result(double simulatedSeconds, int flights, int score,
+				boolean crashed, double wallSeconds) {
+			this.simulatedSeconds = simulatedSeconds;
+			this.flights = flights;
+			this.score = score;
+			this.crashed = crashed;
+			this.wallSeconds = wallSeconds;
+		}
+
+		/**
+		 * @return the seconds simulated before the game ended or ran out of time
+		 */
+		public double simulatedSeconds() {
+			return simulatedSeconds;
+		}
+
+		/**
+		 * @return the flights finished
+		 */
+		public int flights() {
+			return flights;
+		}
+
+		/**
+		 * @return the score the game ended with
+		 */
+		public int score() {
+			return score;
+		}
+
+		/**
+		 * @return true if the game ended in a crash
+		 */
+		public boolean crashed() {
+			return crashed;
+		}
+
+		/**
+		 * @return the wall-clock seconds the game took to run
+		 */
+		public double wallSeconds() {
+			return wallSeconds;
+		}
+
+		/**
+		 * Gets how much faster than real time the game ran.
+		 * @return the simulated seconds per wall-clock second
+		 */
+		public double realTimeFactor() {
+			return simulatedSeconds / wallSeconds;
+		}
+
+	}
+
+}
@@ -3,6 +3,7 @@ package btc;
 import java.awt.GraphicsEnvironment;
 import java.awt.Rectangle;
 import java.io.File;
+import java.util.Random;
 
 import org.lwjgl.Sys;
 
@@ -21,6 +22,13 @@ public class Main implements input.EventHandler {
 	 */
 	public static boolean testing = true;
 	
+	/**
+	 * Is the game being run without a window, e.g. by {@link HeadlessRunner}.
+	 * Graphics and audio are skipped as when testing, but gameplay is the
+	 * same as a real game.
+	 */
+	public static boolean headless = false;
+	
 	/**
 	 * Creates a new instance of Main, starting a new game.
 	 * @param args any command-line arguments.
@@ -37,14 +45,31 @@ public class Main implements input.EventHandler {
 	
 	private static double[] screenShake = new double[2];
 	
+	/** The random used to shake the screen, kept apart from the game's so drawing can't change play */
+	private final Random shakeRandom = new Random();
+	
 	final private String[] ICONS = {
 		"gfx" + File.separator + "icon16.png", // 16
 		"gfx" + File.separator + "icon32.png", // 32
 		"gfx" + File.separator + "icon64.png", // 64
 	};
 
+	/** The length of each step of the simulation, in seconds */
+	final public static double TIMESTEP = 1.0 / 60;
+	
+	/**
+	 * The most frame time simulated at once, in seconds. After a longer
+	 * hitch the game slows down, rather than taking many steps to catch up.
+	 */
+	final public static double MAX_FRAME_TIME = 0.25;
+	
+	/** How far between the last two steps of the simulation the current frame is drawn */
+	private static double interpolation = 1;
+	
 	private double lastFrameTime;
 	private double dt;
+	/** The frame time not yet simulated, less than one step */
+	private double accumulator;
 	private java.util.Stack<scn.Scene> sceneStack;
 	private scn.Scene currentScene;
 	private int fps;
@@ -97,6 +122,17 @@ public class Main implements input.EventHandler {
 		quit();
 	}
 	
+	/**
+	 * Sets up for running games without a window or LWJGL.
+	 * Must be called before any scene is created.
+	 */
+	public static void initialiseHeadless() {
+		testing = true;
+		headless = true;
+		width = TARGET_WIDTH;
+		height = TARGET_HEIGHT;
+	}
+	
 	/**
 	 * Creates window, initialises jog classes and sets starting values to variables.
 	 */
@@ -115,17 +151,26 @@ public class Main implements input.EventHandler {
 		}
 		sceneStack = new java.util.Stack<scn.Scene>();
 		setScene(new scn.Title(this));
+		if (!testing) {
+			// The title is shown while everything else loads
+			assets.loadAsync("gfx", "sfx");
+		}
 		lastfps = ((Sys.getTime()* 1000) / Sys.getTimerResolution()); //set lastFPS to current Time
 	}
 	
 	/**
-	 * Updates input handling, the window and the current scene.
+	 * Updates input handling and the window, then steps the current scene
+	 * through the time elapsed in fixed steps of {@link #TIMESTEP}, so that
+	 * a slow frame can't make aircraft jump past their targets or each other.
+	 * Time left over is carried to the next frame, and the scene is drawn
+	 * that far between its last two steps.
 	 * @param dt the time elapsed since the last frame.
 	 */
 	private void update(double dt) {
 		if (!testing) {
 			audio.update();
 			input.update(this);
+			assets.update();
 		}
 		
 		if (screenShake[1] > 0) {
@@ -140,7 +185,12 @@ public class Main implements input.EventHandler {
 			window.update();
 		}
 		
-		currentScene.update(dt);
+		accumulator += Math.min(dt, MAX_FRAME_TIME);
+		while (accumulator >= TIMESTEP) {
+			currentScene.update(TIMESTEP);
+			accumulator -= TIMESTEP;
+		}
+		interpolation = accumulator / TIMESTEP;
 	}
 	
 	/**
@@ -160,8 +210,8 @@ public class Main implements input.EventHandler {
 	private void draw() {
 		lib.jog.graphics.push();
 		if (screenShake[1] > 0 && screenShake[0] > 0) {
-			double x = Math.random() * screenShake[0];
-			double y = Math.random() * screenShake[0] / 2;
+			double x = shakeRandom.nextDouble() * screenShake[0];
+			double y = shakeRandom.nextDouble() * screenShake[0] / 2;
 			lib.jog.graphics.translate(x, y);
 		}
 		if (!testing) {
@@ -194,7 +244,7 @@ public class Main implements input.EventHandler {
 		
 		if (time - lastfps > 1000) {
 			if (!testing) {
-				window.setTitle(TITLE + "- FPS: " + fps);
+				window.setTitle(TITLE + "- FPS: " + fps + " - Draw calls: " + graphics.drawCalls());
 			}
 			
 			fps = 0; //reset the FPS counter
@@ -237,6 +287,15 @@ public class Main implements input.EventHandler {
 		return height;
 	}
 	
+	/**
+	 * Gets how far between the last two steps of the simulation to draw
+	 * moving things, for smooth movement whatever the frame rate.
+	 * @return the fraction of a step since the last one, from 0 to 1
+	 */
+	public static double interpolation() {
+		return interpolation;
+	}
+	
 	public static double getScale() {
 		return width / TARGET_WIDTH;
 	}
@@ -7,10 +7,10 @@ import java.util.Random;
 
 import btc.Main;
 import scn.Game;
+import lib.jog.assets;
 import lib.jog.audio;
 import lib.jog.graphics;
 import lib.jog.input;
-import lib.jog.window;
 
 /**
  * <h1>Aircraft</h1>
@@ -36,9 +36,16 @@ public class Aircraft implements Serializable {
 	/** How large to draw the bearing circle. */
 	public final static int COMPASS_RADIUS = 64;
 	
+	/** The furthest the aircraft is drawn moving smoothly in one step.
+	 * Any further is a jump, so is drawn at once. */
+	private final static double MAX_INTERPOLATED_STEP = 2 * RADIUS;
+	
 	/** How far away another aircraft has to be to not cause a separation
 	 * violation */
-	public static int separationRule = 64;
+	private int separationRule = 64;
+	
+	/** The context of the game the aircraft belongs to, or null for the standalone context */
+	private transient SimulationContext context;
 	
 	/** The score a aircraft will reward the player with upon
 	 * landing/clearing the airspace */
@@ -53,6 +60,17 @@ public class Aircraft implements Serializable {
 	/** The position of the aircraft */
 	private Vector position;
 	
+	/** The position of the aircraft before the last step, to draw between
+	 * the last two steps (see {@link Main#interpolation()}) */
+	private transient double previousX = Double.NaN, previousY = Double.NaN;
+	
+	/** How far the aircraft moved in the last step, for swept collision checks */
+	private transient double stepX, stepY, stepZ;
+	
+	/** Where the last step ended. If the aircraft has since been placed
+	 * elsewhere, e.g. on takeoff, the step no longer leads to its position */
+	private transient double stepEndX, stepEndY, stepEndZ;
+	
 	/** The initial speed of the aircraft */
 	private double initialSpeed;
 
@@ -104,6 +122,22 @@ public class Aircraft implements Serializable {
 	 * separation rules with this aircraft */
 	private ArrayList<Aircraft> aircraftTooNear = new ArrayList<Aircraft>();
 	
+	/** Scratch space for the indices of nearby aircraft when checking collisions */
+	private transient int[] collisionCandidates;
+	
+	/** Aircraft found too near by {@link #collectCollisions(CollisionGrid)},
+	 * which become {@link #aircraftTooNear} when applied */
+	private transient ArrayList<Aircraft> pendingTooNear;
+	
+	/** The index of the aircraft found to crash into, or -1 if none */
+	private transient int pendingCrashIndex;
+	
+	/** The aircraft found to crash into, or null if none */
+	private transient Aircraft pendingCrashAircraft;
+	
+	/** Whether the collision warning should be raised when applied */
+	private transient boolean pendingWarning;
+	
 	/** The current state of the aircraft's altitude,
 	 * i.e. if the aircraft is climbing or falling */
 	private AltitudeState altitudeState;
@@ -125,7 +159,8 @@ public class Aircraft implements Serializable {
 	};
 
 
-	private static ArrayList<String> usedNames = new ArrayList<String>();
+	/** The id the flight's name is made from, or -1 if it was not allocated here */
+	private transient int flightId = -1;
 	
 	/**
 	 * Flags whether the collision warning sound has been played before.
@@ -135,8 +170,26 @@ public class Aircraft implements Serializable {
 	private boolean collisionWarningSoundFlag = false;
 
 	/** A warning sound to be played when the aircraft enters separation violation */
-	private final static audio.Sound WARNING_SOUND = Main.testing ? null
-			: audio.newSoundEffect("sfx" + File.separator + "beep.ogg");
+	private final static audio.Sound WARNING_SOUND = Main.testing ? null : warningSound();
+	
+	/**
+	 * The shortest time between warning sounds, in seconds. Warnings from many aircraft
+	 * at once are played as one.
+	 */
+	private final static double WARNING_SOUND_COOLDOWN = 0.25;
+	
+	/**
+	 * Loads the warning sound, which gives way to other sounds, and plays with few voices
+	 * however many aircraft are in violation.
+	 * @return the warning sound
+	 */
+	private static audio.Sound warningSound() {
+		audio.Sound sound = assets.sound("sfx" + File.separator + "beep.ogg");
+		sound.setPriority(audio.Sound.LOW_PRIORITY);
+		sound.setMaxVoices(2);
+		sound.setCooldown(WARNING_SOUND_COOLDOWN);
+		return sound;
+	}
 	
 	/**
 	 * Constructor for an aircraft.
@@ -155,6 +208,28 @@ public class Aircraft implements Serializable {
 			Waypoint originPoint,
 			double speed, Waypoint[] sceneWaypoints,
 			Airport airport) {
+		this(nameDestination, nameOrigin, destinationPoint, originPoint,
+				speed, sceneWaypoints, airport, null);
+	}
+	
+	/**
+	 * Constructor for an aircraft in a game.
+	 * @param nameDestination the name of the location to which the aircraft is going
+	 * @param nameOrigin the name of the location from which the aircraft hails
+	 * @param destinationPoint the end point of the aircraft's route
+	 * @param originPoint the point to initialise the aircraft
+	 * @param speed the speed the aircraft will travel at
+	 * @param sceneWaypoints the waypoints on the map
+	 * @param airport the airport the aircraft is travelling to
+	 * @param context the context of the game the aircraft belongs to,
+	 * 			or null for the standalone context
+	 */
+	public Aircraft(String nameDestination,
+			String nameOrigin, Waypoint destinationPoint,
+			Waypoint originPoint,
+			double speed, Waypoint[] sceneWaypoints,
+			Airport airport, SimulationContext context) {
+		this.context = context;
 		generateAircraft(nameDestination, nameOrigin,
 				destinationPoint, originPoint, speed,
 				sceneWaypoints, airport, false);
@@ -174,6 +249,62 @@ public class Aircraft implements Serializable {
 		flightName = generateName();
 		position = new Vector(100,100,0);
 	}
+	
+	/**
+	 * Constructor for an aircraft received from the other player.
+	 * The aircraft is placed at the origin, with no velocity, until its
+	 * position and velocity are set.
+	 * @param name the name of the flight
+	 * @param nameOrigin the name of the location from which the aircraft hails
+	 * @param nameDestination the name of the location to which the aircraft is going
+	 * @param speed the speed the aircraft travels at
+	 * @param route the waypoints the aircraft flies through
+	 * @param destinationPoint the end point of the aircraft's route
+	 * @param airport the airport the aircraft is travelling to
+	 */
+	public Aircraft(String name, String nameOrigin, String nameDestination,
+			double speed, Waypoint[] route, Waypoint destinationPoint,
+			Airport airport) {
+		this(name, nameOrigin, nameDestination, speed, route, destinationPoint,
+				airport, null);
+	}
+	
+	/**
+	 * Constructor for an aircraft received from the other player into a game.
+	 * @param name the name of the flight
+	 * @param nameOrigin the name of the location from which the aircraft hails
+	 * @param nameDestination the name of the location to which the aircraft is going
+	 * @param speed the speed the aircraft travels at
+	 * @param route the waypoints the aircraft flies through
+	 * @param destinationPoint the end point of the aircraft's route
+	 * @param airport the airport the aircraft is travelling to
+	 * @param context the context of the game the aircraft belongs to,
+	 * 			or null for the standalone context
+	 */
+	public Aircraft(String name, String nameOrigin, String nameDestination,
+			double speed, Waypoint[] route, Waypoint destinationPoint,
+			Airport airport, SimulationContext context) {
+		this.context = context;
+		flightName = name;
+		originName = nameOrigin;
+		destinationName = nameDestination;
+		initialSpeed = speed;
+		this.route = route;
+		destination = destinationPoint;
+		this.airport = airport;
+		position = new Vector(0, 0, 0);
+		velocity = new Vector(0, 0, 0);
+		currentTarget = route[0].position();
+		isManuallyControlled = false;
+		status = AirportState.NORMAL;
+		currentRouteStage = 0;
+		currentlyTurningBy = 0;
+		bearingLeniency = 0.03;
+		manualBearingTarget = Double.NaN;
+		score = 0;
+		
+		applyDifficultySettings(false);
+	}
 		
 	private void generateAircraft(String nameDestination,
 			String nameOrigin, Waypoint destinationPoint,
@@ -189,7 +320,7 @@ public class Aircraft implements Serializable {
 		// Find route
 		this.airport = airport;
 		if (!testing) {
-			route = findGreedyRoute(originPoint, destinationPoint,
+			route = findRoute(originPoint, destinationPoint,
 					sceneWaypoints);
 		} else {
 			route = new Waypoint[] {sceneWaypoints[0]};
@@ -198,30 +329,33 @@ public class Aircraft implements Serializable {
 		destination = destinationPoint;
 		
 		// Place on spawn waypoint
-		position = originPoint.position();
+		// Copied, as the aircraft's position is updated in place
+		position = new Vector(originPoint.position().x(),
+				originPoint.position().y(), originPoint.position().z());
 		
 		// Offsets the spawn location of the aircraft around
 		// the origin waypoint, for variety
 		// This also prevents collisions between just-spawned aircraft
 		// and existing aircraft flying to the waypoint.
 		int offset = 0;
+		Random random = context().random(RandomStreams.Stream.SPAWNS);
+		separationRule = context().separationRule();
 
-		if (!Main.testing) { 
-			//if ((new Random()).nextInt(2) == 0) {
+		if (!Main.testing || Main.headless) { 
 			if (position.x() == 0) {
 				// Apply positive offset
-				offset = (new Random()).nextInt((separationRule - 10) + 1) + 10;
+				offset = random.nextInt((separationRule - 10) + 1) + 10;
 			} else {
 				// Apply negative offset
-				offset = (new Random()).nextInt((separationRule - 10) + 1)
+				offset = random.nextInt((separationRule - 10) + 1)
 						- separationRule;
 			}
 		}
 
 		int altitudeOffset = 0;
 
-		if (!Main.testing) {
-			if ((new Random()).nextInt(2) == 0) {
+		if (!Main.testing || Main.headless) {
+			if (random.nextInt(2) == 0) {
 				altitudeOffset = 28000;
 			} else {
 				altitudeOffset = 30000;
@@ -229,8 +363,9 @@ public class Aircraft implements Serializable {
 		}
 		
 		// Update position
-		if (!Main.testing){ 
-			position = position.add(new Vector(offset, 0, altitudeOffset));
+		if (!Main.testing || Main.headless){ 
+			position.setTo(position.x() + offset, position.y(),
+					position.z() + altitudeOffset);
 		}
 		
 		// Calculate initial velocity (direction)
@@ -251,39 +386,55 @@ public class Aircraft implements Serializable {
 	}
 	
 	private String generateName() {
-		String name = "";
-		boolean nameTaken = true;
-		while (nameTaken) {
-			name = "Flight " + (int)(900 * Math.random() + 100);
-			nameTaken = false;
-			for (String used : usedNames) {
-				if (name == used) nameTaken = true;
-			}
-		}
-		usedNames.add(name);
-		return name;
+		flightId = context().flightIds().allocate();
+		return FlightIdAllocator.name(flightId);
+	}
+	
+	/**
+	 * Gives back the id this flight's name was made from, so that a new
+	 * flight can use it. Should be called once the flight has left the
+	 * airspace; calling it again, or for a flight received from the other
+	 * player, does nothing.
+	 */
+	public void releaseName() {
+		context().flightIds().release(flightId);
+		flightId = -1;
+	}
+	
+	/**
+	 * Gets the context of the game the aircraft belongs to.
+	 * @return the game's context, or the standalone context if the aircraft
+	 * 			was made outside of a game
+	 */
+	public SimulationContext context() {
+		return context != null ? context : SimulationContext.standalone();
+	}
+	
+	/**
+	 * @return how far away another aircraft has to be to not cause a separation violation
+	 */
+	public int separationRule() {
+		return separationRule;
 	}
 	
 	public void applyDifficultySettings(boolean setVelocity) {
 		// Adjust the aircraft's attributes according to the difficulty of the parent scene.
-		switch (Game.difficulty()) {
+		separationRule = context().separationRule();
+		switch (context().difficulty()) {
 			// 0 has the easiest attributes (slower aircraft, more forgiving separation rules)
 			// 2 has the hardest attributes (faster aircraft, least forgiving separation rules).
 			case Game.DIFFICULTY_EASY:
-				separationRule = 64;
 				turnSpeed = Math.PI / (2 * (2 * Main.getScale()));
 				altitudeChangeSpeed = (int) (400 / (2 * Main.getScale()));
 				break;
 			case Game.DIFFICULTY_MEDIUM:
-				separationRule = 96;
-				if (setVelocity) velocity = velocity.scaleBy(2);
+				if (setVelocity) velocity.scaleByInPlace(2);
 				if (setVelocity) initialSpeed *= 2;
 				turnSpeed = Math.PI / (1 * (2 * Main.getScale()));
 				altitudeChangeSpeed = (int) (200 / (2 * Main.getScale()));
 				break;
 			case Game.DIFFICULTY_HARD:
-				separationRule = 128;
-				if (setVelocity) velocity = velocity.scaleBy(3);
+				if (setVelocity) velocity.scaleByInPlace(3);
 				if (setVelocity) initialSpeed *= 3;
 				// At high velocities, the aircraft is allowed to turn faster
 				// this helps keep the aircraft on track.
@@ -292,7 +443,7 @@ public class Aircraft implements Serializable {
 				break;
 			default :
 				Exception e = new Exception("Invalid Difficulty : "
-												+ Game.difficulty() + ".");
+												+ context().difficulty() + ".");
 				e.printStackTrace();
 		}
 	}
@@ -450,6 +601,22 @@ public class Aircraft implements Serializable {
 		this.airport = null;
 	}
 	
+	public void setAirport(Airport airport) {
+		this.airport = airport;
+	}
+	
+	/**
+	 * Gets the stage the aircraft is at in its route.
+	 * @return the index in the route of the waypoint being flown to
+	 */
+	public int currentRouteStage() {
+		return currentRouteStage;
+	}
+	
+	public void setCurrentRouteStage(int routeStage) {
+		this.currentRouteStage = routeStage;
+	}
+	
 	public void clearCurrentRouteStage() {
 		this.currentRouteStage = 0;
 	}
@@ -479,9 +646,9 @@ public class Aircraft implements Serializable {
 		double x = position.x();
 		double y = position.y();
 		return (x < RADIUS
-				|| x > window.width() + RADIUS - 32
+				|| x > (int) Main.width() + RADIUS - 32
 				|| y < RADIUS
-				|| y > window.height() + RADIUS - 144);
+				|| y > (int) Main.height() + RADIUS - 144);
 	}
 
 	/**
@@ -556,6 +723,8 @@ public class Aircraft implements Serializable {
 	 * @param newWaypoint the new waypoint to travel to.
 	 */
 	public void alterPath(int routeStage, Waypoint newWaypoint) {
+		// Routes may be shared with other aircraft, so change a copy
+		route = route.clone();
 		route[routeStage] = newWaypoint;
 		if (routeStage == currentRouteStage) {
 			currentTarget = newWaypoint.position();
@@ -599,10 +768,29 @@ public class Aircraft implements Serializable {
 	/**
 	 * Updates the aircraft's position and bearing, the stage of its route,
 	 * and whether it has finished its flight.
+	 * <p>
+	 * This is split into three steps so that {@link FleetState} can run the
+	 * middle one over the whole fleet at once: {@link #updateRouteStage()},
+	 * {@link #integrate(double)} and {@link #updateBearing(double)}.
+	 * </p>
 	 * @param dt
 	 */
 	public void update(double dt) {
-		if (status == AirportState.FINISHED) return;
+		if (!updateRouteStage()) return;
+		integrate(dt);
+		updateBearing(dt);
+	}
+	
+	/**
+	 * Updates the aircraft's altitude state, the stage of its route,
+	 * and whether it has finished its flight.
+	 * @return true if the aircraft should then move this frame
+	 */
+	boolean updateRouteStage() {
+		previousX = position.x();
+		previousY = position.y();
+		recordStep(0, 0, 0);
+		if (status == AirportState.FINISHED) return false;
 		
 		if ((altitudeState != null) && (status == AirportState.NORMAL)) {
 			switch (altitudeState) {
@@ -644,25 +832,77 @@ public class Aircraft implements Serializable {
 			}
 		}
 		
-		if (status != AirportState.PARKED) {
-			// Update position
-			Vector dv = new Vector(0, 0, 0);
-			
-			if (status == AirportState.NORMAL) {
-				dv = velocity.scaleBy(dt);
-			} else {
-				dv = new Vector(velocity.x(), velocity.y(), 0).scaleBy(dt);
-			}
-			
-			position = position.add(dv);
-
-			currentlyTurningBy = 0;
+		return status != AirportState.PARKED;
+	}
+	
+	/**
+	 * Moves the aircraft along its velocity.
+	 * Only aircraft in normal flight change altitude, others move horizontally.
+	 * @param dt the time elapsed since the last frame.
+	 */
+	void integrate(double dt) {
+		// Done in place, as this runs for every aircraft every frame
+		if (isChangingAltitude()) {
+			position.addScaledInPlace(velocity, dt);
+			recordStep(velocity.x() * dt, velocity.y() * dt, velocity.z() * dt);
+		} else {
+			position.setTo(position.x() + velocity.x() * dt,
+					position.y() + velocity.y() * dt, position.z());
+			recordStep(velocity.x() * dt, velocity.y() * dt, 0);
+		}
+	}
+	
+	/**
+	 * Records how far the aircraft moved in this step, so that collisions
+	 * part way through the step can be found.
+	 * @param dx the distance moved along x
+	 * @param dy the distance moved along y
+	 * @param dz the distance moved along z
+	 */
+	void recordStep(double dx, double dy, double dz) {
+		stepX = dx;
+		stepY = dy;
+		stepZ = dz;
+		stepEndX = position.x();
+		stepEndY = position.y();
+		stepEndZ = position.z();
+	}
+	
+	/**
+	 * Checks whether the aircraft is still where its last step left it.
+	 * @return false if it has been placed elsewhere since
+	 */
+	private boolean isAtStepEnd() {
+		return position.x() == stepEndX && position.y() == stepEndY
+				&& position.z() == stepEndZ;
+	}
+	
+	/**
+	 * Gets how far the aircraft moved horizontally in the last step, squared.
+	 * @return the squared length of the step, in pixels
+	 */
+	public double stepLengthSquared() {
+		return stepX * stepX + stepY * stepY;
+	}
+	
+	/**
+	 * Checks whether {@link #integrate(double)} applies the aircraft's
+	 * vertical velocity.
+	 * @return true if the aircraft is in normal flight
+	 */
+	boolean isChangingAltitude() {
+		return status == AirportState.NORMAL;
+	}
+	
+	/**
+	 * Turns the aircraft towards its target if it is off course.
+	 * @param dt the time elapsed since the last frame.
+	 */
+	void updateBearing(double dt) {
+		currentlyTurningBy = 0;
 
-			// Update bearing
-			if (Math.abs(angleToTarget() - bearing()) > bearingLeniency) {
-				turnTowardsTarget(dt);
-				
-			}
+		if (Math.abs(angleToTarget() - bearing()) > bearingLeniency) {
+			turnTowardsTarget(dt);
 		}
 	}
 	
@@ -695,7 +935,7 @@ public class Aircraft implements Serializable {
 		double sinA = Math.sin(angle);
 		double x = velocity.x();
 		double y = velocity.y();
-		velocity = new Vector(x*cosA - y*sinA, y*cosA + x*sinA, velocity.z());
+		velocity.setTo(x*cosA - y*sinA, y*cosA + x*sinA, velocity.z());
 	}
 
 	/**
@@ -720,20 +960,67 @@ public class Aircraft implements Serializable {
 		turnBy(angleMagnitude * angleDirection);
 	}
 	
+	/**
+	 * Gets where to draw the aircraft, between its positions at the last
+	 * two steps of the simulation.
+	 * @return the x coordinate to draw at
+	 */
+	private double drawX() {
+		return interpolate(previousX, position.x());
+	}
+	
+	/**
+	 * Gets where to draw the aircraft, between its positions at the last
+	 * two steps of the simulation.
+	 * @return the y coordinate to draw at
+	 */
+	private double drawY() {
+		return interpolate(previousY, position.y());
+	}
+	
+	/**
+	 * Draws the aircraft at its position from now on, rather than between
+	 * its last two steps. Used for aircraft which are still drawn but no
+	 * longer stepped, which would otherwise jitter back and forth.
+	 */
+	public void snapToPosition() {
+		previousX = position.x();
+		previousY = position.y();
+	}
+	
+	/**
+	 * Interpolates between a coordinate's last two steps.
+	 * Jumps, such as a flight synced in or taking off, are not smoothed.
+	 * @param previous the coordinate before the last step, or NaN if not stepped yet
+	 * @param current the coordinate now
+	 * @return the coordinate to draw at
+	 */
+	private double interpolate(double previous, double current) {
+		if (Double.isNaN(previous) || Math.abs(current - previous) > MAX_INTERPOLATED_STEP) {
+			return current;
+		}
+		return previous + (current - previous) * Main.interpolation();
+	}
+	
 	/**
 	 * Draws the aircraft and any warning circles if necessary. 
 	 */
 	public void draw(int controlAltitude) {
+		double drawnX = drawX();
+		double drawnY = drawY();
 		double scale = 2*(Math.max(position.z(), 28000) / 30000);
 		graphics.setColour(128, 128, 128, 255);
-		graphics.draw(Game.aircraftImage, scale, position.x(), position.y(), bearing(), 8, 8);
+		graphics.draw(Game.aircraftImage, scale, drawnX, drawnY, bearing(), 8, 8);
 		graphics.setColour(128, 128, 128, 255/2.5);
-		graphics.print(String.format("%.0f", position.z()) + "+", position.x()+8, position.y()-8);
+		graphics.print(String.format("%.0f", position.z()) + "+", drawnX+8, drawnY-8);
 		
 		// Draw warning circles, but only if the aircraft isn't
-		// at the airport
-		if (!(this.status == AirportState.LANDING)
-			&& !(this.status == AirportState.TAKEOFF)
+		// at the airport, or is still looping before it lands
+		if (this.status == AirportState.LANDING) {
+			if (airport != null && airport.isLooping(this)) {
+				drawWarningCircles();
+			}
+		} else if (!(this.status == AirportState.TAKEOFF)
 			&& !(this.status == AirportState.PARKED)) {
 			drawWarningCircles();
 		}
@@ -743,13 +1030,15 @@ public class Aircraft implements Serializable {
 	 * Draws the compass around this aircraft
 	 */
 	public void drawCompass() {
+		double drawnX = drawX();
+		double drawnY = drawY();
 		graphics.setColour(0, 128, 0);
-		graphics.circle(false, position.x() + 16, position.y() + 16, COMPASS_RADIUS);
+		graphics.circle(false, drawnX + 16, drawnY + 16, COMPASS_RADIUS);
 		
 		for (int i = 0; i < 360; i += 60) {
 			double r = Math.toRadians(i - 90);
-			double x = position.x() + 16 + (1.1 * COMPASS_RADIUS * Math.cos(r));
-			double y = position.y() + 14 + (1.1 * COMPASS_RADIUS * Math.sin(r));
+			double x = drawnX + 16 + (1.1 * COMPASS_RADIUS * Math.cos(r));
+			double y = drawnY + 14 + (1.1 * COMPASS_RADIUS * Math.sin(r));
 			if (i > 170) x -= 24;
 			if (i == 180) x += 12;
 			graphics.print(String.valueOf(i), x, y);
@@ -758,32 +1047,32 @@ public class Aircraft implements Serializable {
 		double x, y;
 		
 		if (isManuallyControlled && input.isMouseDown(input.MOUSE_LEFT)) {
-			Vector vectorToMouse = new Vector(input.mouseY() - position.y(),
-					input.mouseX() - position.x(), 0);
+			Vector vectorToMouse = new Vector(input.mouseY() - drawnY,
+					input.mouseX() - drawnX, 0);
 			if (vectorToMouse.magnitudeSquared()
 					<= COMPASS_RADIUS * COMPASS_RADIUS) {
 				graphics.setColour(0, 128, 0, 128);
-				double r = Math.atan2(input.mouseY() - position.y(),
-						input.mouseX() - position.x());
-				x = 16 + position.x() + (COMPASS_RADIUS * Math.cos(r));
-				y = 16 + position.y() + (COMPASS_RADIUS * Math.sin(r));
-				graphics.line(position.x() + 16, position.y() + 16, x, y);
-				graphics.line(position.x() + 15, position.y() + 16, x, y);
-				graphics.line(position.x() + 16, position.y() + 15, x, y);
-				graphics.line(position.x() + 17, position.y() + 16, x, y);
-				graphics.line(position.x() + 17, position.y() + 17, x, y);
+				double r = Math.atan2(input.mouseY() - drawnY,
+						input.mouseX() - drawnX);
+				x = 16 + drawnX + (COMPASS_RADIUS * Math.cos(r));
+				y = 16 + drawnY + (COMPASS_RADIUS * Math.sin(r));
+				graphics.line(drawnX + 16, drawnY + 16, x, y);
+				graphics.line(drawnX + 15, drawnY + 16, x, y);
+				graphics.line(drawnX + 16, drawnY + 15, x, y);
+				graphics.line(drawnX + 17, drawnY + 16, x, y);
+				graphics.line(drawnX + 17, drawnY + 17, x, y);
 				graphics.setColour(0, 128, 0, 16);
 			}
 		}
 		
-		x = 16 + position.x() + (COMPASS_RADIUS * Math.cos(bearing()));
-		y = 16 + position.y() + (COMPASS_RADIUS * Math.sin(bearing()));
+		x = 16 + drawnX + (COMPASS_RADIUS * Math.cos(bearing()));
+		y = 16 + drawnY + (COMPASS_RADIUS * Math.sin(bearing()));
 		
-		graphics.line(position.x() + 16, position.y() + 16, x, y);
-		graphics.line(position.x() + 15, position.y() + 16, x, y);
-		graphics.line(position.x() + 16, position.y() + 15, x, y);
-		graphics.line(position.x() + 17, position.y() + 16, x, y);
-		graphics.line(position.x() + 17, position.y() + 17, x, y);
+		graphics.line(drawnX + 16, drawnY + 16, x, y);
+		graphics.line(drawnX + 15, drawnY + 16, x, y);
+		graphics.line(drawnX + 16, drawnY + 15, x, y);
+		graphics.line(drawnX + 17, drawnY + 16, x, y);
+		graphics.line(drawnX + 17, drawnY + 17, x, y);
 		
 	}
 	
@@ -792,10 +1081,15 @@ public class Aircraft implements Serializable {
 	 */
 	public void drawWarningCircles() {
 		for (Aircraft aircraft : aircraftTooNear) {
-			Vector midPoint = position.add(aircraft.position).scaleBy(0.5);
-			double radius = position.sub(midPoint).magnitude() * 2;
+			double midX = (drawX() + aircraft.drawX()) * 0.5;
+			double midY = (drawY() + aircraft.drawY()) * 0.5;
+			double midZ = (position.z() + aircraft.position().z()) * 0.5;
+			double dx = drawX() - midX;
+			double dy = drawY() - midY;
+			double dz = position.z() - midZ;
+			double radius = Math.sqrt(dx*dx + dy*dy + dz*dz) * 2;
 			graphics.setColour(128, 0, 0);
-			graphics.circle(false, midPoint.x(), midPoint.y(), radius);
+			graphics.circle(false, midX, midY, radius);
 		}	
 	}
 
@@ -816,14 +1110,14 @@ public class Aircraft implements Serializable {
 		if (currentTarget == destination.position()) {
 			// If next waypoint is the destination,
 			// draw direct line from aircraft to destination
-			graphics.line(position.x(),
-					position.y(),
+			graphics.line(drawX(),
+					drawY(),
 					destination.position().x(),
 					destination.position().y());
 		} else {
 			// Draw line from aircraft to first waypoint
-			graphics.line(position.x(),
-					position.y(),
+			graphics.line(drawX(),
+					drawY(),
 					route[currentRouteStage].position().x(),
 					route[currentRouteStage].position().y());
 
@@ -879,146 +1173,130 @@ public class Aircraft implements Serializable {
 	 */
 	public Waypoint[] findGreedyRoute(Waypoint origin, Waypoint destination,
 			Waypoint[] waypoints) {
-		Waypoint[] allWaypoints;
-		
-		// is destination in waypoints list
-		boolean destInWaypoints = false;
-		
-		for (int i = 0; i < waypoints.length; i++) {
-			if (waypoints[i] == destination) {
-				destInWaypoints = true;
-				break;
-			}
-		}
-		
-		// if dest not in waypoint list, add it in
-		if (!destInWaypoints) {
-			int waypointCount = 0;
-			allWaypoints = new Waypoint[waypoints.length + 1];
-			
-			for (Waypoint waypoint : waypoints) {
-				allWaypoints[waypointCount] = waypoint;
-				waypointCount++;
-			}
-
-			allWaypoints[waypointCount] = destination;
-		} else {
-			allWaypoints = waypoints.clone();
-		}
-		
-		// Create an array to hold the route as we generate it
-		ArrayList<Waypoint> selectedWaypoints = new ArrayList<Waypoint>();
-		
-		// Create a waypoint which will track our position as we generate the route
-		// Initialise this to the start of the route
-		Waypoint currentPos = origin;
-
-		// Set the cost to a high value (as per using a greedy algorithm)
-		double cost = 99999999999999.0;
-		
-		// Create a waypoint which will track the closest waypoint
-		Waypoint cheapest = null;
-		
-		// Set a flag so we can tell if the route is complete
-		boolean atDestination = false;
-		
-		while (!atDestination) {
-			// For each possible waypoint
-			for (Waypoint point : allWaypoints) {
-				boolean skip = false;
-
-				for (Waypoint routePoints : selectedWaypoints) {
-					// Check we have not already selected the waypoint
-					// If we have, skip evaluating the point
-					// This protects the aircraft from getting stuck looping between points
-					if (routePoints.position().equals(point.position())) {
-						skip = true; //flag to skip
-						break; // no need to check rest of list, already found a match.
-					}
-				}
-				
-				// Do not consider the waypoint we are currently at or the origin
-				// Do not consider offscreen waypoints which are not the destination
-				// Also skip if flagged as a previously selected waypoint
-				if (skip == true
-						|| point.position().equals(currentPos.position())
-						|| point.position().equals(origin.position())
-						|| ((point.type() != Waypoint.WaypointType.AIRSPACE)
-								&& (!point.position().equals(destination.position())))) {
-					skip = false;
-					continue;
-				} else {
-					// Get the cost of visiting waypoint
-					// Compare cost this cost to the current cheapest
-					// If smaller, then this is the new cheapest waypoint
-					if (point.getCost(currentPos) + 0.5
-							* Waypoint.getCostBetween(point, destination) < cost) {
-						// Cheaper route found, so update
-						cheapest = point;
-						cost = point.getCost(currentPos) + 0.5
-								* Waypoint.getCostBetween(point, destination);
-					}
-				}
-			}
-
-			// The cheapest waypoint must have been found
-			assert cheapest != null : "The cheapest waypoint was not found";
-
-			// If the cheapest waypoint is the destination, then we have sucessfully
-			// generated a route to the aircraft's destination, so break out of loop
-			if (cheapest.position().equals(destination.position())) {
-				// route has reached destination 
-				// break out of while loop
-				atDestination = true;
-			}
-
-			// Update the selected route
-			// Consider further points in route from the position of the selected point
-			selectedWaypoints.add(cheapest);
-			currentPos = cheapest;
-			
-			// Resaturate cost for next loop
-			cost = 99999999999.0;
-		}
-		
-		// Create an array to hold the new route
-		Waypoint[] route = new Waypoint[selectedWaypoints.size()];
-		
-		// Fill route with the selected waypoints
-		for (int i = 0; i < selectedWaypoints.size(); i++) {
-			route[i] = selectedWaypoints.get(i);
-		}
-
-		return route;
+		return context().waypointGraph(waypoints).greedyRoute(origin, destination);
+	}
+	
+	/**
+	 * Creates the shortest route from an origin to a destination through an array of waypoints.
+	 * @param origin the waypoint from which to begin
+	 * @param destination the waypoint at which to end
+	 * @param waypoints the waypoints to be used
+	 * @return the shortest route between the origin and the destination
+	 */
+	public Waypoint[] findShortestRoute(Waypoint origin, Waypoint destination,
+			Waypoint[] waypoints) {
+		return context().waypointGraph(waypoints).shortestRoute(origin, destination);
+	}
+	
+	/**
+	 * Creates a route from an origin to a destination using the game's route planner.
+	 * Routes are cached, so the same array may be given to many aircraft.
+	 * @param origin the waypoint from which to begin
+	 * @param destination the waypoint at which to end
+	 * @param waypoints the waypoints to be used
+	 * @return a route between the origin and the destination
+	 */
+	public Waypoint[] findRoute(Waypoint origin, Waypoint destination,
+			Waypoint[] waypoints) {
+		SimulationContext context = context();
+		return context.waypointGraph(waypoints).cachedRoute(context.routePlanner(),
+				origin, destination);
 	}
 
 	/**
 	 * Updates the amount of aircraft which are too close, violating the separation rules,
 	 * and also checks for crashes.
+	 * <p>
+	 * Only aircraft in the grid cells around this aircraft are checked, which
+	 * gives the same result as checking the whole airspace provided the grid's
+	 * cells are at least as wide as the separation rule.
+	 * </p>
 	 * @param dt the time elapsed since the last frame.
-	 * @param aircraftList the list of aircraft to update
-	 * @return 0 if no collisions, 1 if separation violation, 2 if crash
-	 */
-	public int updateCollisions(double dt, AircraftBuffer aircraftList) {
-		aircraftTooNear.clear();
-		for (int i = 0; i < aircraftList.size(); i++) {
-			Aircraft aircraft = aircraftList.get(i);
-			if ((aircraft != this) && (isWithin(aircraft, RADIUS))) {
-				crash();
-				aircraft.crash();
-				return i;
+	 * @param grid a grid built from the aircraft in the airspace this update
+	 * @return -1 if no crash, otherwise the index of the aircraft crashed into
+	 */
+	public int updateCollisions(double dt, CollisionGrid grid) {
+		collectCollisions(grid);
+		return applyCollisions();
+	}
+	
+	/**
+	 * Finds the aircraft which are too close to this one, and whether it
+	 * crashes, without changing the state of any aircraft.
+	 * <p>
+	 * Only this aircraft's scratch space is written to, so aircraft can
+	 * collect their collisions in parallel. The results take effect when
+	 * {@link #applyCollisions()} is called.
+	 * </p>
+	 * @param grid a grid built from the aircraft in the airspace this update
+	 */
+	public void collectCollisions(CollisionGrid grid) {
+		if (pendingTooNear == null) {
+			pendingTooNear = new ArrayList<Aircraft>();
+		}
+		pendingTooNear.clear();
+		pendingCrashIndex = -1;
+		pendingCrashAircraft = null;
+		pendingWarning = false;
+		
+		if (collisionCandidates == null || collisionCandidates.length < grid.size()) {
+			collisionCandidates = new int[grid.size()];
+		}
+		// Aircraft which moved far this step may have crashed into
+		// one now further away than the separation rule
+		double reach = grid.cellSize();
+		if (grid.maxStepLength() > 0) {
+			reach = Math.max(reach, RADIUS + Math.sqrt(stepLengthSquared())
+					+ grid.maxStepLength());
+		}
+		int candidateCount = grid.neighbours(position.x(), position.y(),
+				reach, collisionCandidates);
+		for (int c = 0; c < candidateCount; c++) {
+			int i = collisionCandidates[c];
+			Aircraft aircraft = grid.get(i);
+			if ((aircraft != this) && (passedWithin(aircraft, RADIUS))) {
+				pendingCrashIndex = i;
+				pendingCrashAircraft = aircraft;
+				return;
 			} else if (aircraft != this && isWithin(aircraft, separationRule)) {
-				aircraftTooNear.add(aircraft);
+				pendingTooNear.add(aircraft);
 				if (collisionWarningSoundFlag == false){
-					collisionWarningSoundFlag = true;
-					
-					if (WARNING_SOUND != null) {
-						WARNING_SOUND.play();
-					}
-					return -1;
+					pendingWarning = true;
+					return;
 				}
 			}
 		}
+	}
+	
+	/**
+	 * Applies the results of the last {@link #collectCollisions(CollisionGrid)},
+	 * crashing this aircraft and the one it hit, or raising the collision warning.
+	 * @return -1 if no crash, otherwise the index of the aircraft crashed into
+	 */
+	public int applyCollisions() {
+		if (pendingTooNear == null) return -1;
+		
+		// Swap lists rather than copy, as this runs every frame
+		ArrayList<Aircraft> tooNear = aircraftTooNear;
+		aircraftTooNear = pendingTooNear;
+		pendingTooNear = tooNear;
+		
+		Aircraft crashedInto = pendingCrashAircraft;
+		pendingCrashAircraft = null;
+		if (crashedInto != null) {
+			crash();
+			crashedInto.crash();
+			return pendingCrashIndex;
+		}
+		
+		if (pendingWarning) {
+			collisionWarningSoundFlag = true;
+			
+			if (WARNING_SOUND != null) {
+				WARNING_SOUND.play();
+			}
+			return -1;
+		}
 		
 		if (aircraftTooNear.isEmpty()){
 			collisionWarningSoundFlag = false;
@@ -1043,6 +1321,51 @@ public class Aircraft implements Serializable {
 		double dz = aircraft.position().z() - position.z();
 		return dx*dx + dy*dy + dz*dz < distance*distance;
 	}
+	
+	/**
+	 * Checks whether another aircraft came within a distance of this one
+	 * at any time during the last step, not just at the end of it.
+	 * <p>
+	 * Both aircraft are taken to have moved in straight lines over the
+	 * step, so their separation is a straight line through time, and its
+	 * closest approach can be solved for directly. This catches aircraft
+	 * which pass through each other within one step, as fast aircraft
+	 * can when the step is long.
+	 * </p>
+	 * @param aircraft the other aircraft
+	 * @param distance the distance to check
+	 * @return true if the aircraft were within the distance during the step
+	 */
+	private boolean passedWithin(Aircraft aircraft, int distance) {
+		// Change in separation over the step. An aircraft placed
+		// elsewhere since its step is treated as having been still
+		double dx = 0, dy = 0, dz = 0;
+		if (aircraft.isAtStepEnd()) {
+			dx += aircraft.stepX;
+			dy += aircraft.stepY;
+			dz += aircraft.stepZ;
+		}
+		if (isAtStepEnd()) {
+			dx -= stepX;
+			dy -= stepY;
+			dz -= stepZ;
+		}
+		// Separation at the start of the step
+		double rx = aircraft.position.x() - position.x() - dx;
+		double ry = aircraft.position.y() - position.y() - dy;
+		double rz = aircraft.position.z() - position.z() - dz;
+		double moved = dx*dx + dy*dy + dz*dz;
+		// Fraction of the step at which the aircraft were closest,
+		// the end if neither moved relative to the other
+		double t = 1;
+		if (moved > 0) {
+			t = Math.max(0, Math.min(1, -(rx*dx + ry*dy + rz*dz) / moved));
+		}
+		rx += dx * t;
+		ry += dy * t;
+		rz += dz * t;
+		return rx*rx + ry*ry + rz*rz < distance*distance;
+	}
 
 	/**
 	 * Toggles the state of whether this aircraft is manually controlled.
@@ -1095,7 +1418,7 @@ public class Aircraft implements Serializable {
 		if (position.z() >= 30000){
 			velocity.setZ(0);
 			altitudeState = AltitudeState.LEVEL;
-			position = new Vector(position.x(), position.y(), 30000);
+			position.setZ(30000);
 		}
 	}
 
@@ -1108,7 +1431,7 @@ public class Aircraft implements Serializable {
 		if (position.z() <= 28000){
 			velocity.setZ(0);
 			altitudeState = AltitudeState.LEVEL;
-			position = new Vector(position.x(), position.y(), 28000);
+			position.setZ(28000);
 		}
 	}
 	
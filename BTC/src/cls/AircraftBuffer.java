@@ -1,122 +1,229 @@
 package cls;
 
-import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ConcurrentHashMap;
 
 public class AircraftBuffer implements Iterable<Aircraft> {
-	
+
+	/**
+	 * Provides a container of aircraft which can be shared between threads
+	 * e.g. game, networkThread, without either having to lock it.
+	 * <p>
+	 * The aircraft are held in an array which is never modified once published.
+	 * Writers copy the array, make their change, and publish the copy, so
+	 * readers always see a complete, consistent snapshot of the buffer and never
+	 * wait on a writer. Writes are far rarer than reads (the buffer is read
+	 * several times per frame, and only written when flights are added,
+	 * removed or synced), so the cost of copying on write is small.
+	 * </p>
+	 * <p>
+	 * Aircraft are also indexed by flight name, so synced changes can find
+	 * their flight without searching the buffer.
+	 * </p>
+	 */
+
+	/** Shared empty snapshot */
+	private static final Aircraft[] EMPTY = new Aircraft[0];
+
 	/**
-	 * Provides an object containing an arraylist of aircraft
-	 * So that the buffer may be monitor locked externally to the threads e.g. game, networkThread, that rely on them
+	 * The current snapshot of the aircraft.
+	 * Never modified once published - writers replace it instead.
 	 */
-	
-	
+	private volatile Aircraft[] buffer;
+
 	/**
-	 * Arraylist to hold aircraft
+	 * Lock held whilst writing, so concurrent writers don't lose each other's changes.
+	 * Readers never take it.
 	 */
-	private ArrayList<Aircraft> buffer;
-	
+	private final Object writeLock = new Object();
+
 	/**
-	 * Whether or not the buffer is locked for editing.
+	 * The aircraft in the buffer, by name. Written under the write lock,
+	 * after the snapshot is published. Aircraft without names aren't indexed.
 	 */
-	private boolean locked;
-	
+	private final ConcurrentHashMap<String, Aircraft> byName = new ConcurrentHashMap<String, Aircraft>();
+
 	/**
 	 * Constructor
 	 */
 	public AircraftBuffer(){
-		buffer = new ArrayList<Aircraft>();
-		locked = false;
+		buffer = EMPTY;
 	}
-	
+
 	/**
 	 * Gets the aircraft at the specified index.
-	 * Requires monitor lock
 	 * If an out of bounds index is accessed, returns the last element of the list instead.
 	 * @param index the index of the desired aircraft
 	 * @return the aircraft at the given index.
 	 */
-	public synchronized Aircraft get(int index){
-		lockBuffer();
-		Aircraft a;
-		if (index < buffer.size()){
-			a = buffer.get(index);
-		} else {
-			int size = buffer.size();
-			size = size - 1;
-			if (size < 0){
-				size = 0;
-			}
-			a = buffer.get(size);
+	public Aircraft get(int index){
+		Aircraft[] snapshot = buffer;
+		if (index < snapshot.length){
+			return snapshot[index];
+		}
+		if (snapshot.length == 0){
+			throw new IndexOutOfBoundsException("Index: " + index + ", Size: 0");
 		}
-		unlockBuffer();
-		return a;
+		return snapshot[snapshot.length - 1];
 	}
-	
+
 	/**
 	 * Add an aircraft to the buffer
-	 * Calling thread must obtain the monitor lock before adding to the buffer.
+	 * The change is published atomically to readers.
 	 * @param obj the aircraft to be added
 	 */
 	public void add(Aircraft obj){
-		lockBuffer();
-		buffer.add(obj);
-		unlockBuffer();
+		synchronized (writeLock) {
+			Aircraft[] snapshot = buffer;
+			Aircraft[] updated = Arrays.copyOf(snapshot, snapshot.length + 1);
+			updated[snapshot.length] = obj;
+			buffer = updated;
+			index(obj);
+		}
+	}
+
+	/**
+	 * Gets the aircraft with a flight name.
+	 * @param name the name of the flight
+	 * @return the aircraft, or null if no aircraft in the buffer has the name
+	 */
+	public Aircraft get(String name){
+		return name == null ? null : byName.get(name);
 	}
 
 	/**
-	 * Gets the current size of the arraylist
-	 * @return the size of the arraylist
+	 * Gets the current size of the buffer
+	 * @return the number of aircraft in the buffer
 	 */
 	public int size(){
-		return buffer.size();
+		return buffer.length;
 	}
 
 	/**
-	 * Removes the aircraft at the specified index from the arraylist
-	 * Calling thread must obtain monitor lock before removing the aircraft.
+	 * Removes the aircraft at the specified index from the buffer
+	 * The change is published atomically to readers.
 	 * @param index the index of the aircraft to remove
 	 */
 	public void remove(int index){
-		lockBuffer();
-		try {
-		buffer.remove(index);
-		} catch (IndexOutOfBoundsException e) {
-			e.printStackTrace();
+		synchronized (writeLock) {
+			Aircraft[] snapshot = buffer;
+			if (index < 0 || index >= snapshot.length) {
+				new IndexOutOfBoundsException("Index: " + index
+						+ ", Size: " + snapshot.length).printStackTrace();
+				return;
+			}
+			Aircraft removed = snapshot[index];
+			buffer = without(snapshot, index);
+			unindex(removed);
 		}
-		unlockBuffer();
 	}
-	
-	/**
-	 * Lock the buffer for editing
-	 */
-	public synchronized void lockBuffer(){
-		while (locked){
-    		try {
-    			wait();
-    		} catch (InterruptedException e) {
-    			e.printStackTrace();
-    		}
-    	}
-    	locked = true;
+
+	/**
+	 * Removes an aircraft from the buffer
+	 * Safer than {@link #remove(int)} when other threads may be writing,
+	 * as the aircraft's index may have changed since it was read.
+	 * @param aircraft the aircraft to remove
+	 * @return true if the aircraft was in the buffer
+	 */
+	public boolean remove(Aircraft aircraft){
+		synchronized (writeLock) {
+			Aircraft[] snapshot = buffer;
+			for (int i = 0; i < snapshot.length; i++) {
+				if (snapshot[i] == aircraft) {
+					buffer = without(snapshot, i);
+					unindex(aircraft);
+					return true;
+				}
+			}
+			return false;
+		}
 	}
-	
+
+	/**
+	 * Gets the current contents of the buffer.
+	 * <p>
+	 * The returned array is shared, and <b>must not be modified</b>. It will
+	 * not change if the buffer is written to after this call, so it can be
+	 * iterated over by index without the aircraft shifting beneath the caller.
+	 * </p>
+	 * @return a snapshot of the aircraft in the buffer
+	 */
+	public Aircraft[] snapshot(){
+		return buffer;
+	}
+
+	/**
+	 * Indexes an aircraft added to the buffer by its name.
+	 * Must be called holding the write lock.
+	 * @param aircraft the aircraft
+	 */
+	private void index(Aircraft aircraft) {
+		if (aircraft != null && aircraft.name() != null) {
+			byName.put(aircraft.name(), aircraft);
+		}
+	}
+
+	/**
+	 * Stops indexing an aircraft removed from the buffer, indexing another
+	 * with the same name in its place if there is one.
+	 * Must be called holding the write lock, after the removal is published.
+	 * @param aircraft the aircraft
+	 */
+	private void unindex(Aircraft aircraft) {
+		if (aircraft == null || aircraft.name() == null) return;
+		String name = aircraft.name();
+		if (!byName.remove(name, aircraft)) return;
+		for (Aircraft other : buffer) {
+			if (other != null && name.equals(other.name())) {
+				byName.put(name, other);
+				return;
+			}
+		}
+	}
+
 	/**
-	 * Unlock the buffer.
+	 * Copies an array, leaving out one element.
+	 * @param snapshot the array to copy
+	 * @param index the index of the element to leave out
+	 * @return the copy
 	 */
-	public synchronized void unlockBuffer(){
-		//System.out.println("unlocking airspace");
-		locked = false;
-		notifyAll();
+	private static Aircraft[] without(Aircraft[] snapshot, int index) {
+		if (snapshot.length == 1) return EMPTY;
+		Aircraft[] updated = new Aircraft[snapshot.length - 1];
+		System.arraycopy(snapshot, 0, updated, 0, index);
+		System.arraycopy(snapshot, index + 1, updated, index, snapshot.length - index - 1);
+		return updated;
 	}
 
 	@Override
 	/**
-	 * Allows for iteration over the arraylist within the buffer object.
+	 * Allows for iteration over the aircraft in the buffer.
+	 * Iterates over a snapshot taken when iteration begins, so is unaffected by
+	 * changes made to the buffer whilst iterating.
 	 */
 	public Iterator<Aircraft> iterator() {
-		Iterator<Aircraft> iprof = buffer.iterator();
-        return iprof;
+		final Aircraft[] snapshot = buffer;
+		return new Iterator<Aircraft>() {
+			private int next = 0;
+
+			@Override
+			public boolean hasNext() {
+				return next < snapshot.length;
+			}
+
+			@Override
+			public Aircraft next() {
+				if (next >= snapshot.length) throw new NoSuchElementException();
+				return snapshot[next++];
+			}
+
+			@Override
+			public void remove() {
+				throw new UnsupportedOperationException();
+			}
+		};
 	}
 
 }
@@ -70,6 +70,13 @@ public class Airport implements Serializable {
 	/** List holding the status (true being active, false being inactive)
 	 * of the runways */
 	private boolean[] runways;
+	
+	/** The context of the game the airport is in, or null for the standalone context */
+	private transient SimulationContext context;
+	
+	/** The random used to choose where aircraft leaving the airport go,
+	 * or null to use the context's */
+	private transient Random random;
 
 	/**
 	 * Constructor for airport.
@@ -279,6 +286,33 @@ public class Airport implements Serializable {
 		return aircraftLeaving;
 	}
 
+	/**
+	 * Sets the context of the game the airport is in, from which aircraft
+	 * leaving the airport are given their exit and route.
+	 * @param context the game's context
+	 */
+	public void setContext(SimulationContext context) {
+		this.context = context;
+	}
+	
+	/**
+	 * Sets the random used to choose where aircraft leaving the airport go.
+	 * Each airport in a game has its own, so that games played with the same
+	 * seed send aircraft the same way whichever airport is updated first.
+	 * @param random the random to use
+	 */
+	public void setRandom(Random random) {
+		this.random = random;
+	}
+	
+	/**
+	 * @return the context of the game the airport is in,
+	 * 			or the standalone context if it is not in a game
+	 */
+	private SimulationContext context() {
+		return context != null ? context : SimulationContext.standalone();
+	}
+
 	/**
 	 * Gets the first waypoint to pass through to reach the airport.
 	 * 
@@ -345,6 +379,21 @@ public class Airport implements Serializable {
 		removeLeavingAircraft();
 	}
 	
+	/**
+	 * Checks whether an aircraft is still in the waiting loop,
+	 * flying between the entry points rather than landing.
+	 * @param airc the aircraft to check
+	 * @return true if the aircraft's current target is an entry point
+	 */
+	public boolean isLooping(Aircraft airc) {
+		for (Waypoint entryPoint : entryPoints) {
+			if (airc.getCurrentTarget().equals(entryPoint.position())) {
+				return true;
+			}
+		}
+		return false;
+	}
+
 	/**
 	 * Updates an aircraft which is waiting.
 	 * <p>
@@ -410,9 +459,9 @@ public class Airport implements Serializable {
 	 * waiting point cause it to proceed to the first landing point.
 	 * Otherwise, the aircraft's current target is updated to the next waypoint
 	 * in the entry point list (and will continue to proceed around the loop
-	 * until it reaches the first landing point. Also, warning circles are draw
-	 * to ensure it is obvious to the user that aircraft can still collide in
-	 * this state.
+	 * until it reaches the first landing point. Warning circles are still
+	 * drawn in this state (see {@link #isLooping(Aircraft)}), to ensure it is
+	 * obvious to the user that aircraft can still collide.
 	 * </p>
 	 * @param airc the aircraft to update
 	 */
@@ -468,8 +517,6 @@ public class Airport implements Serializable {
 		// Check if aircraft still looping
 		// If it is, point it to the first landing point
 		for (int i = 0; i < entryPoints.length; i++) {
-			// Show warning circles
-			airc.drawWarningCircles();
 			// Loop through entry points to find where the aircraft is currently
 			if (airc.getCurrentTarget().equals(entryPoints[i].position())) {
 				if (i == 1) {
@@ -545,16 +592,19 @@ public class Airport implements Serializable {
 					// Reset aircraft to new route
 					airc.clearAirport();
 
-					int d = (new Random()).nextInt(Game.flightEntryPoints.length);
+					SimulationContext context = context();
+					Random exits = random != null ? random
+							: context.random(RandomStreams.Stream.AIRPORTS);
+					int d = exits.nextInt(context.flightEntryPoints().length);
 					Waypoint currentPos = new Waypoint(
 							airc.position().x(), airc.position().y(), Waypoint.WaypointType.ENTRY);
 
 					airc.setOriginName(name);
 					
 					airc.setDestinationName(Game.FLIGHT_EXIT_POINT_NAMES[d]);
-					airc.setRoute(airc.findGreedyRoute(currentPos,
-							Game.flightExitPoints[d], Game.airspaceWaypoints));
-					airc.setDestination(Game.flightExitPoints[d]);
+					airc.setRoute(airc.findRoute(currentPos,
+							context.flightExitPoints()[d], context.airspaceWaypoints()));
+					airc.setDestination(context.flightExitPoints()[d]);
 					airc.setCurrentTarget(airc.getRoute()[0].position());
 					airc.setManuallyControlled(false);
 					airc.clearCurrentRouteStage();
@@ -644,10 +694,9 @@ public class Airport implements Serializable {
 					airc.position().z()));
 		} else {
 			// Get remaining distance to the chosen landing point
-			double distCovered = (new Vector(
-					(airc.position().x() - landingPoints[0].position().x()),
-					(airc.position().y() - landingPoints[0].position().y()),
-					0)).magnitude();
+			double dx = airc.position().x() - landingPoints[0].position().x();
+			double dy = airc.position().y() - landingPoints[0].position().y();
+			double distCovered = Math.sqrt(dx*dx + dy*dy);
 
 			// Get the ratio between the total distance and the distance covered
 			// Land three-quarters of the way down the runway
@@ -656,9 +705,10 @@ public class Airport implements Serializable {
 			airc.setAltitude(Math.max(airc
 					.getCurrentTarget().z() * (1 - ratio), 0));
 			
-			airc.setVelocity(airc.getVelocity().normalise().scaleBy(
+			// Rescaled in place, as this runs every frame whilst landing
+			airc.getVelocity().normaliseInPlace().scaleByInPlace(
 					aircraftSpeed + (Math.pow(1 - ratio, 4)
-							* (airc.initialSpeed() - aircraftSpeed))));
+							* (airc.initialSpeed() - aircraftSpeed)));
 		}
 	}
 	
@@ -701,12 +751,10 @@ public class Airport implements Serializable {
 			airc.setAltitude(30000);
 		} else {
 			// Get remaining distance to the end of the runway
-			double distCovered = (new Vector(
-					(airc.position().x() - takeoffPoints[takeoffPoints.length - 2]
-							.position().x()),
-							(airc.position().y() - takeoffPoints[takeoffPoints.length - 2]
-									.position().y()),
-									0)).magnitude();
+			Vector runwayEnd = takeoffPoints[takeoffPoints.length - 2].position();
+			double dx = airc.position().x() - runwayEnd.x();
+			double dy = airc.position().y() - runwayEnd.y();
+			double distCovered = Math.sqrt(dx*dx + dy*dy);
 
 			// Get the ratio between the total distance and the distance covered
 			double ratio = distCovered / takeoffDist;
@@ -715,9 +763,10 @@ public class Airport implements Serializable {
 				airc.setAltitude(Math.min(30000 * ratio, 30000));
 			}
 			
-			airc.setVelocity(airc.getVelocity().normalise().scaleBy(
+			// Rescaled in place, as this runs every frame whilst taking off
+			airc.getVelocity().normaliseInPlace().scaleByInPlace(
 					aircraftSpeed + (Math.pow(ratio, 2)
-							* (airc.initialSpeed() - aircraftSpeed))));
+							* (airc.initialSpeed() - aircraftSpeed)));
 		}
 	}
 	
@@ -0,0 +1,234 @@
+package cls;
+
+import java.util.Arrays;
+
+/**
+ * <h1>CollisionGrid</h1>
+ * <p>
+ * A uniform grid spatial index over the aircraft in the airspace.
+ * </p>
+ * <p>
+ * The grid is rebuilt once per update from the airspace's aircraft, with
+ * cells as wide as the separation rule. Any two aircraft close enough to
+ * violate separation must therefore lie in the same or adjacent cells, so an
+ * aircraft only needs to check the nine cells around it rather than every
+ * other aircraft in the airspace.
+ * </p>
+ * <p>
+ * Aircraft are referred to by their index in the list the grid was built
+ * from, so indices match those of the airspace's {@link AircraftBuffer}.
+ * </p>
+ */
+public class CollisionGrid {
+
+	/** Value marking an empty slot in the cell table, or the end of a cell's chain */
+	private static final int EMPTY = -1;
+
+	/** Snapshot of the aircraft the grid was last built from, in list order */
+	private Aircraft[] aircraft;
+
+	/** The number of aircraft in the grid */
+	private int count;
+
+	/** The width and height of each cell, in pixels */
+	private int cellSize;
+
+	/** The furthest any aircraft in the grid moved in its last step */
+	private double maxStepLength;
+
+	/** For each aircraft, the index of the next aircraft in the same cell */
+	private int[] next = new int[16];
+
+	/** The x coordinate of the cell stored in each table slot */
+	private int[] tableCellX = new int[32];
+
+	/** The y coordinate of the cell stored in each table slot */
+	private int[] tableCellY = new int[32];
+
+	/** The first aircraft in the cell stored in each table slot */
+	private int[] tableHead = new int[32];
+
+	/**
+	 * Rebuilds the grid from the aircraft currently in the airspace.
+	 * @param aircraftList the aircraft to index
+	 * @param cellSize the width of a cell - this should be at least the
+	 * 			largest distance which will be queried, i.e. the separation rule
+	 */
+	public void rebuild(AircraftBuffer aircraftList, int cellSize) {
+		this.cellSize = Math.max(cellSize, Aircraft.RADIUS);
+
+		// Snapshots are never modified, so can be held without copying
+		aircraft = aircraftList.snapshot();
+		count = aircraft.length;
+
+		if (next.length < count) {
+			next = new int[Math.max(count, next.length * 2)];
+		}
+
+		// Keep the table at most half full so probes stay short
+		int tableSize = tableHead.length;
+		while (tableSize < count * 2) {
+			tableSize *= 2;
+		}
+		if (tableSize != tableHead.length) {
+			tableCellX = new int[tableSize];
+			tableCellY = new int[tableSize];
+			tableHead = new int[tableSize];
+		}
+		Arrays.fill(tableHead, EMPTY);
+
+		// Insert in reverse so each cell's chain is in ascending index order
+		double maxStepSquared = 0;
+		for (int i = count - 1; i >= 0; i--) {
+			maxStepSquared = Math.max(maxStepSquared, aircraft[i].stepLengthSquared());
+			Vector position = aircraft[i].position();
+			int slot = findSlot(cellOf(position.x()), cellOf(position.y()));
+			next[i] = tableHead[slot];
+			tableHead[slot] = i;
+		}
+		maxStepLength = Math.sqrt(maxStepSquared);
+	}
+
+	/**
+	 * Gets the number of aircraft in the grid.
+	 * @return the number of aircraft the grid was last built from
+	 */
+	public int size() {
+		return count;
+	}
+
+	/**
+	 * Gets an aircraft in the grid.
+	 * @param index the index of the aircraft in the list the grid was built from
+	 * @return the aircraft at that index
+	 */
+	public Aircraft get(int index) {
+		return aircraft[index];
+	}
+
+	/**
+	 * Gets the width of the grid's cells.
+	 * @return the cell width in pixels
+	 */
+	public int cellSize() {
+		return cellSize;
+	}
+
+	/**
+	 * Gets the furthest any aircraft in the grid moved in its last step.
+	 * Aircraft which crashed part way through the step may be up to this
+	 * much further apart than they were.
+	 * @return the longest step, in pixels
+	 */
+	public double maxStepLength() {
+		return maxStepLength;
+	}
+
+	/**
+	 * Finds every aircraft in the cell containing a point, or in the
+	 * eight cells around it.
+	 * <p>
+	 * This includes every aircraft within {@link #cellSize()} of the point,
+	 * and possibly some further away. Indices are written to the array in
+	 * ascending order, so callers visit aircraft in the same order as a scan
+	 * of the whole list would.
+	 * </p>
+	 * @param x the x coordinate of the point
+	 * @param y the y coordinate of the point
+	 * @param out the array to write aircraft indices to, which must have
+	 * 			room for at least {@link #size()} indices
+	 * @return the number of indices written
+	 */
+	public int neighbours(double x, double y, int[] out) {
+		return neighbours(x, y, cellSize, out);
+	}
+
+	/**
+	 * Finds every aircraft in the cells within a distance of a point.
+	 * As {@link #neighbours(double, double, int[])}, but searching as many
+	 * rings of cells as needed to reach further than one cell.
+	 * @param x the x coordinate of the point
+	 * @param y the y coordinate of the point
+	 * @param reach the distance within which every aircraft must be found
+	 * @param out the array to write aircraft indices to, which must have
+	 * 			room for at least {@link #size()} indices
+	 * @return the number of indices written
+	 */
+	public int neighbours(double x, double y, double reach, int[] out) {
+		int cellX = cellOf(x);
+		int cellY = cellOf(y);
+		int rings = reach <= cellSize ? 1 : (int) Math.ceil(reach / cellSize);
+		int found = 0;
+
+		for (int dx = -rings; dx <= rings; dx++) {
+			for (int dy = -rings; dy <= rings; dy++) {
+				int slot = lookupSlot(cellX + dx, cellY + dy);
+				if (slot == EMPTY) continue;
+				for (int i = tableHead[slot]; i != EMPTY; i = next[i]) {
+					out[found++] = i;
+				}
+			}
+		}
+
+		Arrays.sort(out, 0, found);
+		return found;
+	}
+
+	/**
+	 * Gets the cell coordinate containing a position along one axis.
+	 * @param position the x or y position
+	 * @return the index of the cell along that axis
+	 */
+	private int cellOf(double position) {
+		return (int) Math.floor(position / cellSize);
+	}
+
+	/**
+	 * Hashes a cell's coordinates to its preferred slot in the table.
+	 * @param cellX the x coordinate of the cell
+	 * @param cellY the y coordinate of the cell
+	 * @return the slot to start probing from
+	 */
+	private int hash(int cellX, int cellY) {
+		return ((cellX * 73856093) ^ (cellY * 19349663)) & (tableHead.length - 1);
+	}
+
+	/**
+	 * Finds the table slot for a cell, claiming an empty slot if the
+	 * cell has not been seen yet.
+	 * @param cellX the x coordinate of the cell
+	 * @param cellY the y coordinate of the cell
+	 * @return the slot holding the cell
+	 */
+	private int findSlot(int cellX, int cellY) {
+		int slot = hash(cellX, cellY);
+		while (tableHead[slot] != EMPTY) {
+			if (tableCellX[slot] == cellX && tableCellY[slot] == cellY) {
+				return slot;
+			}
+			slot = (slot + 1) & (tableHead.length - 1);
+		}
+		tableCellX[slot] = cellX;
+		tableCellY[slot] = cellY;
+		return slot;
+	}
+
+	/**
+	 * Finds the table slot for a cell without modifying the table.
+	 * @param cellX the x coordinate of the cell
+	 * @param cellY the y coordinate of the cell
+	 * @return the slot holding the cell, or {@link #EMPTY} if the cell
+	 * 			contains no aircraft
+	 */
+	private int lookupSlot(int cellX, int cellY) {
+		int slot = hash(cellX, cellY);
+		while (tableHead[slot] != EMPTY) {
+			if (tableCellX[slot] == cellX && tableCellY[slot] == cellY) {
+				return slot;
+			}
+			slot = (slot + 1) & (tableHead.length - 1);
+		}
+		return EMPTY;
+	}
+
+}
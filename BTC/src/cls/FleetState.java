@@ -0,0 +1,304 @@
+package cls;
+
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * <h1>FleetState</h1>
+ * <p>
+ * A structure-of-arrays store of the kinematic state of every aircraft in
+ * the airspace, used to update the whole fleet's movement in one batch.
+ * </p>
+ * <p>
+ * Each update runs in three phases:
+ * <ol>
+ * <li>Each aircraft updates its route stage, and the position and velocity
+ * of those which are moving are gathered into parallel arrays.</li>
+ * <li>Positions are integrated in a single loop over the arrays. This loop
+ * has no branches or object accesses, so the JIT can unroll and vectorise it.</li>
+ * <li>Positions are written back, and each aircraft corrects its bearing.</li>
+ * </ol>
+ * </p>
+ * <p>
+ * Aircraft keep their own {@link Vector} position and velocity, which the
+ * rest of the game reads and which are sent over the network, so this is a
+ * working copy rather than the aircraft's only state. Updating the fleet
+ * gives exactly the same result as calling {@link Aircraft#update(double)}
+ * on each aircraft in turn.
+ * </p>
+ * <p>
+ * Given a {@link ForkJoinPool}, the integrate and bearing phases, the
+ * collision search, and the airports are split across the pool. Anything which
+ * touches more than one aircraft (route stages, which may hand an aircraft
+ * to an airport, and applying collisions) stays serial and in list order, so
+ * the results are the same as updating serially. Airports only touch their own
+ * aircraft, choose exits from a random of their own, and draw nothing, so
+ * they may be updated in any order.
+ * </p>
+ */
+public class FleetState {
+
+	/** The fewest aircraft worth handing to another thread */
+	private static final int PARALLEL_THRESHOLD = 64;
+
+	/** Pool shared by all parallel fleets, sized to the machine's cores */
+	private static ForkJoinPool sharedPool;
+
+	/** The pool to update on, or null to update serially */
+	private final ForkJoinPool pool;
+
+	/** The aircraft in each slot */
+	private Aircraft[] aircraft = new Aircraft[16];
+
+	/** The number of slots in use */
+	private int count;
+
+	/** The x coordinate of each aircraft */
+	private double[] x = new double[16];
+
+	/** The y coordinate of each aircraft */
+	private double[] y = new double[16];
+
+	/** The altitude of each aircraft */
+	private double[] z = new double[16];
+
+	/** The x component of each aircraft's velocity */
+	private double[] vx = new double[16];
+
+	/** The y component of each aircraft's velocity */
+	private double[] vy = new double[16];
+
+	/**
+	 * The vertical component of each aircraft's velocity, or zero
+	 * for aircraft which are not changing altitude
+	 */
+	private double[] vz = new double[16];
+
+	/**
+	 * Constructor for a fleet updated serially
+	 */
+	public FleetState() {
+		this(null);
+	}
+
+	/**
+	 * Constructor for a fleet updated in parallel
+	 * @param pool the pool to update on, or null to update serially
+	 */
+	public FleetState(ForkJoinPool pool) {
+		this.pool = pool;
+	}
+
+	/**
+	 * Gets a pool with a thread per core, shared between parallel fleets.
+	 * @return the shared pool
+	 */
+	public static synchronized ForkJoinPool sharedPool() {
+		if (sharedPool == null) {
+			sharedPool = new ForkJoinPool(Runtime.getRuntime().availableProcessors());
+		}
+		return sharedPool;
+	}
+
+	/**
+	 * Checks whether the fleet is updated in parallel.
+	 * @return true if the fleet has a pool to update on
+	 */
+	public boolean isParallel() {
+		return pool != null;
+	}
+
+	/**
+	 * Updates every aircraft in a fleet.
+	 * @param fleet the aircraft to update
+	 * @param dt the time elapsed since the last frame
+	 */
+	public void update(Aircraft[] fleet, double dt) {
+		gather(fleet);
+		if (pool != null && count >= PARALLEL_THRESHOLD * 2) {
+			pool.invoke(new Move(0, count, dt));
+		} else {
+			move(0, count, dt);
+		}
+		// Don't hold on to aircraft which may since have left the airspace
+		Arrays.fill(aircraft, 0, count, null);
+	}
+
+	/**
+	 * Finds each aircraft's collisions, in parallel if the fleet has a pool.
+	 * <p>
+	 * This only collects collisions. Each aircraft's
+	 * {@link Aircraft#applyCollisions()} must then be called in list order,
+	 * stopping at the first crash, as {@link Aircraft#updateCollisions(double, CollisionGrid)}
+	 * would have been.
+	 * </p>
+	 * @param grid a grid built from the aircraft in the airspace this update
+	 */
+	public void collectCollisions(CollisionGrid grid) {
+		if (pool != null && grid.size() >= PARALLEL_THRESHOLD * 2) {
+			pool.invoke(new Collide(grid, 0, grid.size()));
+		} else {
+			for (int i = 0; i < grid.size(); i++) {
+				grid.get(i).collectCollisions(grid);
+			}
+		}
+	}
+
+	/**
+	 * Updates airports, in parallel if the fleet has a pool.
+	 * Each airport only handles the aircraft using it, so airports can be
+	 * updated independently of each other.
+	 * @param airports the airports to update
+	 * @param dt the time elapsed since the last frame
+	 */
+	public void updateAirports(final Airport[] airports, final double dt) {
+		if (pool == null || airports.length < 2) {
+			for (Airport airport : airports) {
+				airport.update(dt);
+			}
+			return;
+		}
+		pool.invoke(new RecursiveAction() {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected void compute() {
+				RecursiveAction[] tasks = new RecursiveAction[airports.length];
+				for (int i = 0; i < airports.length; i++) {
+					final Airport airport = airports[i];
+					tasks[i] = new RecursiveAction() {
+						private static final long serialVersionUID = 1L;
+
+						@Override
+						protected void compute() {
+							airport.update(dt);
+						}
+					};
+				}
+				invokeAll(tasks);
+			}
+		});
+	}
+
+	/**
+	 * Gets the number of aircraft which moved in the last update.
+	 * @return the number of slots in use
+	 */
+	public int size() {
+		return count;
+	}
+
+	/**
+	 * Updates the route stage of each aircraft, and copies the state of those
+	 * which are moving into the arrays.
+	 * @param fleet the aircraft to update
+	 */
+	private void gather(Aircraft[] fleet) {
+		ensureCapacity(fleet.length);
+		count = 0;
+		for (Aircraft a : fleet) {
+			if (!a.updateRouteStage()) continue;
+			Vector position = a.position();
+			Vector velocity = a.getVelocity();
+			aircraft[count] = a;
+			x[count] = position.x();
+			y[count] = position.y();
+			z[count] = position.z();
+			vx[count] = velocity.x();
+			vy[count] = velocity.y();
+			vz[count] = a.isChangingAltitude() ? velocity.z() : 0;
+			count++;
+		}
+	}
+
+	/**
+	 * Moves a range of slots, then copies their positions back to the
+	 * aircraft and corrects their bearings.
+	 * @param from the first slot to move
+	 * @param to the slot after the last to move
+	 * @param dt the time elapsed since the last frame
+	 */
+	private void move(int from, int to, double dt) {
+		for (int i = from; i < to; i++) {
+			x[i] += vx[i] * dt;
+			y[i] += vy[i] * dt;
+			z[i] += vz[i] * dt;
+		}
+		for (int i = from; i < to; i++) {
+			aircraft[i].position().setTo(x[i], y[i], z[i]);
+			aircraft[i].recordStep(vx[i] * dt, vy[i] * dt, vz[i] * dt);
+			aircraft[i].updateBearing(dt);
+		}
+	}
+
+	/**
+	 * Grows the arrays if needed.
+	 * @param capacity the number of aircraft the arrays must hold
+	 */
+	private void ensureCapacity(int capacity) {
+		if (capacity <= x.length) return;
+		int size = Math.max(capacity, x.length * 2);
+		aircraft = Arrays.copyOf(aircraft, size);
+		x = new double[size];
+		y = new double[size];
+		z = new double[size];
+		vx = new double[size];
+		vy = new double[size];
+		vz = new double[size];
+	}
+
+	/**
+	 * Moves a range of slots, splitting it across the pool.
+	 */
+	private class Move extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+		private final int from, to;
+		private final double dt;
+
+		Move(int from, int to, double dt) {
+			this.from = from;
+			this.to = to;
+			this.dt = dt;
+		}
+
+		@Override
+		protected void compute() {
+			if (to - from <= PARALLEL_THRESHOLD) {
+				move(from, to, dt);
+			} else {
+				int mid = (from + to) >>> 1;
+				invokeAll(new Move(from, mid, dt), new Move(mid, to, dt));
+			}
+		}
+	}
+
+	/**
+	 * Collects collisions for a range of the grid's aircraft, splitting it
+	 * across the pool.
+	 */
+	private static class Collide extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+		private final CollisionGrid grid;
+		private final int from, to;
+
+		Collide(CollisionGrid grid, int from, int to) {
+			this.grid = grid;
+			this.from = from;
+			this.to = to;
+		}
+
+		@Override
+		protected void compute() {
+			if (to - from <= PARALLEL_THRESHOLD) {
+				for (int i = from; i < to; i++) {
+					grid.get(i).collectCollisions(grid);
+				}
+			} else {
+				int mid = (from + to) >>> 1;
+				invokeAll(new Collide(grid, from, mid), new Collide(grid, mid, to));
+			}
+		}
+	}
+
+}
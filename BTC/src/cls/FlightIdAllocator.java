@@ -0,0 +1,137 @@
+package cls;
+
+import java.util.BitSet;
+import java.util.Random;
+
+/**
+ * <h1>FlightIdAllocator</h1>
+ * <p>
+ * Hands out the numeric ids flights are named by, and takes them back
+ * once the flights leave the airspace so that they can be used again.
+ * </p>
+ * <p>
+ * Free ids are kept in a queue, so both handing out and taking back an
+ * id take the same time however many flights there are. The ids from
+ * {@link #FIRST_ID} to {@link #LAST_ID} are queued in a random order to
+ * begin with, and ids taken back join the end of the queue, so an id is
+ * not used again until every other free id has been. Only once all of
+ * them are in use are larger ids handed out, rather than none at all.
+ * </p>
+ * <p>
+ * An allocator may be shared by games running at the same time, as no
+ * id is handed out twice before it is taken back.
+ * </p>
+ */
+public class FlightIdAllocator {
+
+	/** The first id in the usual range, giving three digit names */
+	public static final int FIRST_ID = 100;
+
+	/** The last id in the usual range */
+	public static final int LAST_ID = 999;
+
+	/** The prefix before the id in a flight's name */
+	private static final String NAME_PREFIX = "Flight ";
+
+	/** The free ids, as a circular queue */
+	private int[] free;
+
+	/** The index of the next free id to hand out */
+	private int head;
+
+	/** The number of free ids in the queue */
+	private int freeCount;
+
+	/** The next id to hand out once the queue is empty */
+	private int nextOverflowId = LAST_ID + 1;
+
+	/** Which ids are in use */
+	private final BitSet inUse = new BitSet();
+
+	/**
+	 * Constructor for an allocator with the ids in a random order
+	 */
+	public FlightIdAllocator() {
+		this(new Random());
+	}
+
+	/**
+	 * Constructor for an allocator with the ids in an order decided by the given random
+	 * @param random the random used to shuffle the ids
+	 */
+	public FlightIdAllocator(Random random) {
+		free = new int[LAST_ID - FIRST_ID + 1];
+		for (int i = 0; i < free.length; i++) {
+			free[i] = FIRST_ID + i;
+		}
+		for (int i = free.length - 1; i > 0; i--) {
+			int j = random.nextInt(i + 1);
+			int id = free[i];
+			free[i] = free[j];
+			free[j] = id;
+		}
+		freeCount = free.length;
+	}
+
+	/**
+	 * Hands out an id which is not in use.
+	 * @return the id, from {@link #FIRST_ID} to {@link #LAST_ID} unless all of those are in use
+	 */
+	public synchronized int allocate() {
+		int id;
+		if (freeCount > 0) {
+			id = free[head];
+			head = (head + 1) % free.length;
+			freeCount--;
+		} else {
+			id = nextOverflowId++;
+		}
+		inUse.set(id);
+		return id;
+	}
+
+	/**
+	 * Takes back an id so that it can be handed out again.
+	 * Ids which are not in use are ignored.
+	 * @param id the id to take back
+	 */
+	public synchronized void release(int id) {
+		if (id < 0 || !inUse.get(id)) return;
+		inUse.clear(id);
+		if (freeCount == free.length) {
+			int[] grown = new int[free.length * 2];
+			for (int i = 0; i < freeCount; i++) {
+				grown[i] = free[(head + i) % free.length];
+			}
+			free = grown;
+			head = 0;
+		}
+		free[(head + freeCount) % free.length] = id;
+		freeCount++;
+	}
+
+	/**
+	 * @param id the id to check
+	 * @return true if the id has been handed out and not taken back
+	 */
+	public synchronized boolean isInUse(int id) {
+		return id >= 0 && inUse.get(id);
+	}
+
+	/**
+	 * @return the number of ids in use
+	 */
+	public synchronized int inUseCount() {
+		return inUse.cardinality();
+	}
+
+	/**
+	 * Gets the name shown for a flight with the given id.
+	 * @param id the flight's id
+	 * @return the flight's name
+	 */
+	public static String name(int id) {
+		return NAME_PREFIX + id;
+	}
+
+}
@@ -0,0 +1,106 @@
+package cls;
+
+import java.util.Random;
+
+/**
+ * <h1>RandomStreams</h1>
+ * <p>
+ * The random numbers for one game, all made from a single seed so that a
+ * game can be played again exactly by starting it with the same seed.
+ * </p>
+ * <p>
+ * The numbers are split into a separate stream for each part of the game
+ * which uses them, with its own seed made from the game's seed. So adding
+ * or removing random calls in one part does not change the numbers any
+ * other part gets. Each stream is made once, rather than on every call.
+ * </p>
+ */
+public class RandomStreams {
+
+	/** The parts of the game which use random numbers */
+	public enum Stream {
+		/** Where new flights come from and go to, and how fast they fly */
+		FLIGHTS,
+		/** Where new flights are placed around their entry point */
+		SPAWNS,
+		/** Where flights leaving an airport go, split so each airport has its own */
+		AIRPORTS,
+		/** New routes given to flights in a multiplayer game */
+		ROUTES,
+	}
+
+	/** Added to the seed for each stream, to spread the streams' seeds apart */
+	private static final long GOLDEN_GAMMA = 0x9E3779B97F4A7C15L;
+
+	/** The seed the streams are made from */
+	private final long seed;
+
+	/** The random for each stream, by ordinal */
+	private final Random[] streams;
+
+	/**
+	 * Constructor for the random numbers of a game
+	 * @param seed the seed the streams are made from
+	 */
+	public RandomStreams(long seed) {
+		this.seed = seed;
+		Stream[] values = Stream.values();
+		streams = new Random[values.length];
+		for (Stream stream : values) {
+			streams[stream.ordinal()] = new Random(split(seed, stream.ordinal() + 1));
+		}
+	}
+
+	/**
+	 * @return the seed the streams are made from
+	 */
+	public long seed() {
+		return seed;
+	}
+
+	/**
+	 * Gets the random numbers for a part of the game.
+	 * The same random is returned each time, carrying on where it left off.
+	 * @param stream the part of the game
+	 * @return the random for that part
+	 */
+	public Random get(Stream stream) {
+		return streams[stream.ordinal()];
+	}
+
+	/**
+	 * Makes a random of its own for one of several users of a stream, such
+	 * as each airport, so that one using more numbers does not change the
+	 * numbers another gets. A new random is made on every call, so each user
+	 * should keep the one it is given.
+	 * @param stream the part of the game
+	 * @param index which user of the stream the random is for
+	 * @return the random for that user
+	 */
+	public Random split(Stream stream, int index) {
+		return new Random(split(split(seed, stream.ordinal() + 1), index + 1));
+	}
+
+	/**
+	 * Makes a new seed from a seed and a key, such that nearby seeds or keys
+	 * give unrelated seeds.
+	 * @param seed the seed to split
+	 * @param key which of the seed's splits to make
+	 * @return the new seed
+	 */
+	public static long split(long seed, long key) {
+		long z = seed + key * GOLDEN_GAMMA;
+		z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+		z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+		return z ^ (z >>> 31);
+	}
+
+	/**
+	 * Makes a seed for a game which is not being replayed.
+	 * @return a seed which differs from call to call
+	 */
+	public static long newSeed() {
+		return split(System.nanoTime(), Thread.currentThread().getId());
+	}
+
+}
@@ -0,0 +1,343 @@
+package cls;
+
+import java.util.Random;
+
+import btc.Main;
+import scn.Game;
+
+/**
+ * <h1>SimulationContext</h1>
+ * <p>
+ * Everything one game's simulation needs which used to be shared by every
+ * game: its difficulty, its airspace's waypoints and airports, the ids its
+ * flights are named by, and its random numbers.
+ * </p>
+ * <p>
+ * Each game has its own context, so games can run side by side in one
+ * process without changing each other's airspace or settings. Aircraft and
+ * airports hold the context of the game they belong to, and read their
+ * settings from it rather than from the game.
+ * </p>
+ * <p>
+ * Aircraft made outside of any game, such as in tests and benchmarks, share
+ * the {@link #standalone()} context.
+ * </p>
+ */
+public class SimulationContext {
+
+	/** The context shared by aircraft made outside of a game, made when first needed */
+	private static SimulationContext standalone;
+
+	/** The difficulty the game is played at */
+	private final int difficulty;
+
+	/** The waypoints flights enter the airspace at */
+	private final Waypoint[] flightEntryPoints;
+
+	/** The waypoints flights leave the airspace at */
+	private final Waypoint[] flightExitPoints;
+
+	/** All waypoints in the airspace, <b>including</b> the entry and exit points */
+	private final Waypoint[] airspaceWaypoints;
+
+	/** The airports in the airspace */
+	private final Airport[] airports;
+
+	/** How new routes are planned */
+	private WaypointGraph.Planner routePlanner = WaypointGraph.Planner.GREEDY;
+
+	/** The graph over the airspace's waypoints, made when first needed */
+	private WaypointGraph waypointGraph;
+
+	/** The allocator the flights' ids are taken from */
+	private FlightIdAllocator flightIds;
+
+	/** The game's random numbers */
+	private RandomStreams random;
+
+	/**
+	 * Constructor for a context with a new seed
+	 * @param difficulty the difficulty the game is played at
+	 */
+	public SimulationContext(int difficulty) {
+		this(difficulty, RandomStreams.newSeed());
+	}
+
+	/**
+	 * Constructor for a context
+	 * @param difficulty the difficulty the game is played at
+	 * @param seed the seed the game's random numbers are made from
+	 */
+	public SimulationContext(int difficulty, long seed) {
+		this.difficulty = difficulty;
+		setSeed(seed);
+
+		flightEntryPoints = new Waypoint[] {
+			new Waypoint(8, 8, Waypoint.WaypointType.ENTRY), // top left
+			new Waypoint((int) Main.width() - 40, (int) Main.height() - Game.ORDERSBOX_H - 40,
+					Waypoint.WaypointType.ENTRY), // bottom right
+		};
+		flightExitPoints = new Waypoint[] {
+			new Waypoint(8, (int) Main.height() - Game.ORDERSBOX_H - 40,
+					Waypoint.WaypointType.EXIT), // bottom left
+			new Waypoint((int) Main.width() - 40, 8, Waypoint.WaypointType.EXIT), // top right
+		};
+		airspaceWaypoints = new Waypoint[] {
+			// Airspace waypoints
+			new Waypoint(278, 75, Waypoint.WaypointType.AIRSPACE),
+			new Waypoint(973, 692, Waypoint.WaypointType.AIRSPACE),
+			new Waypoint(650, 391, Waypoint.WaypointType.AIRSPACE),
+			new Waypoint(494, 53, Waypoint.WaypointType.AIRSPACE),
+			new Waypoint(776, 743, Waypoint.WaypointType.AIRSPACE),
+			new Waypoint(1137, 69, Waypoint.WaypointType.AIRSPACE),
+			new Waypoint(66, 715, Waypoint.WaypointType.AIRSPACE),
+			new Waypoint(415, 383, Waypoint.WaypointType.AIRSPACE),
+			new Waypoint(889, 393, Waypoint.WaypointType.AIRSPACE),
+
+			//Flight entry and exit points
+			flightEntryPoints[0],
+			flightEntryPoints[1],
+			flightExitPoints[0],
+			flightExitPoints[1],
+		};
+		airports = new Airport[] { chkalovsky(), syrrilicovich() };
+		for (Airport airport : airports) {
+			airport.setContext(this);
+		}
+		seedAirports();
+	}
+
+	/**
+	 * Gives each airport a random of its own, so the exits one airport hands
+	 * out don't depend on how many aircraft another has sent on.
+	 */
+	private void seedAirports() {
+		for (int i = 0; i < airports.length; i++) {
+			airports[i].setRandom(random.split(RandomStreams.Stream.AIRPORTS, i));
+		}
+	}
+
+	/**
+	 * Gets the context shared by aircraft made outside of a game.
+	 * It is played at medium difficulty.
+	 * @return the shared context
+	 */
+	public static synchronized SimulationContext standalone() {
+		if (standalone == null) {
+			standalone = new SimulationContext(Game.DIFFICULTY_MEDIUM);
+		}
+		return standalone;
+	}
+
+	/**
+	 * Creates the airport in the top right of the airspace.
+	 * @return the airport
+	 */
+	private static Airport chkalovsky() {
+		Waypoint[] entryWaypoints = new Waypoint[] {
+				new Waypoint(821, 143, Waypoint.WaypointType.AIRPORT),
+				new Waypoint(904, 28, Waypoint.WaypointType.AIRPORT),
+				new Waypoint(1015, 97, Waypoint.WaypointType.AIRPORT),
+		};
+		String[] entryWaypointNames = new String[] { "Chkalovsky West", "Chkalovsky East" };
+		Waypoint[] landingWaypoints = new Waypoint[] {
+				new Waypoint(979, 223, Waypoint.WaypointType.AIRPORT),
+				new Waypoint(1097, 590, Waypoint.WaypointType.AIRPORT),
+				new Waypoint(1158, 787, Waypoint.WaypointType.AIRPORT),
+				new Waypoint(1188, 778, Waypoint.WaypointType.AIRPORT),
+				new Waypoint(1201, 757, Waypoint.WaypointType.AIRPORT),
+				new Waypoint(1202, 727, Waypoint.WaypointType.AIRPORT),
+				new Waypoint(1184, 664, Waypoint.WaypointType.AIRPORT),
+				new Waypoint(1093, 388, Waypoint.WaypointType.AIRPORT),
+				new Waypoint(1089, 363, Waypoint.WaypointType.AIRPORT),
+				new Waypoint(1146, 340, Waypoint.WaypointType.AIRPORT),
+		};
+		Waypoint[] parkingWaypoints = new Waypoint[] {
+				new Waypoint(1160, 311, Waypoint.WaypointType.AIRPORT),
+				new Waypoint(1183, 340, Waypoint.WaypointType.AIRPORT),
+				new Waypoint(1194, 374, Waypoint.WaypointType.AIRPORT),
+				new Waypoint(1182, 412, Waypoint.WaypointType.AIRPORT),
+		};
+		Waypoint[] takeoffWaypoints = new Waypoint[] {
+				new Waypoint(1145, 342, Waypoint.WaypointType.AIRPORT),
+				new Waypoint(1085, 364, Waypoint.WaypointType.AIRPORT),
+				new Waypoint(1150, 581, Waypoint.WaypointType.AIRPORT),
+				new Waypoint(1144, 597, Waypoint.WaypointType.AIRPORT),
+				new Waypoint(1129, 612, Waypoint.WaypointType.AIRPORT),
+				new Waypoint(1109, 624, Waypoint.WaypointType.AIRPORT),
+				new Waypoint(1074, 633, Waypoint.WaypointType.AIRPORT),
+				new Waypoint(936, 193, Waypoint.WaypointType.AIRPORT),
+		};
+		return new Airport("Chkalovsky Airport", 4,
+				entryWaypointNames,
+				entryWaypoints,
+				landingWaypoints,
+				parkingWaypoints,
+				takeoffWaypoints);
+	}
+
+	/**
+	 * Creates the airport in the bottom left of the airspace.
+	 * @return the airport
+	 */
+	private static Airport syrrilicovich() {
+		Waypoint[] entryWaypoints = new Waypoint[] {
+				new Waypoint(385, 653, Waypoint.WaypointType.AIRPORT),
+				new Waypoint(337, 781, Waypoint.WaypointType.AIRPORT),
+				new Waypoint(184, 689, Waypoint.WaypointType.AIRPORT),
+		};
+		String[] entryWaypointNames = new String[] { "Syrrilicovich West", "Syrrilicovich East" };
+		Waypoint[] landingWaypoints = new Waypoint[] {
+				new Waypoint(259, 584, Waypoint.WaypointType.AIRPORT),
+				new Waypoint(137, 210, Waypoint.WaypointType.AIRPORT),
+				new Waypoint(73, 20, Waypoint.WaypointType.AIRPORT),
+				new Waypoint(49, 26, Waypoint.WaypointType.AIRPORT),
+				new Waypoint(36, 43, Waypoint.WaypointType.AIRPORT),
+				new Waypoint(31, 65, Waypoint.WaypointType.AIRPORT),
+				new Waypoint(58, 151, Waypoint.WaypointType.AIRPORT),
+				new Waypoint(144, 419, Waypoint.WaypointType.AIRPORT),
+				new Waypoint(152, 444, Waypoint.WaypointType.AIRPORT),
+				new Waypoint(94, 462, Waypoint.WaypointType.AIRPORT)
+		};
+		Waypoint[] parkingWaypoints = new Waypoint[] {
+				new Waypoint(78, 497, Waypoint.WaypointType.AIRPORT),
+				new Waypoint(53, 464, Waypoint.WaypointType.AIRPORT),
+				new Waypoint(39, 424, Waypoint.WaypointType.AIRPORT),
+				new Waypoint(54, 389, Waypoint.WaypointType.AIRPORT),
+		};
+		Waypoint[] takeoffWaypoints = new Waypoint[] {
+				new Waypoint(94, 462, Waypoint.WaypointType.AIRPORT),
+				new Waypoint(147, 442, Waypoint.WaypointType.AIRPORT),
+				new Waypoint(84, 228, Waypoint.WaypointType.AIRPORT),
+				new Waypoint(95, 207, Waypoint.WaypointType.AIRPORT),
+				new Waypoint(104, 194, Waypoint.WaypointType.AIRPORT),
+				new Waypoint(125, 183, Waypoint.WaypointType.AIRPORT),
+				new Waypoint(161, 174, Waypoint.WaypointType.AIRPORT),
+				new Waypoint(300, 613, Waypoint.WaypointType.AIRPORT),
+		};
+		return new Airport("Syrrilicovich Airport", 4,
+				entryWaypointNames,
+				entryWaypoints,
+				landingWaypoints,
+				parkingWaypoints,
+				takeoffWaypoints);
+	}
+
+	/**
+	 * @return the difficulty the game is played at
+	 */
+	public int difficulty() {
+		return difficulty;
+	}
+
+	/**
+	 * Gets how far away another aircraft has to be to not cause a separation
+	 * violation at the game's difficulty.
+	 * @return the separation distance
+	 */
+	public int separationRule() {
+		switch (difficulty) {
+			case Game.DIFFICULTY_MEDIUM:
+				return 96;
+			case Game.DIFFICULTY_HARD:
+				return 128;
+			default:
+				return 64;
+		}
+	}
+
+	/**
+	 * @return the waypoints flights enter the airspace at
+	 */
+	public Waypoint[] flightEntryPoints() {
+		return flightEntryPoints;
+	}
+
+	/**
+	 * @return the waypoints flights leave the airspace at
+	 */
+	public Waypoint[] flightExitPoints() {
+		return flightExitPoints;
+	}
+
+	/**
+	 * @return all waypoints in the airspace, <b>including</b> the entry and exit points
+	 */
+	public Waypoint[] airspaceWaypoints() {
+		return airspaceWaypoints;
+	}
+
+	/**
+	 * @return the airports in the airspace
+	 */
+	public Airport[] airports() {
+		return airports;
+	}
+
+	/**
+	 * @return how new routes are planned
+	 */
+	public WaypointGraph.Planner routePlanner() {
+		return routePlanner;
+	}
+
+	/**
+	 * Sets how new routes are planned.
+	 * @param routePlanner the planner to use
+	 */
+	public void setRoutePlanner(WaypointGraph.Planner routePlanner) {
+		this.routePlanner = routePlanner;
+	}
+
+	/**
+	 * Gets the graph routes are planned on for a set of waypoints.
+	 * The game's own airspace has a graph of its own, so games don't
+	 * discard each other's routes.
+	 * @param waypoints the waypoints routes may pass through
+	 * @return a graph over the waypoints
+	 */
+	public synchronized WaypointGraph waypointGraph(Waypoint[] waypoints) {
+		if (waypoints != airspaceWaypoints) return WaypointGraph.of(waypoints);
+		if (waypointGraph == null) {
+			waypointGraph = new WaypointGraph(airspaceWaypoints);
+		}
+		return waypointGraph;
+	}
+
+	/**
+	 * @return the allocator the flights' ids are taken from
+	 */
+	public synchronized FlightIdAllocator flightIds() {
+		return flightIds;
+	}
+
+	/**
+	 * Sets the seed the game's random numbers, and the order flight ids are
+	 * handed out in, are made from.
+	 * Must be called before any flights are created to take effect.
+	 * @param seed the seed to play the game with
+	 */
+	public synchronized void setSeed(long seed) {
+		random = new RandomStreams(seed);
+		flightIds = new FlightIdAllocator(new Random(RandomStreams.split(seed, 0)));
+		// Not yet made when called from the constructor, which seeds them itself
+		if (airports != null) seedAirports();
+	}
+
+	/**
+	 * @return the seed the game's random numbers are made from
+	 */
+	public synchronized long seed() {
+		return random.seed();
+	}
+
+	/**
+	 * Gets the game's random numbers for a part of the game.
+	 * @param stream the part of the game
+	 * @return the random for that part
+	 */
+	public synchronized Random random(RandomStreams.Stream stream) {
+		return random.get(stream);
+	}
+
+}
@@ -133,6 +133,73 @@ public class Vector implements Serializable {
 		this.z = z;
 	}
 	
+	/**
+	 * Sets all three components of the vector
+	 * @param x the x value to be set
+	 * @param y the y value to be set
+	 * @param z the z value to be set
+	 * @return this vector
+	 */
+	public Vector setTo(double x, double y, double z) {
+		this.x = x;
+		this.y = y;
+		this.z = z;
+		return this;
+	}
+
+	/*
+	 * The in-place operations below modify this vector rather than creating
+	 * a new one, so can be used in per-frame code without allocating.
+	 * Only use them on vectors which are not shared, e.g. an aircraft's own
+	 * position or velocity, never a waypoint's position.
+	 */
+
+	/**
+	 * Adds a vector to this vector, in place
+	 * @param v a vector to be added
+	 * @return this vector
+	 */
+	public Vector addInPlace(Vector v) {
+		x += v.x;
+		y += v.y;
+		z += v.z;
+		return this;
+	}
+
+	/**
+	 * Adds a scaled vector to this vector, in place.
+	 * Equivalent to <code>add(v.scaleBy(n))</code>
+	 * @param v a vector to be scaled and added
+	 * @param n the scalar to scale v by
+	 * @return this vector
+	 */
+	public Vector addScaledInPlace(Vector v, double n) {
+		x += v.x * n;
+		y += v.y * n;
+		z += v.z * n;
+		return this;
+	}
+
+	/**
+	 * Scales this vector by a given scalar, in place
+	 * @param n the scalar to scale by
+	 * @return this vector
+	 */
+	public Vector scaleByInPlace(double n) {
+		x *= n;
+		y *= n;
+		z *= n;
+		return this;
+	}
+
+	/**
+	 * Normalises this vector, in place
+	 * @return this vector
+	 */
+	public Vector normaliseInPlace() {
+		return scaleByInPlace(1/magnitude());
+	}
+
 	/**
 	 * Maps between a position on the target screen and the actual screen
 	 */
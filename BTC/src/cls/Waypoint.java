@@ -53,6 +53,17 @@ public class Waypoint implements Serializable {
 		}
 	}
 	
+	/**
+	 * Constructor for waypoints already placed on screen, which are
+	 * not scaled whatever their type
+	 * @param position the position of the waypoint
+	 * @param type the type of the waypoint
+	 */
+	public Waypoint(Vector position, WaypointType type) {
+		this.position = position;
+		this.type = type;
+	}
+	
 	/**
 	 * Gets the waypoint position
 	 * @return the position of the waypoint.
@@ -0,0 +1,541 @@
+package cls;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * <h1>WaypointGraph</h1>
+ * <p>
+ * A route planner over a fixed set of waypoints, with the cost of travelling
+ * between every pair of waypoints worked out once when the graph is built.
+ * </p>
+ * <p>
+ * Two planners are provided:
+ * <ul>
+ * <li>{@link #greedyRoute(Waypoint, Waypoint)} repeatedly flies to the
+ * unvisited waypoint which minimises the distance to it plus half its distance
+ * to the destination. This gives exactly the same routes as the original
+ * greedy search, but looks costs up rather than working them out.</li>
+ * <li>{@link #shortestRoute(Waypoint, Waypoint)} finds the shortest route by
+ * A* search, where each waypoint leads on to its nearest few neighbours.</li>
+ * </ul>
+ * </p>
+ * <p>
+ * Graphs are immutable once built, so can be shared between threads.
+ * Use {@link #of(Waypoint[])} to get the graph for a set of waypoints,
+ * which is only built the first time it is needed.
+ * </p>
+ * <p>
+ * Flights mostly travel between the same few entry points, exit points and
+ * airports, so each graph keeps the routes it has planned most recently,
+ * which {@link #cachedRoute(Planner, Waypoint, Waypoint)} hands out again.
+ * A new graph, with an empty cache, is built whenever the set of waypoints
+ * changes, or after {@link #invalidate()}.
+ * </p>
+ */
+public class WaypointGraph {
+
+	/** The ways routes can be planned */
+	public enum Planner {
+		/** The original greedy search, {@link WaypointGraph#greedyRoute} */
+		GREEDY,
+		/** A* search for the shortest route, {@link WaypointGraph#shortestRoute} */
+		SHORTEST,
+	}
+
+	/** The number of nearest neighbours each waypoint leads on to when
+	 * finding the shortest route */
+	public static final int NEIGHBOURS = 3;
+
+	/** Cost to beat when choosing the first waypoint of a greedy route */
+	private static final double FIRST_COST_LIMIT = 99999999999999.0;
+
+	/** Cost to beat when choosing each later waypoint of a greedy route */
+	private static final double COST_LIMIT = 99999999999.0;
+
+	/** The most routes each graph keeps for reuse */
+	public static final int ROUTE_CACHE_SIZE = 64;
+
+	/** The most recently used graph */
+	private static WaypointGraph cached;
+
+	/** The waypoints in the graph, in the order given */
+	private final Waypoint[] waypoints;
+
+	/** The cost of travelling between each pair of waypoints */
+	private final double[][] costs;
+
+	/**
+	 * For each waypoint, the index of the first waypoint with an equal
+	 * position, so equal positions can be compared as indices
+	 */
+	private final int[] positionIds;
+
+	/** For each waypoint, the indices of the airspace waypoints at other
+	 * positions, nearest first */
+	private final int[][] nearest;
+
+	/** The routes most recently planned, least recently used first */
+	private final LinkedHashMap<RouteKey, Waypoint[]> routes =
+			new LinkedHashMap<RouteKey, Waypoint[]>(16, 0.75f, true) {
+		private static final long serialVersionUID = 1L;
+
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<RouteKey, Waypoint[]> eldest) {
+			return size() > ROUTE_CACHE_SIZE;
+		}
+	};
+
+	/**
+	 * <h1>RouteKey</h1>
+	 * <p>
+	 * Identifies a planned route by the planner, the origin's position (the
+	 * only part of the origin planning uses), and the destination.
+	 * </p>
+	 */
+	private static final class RouteKey {
+		private final Planner planner;
+		private final double x, y, z;
+		private final Waypoint destination;
+
+		RouteKey(Planner planner, Waypoint origin, Waypoint destination) {
+			this.planner = planner;
+			this.x = origin.position().x();
+			this.y = origin.position().y();
+			this.z = origin.position().z();
+			this.destination = destination;
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			if (!(o instanceof RouteKey)) return false;
+			RouteKey key = (RouteKey) o;
+			return planner == key.planner && destination == key.destination
+					&& x == key.x && y == key.y && z == key.z;
+		}
+
+		@Override
+		public int hashCode() {
+			int hash = planner.hashCode();
+			hash = 31 * hash + Double.valueOf(x).hashCode();
+			hash = 31 * hash + Double.valueOf(y).hashCode();
+			hash = 31 * hash + Double.valueOf(z).hashCode();
+			return 31 * hash + System.identityHashCode(destination);
+		}
+	}
+
+	/**
+	 * Constructor for a graph
+	 * @param waypoints the waypoints routes may pass through
+	 */
+	public WaypointGraph(Waypoint[] waypoints) {
+		this.waypoints = waypoints.clone();
+		int count = this.waypoints.length;
+
+		costs = new double[count][count];
+		positionIds = new int[count];
+		for (int i = 0; i < count; i++) {
+			positionIds[i] = i;
+			for (int j = 0; j < count; j++) {
+				costs[i][j] = this.waypoints[i].getCost(this.waypoints[j]);
+				if (j < i && positionIds[i] == i && samePosition(this.waypoints[i], this.waypoints[j])) {
+					positionIds[i] = positionIds[j];
+				}
+			}
+		}
+
+		nearest = new int[count][];
+		for (int i = 0; i < count; i++) {
+			nearest[i] = nearestAirspace(i);
+		}
+	}
+
+	/**
+	 * Gets the graph for a set of waypoints, building it if it was not
+	 * the last one used.
+	 * @param waypoints the waypoints routes may pass through
+	 * @return a graph over the waypoints
+	 */
+	public static synchronized WaypointGraph of(Waypoint[] waypoints) {
+		if (cached == null || !cached.isOver(waypoints)) {
+			cached = new WaypointGraph(waypoints);
+		}
+		return cached;
+	}
+
+	/**
+	 * Discards the most recently used graph, and with it any cached routes.
+	 * Must be called if a waypoint in use is moved.
+	 */
+	public static synchronized void invalidate() {
+		cached = null;
+	}
+
+	/**
+	 * Checks whether the graph was built from a set of waypoints.
+	 * @param waypoints the waypoints to check
+	 * @return true if the graph holds exactly those waypoints, in that order
+	 */
+	public boolean isOver(Waypoint[] waypoints) {
+		if (waypoints.length != this.waypoints.length) return false;
+		for (int i = 0; i < waypoints.length; i++) {
+			if (waypoints[i] != this.waypoints[i]) return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Checks whether a waypoint is in the graph.
+	 * @param waypoint the waypoint to check
+	 * @return true if the waypoint is one of the graph's waypoints
+	 */
+	public boolean contains(Waypoint waypoint) {
+		return indexOf(waypoint) != -1;
+	}
+
+	/**
+	 * Plans a route using the given planner.
+	 * @param planner the planner to use
+	 * @param origin the waypoint from which to begin
+	 * @param destination the waypoint at which to end
+	 * @return the waypoints to fly through, ending with the destination
+	 */
+	public Waypoint[] route(Planner planner, Waypoint origin, Waypoint destination) {
+		if (planner == Planner.SHORTEST) {
+			return shortestRoute(origin, destination);
+		}
+		return greedyRoute(origin, destination);
+	}
+
+	/**
+	 * Gets a route using the given planner, reusing the route last planned
+	 * between the same points if there is one.
+	 * <p>
+	 * Cached routes are shared, so must not be changed.
+	 * </p>
+	 * @param planner the planner to use
+	 * @param origin the waypoint from which to begin
+	 * @param destination the waypoint at which to end
+	 * @return the waypoints to fly through, ending with the destination
+	 */
+	public Waypoint[] cachedRoute(Planner planner, Waypoint origin, Waypoint destination) {
+		RouteKey key = new RouteKey(planner, origin, destination);
+		Waypoint[] route;
+		synchronized (routes) {
+			route = routes.get(key);
+		}
+		if (route == null) {
+			// Planned outside the lock; if two threads race, both plan the same route
+			route = route(planner, origin, destination);
+			synchronized (routes) {
+				routes.put(key, route);
+			}
+		}
+		return route;
+	}
+
+	/**
+	 * Gets the number of routes cached.
+	 * @return the number of routes kept for reuse
+	 */
+	public int cachedRoutes() {
+		synchronized (routes) {
+			return routes.size();
+		}
+	}
+
+	/**
+	 * Plans a route by the original greedy search.
+	 * <p>
+	 * From the origin, repeatedly picks the waypoint with the lowest cost to
+	 * reach plus half its cost to the destination, skipping waypoints already
+	 * on the route, at the current position, or at the origin, and any which
+	 * are not airspace waypoints unless they are the destination. Stops once
+	 * the destination is picked, or goes straight to it once no waypoint
+	 * is left to pick.
+	 * </p>
+	 * @param origin the waypoint from which to begin
+	 * @param destination the waypoint at which to end
+	 * @return the waypoints to fly through, ending with the destination
+	 */
+	public Waypoint[] greedyRoute(Waypoint origin, Waypoint destination) {
+		// The destination is searched after the graph's waypoints
+		// if it is not one of them, as the original search did
+		int count = waypoints.length;
+		int destination_ = indexOf(destination);
+		int points = destination_ == -1 ? count + 1 : count;
+		if (destination_ == -1) destination_ = count;
+
+		// Costs and positions involving the origin and destination
+		// are worked out once up front, rather than on every step
+		double[] toDestination = new double[points];
+		boolean[] atOrigin = new boolean[points];
+		boolean[] atDestination = new boolean[points];
+		boolean[] eligible = new boolean[points];
+		int[] ids = new int[points];
+		for (int i = 0; i < points; i++) {
+			Waypoint point = waypointAt(i, destination);
+			toDestination[i] = Waypoint.getCostBetween(point, destination);
+			atOrigin[i] = samePosition(point, origin);
+			atDestination[i] = samePosition(point, destination);
+			eligible[i] = point.type() == Waypoint.WaypointType.AIRSPACE || atDestination[i];
+			ids[i] = i < count ? positionIds[i] : destinationPositionId(destination);
+		}
+
+		boolean[] visitedIds = new boolean[count + 1];
+		int[] route = new int[points];
+		int length = 0;
+
+		int current = -1;
+		double cost = FIRST_COST_LIMIT;
+		boolean arrived = false;
+
+		// Each waypoint is picked at most once, so the route never outgrows the array
+		while (!arrived) {
+			int cheapest = -1;
+			for (int i = 0; i < points; i++) {
+				if (visitedIds[ids[i]] || atOrigin[i] || !eligible[i]
+						|| (current == -1 ? atOrigin[i] : ids[i] == ids[current])) {
+					continue;
+				}
+				double pointCost = costFrom(i, current, origin, destination) + 0.5 * toDestination[i];
+				if (pointCost < cost) {
+					cheapest = i;
+					cost = pointCost;
+				}
+			}
+
+			// If no waypoint is cheap enough, such as when the waypoints all
+			// share a position, fly straight to the destination
+			if (cheapest == -1) {
+				cheapest = destination_;
+			}
+
+			if (atDestination[cheapest]) {
+				arrived = true;
+			}
+
+			route[length++] = cheapest;
+			visitedIds[ids[cheapest]] = true;
+			current = cheapest;
+			cost = COST_LIMIT;
+		}
+
+		Waypoint[] result = new Waypoint[length];
+		for (int i = 0; i < length; i++) {
+			result[i] = waypointAt(route[i], destination);
+		}
+		return result;
+	}
+
+	/**
+	 * Plans the shortest route by A* search.
+	 * <p>
+	 * Routes pass through airspace waypoints, each of which leads on to its
+	 * {@link #NEIGHBOURS} nearest airspace waypoints or the destination, if
+	 * the destination is nearer. If the destination can't be reached this
+	 * way, the greedy route is used instead.
+	 * </p>
+	 * @param origin the waypoint from which to begin
+	 * @param destination the waypoint at which to end
+	 * @return the waypoints to fly through, ending with the destination
+	 */
+	public Waypoint[] shortestRoute(Waypoint origin, Waypoint destination) {
+		int count = waypoints.length;
+		// Nodes are the graph's waypoints, then the destination, then the origin
+		int goal = count;
+		int start = count + 1;
+
+		double[] toGoal = new double[count + 2];
+		for (int i = 0; i < count; i++) {
+			toGoal[i] = Waypoint.getCostBetween(waypoints[i], destination);
+		}
+		toGoal[start] = Waypoint.getCostBetween(origin, destination);
+
+		double[] costSoFar = new double[count + 2];
+		int[] previous = new int[count + 2];
+		boolean[] closed = new boolean[count + 2];
+		Arrays.fill(costSoFar, Double.POSITIVE_INFINITY);
+		Arrays.fill(previous, -1);
+		costSoFar[start] = 0;
+
+		while (true) {
+			// Few enough waypoints that a scan beats a priority queue
+			int node = -1;
+			double best = Double.POSITIVE_INFINITY;
+			for (int i = 0; i < count + 2; i++) {
+				if (closed[i] || costSoFar[i] == Double.POSITIVE_INFINITY) continue;
+				double estimate = costSoFar[i] + (i == goal ? 0 : toGoal[i]);
+				if (estimate < best) {
+					best = estimate;
+					node = i;
+				}
+			}
+			if (node == -1) return greedyRoute(origin, destination);
+			if (node == goal) break;
+			closed[node] = true;
+
+			Waypoint from = node == start ? origin : waypoints[node];
+			int[] neighbours = node == start ? nearestAirspace(origin) : nearest[node];
+			int taken = 0;
+			boolean destinationOffered = false;
+			for (int n = 0; n <= neighbours.length && taken < NEIGHBOURS; n++) {
+				int next;
+				double step;
+				if (!destinationOffered && (n == neighbours.length
+						|| toGoal[node] <= costBetween(node, neighbours[n], from))) {
+					// The destination is nearer than the next neighbour
+					next = goal;
+					step = toGoal[node];
+					destinationOffered = true;
+					n--;
+				} else if (n < neighbours.length) {
+					next = neighbours[n];
+					step = costBetween(node, next, from);
+				} else {
+					break;
+				}
+				taken++;
+				if (costSoFar[node] + step < costSoFar[next]) {
+					costSoFar[next] = costSoFar[node] + step;
+					previous[next] = node;
+				}
+			}
+		}
+
+		int length = 0;
+		for (int node = goal; node != start; node = previous[node]) length++;
+		Waypoint[] route = new Waypoint[length];
+		for (int node = goal, i = length - 1; node != start; node = previous[node], i--) {
+			route[i] = node == goal ? destination : waypoints[node];
+		}
+		return route;
+	}
+
+	/**
+	 * Gets the cost of reaching a point of a greedy search.
+	 * @param point the index of the point
+	 * @param current the index of the current point, or -1 if at the origin
+	 * @param origin the origin of the route
+	 * @param destination the destination of the route
+	 * @return the cost of reaching the point
+	 */
+	private double costFrom(int point, int current, Waypoint origin, Waypoint destination) {
+		if (point < waypoints.length && current != -1 && current < waypoints.length) {
+			return costs[point][current];
+		}
+		Waypoint from = current == -1 ? origin : waypointAt(current, destination);
+		return waypointAt(point, destination).getCost(from);
+	}
+
+	/**
+	 * Gets the cost between a node of an A* search and one of the graph's waypoints.
+	 * @param node the index of the node, which may be the origin
+	 * @param waypoint the index of the waypoint
+	 * @param from the node's waypoint
+	 * @return the cost between them
+	 */
+	private double costBetween(int node, int waypoint, Waypoint from) {
+		return node < waypoints.length ? costs[node][waypoint] : waypoints[waypoint].getCost(from);
+	}
+
+	/**
+	 * Gets a waypoint of a search, where the index after the graph's
+	 * waypoints is the destination.
+	 * @param index the index of the waypoint
+	 * @param destination the destination of the search
+	 * @return the waypoint
+	 */
+	private Waypoint waypointAt(int index, Waypoint destination) {
+		return index < waypoints.length ? waypoints[index] : destination;
+	}
+
+	/**
+	 * Finds a waypoint in the graph.
+	 * @param waypoint the waypoint to find
+	 * @return the index of the waypoint, or -1 if it is not in the graph
+	 */
+	private int indexOf(Waypoint waypoint) {
+		for (int i = 0; i < waypoints.length; i++) {
+			if (waypoints[i] == waypoint) return i;
+		}
+		return -1;
+	}
+
+	/**
+	 * Gets the position id of a destination which isn't in the graph.
+	 * @param destination the destination
+	 * @return the id of the first waypoint at the same position, or the
+	 * 			number of waypoints if none are
+	 */
+	private int destinationPositionId(Waypoint destination) {
+		for (int i = 0; i < waypoints.length; i++) {
+			if (samePosition(waypoints[i], destination)) return positionIds[i];
+		}
+		return waypoints.length;
+	}
+
+	/**
+	 * Finds the airspace waypoints nearest to one of the graph's waypoints.
+	 * @param index the index of the waypoint
+	 * @return the indices of airspace waypoints at other positions, nearest first
+	 */
+	private int[] nearestAirspace(final int index) {
+		return sortedAirspace(waypoints[index], new Comparator<Integer>() {
+			@Override
+			public int compare(Integer a, Integer b) {
+				return Double.compare(costs[index][a], costs[index][b]);
+			}
+		});
+	}
+
+	/**
+	 * Finds the airspace waypoints nearest to a waypoint outside the graph.
+	 * @param from the waypoint
+	 * @return the indices of airspace waypoints at other positions, nearest first
+	 */
+	private int[] nearestAirspace(final Waypoint from) {
+		return sortedAirspace(from, new Comparator<Integer>() {
+			@Override
+			public int compare(Integer a, Integer b) {
+				return Double.compare(waypoints[a].getCost(from), waypoints[b].getCost(from));
+			}
+		});
+	}
+
+	/**
+	 * Sorts the airspace waypoints not at a given waypoint's position.
+	 * @param from the waypoint to exclude the position of
+	 * @param order the order to sort in
+	 * @return the indices of the waypoints, in order
+	 */
+	private int[] sortedAirspace(Waypoint from, Comparator<Integer> order) {
+		Integer[] candidates = new Integer[waypoints.length];
+		int found = 0;
+		for (int i = 0; i < waypoints.length; i++) {
+			if (waypoints[i].type() == Waypoint.WaypointType.AIRSPACE
+					&& !samePosition(waypoints[i], from)) {
+				candidates[found++] = i;
+			}
+		}
+		Arrays.sort(candidates, 0, found, order);
+		int[] sorted = new int[found];
+		for (int i = 0; i < found; i++) {
+			sorted[i] = candidates[i];
+		}
+		return sorted;
+	}
+
+	/**
+	 * Checks whether two waypoints are at the same position.
+	 * @param a a waypoint
+	 * @param b another waypoint
+	 * @return true if their positions are equal
+	 */
+	private static boolean samePosition(Waypoint a, Waypoint b) {
+		return a.position().equals(b.position());
+	}
+
+}
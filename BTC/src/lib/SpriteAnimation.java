@@ -1,5 +1,6 @@
 package lib;
 
+import lib.jog.assets;
 import lib.jog.graphics;
 import lib.jog.graphics.Image;
 import lib.jog.graphics.Quad;
@@ -88,7 +89,7 @@ public class SpriteAnimation {
 	 */
 	public SpriteAnimation(String imageFilepath, int x, int y, int fps, int frameCount,
 			int framesWide, int framesHigh, boolean looping, boolean verbose){
-		new SpriteAnimation(graphics.newImage(imageFilepath), x, y, fps, frameCount,
+		new SpriteAnimation(assets.image(imageFilepath), x, y, fps, frameCount,
 				framesWide, framesHigh, looping, verbose);
 	}
 	
@@ -0,0 +1,474 @@
+package lib.jog;
+
+import java.awt.AlphaComposite;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteOrder;
+import java.nio.ShortBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+
+import javax.imageio.ImageIO;
+
+import org.newdawn.slick.openal.Audio;
+import org.newdawn.slick.openal.OggData;
+import org.newdawn.slick.openal.OggDecoder;
+import org.newdawn.slick.openal.SoundStore;
+import org.newdawn.slick.opengl.Texture;
+import org.newdawn.slick.util.BufferedImageUtil;
+
+import lib.jog.graphics.Image;
+
+/**
+ * <h1>jog.assets</h1>
+ * <p>Loads the images and sound effects in a folder once, when the game starts, so that scenes can
+ * fetch them by path without reading files or creating textures and buffers as they start.</p>
+ * <p>Files are read and decoded in the background, and the results given to OpenGL and OpenAL
+ * a few at a time by {@link #update()}, which must be called each frame, so that the game keeps
+ * drawing while they load. {@link #progress()} tells how far loading has got.</p>
+ * <p>Small images are packed together into atlases, large textures holding many images, so that
+ * fewer textures are made and switched between. Larger images keep a texture each.</p>
+ * @see graphics.Image
+ */
+public abstract class assets {
+
+	/** The width and height of each atlas, in pixels */
+	private static final int ATLAS_SIZE = 2048;
+
+	/** The largest width or height of an image packed into an atlas, in pixels */
+	private static final int MAX_PACKED_SIZE = 512;
+
+	/** The gap left around each image in an atlas, so that neighbours don't bleed into it when scaled */
+	private static final int PADDING = 2;
+
+	/** The largest OGG file loaded as a sound effect. Larger files are music, which is streamed as it plays */
+	private static final long MAX_SOUND_EFFECT_BYTES = 128 * 1024;
+
+	/**
+	 * How long each frame may spend giving loaded files to OpenGL and OpenAL, in milliseconds.
+	 * At least one file is given each frame, however long it takes.
+	 */
+	private static final long UPLOAD_MILLIS = 4;
+
+	/** The images loaded, by path */
+	private static final Map<String, Image> images = new HashMap<String, Image>();
+
+	/** The sound effects loaded, by path */
+	private static final Map<String, Audio> sounds = new HashMap<String, Audio>();
+
+	/** Files decoded in the background, waiting for {@link #update()} to be given to OpenGL or OpenAL */
+	private static final LinkedBlockingQueue<Decoded> decoded = new LinkedBlockingQueue<Decoded>();
+
+	/** Small images decoded, waiting for the rest to be decoded before they are packed */
+	private static final List<Packed> unpacked = new ArrayList<Packed>();
+
+	/** The number of files being loaded, and how many of them have been finished */
+	private static int fileCount, finishedCount;
+
+	/** The number of images being loaded which have not yet been decoded */
+	private static int imagesDecoding;
+
+	/** The number of textures made for the images loaded */
+	private static int textureCount;
+
+	/**
+	 * Starts loading every PNG image and OGG sound effect in two folders in the background.
+	 * Files already loaded are skipped. Must be called after the window and graphics have
+	 * been initialised, and followed by calls to {@link #update()} each frame.
+	 * @param imageFolder the path of the folder of images, such as "gfx".
+	 * @param soundFolder the path of the folder of sound effects, such as "sfx".
+	 */
+	public static void loadAsync(String imageFolder, String soundFolder) {
+		ExecutorService decoders = Executors.newFixedThreadPool(
+				Math.max(1, Runtime.getRuntime().availableProcessors() - 1), new ThreadFactory() {
+			@Override
+			public Thread newThread(Runnable task) {
+				Thread thread = new Thread(task, "Asset decoder");
+				thread.setDaemon(true);
+				thread.setPriority(Thread.MIN_PRIORITY);
+				return thread;
+			}
+		});
+
+		for (final File file : files(imageFolder, ".png")) {
+			final String path = imageFolder + File.separator + file.getName();
+			if (images.containsKey(path)) continue;
+			fileCount++;
+			imagesDecoding++;
+			decoders.execute(new Runnable() {
+				@Override
+				public void run() {
+					BufferedImage pixels = null;
+					try {
+						pixels = ImageIO.read(file);
+					} catch (IOException e) {
+						e.printStackTrace();
+					}
+					decoded.add(new DecodedImage(path, pixels));
+				}
+			});
+		}
+
+		for (final File file : files(soundFolder, ".ogg")) {
+			final String path = soundFolder + File.separator + file.getName();
+			if (sounds.containsKey(path) || file.length() > MAX_SOUND_EFFECT_BYTES) continue;
+			fileCount++;
+			decoders.execute(new Runnable() {
+				@Override
+				public void run() {
+					byte[] wave = null;
+					try {
+						wave = decodeOgg(file);
+					} catch (IOException e) {
+						e.printStackTrace();
+					}
+					decoded.add(new DecodedSound(path, wave));
+				}
+			});
+		}
+
+		// The decoders finish the files given, then stop
+		decoders.shutdown();
+	}
+
+	/**
+	 * Gives decoded files to OpenGL and OpenAL, for up to {@link #UPLOAD_MILLIS} milliseconds.
+	 */
+	public static void update() {
+		long end = System.nanoTime() + UPLOAD_MILLIS * 1000000;
+		Decoded next;
+		do {
+			next = decoded.poll();
+			if (next == null) return;
+			next.upload();
+		} while (System.nanoTime() < end);
+	}
+
+	/**
+	 * Gets how far loading has got.
+	 * @return the fraction of the files being loaded which are ready, from 0 to 1.
+	 */
+	public static double progress() {
+		return fileCount == 0 ? 1 : (double)finishedCount / fileCount;
+	}
+
+	/**
+	 * Gets whether all the files being loaded are ready.
+	 * @return true if everything is loaded.
+	 */
+	public static boolean isLoaded() {
+		return finishedCount == fileCount;
+	}
+
+	/**
+	 * Gets an image, loading it now if it has not been loaded yet.
+	 * @param path the path of the image file, such as "gfx/map.png".
+	 * @return the image.
+	 */
+	public static Image image(String path) {
+		Image image = images.get(path);
+		if (image == null) {
+			image = graphics.newImage(path);
+			images.put(path, image);
+			textureCount++;
+		}
+		return image;
+	}
+
+	/**
+	 * Gets an image to be drawn at a scaled position, as {@link graphics#newImage(String, int, int, double)}
+	 * does, sharing the texture of the loaded image.
+	 * @param path the path of the image file.
+	 * @param x the x coordinate at which to draw the image.
+	 * @param y the y coordinate at which to draw the image.
+	 * @param scale the scaling factor to scale the image by.
+	 * @return the image.
+	 */
+	public static Image image(String path, int x, int y, double scale) {
+		return graphics.newImage(image(path), x, y, scale);
+	}
+
+	/**
+	 * Gets a sound effect, loading it now if it has not been loaded yet. Each sound effect
+	 * returned has its own volume, but shares its sound with the others from the same file.
+	 * @param path the path of the OGG file, such as "sfx/beep.ogg".
+	 * @return the sound effect.
+	 */
+	public static audio.Sound sound(String path) {
+		Audio sound = sounds.get(path);
+		if (sound == null) {
+			try {
+				sound = audio.newAudio(path, false);
+			} catch (IOException e) {
+				e.printStackTrace();
+			}
+			sounds.put(path, sound);
+		}
+		return audio.newSoundEffect(sound);
+	}
+
+	/**
+	 * Gets how many textures have been made for the images loaded, to see how well they have been packed.
+	 * @return the number of textures.
+	 */
+	public static int textureCount() {
+		return textureCount;
+	}
+
+	/**
+	 * Lists the files in a folder with an extension.
+	 * @param folder the path of the folder.
+	 * @param extension the extension, such as ".png".
+	 * @return the files, or none if there is no such folder.
+	 */
+	private static List<File> files(String folder, String extension) {
+		List<File> found = new ArrayList<File>();
+		File[] files = new File(folder).listFiles();
+		if (files == null) {
+			System.err.println("Could not find the folder " + folder + ".");
+			return found;
+		}
+		for (File file : files) {
+			if (file.getName().toLowerCase().endsWith(extension)) found.add(file);
+		}
+		return found;
+	}
+
+	/**
+	 * Decodes an OGG file into a WAV file held in memory, which OpenAL can be given without further decoding.
+	 * @param file the OGG file.
+	 * @return the bytes of the WAV file.
+	 */
+	private static byte[] decodeOgg(File file) throws IOException {
+		OggData ogg;
+		InputStream in = new FileInputStream(file);
+		try {
+			ogg = new OggDecoder().getData(in);
+		} finally {
+			in.close();
+		}
+
+		// The samples are 16 bit, in the machine's byte order, and WAV files are little-endian
+		ShortBuffer samples = ogg.data.duplicate().order(ByteOrder.nativeOrder()).asShortBuffer();
+		int dataSize = samples.remaining() * 2;
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream(44 + dataSize);
+		DataOutputStream wave = new DataOutputStream(bytes);
+		wave.writeBytes("RIFF");
+		wave.writeInt(Integer.reverseBytes(36 + dataSize));
+		wave.writeBytes("WAVEfmt ");
+		wave.writeInt(Integer.reverseBytes(16));
+		wave.writeShort(Short.reverseBytes((short)1));
+		wave.writeShort(Short.reverseBytes((short)ogg.channels));
+		wave.writeInt(Integer.reverseBytes(ogg.rate));
+		wave.writeInt(Integer.reverseBytes(ogg.rate * ogg.channels * 2));
+		wave.writeShort(Short.reverseBytes((short)(ogg.channels * 2)));
+		wave.writeShort(Short.reverseBytes((short)16));
+		wave.writeBytes("data");
+		wave.writeInt(Integer.reverseBytes(dataSize));
+		while (samples.hasRemaining()) {
+			wave.writeShort(Short.reverseBytes(samples.get()));
+		}
+		wave.flush();
+		return bytes.toByteArray();
+	}
+
+	/**
+	 * Packs images into as few atlases as they fit, tallest first, in rows.
+	 * @param packed the images to pack.
+	 */
+	private static void pack(List<Packed> packed) {
+		Collections.sort(packed, new Comparator<Packed>() {
+			@Override
+			public int compare(Packed a, Packed b) {
+				return b.pixels.getHeight() - a.pixels.getHeight();
+			}
+		});
+
+		List<Packed> atlas = new ArrayList<Packed>();
+		int x = 0;
+		int y = 0;
+		int rowHeight = 0;
+		for (Packed image : packed) {
+			int width = image.pixels.getWidth() + PADDING * 2;
+			int height = image.pixels.getHeight() + PADDING * 2;
+			if (x + width > ATLAS_SIZE) {
+				x = 0;
+				y += rowHeight;
+				rowHeight = 0;
+			}
+			if (y + height > ATLAS_SIZE) {
+				createAtlas(atlas);
+				atlas.clear();
+				x = 0;
+				y = 0;
+				rowHeight = 0;
+			}
+			image.x = x + PADDING;
+			image.y = y + PADDING;
+			atlas.add(image);
+			x += width;
+			rowHeight = Math.max(rowHeight, height);
+		}
+		createAtlas(atlas);
+	}
+
+	/**
+	 * Draws packed images into one texture, and adds each as a region of it.
+	 * @param atlas the images, with their places in the atlas.
+	 */
+	private static void createAtlas(List<Packed> atlas) {
+		if (atlas.isEmpty()) return;
+
+		int width = 0;
+		int height = 0;
+		for (Packed image : atlas) {
+			width = Math.max(width, image.x + image.pixels.getWidth() + PADDING);
+			height = Math.max(height, image.y + image.pixels.getHeight() + PADDING);
+		}
+		BufferedImage pixels = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+		Graphics2D canvas = pixels.createGraphics();
+		canvas.setComposite(AlphaComposite.Src);
+		for (Packed image : atlas) {
+			canvas.drawImage(image.pixels, image.x, image.y, null);
+		}
+		canvas.dispose();
+
+		Texture texture;
+		try {
+			texture = BufferedImageUtil.getTexture("atlas" + textureCount, pixels);
+		} catch (IOException e) {
+			e.printStackTrace();
+			return;
+		}
+		textureCount++;
+		for (Packed image : atlas) {
+			// Images fetched before loading finished keep their own texture
+			if (images.containsKey(image.path)) continue;
+			images.put(image.path, graphics.newImage(texture, image.x, image.y,
+					image.pixels.getWidth(), image.pixels.getHeight()));
+		}
+	}
+
+	/**
+	 * A file decoded in the background, ready to be given to OpenGL or OpenAL.
+	 */
+	private static abstract class Decoded {
+
+		/** The path of the file */
+		protected final String path;
+
+		protected Decoded(String path) {
+			this.path = path;
+		}
+
+		/**
+		 * Gives the file to OpenGL or OpenAL. Called on the main thread.
+		 */
+		protected abstract void upload();
+
+	}
+
+	/**
+	 * An image decoded in the background.
+	 */
+	private static class DecodedImage extends Decoded {
+
+		/** The image's pixels, or null if it could not be read */
+		private final BufferedImage pixels;
+
+		private DecodedImage(String path, BufferedImage pixels) {
+			super(path);
+			this.pixels = pixels;
+		}
+
+		@Override
+		protected void upload() {
+			imagesDecoding--;
+			boolean packing = false;
+			if (pixels != null && !images.containsKey(path)) {
+				if (pixels.getWidth() <= MAX_PACKED_SIZE && pixels.getHeight() <= MAX_PACKED_SIZE) {
+					unpacked.add(new Packed(path, pixels));
+					packing = true;
+				} else {
+					try {
+						// The whole texture, as graphics.newImage(path) would give
+						Texture texture = BufferedImageUtil.getTexture(path, pixels);
+						images.put(path, graphics.newImage(texture, 0, 0,
+								texture.getTextureWidth(), texture.getTextureHeight()));
+						textureCount++;
+					} catch (IOException e) {
+						e.printStackTrace();
+					}
+				}
+			}
+			if (!packing) finishedCount++;
+			// Small images are finished once packed, which waits for every image to be decoded
+			if (imagesDecoding == 0 && !unpacked.isEmpty()) {
+				pack(unpacked);
+				finishedCount += unpacked.size();
+				unpacked.clear();
+			}
+		}
+
+	}
+
+	/**
+	 * A sound effect decoded in the background.
+	 */
+	private static class DecodedSound extends Decoded {
+
+		/** The sound as a WAV file, or null if it could not be decoded */
+		private final byte[] wave;
+
+		private DecodedSound(String path, byte[] wave) {
+			super(path);
+			this.wave = wave;
+		}
+
+		@Override
+		protected void upload() {
+			if (wave != null && !sounds.containsKey(path)) {
+				try {
+					SoundStore.get().init();
+					sounds.put(path, SoundStore.get().getWAV(path, new ByteArrayInputStream(wave)));
+				} catch (IOException e) {
+					e.printStackTrace();
+				}
+			}
+			finishedCount++;
+		}
+
+	}
+
+	/**
+	 * An image read to be packed into an atlas, and its place there.
+	 */
+	private static class Packed {
+
+		private final String path;
+		private final BufferedImage pixels;
+		private int x, y;
+
+		private Packed(String path, BufferedImage pixels) {
+			this.path = path;
+			this.pixels = pixels;
+		}
+
+	}
+
+}
@@ -1,8 +1,11 @@
 package lib.jog;
 
 import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
 
 import org.lwjgl.openal.AL;
+import org.lwjgl.openal.AL10;
 import org.newdawn.slick.openal.Audio;
 import org.newdawn.slick.openal.AudioLoader;
 import org.newdawn.slick.openal.SoundStore;
@@ -128,19 +131,33 @@ public abstract class audio {
 		
 	}
 	
+	/**
+	 * <h1>jog.audio.Sound</h1>
+	 * <p>A sound effect. Sound effects share a fixed pool of voices, so that however many are
+	 * played at once, no more than {@link audio#MAX_VOICES} play, and playing one is cheap.</p>
+	 * <p>Each sound effect may limit how many of its voices play at once, and how soon after
+	 * it has started it may start again. Plays within that time are coalesced into the one
+	 * already playing. When every voice is busy, a sound effect takes the voice of the oldest
+	 * sound of lower or equal priority, or is not played.</p>
+	 */
 	public static class Sound {
 		
+		/** Priorities for sound effects, used when every voice is busy */
+		public static final int LOW_PRIORITY = 0, NORMAL_PRIORITY = 1, HIGH_PRIORITY = 2;
+		
 		private Audio _source;
 		private float _volume;
 		private float _pitch;
+		private int _priority;
+		private int _maxVoices;
+		private long _cooldown;
 		
 		/**
 		 * Constructor for a music source.
 		 * @param filepath the path to the audio file.
 		 */
 		private Sound(String filepath) {
-			_volume = 1f;
-			_pitch = 1f;
+			this((Audio)null);
 			try {
 				_source = AudioLoader.getAudio("OGG", ResourceLoader.getResourceAsStream(filepath));
 			} catch (IOException e) {
@@ -149,17 +166,45 @@ public abstract class audio {
 		}
 		
 		/**
-		 * Begins playback of the music.
+		 * Constructor for a sound effect from a sound already loaded.
+		 * @param source the sound.
+		 */
+		private Sound(Audio source) {
+			_volume = 1f;
+			_pitch = 1f;
+			_priority = NORMAL_PRIORITY;
+			_maxVoices = MAX_VOICES;
+			_cooldown = 0;
+			_source = source;
+		}
+		
+		/**
+		 * Begins playback of the sound effect, if a voice is free for it and it is not cooling down.
 		 */
 		public void play() {
-			_source.playAsSoundEffect(_pitch, _volume, false);
+			long now = System.nanoTime();
+			Long started = lastStarted.get(_source);
+			if (started != null && now - started < _cooldown) return;
+			
+			Voice voice = findVoice(_source, _priority, _maxVoices);
+			if (voice == null) return;
+			voice.stop();
+			voice.sourceID = _source.playAsSoundEffect(_pitch, _volume, false);
+			if (voice.sourceID < 0) return;
+			voice.sound = _source;
+			voice.priority = _priority;
+			voice.started = now;
+			lastStarted.put(_source, now);
 		}
 		
 		/**
 		 * Stops playback of the sound effect.
 		 */
 		public void stop() {
-			_source.stop();
+			for (Voice voice : voices) {
+				if (voice.sound == _source) voice.stop();
+			}
+			lastStarted.remove(_source);
 		}
 		
 		/**
@@ -177,6 +222,127 @@ public abstract class audio {
 		public float getVolume() {
 			return _volume;
 		}
+		
+		/**
+		 * Sets how important the sound effect is, when every voice is busy.
+		 * @param priority {@link #LOW_PRIORITY}, {@link #NORMAL_PRIORITY} or {@link #HIGH_PRIORITY}.
+		 */
+		public void setPriority(int priority) {
+			_priority = priority;
+		}
+		
+		/**
+		 * Sets the most voices the sound effect, and any others from the same file, may play at once.
+		 * @param maxVoices the number of voices, from 1 to {@link audio#MAX_VOICES}.
+		 */
+		public void setMaxVoices(int maxVoices) {
+			_maxVoices = Math.max(1, Math.min(MAX_VOICES, maxVoices));
+		}
+		
+		/**
+		 * Sets how soon after the sound effect, or any other from the same file, has started
+		 * it may start again. Playing it sooner does nothing.
+		 * @param seconds the time in seconds.
+		 */
+		public void setCooldown(double seconds) {
+			_cooldown = (long)(seconds * 1e9);
+		}
+	}
+	
+	/**
+	 * A voice a sound effect is played with, one of {@link audio#MAX_VOICES}.
+	 */
+	private static class Voice {
+		
+		/** The sound playing, or null if the voice is free */
+		private Audio sound;
+		
+		/** The OpenAL source playing the sound */
+		private int sourceID;
+		
+		private int priority;
+		
+		/** When the sound started, as {@link System#nanoTime()} */
+		private long started;
+		
+		/**
+		 * Checks whether the voice's source is still playing its sound. Once the sound
+		 * finishes, Slick may hand the source to another sound, which this voice must
+		 * then leave alone.
+		 * @return true if the source is playing and holds this voice's sound
+		 */
+		private boolean isPlaying() {
+			return sound != null
+					&& AL10.alGetSourcei(sourceID, AL10.AL_SOURCE_STATE) == AL10.AL_PLAYING
+					&& AL10.alGetSourcei(sourceID, AL10.AL_BUFFER) == sound.getBufferID();
+		}
+		
+		/**
+		 * Frees the voice, stopping its sound if it is still playing.
+		 */
+		private void stop() {
+			if (isPlaying()) AL10.alSourceStop(sourceID);
+			sound = null;
+		}
+		
+		/**
+		 * Frees the voice if its sound has finished.
+		 */
+		private void update() {
+			if (sound != null && !isPlaying()) {
+				sound = null;
+			}
+		}
+		
+	}
+	
+	/** The most sound effects played at once */
+	public static final int MAX_VOICES = 8;
+	
+	/** The voices sound effects are played with */
+	private static final Voice[] voices = new Voice[MAX_VOICES];
+	static {
+		for (int i = 0; i < voices.length; i ++) {
+			voices[i] = new Voice();
+		}
+	}
+	
+	/** When each sound last started, as {@link System#nanoTime()} */
+	private static final Map<Audio, Long> lastStarted = new HashMap<Audio, Long>();
+	
+	/**
+	 * Finds a voice to play a sound with: a free one, or the oldest of lowest priority.
+	 * @param sound the sound to be played.
+	 * @param priority the priority of the sound.
+	 * @param maxVoices the most voices the sound may play with.
+	 * @return the voice, or null if the sound may not be played now.
+	 */
+	private static Voice findVoice(Audio sound, int priority, int maxVoices) {
+		Voice free = null;
+		Voice oldestOfSound = null;
+		Voice weakest = null;
+		int playing = 0;
+		for (Voice voice : voices) {
+			// Freed now rather than next frame, so a finished voice is never counted or stolen
+			voice.update();
+			if (voice.sound == null) {
+				if (free == null) free = voice;
+				continue;
+			}
+			if (voice.sound == sound) {
+				playing++;
+				if (oldestOfSound == null || voice.started < oldestOfSound.started) oldestOfSound = voice;
+			}
+			if (weakest == null || voice.priority < weakest.priority
+					|| (voice.priority == weakest.priority && voice.started < weakest.started)) {
+				weakest = voice;
+			}
+		}
+		// The sound restarts its oldest voice, rather than taking more than its share
+		if (playing >= maxVoices) return oldestOfSound;
+		if (free != null) return free;
+		if (weakest.priority <= priority) return weakest;
+		return null;
 	}
 	
 	public static Music newMusic(String filepath, boolean stream, boolean loop) {
@@ -188,6 +354,10 @@ public abstract class audio {
 		return new Sound(filepath);
 	}
 	
+	public static Sound newSoundEffect(Audio source) {
+		return new Sound(source);
+	}
+	
 	public static Audio newAudio(String filepath, boolean stream) throws IOException {
 		if (stream) { 
 			return AudioLoader.getStreamingAudio("OGG", ResourceLoader.getResource(filepath));
@@ -198,6 +368,9 @@ public abstract class audio {
 	
 	public static void update() {
 		SoundStore.get().poll(0);
+		for (Voice voice : voices) {
+			voice.update();
+		}
 	}
 	
 	public static void dispose() {
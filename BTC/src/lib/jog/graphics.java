@@ -2,9 +2,14 @@ package lib.jog;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.FloatBuffer;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
 
 import static org.lwjgl.opengl.GL11.*;
 
+import org.lwjgl.BufferUtils;
 import org.lwjgl.opengl.GL11;
 import org.newdawn.slick.Color;
 import org.newdawn.slick.TrueTypeFont;
@@ -38,24 +43,57 @@ public abstract class graphics {
 	/**
 	 * <h1>jog.graphics.BitmapFont</h1>
 	 * <p>A font generated from an image. Each glyph is as wide as the entire image as high.</p>
+	 * <p>Text is added to the same batch as shapes, so a run of text is drawn with one
+	 * texture bind and one draw call however many strings it holds.</p>
 	 * @author IMP1
 	 */
 	private static class BitmapFont extends Font {
 		
+		/** How many strings are kept laid out, enough for the text shown each frame */
+		private static final int CACHED_STRINGS = 256;
+		
 		/**
 		 * A string containing the characters in the same order that the image has them.
 		 */
 		private String glyphs;
+		
+		/** The position of each character in the image, by character code, or -1 if it has none */
+		private int[] glyphIndices;
+		
 		private Image image;
 		
+		/** The glyphs of recently printed strings, so text printed every frame is only laid out once */
+		@SuppressWarnings("serial")
+		private final Map<String, float[]> layouts =
+				new LinkedHashMap<String, float[]>(CACHED_STRINGS, 0.75f, true) {
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<String, float[]> eldest) {
+				return size() > CACHED_STRINGS;
+			}
+		};
+		
 		/**
 		 * Constructor for a bitmap font.
 		 * @param filepath the path to the image file.
 		 * @param chars a String containing the characters in the same order that the image has them.
 		 */
 		private BitmapFont(String filepath, String chars) {
-			image = newImage(filepath);
+			image = assets.image(filepath);
 			glyphs = chars;
+			
+			int highest = 0;
+			for (int i = 0; i < glyphs.length(); i ++) {
+				highest = Math.max(highest, glyphs.charAt(i));
+			}
+			glyphIndices = new int[highest + 1];
+			Arrays.fill(glyphIndices, -1);
+			// The first of any repeated characters is used, as with indexOf
+			for (int i = glyphs.length() - 1; i >= 0; i --) {
+				glyphIndices[glyphs.charAt(i)] = i;
+			}
+			
+			image.texture.bind();
+			glTexParameteri(GL_TEXTURE_2D, GL_TEXTURE_MAG_FILTER, GL_NEAREST);
 		}
 		
 		/**
@@ -68,32 +106,7 @@ public abstract class graphics {
 		@Override
 		protected void print(double x, double y, String text, double size) {
 			y = window.height() - y;
-			double w = image.height();
-			double h = -image.height();
-			double qw = w / image.width();
-			double qh = 1;
-			
-	    	glEnable(GL_TEXTURE_2D);
-	    	glTexParameteri(GL_TEXTURE_2D, GL_TEXTURE_MAG_FILTER, GL_NEAREST);
-	    	image.texture.bind();
-			glPushMatrix();
-			glTranslated(x, y, 0);
-			glScaled(size, size, 1);
-			glBegin(GL_QUADS);
-			for (int i = 0; i < text.length(); i ++) {
-				double qx = glyphs.indexOf(text.charAt(i)) * w / image.width();
-				glTexCoord2d(qx, 0);
-				glVertex2d(w * i, 0);
-				glTexCoord2d(qx + qw, 0);
-				glVertex2d(w * (i+1), 0);
-				glTexCoord2d(qx + qw, qh);
-				glVertex2d(w * (i+1), h);
-				glTexCoord2d(qx, qh);
-				glVertex2d(w * i, h);
-			}
-			glEnd();
-			glPopMatrix();
-			glDisable(GL_TEXTURE_2D);
+			batch.glyphs(image.texture, layout(text), x, y, size);
 		}
 		
 		/**
@@ -107,32 +120,56 @@ public abstract class graphics {
 		@Override
 		protected void printCentred(double x, double y, double width, String text, double size) {
 			y = window.height() - y;
-			double w = image.height();
-			double h = -image.height();
-			double qw = w / image.width();
-			double qh = 1;
-			x += (width - (w * text.length() * size)) / 2;
+			x += (width - (image.height() * text.length() * size)) / 2;
+			batch.glyphs(image.texture, layout(text), x, y, size);
+		}
+		
+		/**
+		 * Gets the glyphs for some text, at size 1 from the origin.
+		 * @param text the text to be drawn.
+		 * @return two triangles for each character, as x, y and texture coordinates for each vertex
+		 */
+		private float[] layout(String text) {
+			float[] layout = layouts.get(text);
+			if (layout != null) return layout;
 			
-			glEnable(GL_TEXTURE_2D);
-	    	image.texture.bind();
-			glPushMatrix();
-			glTranslated(x, y, 0);
-			glScaled(size, size, 1);
-			glBegin(GL_QUADS);
+			float w = (float)image.height();
+			float h = -(float)image.height();
+			float qw = (float)(w / image.width() * image.regionWidth);
+			float qy = (float)image.regionY;
+			float qh = qy + (float)image.regionHeight;
+			layout = new float[text.length() * 6 * 4];
+			int n = 0;
 			for (int i = 0; i < text.length(); i ++) {
-				double qx = glyphs.indexOf(text.charAt(i)) * w / image.width();
-				glTexCoord2d(qx, 0);
-				glVertex2d(w * i, 0);
-				glTexCoord2d(qx + qw, 0);
-				glVertex2d(w * (i+1), 0);
-				glTexCoord2d(qx + qw, qh);
-				glVertex2d(w * (i+1), h);
-				glTexCoord2d(qx, qh);
-				glVertex2d(w * i, h);
+				float qx = (float)image.regionX + glyphIndex(text.charAt(i)) * qw;
+				float left = w * i;
+				float right = w * (i + 1);
+				n = corner(layout, n, left, 0, qx, qy);
+				n = corner(layout, n, right, 0, qx + qw, qy);
+				n = corner(layout, n, right, h, qx + qw, qh);
+				n = corner(layout, n, left, 0, qx, qy);
+				n = corner(layout, n, right, h, qx + qw, qh);
+				n = corner(layout, n, left, h, qx, qh);
 			}
-			glEnd();
-			glPopMatrix();
-			glDisable(GL_TEXTURE_2D);
+			layouts.put(text, layout);
+			return layout;
+		}
+		
+		private static int corner(float[] layout, int n, float x, float y, float u, float v) {
+			layout[n++] = x;
+			layout[n++] = y;
+			layout[n++] = u;
+			layout[n++] = v;
+			return n;
+		}
+		
+		/**
+		 * Gets where a character is in the image.
+		 * @param c the character.
+		 * @return the position of the character's glyph, or -1 if it has none.
+		 */
+		private int glyphIndex(char c) {
+			return c < glyphIndices.length ? glyphIndices[c] : -1;
 		}
 
 	}
@@ -168,8 +205,10 @@ public abstract class graphics {
 		protected void print(double x, double y, String text, double size) {
 			y = y - window.height();
 			
+			flush();
 			glPushMatrix();
 			glScaled(1, -1, 0);
+			drawCalls++;
 			_font.drawString((int)x, (int)y, text);
 			glPopMatrix();
 		}
@@ -187,17 +226,153 @@ public abstract class graphics {
 			y = y - window.height();
 			x += (width - _font.getWidth(text)) / 2;
 			
+			flush();
 			glPushMatrix();
 			glScaled(1, -1, 0);
+			drawCalls++;
 			_font.drawString((int)x, (int)y, text);
 			glPopMatrix();
 		}
 		
 	}
 	
+	/**
+	 * <h1>jog.graphics.Batch</h1>
+	 * <p>Collects shapes and text as coloured triangles, so that they are drawn together
+	 * with one draw call rather than one each. Lines are drawn as thin quads so that they
+	 * share the batch with filled shapes, keeping everything in the order it was drawn.</p>
+	 * <p>The batch is flushed before anything which changes how it would be drawn: the matrix,
+	 * the viewport, a change between shapes and text of a font's texture, or anything drawn
+	 * outside the batch, such as images.</p>
+	 */
+	private static class Batch {
+		
+		/** The floats for each vertex: x, y, the texture's x and y, red, green, blue and alpha */
+		private static final int VERTEX_SIZE = 8;
+		
+		private FloatBuffer vertices = BufferUtils.createFloatBuffer(3 * 1024 * VERTEX_SIZE);
+		private int count;
+		
+		/** The texture of everything in the batch, or null for shapes */
+		private Texture texture;
+		
+		/**
+		 * Adds a triangle in the current colour.
+		 */
+		private void triangle(double x1, double y1, double x2, double y2, double x3, double y3) {
+			use(null, 3);
+			vertex(x1, y1, 0, 0);
+			vertex(x2, y2, 0, 0);
+			vertex(x3, y3, 0, 0);
+		}
+		
+		/**
+		 * Adds a quad in the current colour, with its corners given in order around it.
+		 */
+		private void quad(double x1, double y1, double x2, double y2,
+				double x3, double y3, double x4, double y4) {
+			triangle(x1, y1, x2, y2, x3, y3);
+			triangle(x1, y1, x3, y3, x4, y4);
+		}
+		
+		/**
+		 * Adds a line one pixel wide in the current colour.
+		 */
+		private void line(double x1, double y1, double x2, double y2) {
+			double dx = x2 - x1;
+			double dy = y2 - y1;
+			double length = Math.sqrt(dx * dx + dy * dy);
+			if (length == 0) return;
+			// Half a pixel either side of the line
+			double nx = -dy / length * 0.5;
+			double ny = dx / length * 0.5;
+			quad(x1 + nx, y1 + ny, x2 + nx, y2 + ny, x2 - nx, y2 - ny, x1 - nx, y1 - ny);
+		}
+		
+		/**
+		 * Adds textured triangles in the current colour, such as the glyphs of some text.
+		 * @param texture the texture to draw from.
+		 * @param layout the x, y and texture coordinates of each vertex, at size 1 from the origin.
+		 * @param x the x coordinate to draw to.
+		 * @param y the y coordinate to draw to.
+		 * @param size the scale to draw at.
+		 */
+		private void glyphs(Texture texture, float[] layout, double x, double y, double size) {
+			use(texture, layout.length / 4);
+			for (int i = 0; i < layout.length; i += 4) {
+				vertex(x + layout[i] * size, y + layout[i + 1] * size, layout[i + 2], layout[i + 3]);
+			}
+		}
+		
+		/**
+		 * Makes room for more vertices, drawing the batch first if they use another texture.
+		 * @param texture the texture of the vertices, or null for shapes.
+		 * @param vertexCount the number of vertices to be added.
+		 */
+		private void use(Texture texture, int vertexCount) {
+			if (texture != this.texture) {
+				flush();
+				this.texture = texture;
+			}
+			while (vertices.remaining() < vertexCount * VERTEX_SIZE) grow();
+		}
+		
+		private void vertex(double x, double y, float u, float v) {
+			vertices.put((float)x).put((float)y).put(u).put(v)
+				.put(red).put(green).put(blue).put(alpha);
+			count++;
+		}
+		
+		/**
+		 * Doubles the space for vertices, keeping those added.
+		 */
+		private void grow() {
+			FloatBuffer larger = BufferUtils.createFloatBuffer(vertices.capacity() * 2);
+			vertices.flip();
+			larger.put(vertices);
+			vertices = larger;
+		}
+		
+		/**
+		 * Draws everything added since the last flush, with one draw call.
+		 */
+		private void flush() {
+			if (count == 0) return;
+			vertices.flip();
+			glEnableClientState(GL_VERTEX_ARRAY);
+			glEnableClientState(GL_COLOR_ARRAY);
+			vertices.position(0);
+			glVertexPointer(2, VERTEX_SIZE * 4, vertices);
+			vertices.position(4);
+			glColorPointer(4, VERTEX_SIZE * 4, vertices);
+			if (texture != null) {
+				glEnable(GL_TEXTURE_2D);
+				texture.bind();
+				glEnableClientState(GL_TEXTURE_COORD_ARRAY);
+				vertices.position(2);
+				glTexCoordPointer(2, VERTEX_SIZE * 4, vertices);
+			}
+			glDrawArrays(GL_TRIANGLES, 0, count);
+			drawCalls++;
+			if (texture != null) {
+				glDisableClientState(GL_TEXTURE_COORD_ARRAY);
+				glDisable(GL_TEXTURE_2D);
+			}
+			glDisableClientState(GL_COLOR_ARRAY);
+			glDisableClientState(GL_VERTEX_ARRAY);
+			// The current colour is left undefined by drawing with a colour array
+			glColor4f(red, green, blue, alpha);
+			vertices.clear();
+			count = 0;
+		}
+		
+	}
+	
 	/**
 	 * <h1>jog.graphics.Image</h1>
 	 * <p>Essentially an object-orientated wrapper for the slick Texture.</p>
+	 * <p>An image may be the whole of its texture, or a region of a texture shared
+	 * with other images, such as an atlas made by {@link assets}.</p>
 	 * @author IMP1
 	 * @see Texture
 	 */
@@ -211,6 +386,12 @@ public abstract class graphics {
 		/** The y-coordinate of the image */
 		private double y;
 		
+		/** The size of the image in pixels */
+		private double width, height;
+		
+		/** The region of the texture holding the image, in texture coordinates from 0 to 1 */
+		private double regionX, regionY, regionWidth = 1, regionHeight = 1;
+		
 		/**
 		 * Constructor for an image.
 		 * @param filepath the path to the image file.
@@ -220,22 +401,54 @@ public abstract class graphics {
 				String format = filepath.split("\\.")[1].toUpperCase();
 				InputStream in = ResourceLoader.getResourceAsStream(filepath);
 				texture = TextureLoader.getTexture(format, in);
+				width = texture.getTextureWidth();
+				height = texture.getTextureHeight();
 			} catch (IOException e) {
 				e.printStackTrace();
 			}
 		}
 		
 		private Image(String filepath, int x, int y, double scale) {
+			this(filepath);
+			this.x = x*scale;
+			this.y = y*scale;
+		}
+		
+		/**
+		 * Constructor for an image of part of a texture.
+		 * @param texture the texture holding the image.
+		 * @param x the x coordinate of the image in the texture, in pixels.
+		 * @param y the y coordinate of the image in the texture, in pixels.
+		 * @param width the width of the image in pixels.
+		 * @param height the height of the image in pixels.
+		 */
+		private Image(Texture texture, int x, int y, int width, int height) {
+			this.texture = texture;
+			this.width = width;
+			this.height = height;
+			regionX = (double)x / texture.getTextureWidth();
+			regionY = (double)y / texture.getTextureHeight();
+			regionWidth = (double)width / texture.getTextureWidth();
+			regionHeight = (double)height / texture.getTextureHeight();
+		}
+		
+		/**
+		 * Constructor for a copy of an image, sharing its texture, to be drawn at a scaled position.
+		 * @param image the image to copy.
+		 * @param x the x coordinate to draw the image at, before scaling.
+		 * @param y the y coordinate to draw the image at, before scaling.
+		 * @param scale the scaling factor.
+		 */
+		private Image(Image image, int x, int y, double scale) {
+			texture = image.texture;
+			width = image.width;
+			height = image.height;
+			regionX = image.regionX;
+			regionY = image.regionY;
+			regionWidth = image.regionWidth;
+			regionHeight = image.regionHeight;
 			this.x = x*scale;
 			this.y = y*scale;
-			
-			try {
-				String format = filepath.split("\\.")[1].toUpperCase();
-				InputStream in = ResourceLoader.getResourceAsStream(filepath);
-				texture = TextureLoader.getTexture(format, in);
-			} catch (IOException e) {
-				e.printStackTrace();
-			}
 		}
 		
 		/**
@@ -259,7 +472,7 @@ public abstract class graphics {
 		 * @return the width of the image in pixels.
 		 */
 		public double width() { 
-			return texture.getTextureWidth();
+			return width;
 		}
 		
 		/**
@@ -270,7 +483,7 @@ public abstract class graphics {
 		 */
 		public double scaledWidth(double scale) {
 			//texture.bind();
-			return texture.getTextureWidth() * scale;
+			return width * scale;
 
 		}
 		
@@ -279,7 +492,7 @@ public abstract class graphics {
 		 * @return the height of the image in pixels.
 		 */
 		public double height() { 
-			return texture.getTextureHeight(); 
+			return height; 
 		}
 		
 		/**
@@ -290,7 +503,7 @@ public abstract class graphics {
 		 */
 		public double scaledHeight(double scale) {
 			//texture.bind();
-			return texture.getTextureHeight() * scale;
+			return height * scale;
 		}
 		
 		/**
@@ -342,6 +555,24 @@ public abstract class graphics {
 	private static Color currentColour;
 	private static boolean viewPortEnabled;
 	
+	/** The current colour, as given to OpenGL */
+	private static float red = 1, green = 1, blue = 1, alpha = 1;
+	
+	/** The length in pixels of each segment of a circle drawn without giving how many */
+	private static final double SEGMENT_LENGTH = 5;
+	
+	/** The fewest and most segments a circle is drawn with when not given how many */
+	private static final int MIN_SEGMENTS = 8, MAX_SEGMENTS = 128;
+	
+	/** The points around circles of radius 1, by number of segments */
+	private static final double[][] unitCircles = new double[MAX_SEGMENTS + 1][];
+	
+	/** The shapes waiting to be drawn */
+	private static final Batch batch = new Batch();
+	
+	/** The draw calls made so far this frame, and in the last frame */
+	private static int drawCalls, lastFrameDrawCalls;
+	
 	/**
 	 * Intialises OpenGL with the appropriate matrix modes and orthographic dimensions. 
 	 */
@@ -367,6 +598,10 @@ public abstract class graphics {
 	 */
 	static public void setColour(Color colour) {
 		currentColour = colour;
+		red = colour.r;
+		green = colour.g;
+		blue = colour.b;
+		alpha = colour.a;
 		glColor4f(currentColour.r, currentColour.g, currentColour.b, currentColour.a);
 	}
 
@@ -384,6 +619,10 @@ public abstract class graphics {
 		double green = Math.max(0, Math.min(255, g)) / 255;
 		double blue = Math.max(0, Math.min(255, b)) / 255;
 		double alpha = Math.max(0, Math.min(255, a)) / 255;
+		graphics.red = (float)red;
+		graphics.green = (float)green;
+		graphics.blue = (float)blue;
+		graphics.alpha = (float)alpha;
 		glColor4d(red, green, blue, alpha);
 	}
 	static public void setColour(int r, int g, int b) { setColour(r, g, b, 255); }
@@ -415,6 +654,7 @@ public abstract class graphics {
 	 * @param height the height of the new viewport, in pixels.
 	 */
 	static public void setViewport(int x, int y, int width, int height) {
+		flush();
 		glPushMatrix();
 		glTranslated(x, -y, 0);
 		y = window.height() - y;
@@ -427,6 +667,7 @@ public abstract class graphics {
 	 * Sets the current viewport back to the default, that is, the window.
 	 */
 	static public void setViewport() {
+		flush();
 		glDisable(GL_SCISSOR_TEST);
 		glPopMatrix();
 		viewPortEnabled = false;
@@ -476,6 +717,31 @@ public abstract class graphics {
 		return new Image(filepath, x, y, scale);
 	}
 	
+	/**
+	 * Creates and returns an image of part of a texture, such as an atlas.
+	 * @param texture the texture holding the image.
+	 * @param x the x coordinate of the image in the texture, in pixels.
+	 * @param y the y coordinate of the image in the texture, in pixels.
+	 * @param width the width of the image in pixels.
+	 * @param height the height of the image in pixels.
+	 * @return the new image
+	 */
+	static Image newImage(Texture texture, int x, int y, int width, int height) {
+		return new Image(texture, x, y, width, height);
+	}
+	
+	/**
+	 * Creates and returns a copy of an image sharing its texture, to be drawn at a scaled position.
+	 * @param image the image to copy.
+	 * @param x the x coordinate at which to draw the image
+	 * @param y the y coordinate at which to draw the image
+	 * @param scale the scaling factor to scale the image by
+	 * @return the new image
+	 */
+	static Image newImage(Image image, int x, int y, double scale) {
+		return new Image(image, x, y, scale);
+	}
+	
 	/**
 	 * Creates and returns a new Quad.
 	 * @param x the beginning horizontal coordinate of the quad in pixels.
@@ -500,6 +766,7 @@ public abstract class graphics {
 	 * @param oy the y coordinate of the origin of the image around which it is rotated.
 	 */
 	static public void draw(Image drawable, double x, double y, double r, double ox, double oy) {
+		flush();
 		y = window.height() - y;
 		r = -Math.toDegrees(r);
 		
@@ -509,14 +776,14 @@ public abstract class graphics {
 	    glTranslated(x, y, 0);
 	    glRotated(r, 0, 0, 1);
 	    glScaled(2, 2, 1);
-		glBegin(GL_QUADS);
-			glTexCoord2d(0, 0);
+		begin(GL_QUADS);
+			glTexCoord2d(drawable.regionX, drawable.regionY);
 			glVertex2d(-ox/2, -oy/2);
-			glTexCoord2d(1, 0);
+			glTexCoord2d(drawable.regionX + drawable.regionWidth, drawable.regionY);
 			glVertex2d(ox/2, -oy/2);
-			glTexCoord2d(1, 1);
+			glTexCoord2d(drawable.regionX + drawable.regionWidth, drawable.regionY + drawable.regionHeight);
 			glVertex2d(ox/2, oy/2);
-			glTexCoord2d(0, 1);
+			glTexCoord2d(drawable.regionX, drawable.regionY + drawable.regionHeight);
 			glVertex2d(-ox/2, oy/2);
 		glEnd();
 		glPopMatrix();
@@ -524,6 +791,7 @@ public abstract class graphics {
 	}
 	
 	static public void draw(Image drawable, double scale, double x, double y, double r, double ox, double oy) {
+		flush();
 		y = window.height() - y;
 		r = -Math.toDegrees(r);
 		
@@ -533,14 +801,14 @@ public abstract class graphics {
 	    glTranslated(x, y, 0);
 	    glRotated(r, 0, 0, 1);
 	    glScaled(scale, scale, 1);
-		glBegin(GL_QUADS);
-			glTexCoord2d(0, 0);
+		begin(GL_QUADS);
+			glTexCoord2d(drawable.regionX, drawable.regionY);
 			glVertex2d(-ox/2, -oy/2);
-			glTexCoord2d(1, 0);
+			glTexCoord2d(drawable.regionX + drawable.regionWidth, drawable.regionY);
 			glVertex2d(ox/2, -oy/2);
-			glTexCoord2d(1, 1);
+			glTexCoord2d(drawable.regionX + drawable.regionWidth, drawable.regionY + drawable.regionHeight);
 			glVertex2d(ox/2, oy/2);
-			glTexCoord2d(0, 1);
+			glTexCoord2d(drawable.regionX, drawable.regionY + drawable.regionHeight);
 			glVertex2d(-ox/2, oy/2);
 		glEnd();
 		glPopMatrix();
@@ -554,6 +822,7 @@ public abstract class graphics {
 	 * @param y the vertical pixel to draw at.
 	 */
 	static public void draw(Image drawable, double x, double y) {
+		flush();
 		drawable.x = x; //Set the x-coordinate of the image drawn by that specified by the x parameter
 		y = window.height() - y;
 		drawable.y = y; //Set the y-coordinate of the image drawn by that specified by the y parameter
@@ -564,14 +833,14 @@ public abstract class graphics {
     	drawable.texture.bind();
 		glPushMatrix();
 	    glTranslated(x, y, 0);
-		glBegin(GL_QUADS);
-			glTexCoord2d(0, 0);
+		begin(GL_QUADS);
+			glTexCoord2d(drawable.regionX, drawable.regionY);
 			glVertex2d(0, 0);
-			glTexCoord2d(1, 0);
+			glTexCoord2d(drawable.regionX + drawable.regionWidth, drawable.regionY);
 			glVertex2d(w, 0);
-			glTexCoord2d(1, 1);
+			glTexCoord2d(drawable.regionX + drawable.regionWidth, drawable.regionY + drawable.regionHeight);
 			glVertex2d(w, h);
-			glTexCoord2d(0, 1);
+			glTexCoord2d(drawable.regionX, drawable.regionY + drawable.regionHeight);
 			glVertex2d(0, h);
 		glEnd();
 		glPopMatrix();
@@ -588,6 +857,7 @@ public abstract class graphics {
 	 * @param scale - The scale to apply to the image
 	 */
 	static public void drawScaled(Image drawable, double x, double y, double scale) {
+		flush();
 		y = window.height() - (y);
 		double w = drawable.scaledWidth(scale);
 		double h = -drawable.scaledHeight(scale);
@@ -602,14 +872,14 @@ public abstract class graphics {
 		drawable.texture.bind();
 		glPushMatrix();
 		glTranslated(x, y, 0);
-		glBegin(GL_QUADS);
-			glTexCoord2d(0, 0);
+		begin(GL_QUADS);
+			glTexCoord2d(drawable.regionX, drawable.regionY);
 			glVertex2d(0, 0);
-			glTexCoord2d(1, 0);
+			glTexCoord2d(drawable.regionX + drawable.regionWidth, drawable.regionY);
 			glVertex2d(w, 0);
-			glTexCoord2d(1, 1);
+			glTexCoord2d(drawable.regionX + drawable.regionWidth, drawable.regionY + drawable.regionHeight);
 			glVertex2d(w, h);
-			glTexCoord2d(0, 1);
+			glTexCoord2d(drawable.regionX, drawable.regionY + drawable.regionHeight);
 			glVertex2d(0, h);
 		glEnd();
 		glPopMatrix();
@@ -624,22 +894,27 @@ public abstract class graphics {
 	 * @param y the vertical pixel to draw at.
 	 */
 	static public void drawq(Image drawable, Quad quad, double x, double y) {
+		flush();
 		y = window.height() - y;
 		double w = quad.quadWidth;
 		double h = -quad.quadHeight;
+		double qx = drawable.regionX + quad.x * drawable.regionWidth;
+		double qy = drawable.regionY + quad.y * drawable.regionHeight;
+		double qw = quad.width * drawable.regionWidth;
+		double qh = quad.height * drawable.regionHeight;
 		
     	glEnable(GL_TEXTURE_2D);
 		drawable.texture.bind();
 		glPushMatrix();
 		glTranslated(x, y, 0);
-		glBegin(GL_QUADS);
-			glTexCoord2d(quad.x, quad.y);
+		begin(GL_QUADS);
+			glTexCoord2d(qx, qy);
 			glVertex2d(0, 0);
-			glTexCoord2d(quad.x + quad.width, quad.y);
+			glTexCoord2d(qx + qw, qy);
 			glVertex2d(w, 0);
-			glTexCoord2d(quad.x + quad.width, quad.y + quad.height);
+			glTexCoord2d(qx + qw, qy + qh);
 			glVertex2d(w, h);
-			glTexCoord2d(quad.x, quad.y + quad.height);
+			glTexCoord2d(qx, qy + qh);
 			glVertex2d(0, h);
 		glEnd();
 		glPopMatrix();
@@ -657,10 +932,7 @@ public abstract class graphics {
 		y1 = window.height() - y1;
 		y2 = window.height() - y2;
 		
-		glBegin(GL_LINE_STRIP);
-		glVertex2d(x1, y1);
-		glVertex2d(x2, y2);
-		glEnd();
+		batch.line(x1, y1, x2, y2);
 	}
 	
 	/**
@@ -679,17 +951,12 @@ public abstract class graphics {
 		y3 = window.height() - y3;
 		
 	    if (fill) {
-		    glBegin(GL_TRIANGLES);
+	    	batch.triangle(x1, y1, x2, y2, x3, y3);
 	    } else {
-	    	glBegin(GL_LINE_STRIP);
-	    }
-        glVertex2d(x1, y1);
-        glVertex2d(x2, y2);
-        glVertex2d(x3, y3);
-	    if (!fill) {
-	        glVertex2d(x1, y1);
+	    	batch.line(x1, y1, x2, y2);
+	    	batch.line(x2, y2, x3, y3);
+	    	batch.line(x3, y3, x1, y1);
 	    }
-	    glEnd();
 	}
 	
 	/**
@@ -704,22 +971,14 @@ public abstract class graphics {
 		y = window.height() - y;
 		height = -height;
 		
-		glPushMatrix();
-	    glTranslated(x, y, 0);
 	    if (fill) {
-		    glBegin(GL_QUADS);
+	    	batch.quad(x, y, x + width, y, x + width, y + height, x, y + height);
 	    } else {
-	    	glBegin(GL_LINE_STRIP);
-	    }
-        glVertex2d(0, 0);
-        glVertex2d(width, 0);
-        glVertex2d(width, height);
-        glVertex2d(0, height);
-	    if (!fill) {
-	        glVertex2d(0, 0);
+	    	batch.line(x, y, x + width, y);
+	    	batch.line(x + width, y, x + width, y + height);
+	    	batch.line(x + width, y + height, x, y + height);
+	    	batch.line(x, y + height, x, y);
 	    }
-	    glEnd();
-	    glPopMatrix();
 	}
 	
 	/**
@@ -737,24 +996,26 @@ public abstract class graphics {
 		startAngle = -startAngle;
 		angle = -angle;
 		
-		glPushMatrix();
-		glTranslated(x, y, 0);
-		glScaled(r, r, 1);
-		if (fill) {
-			glBegin(GL_TRIANGLE_FAN);
-			glVertex2d(0, 0);
-	    } else {
-	    	glBegin(GL_LINE_STRIP);
-	    }
-		for (int i = 0; i <= segments; i++) {
-		    double theta = startAngle + (angle * i / segments);
-		    glVertex2d(Math.cos(theta), Math.sin(theta));
+		// Each point is the last rotated by one segment, rather than found with cos and sin
+		double stepCos = Math.cos(angle / segments);
+		double stepSin = Math.sin(angle / segments);
+		double dx = r * Math.cos(startAngle);
+		double dy = r * Math.sin(startAngle);
+		for (int i = 1; i <= segments; i++) {
+			double nextDx = dx * stepCos - dy * stepSin;
+			double nextDy = dx * stepSin + dy * stepCos;
+		    if (fill) {
+		    	batch.triangle(x, y, x + dx, y + dy, x + nextDx, y + nextDy);
+		    } else {
+		    	batch.line(x + dx, y + dy, x + nextDx, y + nextDy);
+		    }
+		    dx = nextDx;
+		    dy = nextDy;
 		}
-		glEnd();
-		glPopMatrix();
 	}
 	static public void arc(boolean fill, double x, double y, double r, double startAngle, double angle) {
-		arc(fill, x, y, r, startAngle, angle, 20);
+		double segments = Math.ceil(segments(r) * Math.abs(angle) / (Math.PI * 2));
+		arc(fill, x, y, r, startAngle, angle, Math.max(2, segments));
 	}
 	
 	/**
@@ -768,24 +1029,66 @@ public abstract class graphics {
 	static public void circle(boolean fill, double x, double y, double r, double segments) {
 		y = window.height() - y;
 		
-		glPushMatrix();
-		glTranslated(x, y, 0);
-		glScaled(r, r, 1);
-		if (fill) {
-			glBegin(GL_TRIANGLE_FAN);
-			glVertex2d(0, 0);
-	    } else {
-	    	glBegin(GL_LINE_STRIP);
-	    }
-		for (int i = 0; i <= segments; i++) {
-		    double angle = Math.PI * 2 * i / segments;
-		    glVertex2d(Math.cos(angle), Math.sin(angle));
+		double[] unitCircle = unitCircle((int)segments);
+		double lastX = x + r;
+		double lastY = y;
+		for (int i = 2; i < unitCircle.length; i += 2) {
+		    double nextX = x + r * unitCircle[i];
+		    double nextY = y + r * unitCircle[i + 1];
+		    if (fill) {
+		    	batch.triangle(x, y, lastX, lastY, nextX, nextY);
+		    } else {
+		    	batch.line(lastX, lastY, nextX, nextY);
+		    }
+		    lastX = nextX;
+		    lastY = nextY;
 		}
-		glEnd();
-		glPopMatrix();
 	}
+	
+	/**
+	 * Draws a circle, with as many segments as its size needs to look smooth.
+	 * @param fill whether to fill with colour.
+	 * @param x the x coordinate of the centre of the circle.
+	 * @param y the y coordinate of the centre of the circle.
+	 * @param r the radius of the circle.
+	 */
 	static public void circle(boolean fill, double x, double y, double r) {
-		circle(fill, x, y, r, 20);
+		circle(fill, x, y, r, segments(r));
+	}
+	
+	/**
+	 * Gets how many segments a circle needs to look smooth, keeping each about
+	 * {@link #SEGMENT_LENGTH} pixels long.
+	 * @param r the radius of the circle on screen.
+	 * @return the number of segments, a multiple of four.
+	 */
+	static public int segments(double r) {
+		int segments = (int)Math.ceil(Math.PI * 2 * Math.abs(r) / SEGMENT_LENGTH / 4) * 4;
+		return Math.max(MIN_SEGMENTS, Math.min(MAX_SEGMENTS, segments));
+	}
+	
+	/**
+	 * Gets the points around a circle of radius 1, cached for circles with up to
+	 * {@link #MAX_SEGMENTS} segments.
+	 * @param segments the number of segments.
+	 * @return the x and y of each point, starting and ending at angle 0.
+	 */
+	private static double[] unitCircle(int segments) {
+		segments = Math.max(1, segments);
+		if (segments <= MAX_SEGMENTS && unitCircles[segments] != null) {
+			return unitCircles[segments];
+		}
+		double[] unitCircle = new double[(segments + 1) * 2];
+		for (int i = 0; i < segments; i++) {
+			double angle = Math.PI * 2 * i / segments;
+			unitCircle[i * 2] = Math.cos(angle);
+			unitCircle[i * 2 + 1] = Math.sin(angle);
+		}
+		// Ends exactly where it starts, so that the circle is closed
+		unitCircle[segments * 2] = 1;
+		unitCircle[segments * 2 + 1] = 0;
+		if (segments <= MAX_SEGMENTS) unitCircles[segments] = unitCircle;
+		return unitCircle;
 	}
 	
 	/**
@@ -838,9 +1141,13 @@ public abstract class graphics {
 			e.printStackTrace();
 		}
 		*/
+		flush();
 		if (viewPortEnabled) setViewport();
 		GL11.glClear(GL11.GL_COLOR_BUFFER_BIT | GL11.GL_DEPTH_BUFFER_BIT);
 		GL11.glColor3d(1, 1, 1);
+		red = green = blue = alpha = 1;
+		lastFrameDrawCalls = drawCalls;
+		drawCalls = 0;
 	}
 
 	public static Font getFont() {
@@ -849,15 +1156,44 @@ public abstract class graphics {
 	}
 	
 	public static void push() {
+		flush();
 		glPushMatrix();
 	}
 
 	public static void translate(double x, double y) {
+		flush();
 		glTranslated(x, y, 0);
 	}
 	
 	public static void pop() {
+		flush();
 		glPopMatrix();
 	}
-
-}
\ No newline at end of file
+	
+	/**
+	 * Draws any shapes waiting to be drawn. Shapes are collected and drawn together,
+	 * so this must be called before using OpenGL directly, or showing what has been drawn.
+	 */
+	public static void flush() {
+		if (isInitialised) batch.flush();
+	}
+	
+	/**
+	 * Gets the number of draw calls made in the last frame, i.e. between the last two
+	 * calls to {@link #clear()}, to see how well drawing is being batched.
+	 * @return the number of draw calls
+	 */
+	public static int drawCalls() {
+		return lastFrameDrawCalls;
+	}
+	
+	/**
+	 * Starts drawing a shape immediately, outside the batch.
+	 * @param mode the kind of shape, as for glBegin
+	 */
+	private static void begin(int mode) {
+		drawCalls++;
+		glBegin(mode);
+	}
+	
+}
@@ -220,6 +220,7 @@ public abstract class window {
 	public static void update() {
 		closed = closed || Display.isCloseRequested();
 		if (closed) return;
+		graphics.flush();
 		Display.update();
 		Display.sync(targetFPS);
 	}
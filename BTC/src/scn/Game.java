@@ -4,6 +4,7 @@ package scn;
 import java.io.File;
 import java.util.Random;
 
+import lib.jog.assets;
 import lib.jog.audio;
 import lib.jog.audio.Music;
 import lib.jog.graphics;
@@ -17,35 +18,40 @@ import cls.Aircraft.AltitudeState;
 import cls.AircraftBuffer;
 import cls.Airport;
 import cls.Altimeter;
+import cls.CollisionGrid;
+import cls.FleetState;
 import cls.OrdersBox;
+import cls.RandomStreams;
+import cls.SimulationContext;
 import cls.Waypoint;
 
 import btc.Main;
 
 public class Game extends Scene {
    
-    // Position of things drawn to window  
+    // Position of things drawn to window, sized from Main so headless games never load it
     private final int AIRCRAFT_INFO_X = 16;
-    private final int AIRCRAFT_INFO_Y = window.height() - 120;
-    private final int AIRCRAFT_INFO_W = window.width()/4 - 16;
+    private final int AIRCRAFT_INFO_Y = (int) Main.height() - 120;
+    private final int AIRCRAFT_INFO_W = (int) Main.width()/4 - 16;
     private final int AIRCRAFT_INFO_H = 112;
    
     private final int ALTIMETER_X = AIRCRAFT_INFO_X + AIRCRAFT_INFO_W + 8;
-    private final int ALTIMETER_Y = window.height() - 120;
+    private final int ALTIMETER_Y = (int) Main.height() - 120;
     private final int ALTIMETER_W = 244;
     private final int ALTIMETER_H = 112;
    
     private final int ORDERSBOX_X = ALTIMETER_X + ALTIMETER_W + 8;
-    protected final static int ORDERSBOX_Y = window.height() - 120;
-    private final int ORDERSBOX_W = window.width() - (ORDERSBOX_X + 16);
-    private final static int ORDERSBOX_H = 112;
+    protected final static int ORDERSBOX_Y = (int) Main.height() - 120;
+    private final int ORDERSBOX_W = (int) Main.width() - (ORDERSBOX_X + 16);
+    public final static int ORDERSBOX_H = 112;
    
     // Difficulty of demo scene determined by difficulty selection scene
     public final static int DIFFICULTY_EASY = 0;
     public final static int DIFFICULTY_MEDIUM = 1;
     public final static int DIFFICULTY_HARD = 2;
     
-    public static int difficulty = DIFFICULTY_MEDIUM;
+    /** The game's settings, airspace and random numbers, apart from any other game's */
+    protected final SimulationContext context;
    
     /** Orders box to print orders from ACTO to aircraft to */
     protected OrdersBox ordersBox;
@@ -67,6 +73,23 @@ public class Game extends Scene {
     
     /** A list of all aircraft present in the airspace */
     protected AircraftBuffer aircraftInAirspace;
+    
+    /** Spatial index of the aircraft in the airspace, rebuilt every update
+     * to find aircraft near enough to collide */
+    protected CollisionGrid collisionGrid = new CollisionGrid();
+    
+    /** Batch store of the aircraft's positions and velocities, used to
+     * move the whole fleet in one pass */
+    protected FleetState fleetState = new FleetState();
+    
+    /** Whether aircraft are moved in one batch through {@link #fleetState},
+     * or one at a time. Off by default, as with the game's few dozen aircraft
+     * the time goes on turning rather than moving */
+    protected boolean batchPhysics = false;
+    
+    /** Whether the fleet, collisions and airports are updated in parallel.
+     * Implies {@link #batchPhysics} */
+    protected boolean parallelPhysics = false;
    
     /** The image to be used for aircraft */
     public static Image aircraftImage;
@@ -116,40 +139,17 @@ public class Game extends Scene {
 		"Peski",
     };
     
-    /** Create the set of waypoints that are flight entry points */
-    public static Waypoint[] flightEntryPoints = new Waypoint[] {
-    	new Waypoint(8, 8, Waypoint.WaypointType.ENTRY), // top left
-    	new Waypoint(window.width() - 40, window.height() - ORDERSBOX_H - 40, Waypoint.WaypointType.ENTRY), // bottom right
-    };
+    /** The waypoints that are flight entry points, from the game's context */
+    protected final Waypoint[] flightEntryPoints;
     
-    /** Create the set of waypoints that are flight exit points */
-    public static Waypoint[] flightExitPoints = new Waypoint[] {
-    	new Waypoint(8, window.height() - ORDERSBOX_H - 40, Waypoint.WaypointType.EXIT), // bottom left
-    	new Waypoint(window.width() - 40, 8, Waypoint.WaypointType.EXIT), // top right
-    };
+    /** The waypoints that are flight exit points, from the game's context */
+    protected final Waypoint[] flightExitPoints;
     
-    /** The set of airports in the airspace */
-    public static Airport[] airports;
+    /** The set of airports in the airspace, from the game's context */
+    protected final Airport[] airports;
 
     /** All waypoints in the airspace, <b>including</b> location waypoints. */
-    public static Waypoint[] airspaceWaypoints = new Waypoint[] {
-    	// Airspace waypoints
-    	new Waypoint(278, 75, Waypoint.WaypointType.AIRSPACE),
-    	new Waypoint(973, 692, Waypoint.WaypointType.AIRSPACE),
-    	new Waypoint(650, 391, Waypoint.WaypointType.AIRSPACE),
-    	new Waypoint(494, 53, Waypoint.WaypointType.AIRSPACE),
-    	new Waypoint(776, 743, Waypoint.WaypointType.AIRSPACE),
-    	new Waypoint(1137, 69, Waypoint.WaypointType.AIRSPACE),
-    	new Waypoint(66, 715, Waypoint.WaypointType.AIRSPACE),
-    	new Waypoint(415, 383, Waypoint.WaypointType.AIRSPACE),
-    	new Waypoint(889, 393, Waypoint.WaypointType.AIRSPACE),
-
-    	//Flight entry and exit points
-    	flightEntryPoints[0],
-    	flightEntryPoints[1],
-    	flightExitPoints[0],
-    	flightExitPoints[1],
-    };
+    protected final Waypoint[] airspaceWaypoints;
 
 	/**
      * Constructor
@@ -158,11 +158,47 @@ public class Game extends Scene {
      */
     public Game(Main main, int difficulty) {
         super(main);
-        Game.difficulty = difficulty;
+        context = new SimulationContext(difficulty);
+        flightEntryPoints = context.flightEntryPoints();
+        flightExitPoints = context.flightExitPoints();
+        airports = context.airports();
+        airspaceWaypoints = context.airspaceWaypoints();
+    }
+    
+    /**
+     * Sets the seed the game's random numbers are made from.
+     * Must be called before the game starts to take effect.
+     * @param seed the seed to play the game with
+     */
+    public void setSeed(long seed) {
+    	context.setSeed(seed);
+    }
+    
+    /**
+     * @return the seed the game's random numbers are made from
+     */
+    public long seed() {
+    	return context.seed();
     }
     
-    public static int difficulty() {
-    	return difficulty;
+    /**
+     * Gets the game's random numbers for a part of the game.
+     * @param stream the part of the game
+     * @return the random for that part
+     */
+    protected Random random(RandomStreams.Stream stream) {
+    	return context.random(stream);
+    }
+    
+    /**
+     * @return the context holding the game's settings, airspace and random numbers
+     */
+    public SimulationContext context() {
+    	return context;
+    }
+    
+    public int difficulty() {
+    	return context.difficulty();
     }
     
     public Aircraft selectedAircraft() {
@@ -200,7 +236,7 @@ public class Game extends Scene {
     @Override
     public void start() {
     	if (!Main.testing) {
-    		background = graphics.newImage("gfx" + File.separator + "map.png");
+    		background = assets.image("gfx" + File.separator + "map.png");
         	music = audio.newMusic("sfx" + File.separator + "Gypsy_Shoegazer.ogg");
         	music.play();
     	}
@@ -209,9 +245,10 @@ public class Game extends Scene {
         		ORDERSBOX_W, ORDERSBOX_H, 6, Main.testing);
         
         aircraftInAirspace = new AircraftBuffer();
+
         
         if (!Main.testing) { 
-        	aircraftImage = graphics.newImage("gfx" + File.separator + "plane.png");
+        	aircraftImage = assets.image("gfx" + File.separator + "plane.png");
         }
         
         timeElapsed = 0;
@@ -229,7 +266,7 @@ public class Game extends Scene {
        
         // Set attributes according to the selected difficulty
         // Flights spawn more often on harder difficulties.
-        switch (difficulty) {
+        switch (context.difficulty()) {
         	case DIFFICULTY_EASY:
         		break;
         	case DIFFICULTY_MEDIUM:
@@ -239,105 +276,11 @@ public class Game extends Scene {
         		flightGenerationInterval = flightGenerationInterval / 1.6;
         		break;
         }
-        // Airport Setup
-        // Waypoints an aircraft will turn through to reach the runway
-        Waypoint[] entryWaypoints;
-        // Names of above waypoints
-        String[] entryWaypointNames;
-        // Waypoints an aircraft will pass through while landing
-        Waypoint[] landingWaypoints;        
-        // Waypoints an aircraft can park at
-        Waypoint[] parkingWaypoints;
-        // Waypoints an aircraft will pass through while taking off
-        Waypoint[] takeoffWaypoints;
-        
-        airports = new Airport[2];
-        
-        entryWaypoints = new Waypoint[] {
-        		new Waypoint(821, 143, Waypoint.WaypointType.AIRPORT),
-        		new Waypoint(904, 28, Waypoint.WaypointType.AIRPORT),
-        		new Waypoint(1015, 97, Waypoint.WaypointType.AIRPORT),
-        };
-        entryWaypointNames = new String[] { "Chkalovsky West", "Chkalovsky East" };
-        landingWaypoints = new Waypoint[] {
-        		new Waypoint(979, 223, Waypoint.WaypointType.AIRPORT),
-        		new Waypoint(1097, 590, Waypoint.WaypointType.AIRPORT),
-        		new Waypoint(1158, 787, Waypoint.WaypointType.AIRPORT),
-        		new Waypoint(1188, 778, Waypoint.WaypointType.AIRPORT),
-        		new Waypoint(1201, 757, Waypoint.WaypointType.AIRPORT),
-        		new Waypoint(1202, 727, Waypoint.WaypointType.AIRPORT),
-        		new Waypoint(1184, 664, Waypoint.WaypointType.AIRPORT),
-        		new Waypoint(1093, 388, Waypoint.WaypointType.AIRPORT),
-        		new Waypoint(1089, 363, Waypoint.WaypointType.AIRPORT),
-        		new Waypoint(1146, 340, Waypoint.WaypointType.AIRPORT),
-        };
-        parkingWaypoints = new Waypoint[] {
-        		new Waypoint(1160, 311, Waypoint.WaypointType.AIRPORT),
-        		new Waypoint(1183, 340, Waypoint.WaypointType.AIRPORT),
-        		new Waypoint(1194, 374, Waypoint.WaypointType.AIRPORT),
-        		new Waypoint(1182, 412, Waypoint.WaypointType.AIRPORT),
-        };
-        takeoffWaypoints = new Waypoint[] {
-        		new Waypoint(1145, 342, Waypoint.WaypointType.AIRPORT),
-        		new Waypoint(1085, 364, Waypoint.WaypointType.AIRPORT),
-        		new Waypoint(1150, 581, Waypoint.WaypointType.AIRPORT),
-        		new Waypoint(1144, 597, Waypoint.WaypointType.AIRPORT),
-        		new Waypoint(1129, 612, Waypoint.WaypointType.AIRPORT),
-        		new Waypoint(1109, 624, Waypoint.WaypointType.AIRPORT),
-        		new Waypoint(1074, 633, Waypoint.WaypointType.AIRPORT),
-        		new Waypoint(936, 193, Waypoint.WaypointType.AIRPORT),
-        };
-        airports[0] = new Airport("Chkalovsky Airport", 4,
-        			entryWaypointNames,
-        			entryWaypoints,
-        			landingWaypoints,
-        			parkingWaypoints,
-        			takeoffWaypoints);
-        
-        entryWaypoints = new Waypoint[] {
-        		new Waypoint(385, 653, Waypoint.WaypointType.AIRPORT),
-        		new Waypoint(337, 781, Waypoint.WaypointType.AIRPORT),
-        		new Waypoint(184, 689, Waypoint.WaypointType.AIRPORT),
-        };
-        entryWaypointNames = new String[] { "Syrrilicovich West", "Syrrilicovich East" };
-        landingWaypoints = new Waypoint[] {
-        		new Waypoint(259, 584, Waypoint.WaypointType.AIRPORT),
-        		new Waypoint(137, 210, Waypoint.WaypointType.AIRPORT),
-        		new Waypoint(73, 20, Waypoint.WaypointType.AIRPORT),
-        		new Waypoint(49, 26, Waypoint.WaypointType.AIRPORT),
-        		new Waypoint(36, 43, Waypoint.WaypointType.AIRPORT),
-        		new Waypoint(31, 65, Waypoint.WaypointType.AIRPORT),
-        		new Waypoint(58, 151, Waypoint.WaypointType.AIRPORT),
-        		new Waypoint(144, 419, Waypoint.WaypointType.AIRPORT),
-        		new Waypoint(152, 444, Waypoint.WaypointType.AIRPORT),
-        		new Waypoint(94, 462, Waypoint.WaypointType.AIRPORT)
-        };
-        parkingWaypoints = new Waypoint[] {
-        		new Waypoint(78, 497, Waypoint.WaypointType.AIRPORT),
-        		new Waypoint(53, 464, Waypoint.WaypointType.AIRPORT),
-        		new Waypoint(39, 424, Waypoint.WaypointType.AIRPORT),
-        		new Waypoint(54, 389, Waypoint.WaypointType.AIRPORT),
-        };
-        takeoffWaypoints = new Waypoint[] {
-        		new Waypoint(94, 462, Waypoint.WaypointType.AIRPORT),
-        		new Waypoint(147, 442, Waypoint.WaypointType.AIRPORT),
-        		new Waypoint(84, 228, Waypoint.WaypointType.AIRPORT),
-        		new Waypoint(95, 207, Waypoint.WaypointType.AIRPORT),
-        		new Waypoint(104, 194, Waypoint.WaypointType.AIRPORT),
-        		new Waypoint(125, 183, Waypoint.WaypointType.AIRPORT),
-        		new Waypoint(161, 174, Waypoint.WaypointType.AIRPORT),
-        		new Waypoint(300, 613, Waypoint.WaypointType.AIRPORT),
-        };
-        
-        airports[1] = new Airport("Syrrilicovich Airport", 4,
-        			entryWaypointNames,
-        			entryWaypoints,
-        			landingWaypoints,
-          			parkingWaypoints,
-          			takeoffWaypoints);
-        backgroundQuad = graphics.newQuad(0, 0, background.width(), background.height(),
-        		background.width() * (Main.width() / Main.TARGET_WIDTH),
-        		background.height() * (Main.width() / Main.TARGET_WIDTH));
+        if (!Main.testing) {
+        	backgroundQuad = graphics.newQuad(0, 0, background.width(), background.height(),
+        			background.width() * (Main.width() / Main.TARGET_WIDTH),
+        			background.height() * (Main.width() / Main.TARGET_WIDTH));
+        }
     }
     
     /**
@@ -350,31 +293,36 @@ public class Game extends Scene {
     	timeElapsed += dt;
     	ordersBox.update(dt);
     	
-    	for (Aircraft aircraft : aircraftInAirspace) {
+    	Aircraft[] fleet = aircraftInAirspace.snapshot();
+    	for (Aircraft aircraft : fleet) {
     		totalScore += aircraft.score();
 			aircraft.clearScore();
-    		aircraft.update(dt);
+			if (!batchPhysics) aircraft.update(dt);
     	}
+    	if (batchPhysics) fleetState.update(fleet, dt);
 
     	checkCollisions(dt);
 
-    	for (int i = aircraftInAirspace.size()-1; i >=0; i--) {
-    		if (aircraftInAirspace.get(i).status() == AirportState.FINISHED) {
-    			if (aircraftInAirspace.get(i) == selectedAircraft) {
+    	// Work from a snapshot, so aircraft synced in by another thread
+    	// can't shift indices whilst finished aircraft are removed
+    	Aircraft[] aircraftSnapshot = aircraftInAirspace.snapshot();
+    	for (int i = aircraftSnapshot.length-1; i >=0; i--) {
+    		Aircraft aircraft = aircraftSnapshot[i];
+    		if (aircraft.status() == AirportState.FINISHED) {
+    			if (aircraft == selectedAircraft) {
     				deselectAircraft();
     			}
-    			aircraftInAirspace.remove(i);
+    			aircraftInAirspace.remove(aircraft);
+    			aircraft.releaseName();
     			totalAircraft++;
     			
     			// Game win
     			if (totalAircraft == maxTotalAircraft) {
     				gameWin(totalScore);
     			}
-    		} else if ((aircraftInAirspace.get(i)
-    						.status() == AirportState.LANDING)
-    				|| (aircraftInAirspace.get(i)
-    						.status() == AirportState.TAKEOFF)) {
-    			if (aircraftInAirspace.get(i) == selectedAircraft) {
+    		} else if ((aircraft.status() == AirportState.LANDING)
+    				|| (aircraft.status() == AirportState.TAKEOFF)) {
+    			if (aircraft == selectedAircraft) {
     				deselectAircraft();
     			}
     		}
@@ -415,8 +363,12 @@ public class Game extends Scene {
     	}
 
     	// Run airports
-    	for (Airport airport : airports) {
-    		airport.update(dt);
+    	if (parallelPhysics) {
+    		fleetState.updateAirports(airports, dt);
+    	} else {
+    		for (Airport airport : airports) {
+    			airport.update(dt);
+    		}
     	}
     }
     
@@ -821,8 +773,14 @@ public class Game extends Scene {
      * @param dt delta time since last collision check
      */
     private void checkCollisions(double dt) {
-        for (Aircraft aircraft : aircraftInAirspace) {
-            int collisionPlane = aircraft.updateCollisions(dt, aircraftList());
+    	collisionGrid.rebuild(aircraftInAirspace, context.separationRule());
+    	// Collisions can be found in parallel, but are applied in order
+    	// so that the first crash is the same as when checking serially
+    	if (parallelPhysics) fleetState.collectCollisions(collisionGrid);
+        for (int i = 0; i < collisionGrid.size(); i++) {
+        	Aircraft aircraft = collisionGrid.get(i);
+            int collisionPlane = parallelPhysics ? aircraft.applyCollisions()
+            		: aircraft.updateCollisions(dt, collisionGrid);
             if (collisionPlane != -1) {
             	crash(aircraft, collisionPlane);
                 return;
@@ -832,11 +790,11 @@ public class Game extends Scene {
     
     protected void crash(Aircraft aircraft, int collisionPlane) {
     	aircraft.crash();
-    	aircraftList().get(collisionPlane).crash();
-    	gameOver(aircraft, aircraftList().get(collisionPlane), totalScore);
+    	collisionGrid.get(collisionPlane).crash();
+    	gameOver(aircraft, collisionGrid.get(collisionPlane), totalScore);
     	totalScore -= 100; 
     	//ordersBox.addOrder("<<< You crashed two planes! That is coming out of your pay!");
-    	main.screenShake(24, 0.6);
+    	if (!Main.testing) main.screenShake(24, 0.6);
     }
     
     /**
@@ -883,7 +841,9 @@ public class Game extends Scene {
      */
     public void gameOver(Aircraft aircraft1, Aircraft aircraft2, int score) {
     	if (!Main.testing) {
-    		playSound(audio.newSoundEffect("sfx" + File.separator + "crash.ogg"));
+    		audio.Sound crash = assets.sound("sfx" + File.separator + "crash.ogg");
+    		crash.setPriority(audio.Sound.HIGH_PRIORITY);
+    		playSound(crash);
     	}
     	
     	main.closeScene();
@@ -939,13 +899,14 @@ public class Game extends Scene {
         
         // However, if 
     	// Destination is an airport with probability p
-    	if (Math.random() < p) {
+    	Random random = random(RandomStreams.Stream.FLIGHTS);
+    	if (random.nextDouble() < p) {
     		do {
     			// Random used to determine the origin point
-    			o = (new Random()).nextInt(flightEntryPoints.length);
+    			o = random.nextInt(flightEntryPoints.length);
 
     			// Random used to determine the destination point
-    			d = (new Random()).nextInt(flightExitPoints.length);
+    			d = random.nextInt(flightExitPoints.length);
     		} while (d == o);
 
     		originName = FLIGHT_ENTRY_POINT_NAMES[o];
@@ -955,13 +916,13 @@ public class Game extends Scene {
     		
     		return new Aircraft(destinationName, originName,
             		destinationPoint, originPoint,
-            		32 + (int)(10 * Math.random()), airspaceWaypoints,
-            		null);
+            		32 + random.nextInt(10), airspaceWaypoints,
+            		null, context);
     	} else {
     		// Random used to determine the origin point
-			o = (new Random()).nextInt(flightEntryPoints.length);
+			o = random.nextInt(flightEntryPoints.length);
 			// Random used to determine the destination airport
-			d = (new Random()).nextInt(airports.length);
+			d = random.nextInt(airports.length);
 			
 			originName = FLIGHT_ENTRY_POINT_NAMES[o];
     		originPoint = flightEntryPoints[o];				
@@ -970,8 +931,8 @@ public class Game extends Scene {
     		
     		return new Aircraft(destinationName, originName,
             		destinationPoint, originPoint,
-            		32 + (int)(10 * Math.random()), airspaceWaypoints,
-            		airports[d]);
+            		32 + random.nextInt(10), airspaceWaypoints,
+            		airports[d], context);
     	}
     }
    
@@ -991,15 +952,61 @@ public class Game extends Scene {
     }*/
    
     /**
-     * Cleanly exit by stopping the scene's music
+     * Cleanly exit by stopping the scene's music,
+     * and giving back the names of the aircraft left in the airspace
      */
     @Override
     public void close() {
     	if (!Main.testing) {
     		music.stop();
     	}
+    	if (aircraftInAirspace == null) return;
+    	for (Aircraft aircraft : aircraftInAirspace.snapshot()) {
+    		aircraft.releaseName();
+    	}
+    }
+    
+    /**
+     * Sets whether aircraft are moved in one batch or one at a time.
+     * Both give the same result.
+     * @param batchPhysics true to move aircraft in one batch
+     */
+    public void setBatchPhysics(boolean batchPhysics) {
+    	this.batchPhysics = batchPhysics || parallelPhysics;
+    }
+    
+    /**
+     * Sets whether the fleet, collisions and airports are updated in
+     * parallel on a pool sized to the machine's cores.
+     * Gives the same result as updating serially.
+     * @param parallelPhysics true to update in parallel
+     */
+    public void setParallelPhysics(boolean parallelPhysics) {
+    	this.parallelPhysics = parallelPhysics;
+    	if (parallelPhysics) batchPhysics = true;
+    	fleetState = new FleetState(parallelPhysics ? FleetState.sharedPool() : null);
     }
     
+    public void setFlightGenerationInterval(double flightGenerationInterval) {
+		this.flightGenerationInterval = flightGenerationInterval;
+	}
+    
+    public void setMaxAircraft(int maxAircraft) {
+		this.maxAircraft = maxAircraft;
+	}
+    
+    public void setMaxTotalAircraft(int maxTotalAircraft) {
+		this.maxTotalAircraft = maxTotalAircraft;
+	}
+    
+    public int totalAircraft() {
+		return totalAircraft;
+	}
+    
+    public double timeElapsed() {
+		return timeElapsed;
+	}
+    
     public void setFlightGenerationTimeElapsed(double flightGenerationTimeElapsed) {
 		this.flightGenerationTimeElapsed = flightGenerationTimeElapsed;
 	}
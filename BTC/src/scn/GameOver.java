@@ -5,6 +5,7 @@ import java.io.File;
 import cls.Aircraft;
 import cls.Vector;
 import lib.SpriteAnimation;
+import lib.jog.assets;
 import lib.jog.audio;
 import lib.jog.audio.Sound;
 import lib.jog.graphics;
@@ -58,11 +59,14 @@ public class GameOver extends Scene {
 		super(main);
 		crashedAircraft1 = aircraft1;
 		crashedAircraft2 = aircraft2;
+		// No longer stepped, so draw them where they crashed
+		crashedAircraft1.snapToPosition();
+		crashedAircraft2.snapToPosition();
 		finalScore = score;
 		crash = new Vector(aircraft1.position().x(), aircraft2.position().y(), 0);
 		int framesAcross = 8;
 		int framesDown = 4;
-		explosion = graphics.newImage("gfx" + File.separator + "explosionFrames.png");
+		explosion = assets.image("gfx" + File.separator + "explosionFrames.png");
 		Vector midPoint = crashedAircraft1.position()
 				.add(crashedAircraft2.position()).scaleBy(0.5);
 		Vector explosionPos = midPoint.sub( new Vector(explosion.width()/(framesAcross*2),
@@ -78,7 +82,9 @@ public class GameOver extends Scene {
 	@Override
 	public void start() {
 		if (!Main.testing) {
-			playSound(audio.newSoundEffect("sfx" + File.separator + "crash.ogg"));
+			Sound crash = assets.sound("sfx" + File.separator + "crash.ogg");
+			crash.setPriority(Sound.HIGH_PRIORITY);
+			playSound(crash);
 		}
 		
 		deaths = (int)( Math.random() * 500) + 300;
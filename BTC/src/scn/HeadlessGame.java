@@ -0,0 +1,74 @@
+package scn;
+
+import cls.Aircraft;
+
+/**
+ * <h1>HeadlessGame</h1>
+ * <p>
+ * A game which can be run without a window or a {@link btc.Main} to hold it,
+ * for simulating games as fast as possible.
+ * </p>
+ * <p>
+ * Instead of moving to the game over or shop scenes, the game records how
+ * it ended and stops. {@link btc.Main#initialiseHeadless()} must have been
+ * called first.
+ * </p>
+ */
+public class HeadlessGame extends Game {
+
+	/** Whether the game has ended, by a crash or by all flights finishing */
+	private boolean ended;
+
+	/** Whether the game ended in a crash */
+	private boolean crashed;
+
+	/** The score the game ended with */
+	private int finalScore;
+
+	/**
+	 * Constructor for a headless game
+	 * @param difficulty the difficulty to play at
+	 */
+	public HeadlessGame(int difficulty) {
+		super(null, difficulty);
+	}
+
+	@Override
+	public void gameWin(int score) {
+		ended = true;
+		finalScore = score;
+	}
+
+	@Override
+	public void gameOver(Aircraft aircraft1, Aircraft aircraft2, int score) {
+		ended = true;
+		crashed = true;
+		finalScore = score;
+	}
+
+	/**
+	 * Checks whether the game has ended.
+	 * @return true if the game ended in a crash or a win
+	 */
+	public boolean hasEnded() {
+		return ended;
+	}
+
+	/**
+	 * Checks whether the game ended in a crash.
+	 * @return true if two aircraft crashed
+	 */
+	public boolean hasCrashed() {
+		return crashed;
+	}
+
+	/**
+	 * Gets the score the game ended with, or the current score if it is
+	 * still running.
+	 * @return the score
+	 */
+	public int finalScore() {
+		return ended ? finalScore : totalScore();
+	}
+
+}
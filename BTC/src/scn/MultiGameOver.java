@@ -44,6 +44,7 @@ public class MultiGameOver extends Scene {
 	 */
 	@Override
 	public void start() {
+		System.out.println(networkThread.getOutboxReport());
 		if (winner) {
 			textBox = new lib.TextBox(64, 96, window.width() - 128, window.height() - 96, 32);
 			textBox.addText("You took over the opposing airspace");
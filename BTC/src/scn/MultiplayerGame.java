@@ -5,6 +5,7 @@ import java.util.Random;
 import thr.NetworkThread;
 import cls.Aircraft;
 import cls.Airport;
+import cls.RandomStreams;
 import cls.Waypoint;
 import cls.Aircraft.AirportState;
 import cls.Aircraft.AltitudeState;
@@ -294,14 +295,15 @@ public class MultiplayerGame extends Game {
 		// Generating a new route for the aircraft
 		Waypoint origin = tempAircraft.getRoute()[0];
 		Waypoint[] waypoints = airspaceWaypoints;
-		int d = new Random().nextInt(11);
+		Random random = random(RandomStreams.Stream.ROUTES);
+		int d = random.nextInt(11);
 		if (d < 5){
-			d = (new Random()).nextInt(flightExitPoints.length);
+			d = random.nextInt(flightExitPoints.length);
 		} else {
-			d = (new Random()).nextInt(airports.length);
+			d = random.nextInt(airports.length);
 		}
 		Waypoint destination = flightExitPoints[d];
-		aircraftList().get(i).setRoute(aircraftList().get(i).findGreedyRoute(origin, destination, waypoints));
+		aircraftList().get(i).setRoute(aircraftList().get(i).findRoute(origin, destination, waypoints));
 		networkThread.addToBuffer(selectedAircraft);
 	}
 	
@@ -503,24 +505,13 @@ public class MultiplayerGame extends Game {
 	}
 	
 	/**
-	 * Checks the aircraftInAirspace to see if a flight already exists
-	 * @param a the aircraft to check the airspace for
-	 * @return the index of the flight if it exists in the airspace, else -2
-	 * -2 used since -1 is in use as an error code due to a player quitting.
+	 * Finds a flight in the aircraftInAirspace by its unique name,
+	 * using the airspace's index rather than searching it.
+	 * @param name the name of the flight to find
+	 * @return the flight, or null if it is not in the airspace
 	 */
-	public int existsInAirspace(Aircraft a){
-		//check for equality using aircraft's unique names
-		//cant use ArrayList.contains(object o) since new flights will have different attributes
-		//e.g. differeny x,y pos, altitude, etc.
-		//Hence contains(o) will not consider them equal.
-		String name = a.name();
-		for (int i = 0; i < aircraftInAirspace.size(); i++){
-			if (aircraftInAirspace.get(i).name().equals(name)){
-				return i;
-			}
-		}
-		//no match
-		return -2;
+	public Aircraft findInAirspace(String name){
+		return aircraftInAirspace.get(name);
 	}
 	
 	
@@ -532,6 +523,7 @@ public class MultiplayerGame extends Game {
         	case input.KEY_ESCAPE:
         		//main.closeScene() called in super.keyReleased.
         		networkThread.escapeThread();
+        		System.out.println(networkThread.getOutboxReport());
         		break;
         	case input.KEY_UP:
         		if (selectedAircraft != null){
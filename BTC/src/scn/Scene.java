@@ -16,7 +16,9 @@ public abstract class Scene implements lib.jog.input.EventHandler {
 	 */
 	protected Scene(btc.Main main) {
 		this.main = main;
-		monitorImage = lib.jog.graphics.newImage("gfx" + File.separator + "monitor.png");
+		if (!btc.Main.testing) {
+			monitorImage = lib.jog.assets.image("gfx" + File.separator + "monitor.png");
+		}
 	}
 	
 	/**
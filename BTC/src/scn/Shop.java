@@ -2,6 +2,7 @@ package scn;
 
 import java.io.File;
 
+import lib.jog.assets;
 import lib.jog.audio.Sound;
 import lib.jog.graphics;
 import lib.jog.graphics.Image;
@@ -90,13 +91,13 @@ public class Shop extends Scene {
 		 * The constructor itself sets the images default locations to be drawn on screen
 		 * It also scales the images if the screen size is less than the target screen size
 		 */
-		barNoBubble = graphics.newImage("gfx" + File.separator + "barGuy.png", 225, 225, scale);
-		barBubble = graphics.newImage("gfx" + File.separator + "barGuySpeechBubble.png", 225, 225, scale);
-		barNoBubbleNoBear = graphics.newImage("gfx" + File.separator + "barGuyNoBear.png", 225, 225, scale);
-		barBubbleNoBear = graphics.newImage("gfx" + File.separator + "barGuySpeechBubbleNoBear.png", 225, 225, scale);
-		beer = graphics.newImage("gfx" + File.separator + "beerSprite.png", 825, 350, scale);
-		food = graphics.newImage("gfx" + File.separator + "burgerSprite.png", 825, 550, scale);
-		bearPlush = graphics.newImage("gfx" + File.separator + "bearSprite.png", 1050, 350, scale);	
+		barNoBubble = assets.image("gfx" + File.separator + "barGuy.png", 225, 225, scale);
+		barBubble = assets.image("gfx" + File.separator + "barGuySpeechBubble.png", 225, 225, scale);
+		barNoBubbleNoBear = assets.image("gfx" + File.separator + "barGuyNoBear.png", 225, 225, scale);
+		barBubbleNoBear = assets.image("gfx" + File.separator + "barGuySpeechBubbleNoBear.png", 225, 225, scale);
+		beer = assets.image("gfx" + File.separator + "beerSprite.png", 825, 350, scale);
+		food = assets.image("gfx" + File.separator + "burgerSprite.png", 825, 550, scale);
+		bearPlush = assets.image("gfx" + File.separator + "bearSprite.png", 1050, 350, scale);	
 	}
 
 	@Override
@@ -6,6 +6,7 @@ import java.io.IOException;
 import java.net.URI;
 import java.net.URISyntaxException;
 
+import lib.jog.assets;
 import lib.jog.audio;
 import lib.jog.audio.Sound;
 import lib.jog.graphics;
@@ -21,7 +22,7 @@ public class Title extends Scene {
 	private final static String HELP_URL = "https://slw546.github.io/SEPR4/usermanual.html";
 
 	/**
-	 * The 'beep' played as the radar makes a sweep
+	 * The 'beep' played as the radar makes a sweep, once the sounds have loaded
 	 */
 	private audio.Sound beep;
 
@@ -50,11 +51,6 @@ public class Title extends Scene {
 	 */
 	@Override
 	public void start() {
-		if (!Main.testing) {
-			beep = audio.newSoundEffect("sfx" + File.separator + "beep.ogg");
-			beep.setVolume(0.2f);
-		}
-		
 		buttons = new lib.ButtonText[5];
 		
 		// Start Game button (assessment 3 game)
@@ -121,12 +117,17 @@ public class Title extends Scene {
 	@Override
 	public void update(double dt) {
 		angle += dt * (3d / 4d); //increase the angle of the radar sweep
+		
+		if (beep == null && !Main.testing && assets.isLoaded()) {
+			beep = assets.sound("sfx" + File.separator + "beep.ogg");
+			beep.setVolume(0.2f);
+		}
 
 		//Check the angle of the radar sweep;
 		//If approaching the BTC title string, play the beep
 		double beepTimer = (angle * 4) + (Math.PI * 4 / 5); 
 		beepTimer %= (2 * Math.PI);
-		if ( beepTimer <= 0.1 ) {
+		if ( beepTimer <= 0.1 && beep != null ) {
 			playSound(beep);
 		}
 	}
@@ -243,6 +244,14 @@ public class Title extends Scene {
 		graphics.print("Added to by: Team GOA", 20, 850 + 16);
 		graphics.print("Published by: Team FLR", 20, 850 + 32);
 
+		// Draw loading progress, while the images and sounds load in the background
+		if (!assets.isLoaded()) {
+			double progress = assets.progress();
+			graphics.print("Loading... " + (int)(progress * 100) + "%", 580, 812);
+			graphics.rectangle(false, 580, 826, 620, 8);
+			graphics.rectangle(true, 580, 826, 620 * progress, 8);
+		}
+
 		// Draw Buttons
 		for (lib.ButtonText b : buttons) {
 			if(b != null) {
@@ -6,11 +6,11 @@ import java.io.ObjectOutputStream;
 import java.net.Socket;
 import java.net.SocketException;
 import java.net.UnknownHostException;
+import java.nio.channels.UnresolvedAddressException;
 
 import lib.jog.input;
 import btc.Main;
 import cls.Aircraft;
-import cls.AircraftBuffer;
 import scn.MultiplayerGame;
 import scn.MultiplayerSetUp;
 
@@ -36,8 +36,6 @@ public class ClientThread extends NetworkThread {
 		this.hostAddress = hostAddress;
 		this.lobby = lobby;
 		this.main = main;
-		//init aircraftBuffer
-		aircraftBuffer = new AircraftBuffer();
 	}
 	
 	@Override
@@ -65,6 +63,26 @@ public class ClientThread extends NetworkThread {
 		while (listening){
 			//carry out pre-game lobby operations.
 			//wait for the order from the host to begin the game
+			if (pipelined){
+				SyncFrame frame = recieveFrame(1000);
+				if (frame == null){
+					//nothing yet, keep waiting
+					continue;
+				}
+				if (frame.kind() == SyncFrame.Kind.QUIT){
+					//host has left the lobby
+					lobby.setNetworkState(MultiplayerSetUp.networkStates.CONNECTION_LOST);
+					lobby.setErrorCause(MultiplayerSetUp.errorCauses.CLASS_CAST_EXCEPTION);
+					killThread();
+				} else if (frame.kind() == SyncFrame.Kind.START){
+					lobby.setStartOrdered(true);
+					game.setLastMoveTime(System.currentTimeMillis()- 100);
+					beginPipelinedSync();
+					this.playing = true;
+					break;
+				}
+				continue;
+			}
 			String order = recieveString();
 			if (order.equals("start")){
 				lobby.setStartOrdered(true);
@@ -81,13 +99,20 @@ public class ClientThread extends NetworkThread {
 		//not done earlier, as we don't care if it takes more than 5 seconds
 		//for the host to start the game.
 		try {
-			socket.setSoTimeout(1000);
+			if (socket != null) socket.setSoTimeout(1000);
 		} catch (SocketException e1) {
 			System.err.println("Failed to set socket timeout");
 			e1.printStackTrace();
 		}
 		System.out.println("----------------------------------");
 		while (listening && playing) {
+			if (pipelined){
+				syncPipelined();
+				//wait 1/10th of a second before sending again to reduce network load,
+				//applying the other player's changes as they arrive
+				awaitFrames(100);
+				continue;
+			}
 			sendAircraftBuffer();
 			recieveAircraftBuffer();
 			syncScore();
@@ -100,12 +125,7 @@ public class ClientThread extends NetworkThread {
 		}
 		//close the socket on the way out.
 		//allows for a new connection to be started in the lobby without exiting the program
-		try {
-			socket.close();
-		} catch (IOException e) {
-			System.err.println("failed to close socket");
-			e.printStackTrace();
-		}
+		closeSocket();
 	}
 	
 	@Override
@@ -141,6 +161,16 @@ public class ClientThread extends NetworkThread {
 	@Override
 	public void setUp() throws UnknownHostException, IOException {
 		lobby.setNetworkState(MultiplayerSetUp.networkStates.ATTEMPTING_CONNECTION);
+		if (pipelined){
+			try {
+				transport = NioTransport.connect(hostAddress, portNumber);
+			} catch (UnresolvedAddressException e) {
+				throw new UnknownHostException(hostAddress);
+			}
+			listening = true;
+			lobby.setNetworkState(MultiplayerSetUp.networkStates.CONNECTION_ESTABLISHED);
+			return;
+		}
 		//Set up connection to the host
 		Socket socket = new Socket(hostAddress, portNumber);
 		this.socket = socket;
@@ -158,6 +188,11 @@ public class ClientThread extends NetworkThread {
 	 */
 	@Override
 	public void testCommunication() {
+		if (pipelined){
+			//check the host speaks the same protocol
+			exchangeHello();
+			return;
+		}
 		//Comms test
 		System.out.println("Begin comms test");
 		try {
@@ -197,12 +232,7 @@ public class ClientThread extends NetworkThread {
 		}
 		//close socket
 		//allows for a new connection to be started in the lobby without exiting the program
-		try {
-			socket.close();
-		} catch (IOException e) {
-			System.err.println("failed to close sockets");
-			e.printStackTrace();
-		}
+		closeSocket();
 		//end while loops to exit the thread
 		this.playing = false;
 		this.listening = false;
@@ -219,13 +249,19 @@ public class ClientThread extends NetworkThread {
 		//set error messages, connection state
 		lobby.setNetworkState(MultiplayerSetUp.networkStates.CONNECTION_LOST);
 		lobby.setErrorCause(MultiplayerSetUp.errorCauses.CLOSED_BY_YOU);
-		//close socket
-		try {
-			socket.close();
-		} catch (IOException e) {
-			System.err.println("failed to close sockets");
-			e.printStackTrace();
+		if (pipelined){
+			//set flags to exit while loops
+			this.playing = false;
+			this.listening = false;
+			//tell the host we've gone; the thread closes the transport
+			//once this has been sent
+			if (transport != null && transport.isOpen()){
+				sendFrame(SyncFrame.quit());
+			}
+			return;
 		}
+		//close socket
+		closeSocket();
 		//set flags to exit while loops
 		this.playing = false;
 		this.listening = false;
@@ -236,6 +272,19 @@ public class ClientThread extends NetworkThread {
 		sendObject(Integer.MAX_VALUE);
 	}
 	
+	/**
+	 * Close whichever connection is open
+	 */
+	private void closeSocket(){
+		closeTransport();
+		try {
+			if (socket != null) socket.close();
+		} catch (IOException e) {
+			System.err.println("failed to close sockets");
+			e.printStackTrace();
+		}
+	}
+	
 	public void endGame(){
 		//set flags to exit while loops
 		this.playing = false;
@@ -245,5 +294,6 @@ public class ClientThread extends NetworkThread {
 	//Getters and Setters
 	public void setGameScene(MultiplayerGame game){
 		this.game = game;
+		flightCodec.setContext(game.context());
 	}
 }
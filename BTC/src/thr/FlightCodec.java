@@ -0,0 +1,337 @@
+package thr;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+
+import cls.Aircraft;
+import cls.AircraftBuffer;
+import cls.Aircraft.AirportState;
+import cls.Aircraft.AltitudeState;
+import cls.SimulationContext;
+import cls.Vector;
+import cls.Waypoint;
+
+/**
+ * <h1>FlightCodec</h1>
+ * <p>
+ * Writes and reads the binary messages used to keep both players' flights
+ * in sync, in place of serialising whole aircraft.
+ * </p>
+ * <p>
+ * A message is a version byte, then the number of flights, then for each
+ * flight its name, a set of flags saying which groups of fields follow
+ * (see {@link FlightUpdate}), then those fields. Waypoints and airports
+ * are sent as their index in a {@link WaypointTable}, and only waypoints
+ * outside it, such as a takeoff position, are sent in full.
+ * </p>
+ * <p>
+ * Only the fields which have changed since both players last agreed on a
+ * flight are sent. The codec remembers the last state of each flight it
+ * wrote or read, so one codec must be used for both directions of a
+ * connection. A flight it hasn't seen before is sent in full.
+ * </p>
+ */
+public class FlightCodec {
+
+	/** The version of the message format written */
+	public static final int VERSION = 1;
+
+	/** Written in place of the length of a missing route */
+	private static final int NO_ROUTE = -1;
+
+	/** Written in place of the ordinal of a missing state */
+	private static final int NO_STATE = -1;
+
+	/** The table fixed at construction, or null to use the game's */
+	private final WaypointTable fixedTable;
+
+	/** The context of the game whose waypoints are used, or null for the standalone context */
+	private SimulationContext context;
+
+	/** The table in use */
+	private WaypointTable table;
+
+	/** The last state both players agreed on for each flight, by name */
+	private final HashMap<String, FlightUpdate> agreed = new HashMap<String, FlightUpdate>();
+
+	/**
+	 * Constructor for a codec using the waypoints of the game set with
+	 * {@link #setContext(SimulationContext)}
+	 */
+	public FlightCodec() {
+		this.fixedTable = null;
+	}
+
+	/**
+	 * Constructor for a codec using a fixed table of waypoints
+	 * @param table the waypoints and airports to send as indices
+	 */
+	public FlightCodec(WaypointTable table) {
+		this.fixedTable = table;
+		this.table = table;
+	}
+
+	/**
+	 * Writes a message syncing some aircraft.
+	 * @param aircraft the aircraft to sync
+	 * @return the message
+	 */
+	public byte[] encode(Aircraft[] aircraft) throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream(32 + 64 * aircraft.length);
+		DataOutputStream out = new DataOutputStream(bytes);
+		encode(aircraft, out);
+		out.flush();
+		return bytes.toByteArray();
+	}
+
+	/**
+	 * Writes a message syncing some aircraft.
+	 * @param aircraft the aircraft to sync
+	 * @param out the stream to write to
+	 */
+	public synchronized void encode(Aircraft[] aircraft, DataOutputStream out)
+			throws IOException {
+		WaypointTable table = table();
+		out.writeByte(VERSION);
+		out.writeShort(aircraft.length);
+		for (Aircraft a : aircraft) {
+			FlightUpdate current = FlightUpdate.of(a);
+			FlightUpdate previous = agreed.get(current.name);
+			current.fields = previous == null ? FlightUpdate.ALL
+					: current.changedSince(previous);
+			write(current, out, table);
+			agreed.put(current.name, current);
+		}
+	}
+
+	/**
+	 * Reads a message.
+	 * @param message the message
+	 * @return the update for each flight in the message
+	 * @throws IOException if the message is malformed or of an unknown version
+	 */
+	public ArrayList<FlightUpdate> decode(byte[] message) throws IOException {
+		return decode(new DataInputStream(new ByteArrayInputStream(message)));
+	}
+
+	/**
+	 * Reads a message.
+	 * @param in the stream to read from
+	 * @return the update for each flight in the message
+	 * @throws IOException if the message is malformed or of an unknown version
+	 */
+	public synchronized ArrayList<FlightUpdate> decode(DataInputStream in)
+			throws IOException {
+		WaypointTable table = table();
+		int version = in.readUnsignedByte();
+		if (version != VERSION) {
+			throw new IOException("Unsupported flight sync version " + version
+					+ ", expected " + VERSION);
+		}
+		int count = in.readUnsignedShort();
+		ArrayList<FlightUpdate> updates = new ArrayList<FlightUpdate>(count);
+		for (int i = 0; i < count; i++) {
+			FlightUpdate update = read(in, table);
+			updates.add(update);
+
+			FlightUpdate previous = agreed.get(update.name);
+			if (previous == null) {
+				// Can only agree on a flight once it has been seen in full
+				if (update.isNewFlight()) {
+					FlightUpdate copy = new FlightUpdate();
+					copy.name = update.name;
+					copy.merge(update);
+					agreed.put(update.name, copy);
+				}
+			} else {
+				previous.merge(update);
+			}
+		}
+		return updates;
+	}
+
+	/**
+	 * Forgets every flight which is no longer in the airspace, so they
+	 * are sent in full if they return.
+	 * @param airspace the aircraft in the airspace
+	 */
+	public synchronized void retain(AircraftBuffer airspace) {
+		HashSet<String> names = new HashSet<String>();
+		for (Aircraft aircraft : airspace) {
+			names.add(aircraft.name());
+		}
+		Iterator<String> flights = agreed.keySet().iterator();
+		while (flights.hasNext()) {
+			if (!names.contains(flights.next())) flights.remove();
+		}
+	}
+
+	/**
+	 * Forgets every flight, so they are all sent in full next time.
+	 */
+	public synchronized void reset() {
+		agreed.clear();
+	}
+
+	/**
+	 * Sets the game whose waypoints and airports are sent as indices.
+	 * Flights are sent in full again once a new game is set.
+	 * @param context the context holding the game's airspace
+	 */
+	public synchronized void setContext(SimulationContext context) {
+		this.context = context;
+	}
+
+	/**
+	 * Gets the table of waypoints to use, rebuilding it if a new game has been set.
+	 * @return the table
+	 */
+	private WaypointTable table() {
+		if (fixedTable != null) return fixedTable;
+		SimulationContext context = this.context != null ? this.context
+				: SimulationContext.standalone();
+		if (table == null || !table.isFor(context)) {
+			table = WaypointTable.of(context);
+			agreed.clear();
+		}
+		return table;
+	}
+
+	private static void write(FlightUpdate update, DataOutputStream out,
+			WaypointTable table) throws IOException {
+		out.writeUTF(update.name);
+		out.writeShort(update.fields);
+		if (update.has(FlightUpdate.FLIGHT_PLAN)) {
+			writeString(update.originName, out);
+			writeString(update.destinationName, out);
+			out.writeDouble(update.initialSpeed);
+			if (update.route == null) {
+				out.writeShort(NO_ROUTE);
+			} else {
+				out.writeShort(update.route.length);
+				for (Waypoint waypoint : update.route) {
+					writeWaypoint(waypoint, out, table);
+				}
+			}
+			out.writeBoolean(update.destination != null);
+			if (update.destination != null) writeWaypoint(update.destination, out, table);
+			out.writeByte(table.indexOf(update.airport));
+		}
+		if (update.has(FlightUpdate.POSITION)) writeVector(update.position, out);
+		if (update.has(FlightUpdate.VELOCITY)) writeVector(update.velocity, out);
+		if (update.has(FlightUpdate.TARGET)) writeVector(update.target, out);
+		if (update.has(FlightUpdate.ROUTE_STAGE)) out.writeShort(update.routeStage);
+		if (update.has(FlightUpdate.ALTITUDE_STATE)) writeState(update.altitudeState, out);
+		if (update.has(FlightUpdate.OWNER)) out.writeByte(update.owner);
+		if (update.has(FlightUpdate.STATUS)) writeState(update.status, out);
+		if (update.has(FlightUpdate.MANUAL_CONTROL)) {
+			out.writeBoolean(update.manuallyControlled);
+			out.writeDouble(update.manualBearing);
+		}
+		if (update.has(FlightUpdate.SCORE)) out.writeInt(update.score);
+	}
+
+	private static FlightUpdate read(DataInputStream in, WaypointTable table)
+			throws IOException {
+		FlightUpdate update = new FlightUpdate();
+		update.name = in.readUTF();
+		update.fields = in.readUnsignedShort();
+		if ((update.fields & ~FlightUpdate.ALL) != 0) {
+			throw new IOException("Unknown fields " + Integer.toHexString(update.fields)
+					+ " for " + update.name);
+		}
+		try {
+			if (update.has(FlightUpdate.FLIGHT_PLAN)) {
+				update.originName = readString(in);
+				update.destinationName = readString(in);
+				update.initialSpeed = in.readDouble();
+				int length = in.readShort();
+				if (length < NO_ROUTE) {
+					throw new IOException("Bad route length " + length + " for " + update.name);
+				}
+				if (length != NO_ROUTE) {
+					update.route = new Waypoint[length];
+					for (int i = 0; i < length; i++) {
+						update.route[i] = readWaypoint(in, table);
+					}
+				}
+				if (in.readBoolean()) update.destination = readWaypoint(in, table);
+				update.airport = table.airport(in.readByte());
+			}
+			if (update.has(FlightUpdate.POSITION)) readVector(in, update.position);
+			if (update.has(FlightUpdate.VELOCITY)) readVector(in, update.velocity);
+			if (update.has(FlightUpdate.TARGET)) readVector(in, update.target);
+			if (update.has(FlightUpdate.ROUTE_STAGE)) update.routeStage = in.readShort();
+			if (update.has(FlightUpdate.ALTITUDE_STATE)) {
+				int state = in.readByte();
+				update.altitudeState = state == NO_STATE ? null : AltitudeState.values()[state];
+			}
+			if (update.has(FlightUpdate.OWNER)) update.owner = in.readByte();
+			if (update.has(FlightUpdate.STATUS)) {
+				int state = in.readByte();
+				update.status = state == NO_STATE ? null : AirportState.values()[state];
+			}
+			if (update.has(FlightUpdate.MANUAL_CONTROL)) {
+				update.manuallyControlled = in.readBoolean();
+				update.manualBearing = in.readDouble();
+			}
+			if (update.has(FlightUpdate.SCORE)) update.score = in.readInt();
+		} catch (IndexOutOfBoundsException e) {
+			throw new IOException("Bad index in update for " + update.name, e);
+		}
+		return update;
+	}
+
+	private static void writeWaypoint(Waypoint waypoint, DataOutputStream out,
+			WaypointTable table) throws IOException {
+		int index = table.indexOf(waypoint);
+		out.writeShort(index);
+		if (index == WaypointTable.NONE) {
+			out.writeDouble(waypoint.position().x());
+			out.writeDouble(waypoint.position().y());
+			out.writeDouble(waypoint.position().z());
+			out.writeByte(waypoint.type().ordinal());
+		}
+	}
+
+	private static Waypoint readWaypoint(DataInputStream in, WaypointTable table)
+			throws IOException {
+		int index = in.readShort();
+		if (index != WaypointTable.NONE) return table.waypoint(index);
+		Vector position = new Vector(in.readDouble(), in.readDouble(), in.readDouble());
+		return new Waypoint(position, Waypoint.WaypointType.values()[in.readByte()]);
+	}
+
+	private static void writeVector(double[] vector, DataOutputStream out) throws IOException {
+		out.writeDouble(vector[0]);
+		out.writeDouble(vector[1]);
+		out.writeDouble(vector[2]);
+	}
+
+	private static void readVector(DataInputStream in, double[] into) throws IOException {
+		into[0] = in.readDouble();
+		into[1] = in.readDouble();
+		into[2] = in.readDouble();
+	}
+
+	private static void writeState(Enum<?> state, DataOutputStream out) throws IOException {
+		out.writeByte(state == null ? NO_STATE : state.ordinal());
+	}
+
+	private static void writeString(String string, DataOutputStream out) throws IOException {
+		out.writeBoolean(string != null);
+		if (string != null) out.writeUTF(string);
+	}
+
+	private static String readString(DataInputStream in) throws IOException {
+		return in.readBoolean() ? in.readUTF() : null;
+	}
+
+}
@@ -0,0 +1,88 @@
+package thr;
+
+import java.util.LinkedHashMap;
+
+import cls.Aircraft;
+
+/**
+ * <h1>FlightOutbox</h1>
+ * <p>
+ * Holds the flights with changes waiting to be sent to the other player,
+ * keyed by flight name, so that each flight is sent once with its latest
+ * state however many times it changed since the last sync.
+ * </p>
+ * <p>
+ * The game thread adds flights as they change, and the network thread
+ * takes them all at once when it syncs, so both may use the outbox at
+ * the same time. Flights are sent in the order they were first added.
+ * </p>
+ */
+public class FlightOutbox {
+
+	/** The flights waiting to be sent, by name */
+	private final LinkedHashMap<String, Aircraft> waiting = new LinkedHashMap<String, Aircraft>();
+
+	/** The number of times flights have been added */
+	private long added;
+
+	/** The number of times a flight was added while it was already waiting */
+	private long coalesced;
+
+	/** The most flights which have been waiting at once */
+	private int peakDepth;
+
+	/**
+	 * Adds a flight to be sent, replacing it if it is already waiting.
+	 * @param aircraft the flight, in its latest state
+	 */
+	public synchronized void put(Aircraft aircraft) {
+		added++;
+		if (waiting.put(aircraft.name(), aircraft) != null) {
+			coalesced++;
+		}
+		peakDepth = Math.max(peakDepth, waiting.size());
+	}
+
+	/**
+	 * Takes every flight waiting to be sent, leaving the outbox empty.
+	 * @return the flights, in the order they were first added
+	 */
+	public synchronized Aircraft[] drain() {
+		Aircraft[] drained = waiting.values().toArray(new Aircraft[waiting.size()]);
+		waiting.clear();
+		return drained;
+	}
+
+	/**
+	 * @return the number of flights waiting to be sent
+	 */
+	public synchronized int size() {
+		return waiting.size();
+	}
+
+	/**
+	 * @return the most flights which have been waiting at once
+	 */
+	public synchronized int peakDepth() {
+		return peakDepth;
+	}
+
+	/**
+	 * Gets how many of the flights added replaced one already waiting,
+	 * rather than needing sending themselves.
+	 * @return the fraction of flights added which were coalesced, from 0 to 1
+	 */
+	public synchronized double coalescingRatio() {
+		return added == 0 ? 0 : (double) coalesced / added;
+	}
+
+	/**
+	 * @return a summary of the flights added and sent, for the console
+	 */
+	public synchronized String report() {
+		return String.format("Outbox: %d flights added, %d sent, %.1f%% coalesced, %d waiting, peak %d",
+				added, added - coalesced - waiting.size(), coalescingRatio() * 100,
+				waiting.size(), peakDepth);
+	}
+
+}
@@ -0,0 +1,298 @@
+package thr;
+
+import java.util.Arrays;
+
+import cls.Aircraft;
+import cls.Aircraft.AirportState;
+import cls.Aircraft.AltitudeState;
+import cls.Airport;
+import cls.SimulationContext;
+import cls.Vector;
+import cls.Waypoint;
+
+/**
+ * <h1>FlightUpdate</h1>
+ * <p>
+ * The state of a flight sent between players, or the part of it which
+ * has changed. Each group of fields is flagged as present or not; a new
+ * flight has every group present.
+ * </p>
+ * <p>
+ * Updates are written and read by {@link FlightCodec}, and applied to the
+ * receiver's aircraft with {@link #applyTo(Aircraft)}.
+ * </p>
+ */
+public class FlightUpdate {
+
+	/** The names of the origin and destination, the initial speed, the
+	 * route, the destination waypoint and the airport */
+	public static final int FLIGHT_PLAN = 1 << 0;
+
+	/** The position */
+	public static final int POSITION = 1 << 1;
+
+	/** The velocity */
+	public static final int VELOCITY = 1 << 2;
+
+	/** The position being flown towards */
+	public static final int TARGET = 1 << 3;
+
+	/** The stage reached in the route */
+	public static final int ROUTE_STAGE = 1 << 4;
+
+	/** Whether climbing, falling or level */
+	public static final int ALTITUDE_STATE = 1 << 5;
+
+	/** Which player owns the aircraft */
+	public static final int OWNER = 1 << 6;
+
+	/** The airport state */
+	public static final int STATUS = 1 << 7;
+
+	/** Whether manually controlled, and the bearing being steered to */
+	public static final int MANUAL_CONTROL = 1 << 8;
+
+	/** The score for the flight */
+	public static final int SCORE = 1 << 9;
+
+	/** Every group of fields, as for a new flight */
+	public static final int ALL = (1 << 10) - 1;
+
+	/** The flight's name, which identifies it to both players */
+	String name;
+
+	/** The groups of fields present */
+	int fields;
+
+	String originName;
+	String destinationName;
+	double initialSpeed;
+	Waypoint[] route;
+	Waypoint destination;
+	Airport airport;
+	final double[] position = new double[3];
+	final double[] velocity = new double[3];
+	final double[] target = new double[3];
+	int routeStage;
+	AltitudeState altitudeState;
+	int owner;
+	AirportState status;
+	boolean manuallyControlled;
+	double manualBearing;
+	int score;
+
+	/**
+	 * Constructor for an empty update, to be read into
+	 */
+	FlightUpdate() {
+	}
+
+	/**
+	 * Records the whole current state of an aircraft.
+	 * @param aircraft the aircraft to record
+	 * @return an update with every group of fields present
+	 */
+	public static FlightUpdate of(Aircraft aircraft) {
+		FlightUpdate update = new FlightUpdate();
+		update.name = aircraft.name();
+		update.fields = ALL;
+		update.originName = aircraft.originName();
+		update.destinationName = aircraft.destinationName();
+		update.initialSpeed = aircraft.initialSpeed();
+		update.route = aircraft.getRoute();
+		update.destination = aircraft.getDestination();
+		update.airport = aircraft.airport();
+		copy(aircraft.position(), update.position);
+		copy(aircraft.getVelocity(), update.velocity);
+		copy(aircraft.getCurrentTarget(), update.target);
+		update.routeStage = aircraft.currentRouteStage();
+		update.altitudeState = aircraft.altitudeState();
+		update.owner = aircraft.owner();
+		update.status = aircraft.status();
+		update.manuallyControlled = aircraft.isManuallyControlled();
+		update.manualBearing = aircraft.manualBearing();
+		update.score = aircraft.score();
+		return update;
+	}
+
+	/**
+	 * Gets the name of the flight updated.
+	 * @return the flight's name
+	 */
+	public String name() {
+		return name;
+	}
+
+	/**
+	 * Gets the groups of fields present.
+	 * @return the flags of each group present
+	 */
+	public int fields() {
+		return fields;
+	}
+
+	/**
+	 * Checks whether a group of fields is present.
+	 * @param field the flag of the group
+	 * @return true if the group is present
+	 */
+	public boolean has(int field) {
+		return (fields & field) != 0;
+	}
+
+	/**
+	 * Checks whether the update holds everything needed to create the flight.
+	 * @return true if every group of fields is present
+	 */
+	public boolean isNewFlight() {
+		return fields == ALL;
+	}
+
+	/**
+	 * Finds the groups of fields which differ from another update's.
+	 * @param other the update to compare with
+	 * @return the flags of each group which differs
+	 */
+	public int changedSince(FlightUpdate other) {
+		int changed = 0;
+		if (!equal(originName, other.originName)
+				|| !equal(destinationName, other.destinationName)
+				|| initialSpeed != other.initialSpeed
+				|| !Arrays.equals(route, other.route)
+				|| destination != other.destination
+				|| airport != other.airport) {
+			changed |= FLIGHT_PLAN;
+		}
+		if (!Arrays.equals(position, other.position)) changed |= POSITION;
+		if (!Arrays.equals(velocity, other.velocity)) changed |= VELOCITY;
+		if (!Arrays.equals(target, other.target)) changed |= TARGET;
+		if (routeStage != other.routeStage) changed |= ROUTE_STAGE;
+		if (altitudeState != other.altitudeState) changed |= ALTITUDE_STATE;
+		if (owner != other.owner) changed |= OWNER;
+		if (status != other.status) changed |= STATUS;
+		if (manuallyControlled != other.manuallyControlled
+				|| Double.compare(manualBearing, other.manualBearing) != 0) {
+			changed |= MANUAL_CONTROL;
+		}
+		if (score != other.score) changed |= SCORE;
+		return changed;
+	}
+
+	/**
+	 * Copies the present groups of fields from another update of the same flight.
+	 * @param other the update to copy from
+	 */
+	public void merge(FlightUpdate other) {
+		if (other.has(FLIGHT_PLAN)) {
+			originName = other.originName;
+			destinationName = other.destinationName;
+			initialSpeed = other.initialSpeed;
+			route = other.route;
+			destination = other.destination;
+			airport = other.airport;
+		}
+		if (other.has(POSITION)) System.arraycopy(other.position, 0, position, 0, 3);
+		if (other.has(VELOCITY)) System.arraycopy(other.velocity, 0, velocity, 0, 3);
+		if (other.has(TARGET)) System.arraycopy(other.target, 0, target, 0, 3);
+		if (other.has(ROUTE_STAGE)) routeStage = other.routeStage;
+		if (other.has(ALTITUDE_STATE)) altitudeState = other.altitudeState;
+		if (other.has(OWNER)) owner = other.owner;
+		if (other.has(STATUS)) status = other.status;
+		if (other.has(MANUAL_CONTROL)) {
+			manuallyControlled = other.manuallyControlled;
+			manualBearing = other.manualBearing;
+		}
+		if (other.has(SCORE)) score = other.score;
+		fields |= other.fields;
+	}
+
+	/**
+	 * Creates the aircraft for a new flight, outside of any game.
+	 * @return the aircraft, in the state sent
+	 * @throws IllegalStateException if the update is not for a new flight
+	 */
+	public Aircraft createAircraft() {
+		return createAircraft(null);
+	}
+
+	/**
+	 * Creates the aircraft for a new flight in a game.
+	 * @param context the context of the game the aircraft joins,
+	 * 			or null for the standalone context
+	 * @return the aircraft, in the state sent
+	 * @throws IllegalStateException if the update is not for a new flight
+	 */
+	public Aircraft createAircraft(SimulationContext context) {
+		if (!isNewFlight()) {
+			throw new IllegalStateException(name + " is not a new flight");
+		}
+		Aircraft aircraft = new Aircraft(name, originName, destinationName,
+				initialSpeed, route, destination, airport, context);
+		applyTo(aircraft);
+		return aircraft;
+	}
+
+	/**
+	 * Applies the present groups of fields to an aircraft.
+	 * @param aircraft the aircraft to update
+	 */
+	public void applyTo(Aircraft aircraft) {
+		if (has(FLIGHT_PLAN)) {
+			aircraft.setOriginName(originName);
+			aircraft.setDestinationName(destinationName);
+			aircraft.setRoute(route);
+			aircraft.setDestination(destination);
+			aircraft.setAirport(airport);
+		}
+		if (has(ROUTE_STAGE)) aircraft.setCurrentRouteStage(routeStage);
+		// Handing back control turns the aircraft towards its target,
+		// so is done before the velocity and target sent are applied
+		if (has(MANUAL_CONTROL)) {
+			aircraft.setManuallyControlled(manuallyControlled);
+			aircraft.setBearing(manualBearing);
+		}
+		if (has(POSITION)) {
+			aircraft.position().setTo(position[0], position[1], position[2]);
+		}
+		if (has(VELOCITY)) {
+			aircraft.getVelocity().setTo(velocity[0], velocity[1], velocity[2]);
+		}
+		if (has(TARGET)) aircraft.setCurrentTarget(targetOf(aircraft));
+		if (has(ALTITUDE_STATE)) aircraft.setAltitudeState(altitudeState);
+		if (has(OWNER)) aircraft.setOwner(owner);
+		if (has(STATUS)) aircraft.setStatus(status);
+		if (has(SCORE)) aircraft.setScore(score);
+	}
+
+	/**
+	 * Gets the target to give an aircraft. Aircraft usually fly towards the
+	 * waypoint at their route stage, so that waypoint's position is used if
+	 * it matches, rather than a copy.
+	 * @param aircraft the aircraft being updated
+	 * @return the position to fly towards
+	 */
+	private Vector targetOf(Aircraft aircraft) {
+		Waypoint[] route = aircraft.getRoute();
+		int stage = aircraft.currentRouteStage();
+		if (route != null && stage >= 0 && stage < route.length) {
+			Vector waypoint = route[stage].position();
+			if (waypoint.x() == target[0] && waypoint.y() == target[1]
+					&& waypoint.z() == target[2]) {
+				return waypoint;
+			}
+		}
+		return new Vector(target[0], target[1], target[2]);
+	}
+
+	private static void copy(Vector vector, double[] into) {
+		if (vector == null) return;
+		into[0] = vector.x();
+		into[1] = vector.y();
+		into[2] = vector.z();
+	}
+
+	private static boolean equal(String a, String b) {
+		return a == null ? b == null : a.equals(b);
+	}
+
+}
@@ -10,7 +10,6 @@ import java.net.Socket;
 import lib.jog.input;
 import btc.Main;
 import cls.Aircraft;
-import cls.AircraftBuffer;
 import scn.MultiplayerGame;
 import scn.MultiplayerSetUp;
 
@@ -45,8 +44,6 @@ public class HostThread extends NetworkThread {
 		this.portNumber = portNumber;
 		this.lobby = lobby;
 		this.main = main;
-		//init aircraftBuffer
-		aircraftBuffer = new AircraftBuffer();
 	}
 	
 	@Override
@@ -62,13 +59,23 @@ public class HostThread extends NetworkThread {
 		}
 		
 		//Sending a test object
-		testCommunication();
+		if (hosting){
+			testCommunication();
+		}
 		
 		while (hosting){
 			//If lobby has started the game, send game to client and leave this loop.
 			
 			//Something to do, prevents loop from closing..
 			System.out.print("");
+			if (pipelined){
+				//nothing to read until the game starts, so don't spin
+				try {
+					sleep(10);
+				} catch (InterruptedException e) {
+					e.printStackTrace();
+				}
+			}
 			
 			//See if the lobby has clicked start game
 			if (playing){
@@ -79,6 +86,13 @@ public class HostThread extends NetworkThread {
 		}
 		System.out.println("----------------------------------");
 		while(hosting && playing){
+			if (pipelined){
+				syncPipelined();
+				//wait 1/10th of a second before sending again to reduce network load,
+				//applying the other player's changes as they arrive
+				awaitFrames(100);
+				continue;
+			}
 			recieveAircraftBuffer();
 			sendAircraftBuffer();
 			syncScore();
@@ -91,13 +105,7 @@ public class HostThread extends NetworkThread {
 		}
 		//close the sockets on the way out.
 		//allows for a new connection to be started in the lobby without exiting the program
-		try {
-			clientSocket.close();
-			socket.close();
-		} catch (IOException e) {
-			System.err.println("failed to close sockets");
-			e.printStackTrace();
-		}
+		closeSockets();
 	}
 	
 	@Override
@@ -139,6 +147,13 @@ public class HostThread extends NetworkThread {
 		//this is the address of the host pc on the LAN
 		InetAddress addr = InetAddress.getLocalHost();
 		lobby.setAddress(addr.getHostAddress());
+		if (pipelined){
+			//Blocking: Will wait here until a client connects.
+			transport = NioTransport.accept(portNumber);
+			hosting = true;
+			lobby.setNetworkState(MultiplayerSetUp.networkStates.CONNECTION_ESTABLISHED);
+			return;
+		}
 		//Init the ServerSocket and await a connection
 		ServerSocket socket = new ServerSocket(portNumber);
 		//accept an incoming connection request.
@@ -169,9 +184,14 @@ public class HostThread extends NetworkThread {
 	 */
 	public void startGame(){
 		//Alert client that game has started.
-		String start = "start";
-		//send a string which tells client to start the game
-		sendObject(start);
+		if (pipelined){
+			sendFrame(SyncFrame.start());
+			beginPipelinedSync();
+		} else {
+			String start = "start";
+			//send a string which tells client to start the game
+			sendObject(start);
+		}
 		lobby.setStartOrdered(true);
 		game.setLastMoveTime(System.currentTimeMillis());
 	}
@@ -181,6 +201,11 @@ public class HostThread extends NetworkThread {
 	 */
 	@Override
 	public void testCommunication(){
+		if (pipelined){
+			//check the client speaks the same protocol
+			exchangeHello();
+			return;
+		}
 		//generate an aircraft for comm test
 		Aircraft test = new Aircraft();
 		System.out.println("Generated an aircraft to send");
@@ -210,13 +235,7 @@ public class HostThread extends NetworkThread {
 		}
 		//close the sockets
 		//allows for a new connection to be started in the lobby without exiting the program
-		try {
-			clientSocket.close();
-			socket.close();
-		} catch (IOException e) {
-			System.err.println("failed to close sockets");
-			e.printStackTrace();
-		}
+		closeSockets();
 		//end while loops to exit thread
 		this.playing = false;
 		this.hosting = false;
@@ -240,10 +259,30 @@ public class HostThread extends NetworkThread {
 		//send an object to either break the listening thread, or signal game closed.
 		//We can afford to do this since the connection will still be up.
 		//Unlike in killThread, where it may have been lost due to an error.
-		sendObject(Integer.MAX_VALUE);
+		if (pipelined){
+			if (transport != null && transport.isOpen()){
+				sendFrame(SyncFrame.quit());
+			}
+		} else {
+			sendObject(Integer.MAX_VALUE);
+		}
 
 	}
 	
+	/**
+	 * Close whichever connection is open
+	 */
+	private void closeSockets(){
+		closeTransport();
+		try {
+			if (clientSocket != null) clientSocket.close();
+			if (socket != null) socket.close();
+		} catch (IOException e) {
+			System.err.println("failed to close sockets");
+			e.printStackTrace();
+		}
+	}
+	
 	public void endGame(){
 		//set flags to exit while loops
 		this.playing = false;
@@ -254,6 +293,7 @@ public class HostThread extends NetworkThread {
 	//Getters and Setters
 	public void setGameScene(MultiplayerGame game){
 		this.game = game;
+		flightCodec.setContext(game.context());
 	}
 	
 	public void setPlaying(boolean playing){
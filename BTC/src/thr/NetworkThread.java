@@ -5,12 +5,12 @@ import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
 import java.net.SocketTimeoutException;
 import java.net.UnknownHostException;
+import java.util.ArrayList;
 
 import scn.MultiplayerGame;
 import scn.MultiplayerSetUp;
 import btc.Main;
 import cls.Aircraft;
-import cls.AircraftBuffer;
 
 public abstract class NetworkThread extends Thread {
 	
@@ -23,11 +23,52 @@ public abstract class NetworkThread extends Thread {
 	protected MultiplayerGame game;
 	protected Main main;
 	
-	//Buffer of aircraft to be sent
+	//Outbox of aircraft to be sent
 	/**
-	 * The buffer of aircraft with changes requiring synchronisation to the other player
+	 * The aircraft with changes requiring synchronisation to the other player,
+	 * each held once in its latest state
 	 */
-	protected AircraftBuffer aircraftBuffer;
+	protected final FlightOutbox outbox = new FlightOutbox();
+	
+	/**
+	 * Writes and reads the messages syncing aircraft, remembering what
+	 * both players last agreed on for each flight so only changes are sent.
+	 */
+	protected FlightCodec flightCodec = new FlightCodec();
+	
+	//PIPELINED PROTOCOL
+	/**
+	 * Whether to sync with the pipelined protocol over a NioTransport,
+	 * rather than in lock-step over object streams.
+	 * Both players must use the same protocol.
+	 */
+	protected boolean pipelined = true;
+	
+	/**
+	 * The connection to the other player when using the pipelined protocol
+	 */
+	protected NioTransport transport;
+	
+	/**
+	 * How long to wait without hearing from the other player before
+	 * giving up on the connection, in milliseconds
+	 */
+	protected static final long PIPELINED_TIMEOUT = 5000;
+	
+	/** The number of the last sync frame sent */
+	private int sentSequence;
+	
+	/** The number of the last sync frame received */
+	private int recievedSequence;
+	
+	/** When recent sync frames were sent, by sequence number, for timing round trips */
+	private final long[] sentTimes = new long[64];
+	
+	/** When a frame was last received from the other player */
+	private long lastRecievedTime;
+	
+	/** The last round trip time measured, in milliseconds */
+	private volatile double roundTripTime = Double.NaN;
 	
 	// an ACK used to syncronise the thread execution with the other player's networkThread
 	protected String ack = "ACK";
@@ -56,33 +97,14 @@ public abstract class NetworkThread extends Thread {
 	abstract public void testCommunication();
 	
 	/**
-	 * Add an aircraft to the thread's aircraft buffer for sync.
+	 * Add an aircraft to the thread's outbox for sync.
+	 * If the aircraft is already waiting, it is replaced with the new changes
+	 * so we don't send duplicates.
 	 * @param aircraft the aircraft to be added
 	 */
 	public void addToBuffer(Aircraft aircraft){
 		if (aircraft == null) return;
-		System.out.println(aircraft.name() + " added to buffer.");
-		//if buffer empty, add new aircraft and return
-		if (aircraftBuffer.size() == 0){
-			aircraftBuffer.add(aircraft);
-			return;
-		}
-		//otherwise check for a matching aircraft and update it so we don't send duplicates.
-		
-		//check for equality using aircraft's unique names
-		//cant use ArrayList.contains(object o) since new flights will not have the same hashcode
-		for (int i = 0; i < aircraftBuffer.size(); i++){
-			if (aircraftBuffer.get(i).name() == aircraft.name()){
-				//found a match
-				//replace the matching aircraft with the new changes
-				aircraftBuffer.remove(i);
-				aircraftBuffer.add(aircraft);
-				//done
-				return;
-			}
-		}
-		//no match, so add the new aircraft.
-		aircraftBuffer.add(aircraft);
+		outbox.put(aircraft);
 	}
 	
 	//Error handling
@@ -133,8 +155,8 @@ public abstract class NetworkThread extends Thread {
 	/**
 	 * Synchronise the aircraft buffer to a receiver
 	 * Receive command: recieveAircraftBuffer()
-	 * Sends first the number of aircraft to expect
-	 * Followed by the aircraft objects
+	 * Sends one message holding the changes to every aircraft in the buffer,
+	 * written by the flightCodec.
 	 * Waits for ACKs.
 	 * See also: sendObject for sends
 	 * 			 recieveString for ACK
@@ -149,22 +171,39 @@ public abstract class NetworkThread extends Thread {
 		if (recv == null || !recv.equals(ack)){
 			return;
 		}
-		//get buffSize early in case a flight is added during the send
-		int buffSize = aircraftBuffer.size();
 		if (recv.equals(ack)){
-			//tell receiver how many aircraft to expect
-			sendObject(buffSize);
-			//send aircraft
-			for (int i = 0; i < buffSize; i++){
-				Aircraft temp = aircraftBuffer.get(i);
-				aircraftBuffer.remove(i);
-				sendObject(temp);
-				System.out.print("(Sending) ");
-				temp.printPath();
+			//send the changes to the buffered aircraft in one message
+			byte[] message = encodeBuffer();
+			if (message != null){
+				sendObject(message);
 			}
 		}
 	}
 	
+	/**
+	 * Takes every aircraft out of the outbox, and writes their changes with the flightCodec.
+	 * @return the message of changes, or null if it could not be written.
+	 */
+	protected byte[] encodeBuffer() {
+		//take the aircraft to send all at once, so none added meanwhile are lost
+		Aircraft[] sending = outbox.drain();
+		//stop tracking flights which have left the airspace
+		if (game != null) flightCodec.retain(game.aircraftInAirspace());
+		try {
+			return flightCodec.encode(sending);
+		} catch (IOException e) {
+			//set flags for lobby to report the error.
+			lobby.setNetworkState(MultiplayerSetUp.networkStates.CONNECTION_LOST);
+			lobby.setErrorCause(MultiplayerSetUp.errorCauses.IO_ERROR_ON_SEND);
+			//report error in console
+			System.err.println("Could not encode aircraft to send");
+			e.printStackTrace();
+			//kill the thread which caused the error.
+			killThread();
+			return null;
+		}
+	}
+	
 	/**
 	 * score sync isn't as involved as the aircraft sync
 	 * It's just sending an int and listening for one in reply.
@@ -184,8 +223,8 @@ public abstract class NetworkThread extends Thread {
 	/**
 	 * Receive the aircraft buffer from a syncAircraftBuffer() function
 	 * ACKs the order
-	 * listens for the number of aircraft to expect
-	 * followed by that many aircraft
+	 * listens for a message of changes to aircraft
+	 * then applies them to the airspace, adding any new flights
 	 * see also: syncAircraftBuffer
 	 */
 	protected void recieveAircraftBuffer(){
@@ -199,43 +238,53 @@ public abstract class NetworkThread extends Thread {
 		
 		//ack the order
 		sendObject(ack);
-		//get how many aircraft to expect
-		int expected = recieveInt();
+		//get the message of changes
+		//if the sender has exited, recieveMessage will have killed the thread
+		byte[] message = recieveMessage();
+		if (message == null){
+			return;
+		}
 		
-		//if we recieve -1 sender has exited.
-		if (expected == -1){
-			//quit out
+		applyMessage(message);
+	}
+	
+	/**
+	 * Reads a message of changes with the flightCodec, and applies them
+	 * to the airspace, adding any new flights.
+	 * @param message the message of changes
+	 */
+	protected void applyMessage(byte[] message) {
+		ArrayList<FlightUpdate> updates;
+		try {
+			updates = flightCodec.decode(message);
+		} catch (IOException e) {
+			//set flags for lobby to report the error.
 			lobby.setNetworkState(MultiplayerSetUp.networkStates.CONNECTION_LOST);
-			lobby.setErrorCause(MultiplayerSetUp.errorCauses.CLASS_CAST_EXCEPTION);
+			lobby.setErrorCause(MultiplayerSetUp.errorCauses.IO_ERROR_ON_RECIEVE);
+			//report error in console
+			System.err.println("Recieved aircraft could not be decoded");
+			e.printStackTrace();
+			//kill the thread which caused the error.
 			killThread();
+			return;
 		}
 		
-		//get the aircraft
-		for (int i = 0; i < expected; i++) {
-			Aircraft a = recieveAircraft();
+		//apply the changes
+		for (FlightUpdate update : updates) {
 			//check if the flight is already in the airspace
-			int index = game.existsInAirspace(a);
-			//index of -2 indicates no matching flight
-			//-1 is used to error out when a player presses escape
-			//hence -2 is used to avoid confusion / errors
-			if (index == -2){
-				game.addFlight(a);
-				System.out.println(a.name() + " added.");
-				continue;
+			Aircraft existing = game.findInAirspace(update.name());
+			if (existing == null){
+				//changes to a flight which has since left the airspace are dropped
+				if (update.isNewFlight()){
+					game.addFlight(update.createAircraft(game.context()));
+					System.out.println(update.name() + " added.");
+				}
 			} else {
-				//aircraft already in airspace
-				//remove from airspace
-				System.out.println("======");
-				System.out.println(a.name() + " recieved.");
-				System.out.print("(In airspace) ");
-				game.aircraftInAirspace().get(index).printPath();
-				System.out.print("(recieved) ");
-				a.printPath();
-				System.out.println("======");
-				game.aircraftInAirspace().remove(index);
+				//aircraft already in airspace, so update it in place,
+				//keeping its place in the airspace and any selection of it
+				update.applyTo(existing);
+				System.out.println(update.name() + " recieved.");
 			}
-			//add new flight
-			game.aircraftInAirspace().add(a);
 		}
 	}
 	
@@ -299,6 +348,61 @@ public abstract class NetworkThread extends Thread {
 		return null;
 	}
 	
+	/**
+	 * Read a sync message in from the objectInputStream
+	 * Order is important: objects must be read in the order they are sent.
+	 * Be certain a message is at the front of the stream before use.
+	 * Blocking: If the stream is empty, will wait until something arrives.
+	 * @return one message from the stream, or null if the other player quit
+	 * 			or the message could not be read.
+	 */
+	protected byte[] recieveMessage(){
+		try {
+			byte[] recieved;
+			recieved = (byte[]) objInputStream.readUnshared();
+			return recieved;
+		}  catch (ClassNotFoundException e) {
+			//set flags for lobby to report the error.
+			lobby.setNetworkState(MultiplayerSetUp.networkStates.CONNECTION_LOST);
+			lobby.setErrorCause(MultiplayerSetUp.errorCauses.CLASS_NOT_FOUND);
+			//report error in console
+			System.err.println("Could not find class byte[]");
+			e.printStackTrace();
+			//kill the thread which caused the error.
+			killThread();
+		} catch (SocketTimeoutException e){
+			//set flags for lobby to report the error.
+			lobby.setNetworkState(MultiplayerSetUp.networkStates.CONNECTION_LOST);
+			lobby.setErrorCause(MultiplayerSetUp.errorCauses.SOCKET_TIMEOUT);
+			//report error in console
+			System.err.println("Timed out communicating with host");
+			//kill the thread which caused the error.
+			e.printStackTrace();
+			killThread();
+		} catch (IOException e) {
+			//set flags for lobby to report the error.
+			lobby.setNetworkState(MultiplayerSetUp.networkStates.CONNECTION_LOST);
+			lobby.setErrorCause(MultiplayerSetUp.errorCauses.IO_ERROR_ON_RECIEVE);
+			//report error in console
+			System.err.println("IOException communicating with host");
+			e.printStackTrace();
+			//kill the thread which caused the error.
+			killThread();
+		} catch (ClassCastException e){
+			//May be called due to a player quitting
+			//On quit, an integer is sent to the other player intentionally to cause an error
+			//set flags for lobby to report the error.
+			lobby.setNetworkState(MultiplayerSetUp.networkStates.CONNECTION_LOST);
+			lobby.setErrorCause(MultiplayerSetUp.errorCauses.CLASS_CAST_EXCEPTION);
+			//report error in console
+			System.err.println("Recieved object does not match expected: byte[]");
+			//kill the thread which caused the error.
+			e.printStackTrace();
+			killThread();
+		}
+		return null;
+	}
+	
 	/**
 	 * Read a string in from the objectInputStream
 	 * Order is important: objects must be read in the order they are sent.
@@ -408,10 +512,252 @@ public abstract class NetworkThread extends Thread {
 		return 0;
 	}
 	
+	//PIPELINED SYNC
+	
+	/*
+	 * SENDS ON THE TRANSPORT ARE QUEUED AND NEVER WAIT FOR THE OTHER PLAYER
+	 * FRAMES RECIEVED ARE QUEUED UNTIL THE NEXT TICK
+	 */
+	
+	/**
+	 * Sends a frame on the transport
+	 * Non-Blocking: the frame is queued and written in the background.
+	 * @param frame the frame to be sent
+	 */
+	protected void sendFrame(SyncFrame frame){
+		try {
+			transport.send(frame.encode());
+		} catch (IOException e) {
+			//set flags for lobby to report the error.
+			lobby.setNetworkState(MultiplayerSetUp.networkStates.CONNECTION_LOST);
+			lobby.setErrorCause(MultiplayerSetUp.errorCauses.IO_ERROR_ON_SEND);
+			//report error in console
+			System.err.println("IO error when sending frame");
+			e.printStackTrace();
+			//kill the thread which caused the error.
+			killThread();
+		}
+	}
+	
+	/**
+	 * Read a frame from the transport
+	 * Blocking: waits until a frame arrives, or the timeout passes.
+	 * @param timeout the longest time to wait, in milliseconds
+	 * @return one frame, or null if none arrived in time or the connection failed.
+	 */
+	protected SyncFrame recieveFrame(long timeout){
+		try {
+			byte[] message = transport.take(timeout);
+			return message == null ? null : SyncFrame.decode(message);
+		} catch (IOException e) {
+			//set flags for lobby to report the error.
+			lobby.setNetworkState(MultiplayerSetUp.networkStates.CONNECTION_LOST);
+			lobby.setErrorCause(MultiplayerSetUp.errorCauses.IO_ERROR_ON_RECIEVE);
+			//report error in console
+			System.err.println("IOException communicating with other player");
+			e.printStackTrace();
+			//kill the thread which caused the error.
+			killThread();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		return null;
+	}
+	
+	/**
+	 * Check the other player is using the same protocol, by exchanging hello frames.
+	 * @return true if the other player's protocol matches ours.
+	 */
+	protected boolean exchangeHello(){
+		sendFrame(SyncFrame.hello());
+		SyncFrame hello = recieveFrame(PIPELINED_TIMEOUT);
+		if (hello == null){
+			if (transport.isOpen()){
+				lobby.setNetworkState(MultiplayerSetUp.networkStates.CONNECTION_LOST);
+				lobby.setErrorCause(MultiplayerSetUp.errorCauses.SOCKET_TIMEOUT);
+				System.err.println("Timed out waiting for hello");
+				killThread();
+			}
+			return false;
+		}
+		try {
+			hello.checkHello();
+		} catch (IOException e) {
+			lobby.setNetworkState(MultiplayerSetUp.networkStates.CONNECTION_LOST);
+			lobby.setErrorCause(MultiplayerSetUp.errorCauses.CLASS_CAST_EXCEPTION);
+			System.err.println("Other player's protocol does not match");
+			e.printStackTrace();
+			killThread();
+			return false;
+		}
+		lastRecievedTime = System.currentTimeMillis();
+		return true;
+	}
+	
 	/**
-	 * @return the size of the aircraftBuffer i.e. the number of aircraft awaiting sync.
+	 * Prepare for the pipelined sync once the game starts,
+	 * as nothing is exchanged while waiting in the lobby.
+	 */
+	protected void beginPipelinedSync(){
+		sentSequence = 0;
+		recievedSequence = 0;
+		lastRecievedTime = System.currentTimeMillis();
+	}
+	
+	/**
+	 * Close the pipelined connection, if open.
+	 * Frames already queued are sent first.
+	 */
+	protected void closeTransport(){
+		if (transport != null){
+			transport.close();
+		}
+	}
+	
+	/**
+	 * One tick of the pipelined sync
+	 * Applies every frame recieved since the last tick, then sends one frame
+	 * holding our score and the changes to the buffered aircraft.
+	 * Never waits for the other player, so a slow connection only delays
+	 * changes rather than stalling both players.
+	 */
+	protected void syncPipelined(){
+		//apply everything recieved since the last tick
+		byte[] message;
+		while ((message = transport.poll()) != null){
+			if (!handleFrame(message)){
+				return;
+			}
+		}
+		
+		//check the other player is still there
+		if (!transport.isOpen()){
+			lobby.setNetworkState(MultiplayerSetUp.networkStates.CONNECTION_LOST);
+			lobby.setErrorCause(MultiplayerSetUp.errorCauses.IO_ERROR_ON_RECIEVE);
+			System.err.println("Connection to other player lost");
+			killThread();
+			return;
+		}
+		if (System.currentTimeMillis() - lastRecievedTime > PIPELINED_TIMEOUT){
+			lobby.setNetworkState(MultiplayerSetUp.networkStates.CONNECTION_LOST);
+			lobby.setErrorCause(MultiplayerSetUp.errorCauses.SOCKET_TIMEOUT);
+			System.err.println("Timed out communicating with other player");
+			killThread();
+			return;
+		}
+		
+		//send our changes, without waiting for a reply
+		byte[] flights = encodeBuffer();
+		if (flights == null){
+			return;
+		}
+		sentSequence++;
+		sentTimes[sentSequence % sentTimes.length] = System.nanoTime();
+		sendFrame(SyncFrame.sync(sentSequence, recievedSequence, game.getSelfScore(), flights));
+	}
+	
+	/**
+	 * Wait between ticks of the pipelined sync, applying frames as they arrive
+	 * rather than leaving them until the next tick.
+	 * @param millis how long to wait, in milliseconds
+	 */
+	protected void awaitFrames(long millis){
+		long deadline = System.currentTimeMillis() + millis;
+		long remaining;
+		while (transport.isOpen() && (remaining = deadline - System.currentTimeMillis()) > 0){
+			try {
+				byte[] message = transport.take(remaining);
+				if (message == null){
+					return;
+				}
+				if (!handleFrame(message)){
+					return;
+				}
+			} catch (IOException e) {
+				//closed; syncPipelined reports it on the next tick
+				return;
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				return;
+			}
+		}
+	}
+	
+	/**
+	 * Apply one frame recieved from the other player
+	 * @param message the frame recieved
+	 * @return false if the thread was killed, as the other player has left
+	 * 			or the frame could not be read
+	 */
+	private boolean handleFrame(byte[] message){
+		SyncFrame frame;
+		try {
+			frame = SyncFrame.decode(message);
+		} catch (IOException e) {
+			lobby.setNetworkState(MultiplayerSetUp.networkStates.CONNECTION_LOST);
+			lobby.setErrorCause(MultiplayerSetUp.errorCauses.IO_ERROR_ON_RECIEVE);
+			System.err.println("Recieved frame could not be decoded");
+			e.printStackTrace();
+			killThread();
+			return false;
+		}
+		lastRecievedTime = System.currentTimeMillis();
+		if (frame.kind() == SyncFrame.Kind.QUIT){
+			//the other player has left the game
+			lobby.setNetworkState(MultiplayerSetUp.networkStates.CONNECTION_LOST);
+			lobby.setErrorCause(MultiplayerSetUp.errorCauses.CLASS_CAST_EXCEPTION);
+			killThread();
+			return false;
+		}
+		if (frame.kind() != SyncFrame.Kind.SYNC || frame.sequence() <= recievedSequence){
+			//stale or out of place, so drop it
+			return true;
+		}
+		recievedSequence = frame.sequence();
+		if (frame.acknowledged() > 0 && frame.acknowledged() > sentSequence - sentTimes.length){
+			roundTripTime = (System.nanoTime()
+					- sentTimes[frame.acknowledged() % sentTimes.length]) / 1e6;
+		}
+		applyMessage(frame.flights());
+		game.setOpponentScore(frame.score());
+		return true;
+	}
+	
+	/**
+	 * @return the last round trip time to the other player measured by the
+	 * pipelined sync, in milliseconds, or NaN if none has been measured.
+	 */
+	public double getRoundTripTime(){
+		return roundTripTime;
+	}
+	
+	/**
+	 * Sets whether to use the pipelined protocol. Must be set the same for
+	 * both players, before the thread is started.
+	 * @param pipelined true for the pipelined protocol, false for lock-step
+	 */
+	public void setPipelined(boolean pipelined){
+		this.pipelined = pipelined;
+	}
+	
+	/**
+	 * @return the size of the outbox i.e. the number of aircraft awaiting sync.
 	 */
 	public int getBufferSize(){
-		return this.aircraftBuffer.size();
+		return outbox.size();
+	}
+	
+	/**
+	 * @return the fraction of aircraft added for sync which replaced one already waiting
+	 */
+	public double getCoalescingRatio(){
+		return outbox.coalescingRatio();
+	}
+	
+	/**
+	 * @return a summary of the aircraft added to the outbox and sent, for the console
+	 */
+	public String getOutboxReport(){
+		return outbox.report();
 	}
 }
@@ -0,0 +1,301 @@
+package thr;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <h1>NioTransport</h1>
+ * <p>
+ * A connection to the other player which sends and receives whole messages
+ * without blocking the caller.
+ * </p>
+ * <p>
+ * Each message is framed by its length. Messages sent are queued, and
+ * written by the transport's own thread as the socket allows, so sending
+ * never waits on the other player. Messages received are read by the same
+ * thread and queued until taken with {@link #poll()} or {@link #take(long)}.
+ * </p>
+ * <p>
+ * If the connection fails, the transport closes itself; {@link #isOpen()}
+ * then returns false and {@link #failure()} gives the cause.
+ * </p>
+ */
+public class NioTransport {
+
+	/** The largest message which may be sent or received, in bytes */
+	public static final int MAX_MESSAGE_SIZE = 1 << 20;
+
+	/** The size of the length written before each message, in bytes */
+	private static final int HEADER_SIZE = 4;
+
+	/** The connection to the other player */
+	private final SocketChannel channel;
+
+	/** Waits for the connection to be readable or writable */
+	private final Selector selector;
+
+	/** Messages waiting to be written, framed */
+	private final ConcurrentLinkedQueue<ByteBuffer> writeQueue = new ConcurrentLinkedQueue<ByteBuffer>();
+
+	/** Messages read, waiting to be taken */
+	private final LinkedBlockingQueue<byte[]> readQueue = new LinkedBlockingQueue<byte[]>();
+
+	/** Bytes read which are not yet a whole message */
+	private ByteBuffer readBuffer = ByteBuffer.allocate(8192);
+
+	/** The thread reading and writing the connection */
+	private final Thread ioThread;
+
+	/** Whether the transport is still open */
+	private volatile boolean open = true;
+
+	/** Whether the transport is closing once its queued messages are written */
+	private volatile boolean closing;
+
+	/** Why the transport closed, or null if it was closed deliberately */
+	private volatile IOException failure;
+
+	/**
+	 * Constructor for a transport over a connected channel
+	 * @param channel the connection to the other player
+	 */
+	private NioTransport(SocketChannel channel) throws IOException {
+		this.channel = channel;
+		channel.configureBlocking(false);
+		channel.socket().setTcpNoDelay(true);
+		selector = Selector.open();
+		channel.register(selector, SelectionKey.OP_READ);
+		ioThread = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				runIO();
+			}
+		}, "NioTransport " + channel.socket().getRemoteSocketAddress());
+		ioThread.setDaemon(true);
+		ioThread.start();
+	}
+
+	/**
+	 * Waits for the other player to connect.
+	 * @param port the port to listen on
+	 * @return a transport connected to the other player
+	 */
+	public static NioTransport accept(int port) throws IOException {
+		ServerSocketChannel server = ServerSocketChannel.open();
+		try {
+			server.socket().setReuseAddress(true);
+			server.socket().bind(new InetSocketAddress(port));
+			return accept(server);
+		} finally {
+			server.close();
+		}
+	}
+
+	/**
+	 * Waits for the other player to connect to an open server.
+	 * @param server the server to accept a connection from
+	 * @return a transport connected to the other player
+	 */
+	public static NioTransport accept(ServerSocketChannel server) throws IOException {
+		return new NioTransport(server.accept());
+	}
+
+	/**
+	 * Connects to the other player.
+	 * @param host the address of the other player
+	 * @param port the port they are listening on
+	 * @return a transport connected to the other player
+	 */
+	public static NioTransport connect(String host, int port) throws IOException {
+		return new NioTransport(SocketChannel.open(new InetSocketAddress(host, port)));
+	}
+
+	/**
+	 * Queues a message to be sent. Returns immediately.
+	 * @param message the message to send
+	 * @throws IOException if the transport is closed
+	 * @throws IllegalArgumentException if the message is too large
+	 */
+	public void send(byte[] message) throws IOException {
+		if (!open || closing) throw closedException();
+		if (message.length > MAX_MESSAGE_SIZE) {
+			throw new IllegalArgumentException("Message of " + message.length
+					+ " bytes is larger than " + MAX_MESSAGE_SIZE);
+		}
+		ByteBuffer frame = ByteBuffer.allocate(HEADER_SIZE + message.length);
+		frame.putInt(message.length).put(message).flip();
+		writeQueue.add(frame);
+		selector.wakeup();
+	}
+
+	/**
+	 * Takes the next message received, if there is one.
+	 * @return the message, or null if none is waiting
+	 */
+	public byte[] poll() {
+		return readQueue.poll();
+	}
+
+	/**
+	 * Takes the next message received, waiting for one to arrive.
+	 * @param timeoutMillis the longest time to wait, in milliseconds
+	 * @return the message, or null if none arrived in time
+	 * @throws IOException if the transport closes before a message arrives
+	 */
+	public byte[] take(long timeoutMillis) throws IOException, InterruptedException {
+		long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+		while (true) {
+			// Wait in short steps so that closing is noticed
+			long remaining = deadline - System.nanoTime();
+			if (remaining <= 0) return null;
+			byte[] message = readQueue.poll(Math.min(remaining,
+					TimeUnit.MILLISECONDS.toNanos(50)), TimeUnit.NANOSECONDS);
+			if (message != null) return message;
+			if (!open) {
+				// Messages read before closing can still be taken
+				message = readQueue.poll();
+				if (message != null) return message;
+				throw closedException();
+			}
+		}
+	}
+
+	/**
+	 * Gets the number of messages waiting to be written.
+	 * @return the length of the write queue
+	 */
+	public int pendingWrites() {
+		return writeQueue.size();
+	}
+
+	/**
+	 * Gets the number of messages received but not yet taken.
+	 * @return the length of the read queue
+	 */
+	public int pendingReads() {
+		return readQueue.size();
+	}
+
+	/**
+	 * Checks whether the transport is still open.
+	 * @return true if messages can still be sent and received
+	 */
+	public boolean isOpen() {
+		return open;
+	}
+
+	/**
+	 * Gets why the transport closed.
+	 * @return the error which closed the transport, or null if it is open
+	 * 			or was closed deliberately
+	 */
+	public IOException failure() {
+		return failure;
+	}
+
+	/**
+	 * Closes the connection, once the messages queued have been written.
+	 * If they can't be written within a second, they are dropped.
+	 */
+	public void close() {
+		closing = true;
+		selector.wakeup();
+		try {
+			ioThread.join(1000);
+			if (ioThread.isAlive()) {
+				open = false;
+				selector.wakeup();
+				ioThread.join(1000);
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	/**
+	 * Reads and writes the connection until the transport is closed.
+	 */
+	private void runIO() {
+		try {
+			SelectionKey key = channel.keyFor(selector);
+			while (open && !(closing && writeQueue.isEmpty())) {
+				// Only ask to write when there is something to write,
+				// otherwise the selector would never block
+				key.interestOps(writeQueue.isEmpty() ? SelectionKey.OP_READ
+						: SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+				selector.select();
+				selector.selectedKeys().clear();
+				if (key.isValid() && key.isReadable()) read();
+				if (key.isValid() && !writeQueue.isEmpty()) write();
+			}
+		} catch (IOException e) {
+			failure = e;
+		} finally {
+			open = false;
+			try {
+				selector.close();
+				channel.close();
+			} catch (IOException e) {
+				System.err.println("Failed to close transport");
+				e.printStackTrace();
+			}
+		}
+	}
+
+	/**
+	 * Reads whatever is available, and queues any whole messages.
+	 */
+	private void read() throws IOException {
+		int read = channel.read(readBuffer);
+		if (read == -1) throw new IOException("Connection closed by the other player");
+
+		readBuffer.flip();
+		while (readBuffer.remaining() >= HEADER_SIZE) {
+			int length = readBuffer.getInt(readBuffer.position());
+			if (length < 0 || length > MAX_MESSAGE_SIZE) {
+				throw new IOException("Received message of " + length + " bytes");
+			}
+			if (readBuffer.remaining() < HEADER_SIZE + length) {
+				// Make room for the rest of the message
+				if (readBuffer.capacity() < HEADER_SIZE + length) {
+					ByteBuffer larger = ByteBuffer.allocate(HEADER_SIZE + length);
+					larger.put(readBuffer);
+					readBuffer = larger;
+					return;
+				}
+				break;
+			}
+			readBuffer.position(readBuffer.position() + HEADER_SIZE);
+			byte[] message = new byte[length];
+			readBuffer.get(message);
+			readQueue.add(message);
+		}
+		readBuffer.compact();
+	}
+
+	/**
+	 * Writes as much of the queued messages as the socket will take.
+	 */
+	private void write() throws IOException {
+		ByteBuffer frame;
+		while ((frame = writeQueue.peek()) != null) {
+			channel.write(frame);
+			if (frame.hasRemaining()) return;
+			writeQueue.poll();
+		}
+	}
+
+	private IOException closedException() {
+		return failure != null ? new IOException("Transport closed", failure)
+				: new IOException("Transport closed");
+	}
+
+}
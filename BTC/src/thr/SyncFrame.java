@@ -0,0 +1,193 @@
+package thr;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+
+/**
+ * <h1>SyncFrame</h1>
+ * <p>
+ * A message of the pipelined sync protocol, sent over a {@link NioTransport}.
+ * </p>
+ * <p>
+ * Unlike the lock-step protocol, neither player waits for the other: each
+ * sends a {@link Kind#SYNC} frame every tick, holding its score and the
+ * changes to its flights, and applies whatever frames have arrived.
+ * Frames are numbered, so stale frames can be dropped, and each carries
+ * the number of the last frame received, from which the round trip time
+ * is measured without waiting for a reply.
+ * </p>
+ */
+public class SyncFrame {
+
+	/** The version of the protocol, checked when players connect */
+	public static final int PROTOCOL_VERSION = 1;
+
+	/** The kinds of frame */
+	public enum Kind {
+		/** Sent by both players on connecting, with their protocol versions */
+		HELLO,
+		/** Sent by the host when the game starts */
+		START,
+		/** Sent by both players every tick of the game */
+		SYNC,
+		/** Sent by a player leaving the game */
+		QUIT,
+	}
+
+	private final Kind kind;
+	private final int sequence;
+	private final int acknowledged;
+	private final int score;
+	private final byte[] flights;
+
+	/**
+	 * Constructor for a frame
+	 * @param kind the kind of frame
+	 * @param sequence the number of the frame, or the protocol version for a hello
+	 * @param acknowledged the number of the last frame received, or the
+	 * 			flight codec version for a hello
+	 * @param score the sender's score
+	 * @param flights the changes to flights, written by {@link FlightCodec}
+	 */
+	private SyncFrame(Kind kind, int sequence, int acknowledged, int score, byte[] flights) {
+		this.kind = kind;
+		this.sequence = sequence;
+		this.acknowledged = acknowledged;
+		this.score = score;
+		this.flights = flights;
+	}
+
+	/**
+	 * Creates a hello frame for this version of the protocol.
+	 * @return the frame
+	 */
+	public static SyncFrame hello() {
+		return new SyncFrame(Kind.HELLO, PROTOCOL_VERSION, FlightCodec.VERSION, 0, new byte[0]);
+	}
+
+	/**
+	 * Creates a frame telling the client to start the game.
+	 * @return the frame
+	 */
+	public static SyncFrame start() {
+		return new SyncFrame(Kind.START, 0, 0, 0, new byte[0]);
+	}
+
+	/**
+	 * Creates a frame telling the other player this player has left.
+	 * @return the frame
+	 */
+	public static SyncFrame quit() {
+		return new SyncFrame(Kind.QUIT, 0, 0, 0, new byte[0]);
+	}
+
+	/**
+	 * Creates a frame syncing the game.
+	 * @param sequence the number of the frame, one more than the last sent
+	 * @param acknowledged the number of the last frame received
+	 * @param score the sender's score
+	 * @param flights the changes to flights, written by {@link FlightCodec}
+	 * @return the frame
+	 */
+	public static SyncFrame sync(int sequence, int acknowledged, int score, byte[] flights) {
+		return new SyncFrame(Kind.SYNC, sequence, acknowledged, score, flights);
+	}
+
+	/**
+	 * Writes the frame.
+	 * @return the frame's bytes
+	 */
+	public byte[] encode() {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream(13 + flights.length);
+		DataOutputStream out = new DataOutputStream(bytes);
+		try {
+			out.writeByte(kind.ordinal());
+			out.writeInt(sequence);
+			out.writeInt(acknowledged);
+			out.writeInt(score);
+			out.write(flights);
+			out.flush();
+		} catch (IOException e) {
+			// Can't happen when writing to memory
+			throw new IllegalStateException(e);
+		}
+		return bytes.toByteArray();
+	}
+
+	/**
+	 * Reads a frame.
+	 * @param message the frame's bytes
+	 * @return the frame
+	 * @throws IOException if the frame is malformed
+	 */
+	public static SyncFrame decode(byte[] message) throws IOException {
+		DataInputStream in = new DataInputStream(new ByteArrayInputStream(message));
+		try {
+			int kind = in.readUnsignedByte();
+			if (kind >= Kind.values().length) {
+				throw new IOException("Unknown frame kind " + kind);
+			}
+			int sequence = in.readInt();
+			int acknowledged = in.readInt();
+			int score = in.readInt();
+			byte[] flights = new byte[in.available()];
+			in.readFully(flights);
+			return new SyncFrame(Kind.values()[kind], sequence, acknowledged, score, flights);
+		} catch (EOFException e) {
+			throw new IOException("Frame of " + message.length + " bytes is too short", e);
+		}
+	}
+
+	/**
+	 * Checks a hello frame is from a player using the same protocol.
+	 * @throws IOException if the frame is not a hello, or is for another version
+	 */
+	public void checkHello() throws IOException {
+		if (kind != Kind.HELLO) {
+			throw new IOException("Expected hello, got " + kind);
+		}
+		if (sequence != PROTOCOL_VERSION || acknowledged != FlightCodec.VERSION) {
+			throw new IOException("Other player uses sync protocol " + sequence
+					+ " and flight codec " + acknowledged + ", expected "
+					+ PROTOCOL_VERSION + " and " + FlightCodec.VERSION);
+		}
+	}
+
+	public Kind kind() {
+		return kind;
+	}
+
+	/**
+	 * Gets the number of the frame. Each player numbers its sync frames
+	 * from 1, in the order sent.
+	 * @return the frame's number
+	 */
+	public int sequence() {
+		return sequence;
+	}
+
+	/**
+	 * Gets the number of the last frame the sender had received.
+	 * @return the number of the frame, or 0 if none had been received
+	 */
+	public int acknowledged() {
+		return acknowledged;
+	}
+
+	public int score() {
+		return score;
+	}
+
+	/**
+	 * Gets the changes to flights.
+	 * @return the changes, to be read by {@link FlightCodec}
+	 */
+	public byte[] flights() {
+		return flights;
+	}
+
+}
@@ -0,0 +1,144 @@
+package thr;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+
+import cls.Airport;
+import cls.SimulationContext;
+import cls.Waypoint;
+
+/**
+ * <h1>WaypointTable</h1>
+ * <p>
+ * Numbers the waypoints and airports both players' games share, so that
+ * they can be sent as an index rather than in full.
+ * </p>
+ * <p>
+ * Both games build their airspace in the same order, so the same index
+ * refers to the same waypoint in each, even if the players' screens are
+ * different sizes. Decoding an index gives the receiver's own waypoint,
+ * so aircraft share waypoints with the rest of the receiver's game.
+ * </p>
+ */
+public class WaypointTable {
+
+	/** Index written for a waypoint or airport not in the table */
+	public static final int NONE = -1;
+
+	/** The waypoints, in index order */
+	private final Waypoint[] waypoints;
+
+	/** The index of each waypoint */
+	private final IdentityHashMap<Waypoint, Integer> indices;
+
+	/** The airports, in index order */
+	private final Airport[] airports;
+
+	/**
+	 * Constructor for a table
+	 * @param waypoints the waypoints to number, in order
+	 * @param airports the airports to number, in order
+	 */
+	public WaypointTable(Waypoint[] waypoints, Airport[] airports) {
+		this.waypoints = waypoints.clone();
+		this.airports = airports == null ? new Airport[0] : airports.clone();
+		indices = new IdentityHashMap<Waypoint, Integer>();
+		for (int i = 0; i < this.waypoints.length; i++) {
+			if (!indices.containsKey(this.waypoints[i])) {
+				indices.put(this.waypoints[i], i);
+			}
+		}
+	}
+
+	/**
+	 * Builds a table of a game's waypoints and airports.
+	 * @param context the context holding the game's airspace
+	 * @return a table of the airspace's waypoints, then its entry and exit
+	 * 			points, then each airport's waypoints
+	 */
+	public static WaypointTable of(SimulationContext context) {
+		ArrayList<Waypoint> waypoints = new ArrayList<Waypoint>();
+		add(waypoints, context.airspaceWaypoints());
+		add(waypoints, context.flightEntryPoints());
+		add(waypoints, context.flightExitPoints());
+		for (Airport airport : context.airports()) {
+			add(waypoints, airport.entryPoints());
+			add(waypoints, airport.landingPoints());
+			add(waypoints, airport.parkingPoints());
+			add(waypoints, airport.takeoffPoints());
+		}
+		return new WaypointTable(waypoints.toArray(new Waypoint[waypoints.size()]),
+				context.airports());
+	}
+
+	/**
+	 * Checks whether this table was built from a game's airports.
+	 * @param context the context holding the game's airspace
+	 * @return true if the game's airports are the ones in this table
+	 */
+	public boolean isFor(SimulationContext context) {
+		Airport[] current = context.airports();
+		if (current.length != airports.length) return false;
+		for (int i = 0; i < airports.length; i++) {
+			if (current[i] != airports[i]) return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Gets the index of a waypoint.
+	 * @param waypoint the waypoint to find
+	 * @return the index of the waypoint, or {@link #NONE} if it isn't in the table
+	 */
+	public int indexOf(Waypoint waypoint) {
+		Integer index = indices.get(waypoint);
+		return index == null ? NONE : index;
+	}
+
+	/**
+	 * Gets the waypoint at an index.
+	 * @param index the index of the waypoint
+	 * @return the waypoint
+	 * @throws IndexOutOfBoundsException if there is no waypoint at the index
+	 */
+	public Waypoint waypoint(int index) {
+		if (index < 0 || index >= waypoints.length) {
+			throw new IndexOutOfBoundsException("No waypoint " + index);
+		}
+		return waypoints[index];
+	}
+
+	/**
+	 * Gets the index of an airport.
+	 * @param airport the airport to find
+	 * @return the index of the airport, or {@link #NONE} if it is null or
+	 * 			not in the table
+	 */
+	public int indexOf(Airport airport) {
+		for (int i = 0; i < airports.length; i++) {
+			if (airports[i] == airport) return i;
+		}
+		return NONE;
+	}
+
+	/**
+	 * Gets the airport at an index.
+	 * @param index the index of the airport, or {@link #NONE}
+	 * @return the airport, or null for {@link #NONE}
+	 * @throws IndexOutOfBoundsException if there is no airport at the index
+	 */
+	public Airport airport(int index) {
+		if (index == NONE) return null;
+		if (index < 0 || index >= airports.length) {
+			throw new IndexOutOfBoundsException("No airport " + index);
+		}
+		return airports[index];
+	}
+
+	private static void add(ArrayList<Waypoint> list, Waypoint[] waypoints) {
+		for (Waypoint waypoint : waypoints) {
+			list.add(waypoint);
+		}
+	}
+
+}
@@ -0,0 +1,146 @@
+package tst;
+
+import static org.junit.Assert.*;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import cls.Aircraft;
+import cls.AircraftBuffer;
+import cls.Waypoint;
+
+/**
+ * Tests for the AircraftBuffer class
+ *
+ * <p>
+ * Covers:
+ * <ul>
+ * <li>Adding and removing</li>
+ * <li>Snapshot iteration</li>
+ * <li>Finding aircraft by flight name</li>
+ * </ul>
+ * </p>
+ */
+public class AircraftBufferTest {
+
+	/** The buffer under test */
+	private AircraftBuffer buffer;
+
+	/** Aircraft placed in the buffer */
+	private Aircraft[] aircraft;
+
+	/**
+	 * Before method.
+	 *
+	 * <p>
+	 * Fills a buffer with three aircraft.
+	 * </p>
+	 */
+	@Before
+	public void beforeTests() {
+		buffer = new AircraftBuffer();
+		aircraft = new Aircraft[] { new Aircraft(), new Aircraft(), new Aircraft() };
+		for (Aircraft a : aircraft) {
+			buffer.add(a);
+		}
+	}
+
+	/**
+	 * Tests the AircraftBuffer.remove() methods
+	 *
+	 * <p>
+	 * Checks aircraft can be removed by index and by identity, and that
+	 * the remaining aircraft keep their order.
+	 * </p>
+	 */
+	@Test
+	public void testRemove() {
+		buffer.remove(0);
+		assertTrue("Aircraft 2 removed", buffer.remove(aircraft[2]));
+		assertFalse("Aircraft 2 already removed", buffer.remove(aircraft[2]));
+		assertEquals("Size = 1", 1, buffer.size());
+		assertSame("Aircraft 1 remains", aircraft[1], buffer.get(0));
+	}
+
+	/**
+	 * Tests the AircraftBuffer.get() method
+	 *
+	 * <p>
+	 * Checks that an out of bounds index returns the last aircraft.
+	 * </p>
+	 */
+	@Test
+	public void testGetOutOfBounds() {
+		assertSame("Last aircraft returned", aircraft[2], buffer.get(10));
+	}
+
+	/**
+	 * Tests the AircraftBuffer.iterator() method
+	 *
+	 * <p>
+	 * Checks that iteration continues over the aircraft present when it began,
+	 * even if the buffer is changed part way through.
+	 * </p>
+	 */
+	@Test
+	public void testIterationUnaffectedByWrites() {
+		Aircraft[] before = buffer.snapshot();
+		int seen = 0;
+		for (Aircraft a : buffer) {
+			assertSame("Aircraft in original order", aircraft[seen], a);
+			if (seen == 0) {
+				buffer.remove(aircraft[1]);
+				buffer.add(new Aircraft());
+			}
+			seen++;
+		}
+		assertEquals("All original aircraft iterated", 3, seen);
+		assertEquals("Earlier snapshot unchanged", 3, before.length);
+		assertSame("Earlier snapshot unchanged", aircraft[1], before[1]);
+		assertEquals("Buffer changed", 3, buffer.size());
+		assertNotSame("Buffer changed", aircraft[1], buffer.get(1));
+	}
+
+	/**
+	 * Creates a 'testing' aircraft
+	 *
+	 * <p>
+	 * Helper method - builds a new aircraft with a flight name
+	 * for use with testing methods.
+	 * </p>
+	 * @param name the flight's name
+	 */
+	private Aircraft generateTestAircraft(String name) {
+		Waypoint[] route = new Waypoint[] {
+			new Waypoint(100, 100, Waypoint.WaypointType.AIRSPACE),
+			new Waypoint(200, 300, Waypoint.WaypointType.AIRSPACE),
+		};
+		return new Aircraft(name, "Origin", "Destination", 35, route, route[1], null);
+	}
+
+	/**
+	 * Tests the AircraftBuffer.get(String) method
+	 *
+	 * <p>
+	 * Checks aircraft are found by name once added, and not once removed,
+	 * whichever way they are removed.
+	 * </p>
+	 */
+	@Test
+	public void testGetByName() {
+		Aircraft first = generateTestAircraft("Flight 101");
+		Aircraft second = generateTestAircraft("Flight 102");
+		buffer.add(first);
+		buffer.add(second);
+		assertSame("Flight 101 found", first, buffer.get(new String("Flight 101")));
+		assertSame("Flight 102 found", second, buffer.get("Flight 102"));
+		assertNull("Unknown flight not found", buffer.get("Flight 103"));
+		assertNull("Null name not found", buffer.get((String) null));
+
+		buffer.remove(first);
+		assertNull("Flight 101 removed", buffer.get("Flight 101"));
+		buffer.remove(buffer.size() - 1);
+		assertNull("Flight 102 removed", buffer.get("Flight 102"));
+	}
+
+}
@@ -11,7 +11,18 @@ import org.junit.runners.Suite;
 						VectorTest.class,
 						WaypointTest.class,
 						AirportTest.class,
-						ScoreTest.class
+						ScoreTest.class,
+						CollisionGridTest.class,
+						AircraftBufferTest.class,
+						FleetStateTest.class,
+						WaypointGraphTest.class,
+						FlightCodecTest.class,
+						NioTransportTest.class,
+						SyncFrameTest.class,
+						FlightOutboxTest.class,
+						FlightIdAllocatorTest.class,
+						RandomStreamsTest.class,
+						SimulationContextTest.class
 						})
 public class AllTests {
 	// Runs all tests
@@ -0,0 +1,181 @@
+package tst;
+
+import static org.junit.Assert.*;
+
+import java.util.Random;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import cls.Aircraft;
+import cls.AircraftBuffer;
+import cls.CollisionGrid;
+import cls.Vector;
+import cls.Waypoint;
+
+/**
+ * Tests for the CollisionGrid class
+ *
+ * <p>
+ * Covers:
+ * <ul>
+ * <li>Neighbour queries against a scan of the whole airspace</li>
+ * <li>Collision checks using the grid</li>
+ * <li>Crashes part way through a step</li>
+ * </ul>
+ * </p>
+ */
+public class CollisionGridTest {
+
+	/** The separation rule to build the grid with */
+	private static final int SEPARATION = 64;
+
+	/** The airspace to index */
+	private AircraftBuffer airspace;
+
+	/**
+	 * Before method.
+	 *
+	 * <p>
+	 * Fills an airspace with aircraft at pseudo-random positions, some of which
+	 * are negative so that cells either side of zero are exercised.
+	 * </p>
+	 */
+	@Before
+	public void beforeTests() {
+		airspace = new AircraftBuffer();
+		Random random = new Random(42);
+		for (int i = 0; i < 200; i++) {
+			Aircraft aircraft = new Aircraft();
+			aircraft.position().setX(random.nextDouble() * 1000 - 100);
+			aircraft.position().setY(random.nextDouble() * 800 - 100);
+			airspace.add(aircraft);
+		}
+	}
+
+	/**
+	 * Tests the CollisionGrid.neighbours() method
+	 *
+	 * <p>
+	 * Checks that every aircraft within the separation rule of another is
+	 * returned as one of its neighbours, and that neighbours are in ascending
+	 * index order.
+	 * </p>
+	 */
+	@Test
+	public void testNeighboursIncludeAllNearAircraft() {
+		CollisionGrid grid = new CollisionGrid();
+		grid.rebuild(airspace, SEPARATION);
+		assertEquals("Grid size = airspace size", airspace.size(), grid.size());
+
+		int[] found = new int[grid.size()];
+		for (int i = 0; i < airspace.size(); i++) {
+			Aircraft a = airspace.get(i);
+			int count = grid.neighbours(a.position().x(), a.position().y(), found);
+
+			for (int k = 1; k < count; k++) {
+				assertTrue("Neighbours in ascending order", found[k - 1] < found[k]);
+			}
+
+			for (int j = 0; j < airspace.size(); j++) {
+				Aircraft b = airspace.get(j);
+				double dx = b.position().x() - a.position().x();
+				double dy = b.position().y() - a.position().y();
+				if (dx*dx + dy*dy < SEPARATION * SEPARATION) {
+					boolean present = false;
+					for (int k = 0; k < count; k++) {
+						if (found[k] == j) present = true;
+					}
+					assertTrue("Aircraft " + j + " near aircraft " + i, present);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Tests the Aircraft.updateCollisions() method when given a grid
+	 *
+	 * <p>
+	 * Checks that a crash is reported against the index of the aircraft
+	 * crashed into.
+	 * </p>
+	 */
+	@Test
+	public void testCrashReportedByIndex() {
+		// Move the pair clear of the rest of the airspace
+		Aircraft first = airspace.get(0);
+		Aircraft second = airspace.get(150);
+		first.position().setX(5000);
+		first.position().setY(5000);
+		second.position().setX(5000 + Aircraft.RADIUS / 2);
+		second.position().setY(5000);
+
+		CollisionGrid grid = new CollisionGrid();
+		grid.rebuild(airspace, SEPARATION);
+
+		int crashedInto = first.updateCollisions(1, grid);
+		assertEquals("Crashed into aircraft 150", 150, crashedInto);
+		assertTrue("Both aircraft finished",
+				first.status() == Aircraft.AirportState.FINISHED
+				&& second.status() == Aircraft.AirportState.FINISHED);
+	}
+
+
+	/**
+	 * Tests the Aircraft.updateCollisions() method for fast aircraft
+	 *
+	 * <p>
+	 * Checks that aircraft which pass through each other within one step
+	 * crash, though they are far apart at the end of the step, and that
+	 * aircraft whose paths cross at different times don't.
+	 * </p>
+	 */
+	@Test
+	public void testCrashPartWayThroughStep() {
+		// Crosses (300, 0) half way through the step, as the other does
+		Aircraft east = flying(0, 0, 600, 0);
+		Aircraft north = flying(300, -300, 0, 600);
+		assertEquals("Crashed part way through step", 1, step(east, north));
+
+		// Crosses (300, 0) at the end of the step, after the other has passed
+		east = flying(0, 0, 600, 0);
+		Aircraft late = flying(300, -600, 0, 600);
+		assertEquals("Paths crossed at different times", -1, step(east, late));
+	}
+
+	/**
+	 * Creates an aircraft flying in a straight line.
+	 * @param x the x coordinate to start at
+	 * @param y the y coordinate to start at
+	 * @param vx the velocity along x, in pixels per second
+	 * @param vy the velocity along y, in pixels per second
+	 * @return the aircraft
+	 */
+	private Aircraft flying(double x, double y, double vx, double vy) {
+		Waypoint target = new Waypoint(new Vector(x + vx * 100, y + vy * 100, 0),
+				Waypoint.WaypointType.EXIT);
+		Aircraft aircraft = new Aircraft("Flight", "Origin", "Destination", 1,
+				new Waypoint[] {target}, target, null);
+		aircraft.position().setTo(x, y, 0);
+		aircraft.getVelocity().setTo(vx, vy, 0);
+		return aircraft;
+	}
+
+	/**
+	 * Moves two aircraft through a one second step, and checks them for collisions.
+	 * @param first the first aircraft
+	 * @param second the second aircraft
+	 * @return the index of the aircraft the first crashed into, or -1 if none
+	 */
+	private int step(Aircraft first, Aircraft second) {
+		AircraftBuffer pair = new AircraftBuffer();
+		pair.add(first);
+		pair.add(second);
+		first.update(1);
+		second.update(1);
+		CollisionGrid grid = new CollisionGrid();
+		grid.rebuild(pair, SEPARATION);
+		return first.updateCollisions(1, grid);
+	}
+
+}
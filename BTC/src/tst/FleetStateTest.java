@@ -0,0 +1,298 @@
+package tst;
+
+import static org.junit.Assert.*;
+
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import org.junit.Test;
+
+import cls.Aircraft;
+import cls.Aircraft.AirportState;
+import cls.AircraftBuffer;
+import cls.Airport;
+import cls.CollisionGrid;
+import cls.FleetState;
+import cls.RandomStreams;
+import cls.SimulationContext;
+import cls.Vector;
+import cls.Waypoint;
+import cls.WaypointGraph;
+import scn.Game;
+
+/**
+ * Tests for the FleetState class
+ *
+ * <p>
+ * Covers:
+ * <ul>
+ * <li>Batch updates against updating each aircraft in turn</li>
+ * <li>Parallel updates, collision checks and airport updates against serial ones</li>
+ * </ul>
+ * </p>
+ */
+public class FleetStateTest {
+
+	/** The statuses to give the fleet's aircraft */
+	private static final AirportState[] STATUSES = {
+		AirportState.NORMAL, AirportState.TAKEOFF,
+		AirportState.PARKED, AirportState.FINISHED
+	};
+
+	/**
+	 * Creates a fleet of aircraft in a mix of states, flying towards
+	 * distant targets so that they turn but never reach them.
+	 * @param size the number of aircraft
+	 * @param seed the seed to generate the fleet from
+	 * @return the fleet
+	 */
+	private Aircraft[] createFleet(int size, long seed) {
+		Random random = new Random(seed);
+		Aircraft[] fleet = new Aircraft[size];
+		for (int i = 0; i < size; i++) {
+			Aircraft aircraft = new Aircraft();
+			aircraft.setStatus(STATUSES[i % STATUSES.length]);
+			aircraft.position().setTo(random.nextDouble() * 1000,
+					random.nextDouble() * 800, 28000 + random.nextDouble() * 2000);
+			aircraft.setVelocity(new Vector(random.nextDouble() * 60 - 30,
+					random.nextDouble() * 60 - 30, random.nextDouble() * 200 - 100));
+			aircraft.setCurrentTarget(new Vector(random.nextDouble() * 1e6 - 5e5,
+					random.nextDouble() * 1e6 - 5e5, 0));
+			aircraft.setTurnSpeed(Math.PI / 4);
+			fleet[i] = aircraft;
+		}
+		return fleet;
+	}
+
+	/**
+	 * Creates a waypoint at an airport, placed as given rather than
+	 * scaled to the (empty) test window.
+	 * @param x the x coordinate
+	 * @param y the y coordinate
+	 * @return the waypoint
+	 */
+	private Waypoint airportPoint(double x, double y) {
+		return new Waypoint(new Vector(x, y, 0), Waypoint.WaypointType.AIRPORT);
+	}
+
+	/**
+	 * Creates airports in a context, each with aircraft on its runway
+	 * about to take off, so that each update sends them to random exits.
+	 * @param context the context the airports are in
+	 * @param count the number of airports
+	 * @return the airports
+	 */
+	private Airport[] createAirports(SimulationContext context, int count) {
+		RandomStreams streams = new RandomStreams(context.seed());
+		Airport[] airports = new Airport[count];
+		for (int i = 0; i < count; i++) {
+			double x = 100 * i;
+			Waypoint[] entryPoints = { airportPoint(x, 0), airportPoint(x + 10, 0) };
+			Waypoint[] landingPoints = { airportPoint(x, 20), airportPoint(x, 60) };
+			Waypoint[] parkingPoints = { airportPoint(x + 20, 60), airportPoint(x + 30, 60) };
+			Waypoint[] takeoffPoints = { airportPoint(x + 40, 20),
+					airportPoint(x + 40, 60), airportPoint(x + 40, 100) };
+			Airport airport = new Airport("Airport " + i, parkingPoints.length,
+					new String[] { "West", "East" }, entryPoints, landingPoints,
+					parkingPoints, takeoffPoints);
+			airport.setContext(context);
+			airport.setRandom(streams.split(RandomStreams.Stream.AIRPORTS, i));
+			airports[i] = airport;
+		}
+		return airports;
+	}
+
+	/**
+	 * Puts an aircraft on an airport's runway, at the last takeoff point.
+	 * @param context the context the aircraft is in
+	 * @param airport the airport to take off from
+	 * @return the aircraft
+	 */
+	private Aircraft addTakeoffAircraft(SimulationContext context, Airport airport) {
+		Waypoint runwayEnd = airport.takeoffPoints()[airport.takeoffPoints().length - 1];
+		Aircraft aircraft = new Aircraft("Flight", airport.name(),
+				"Destination", 35, new Waypoint[] { runwayEnd }, runwayEnd, airport, context);
+		airport.addAircraft(aircraft);
+		aircraft.setStatus(AirportState.TAKEOFF);
+		aircraft.position().setTo(runwayEnd.position().x(), runwayEnd.position().y(), 30000);
+		aircraft.setCurrentTarget(runwayEnd.position());
+		return aircraft;
+	}
+
+	/**
+	 * Tests the FleetState.update() method
+	 *
+	 * <p>
+	 * Checks that updating a fleet in one batch leaves every aircraft with
+	 * exactly the same position and velocity as updating each in turn.
+	 * </p>
+	 */
+	@Test
+	public void testBatchUpdateMatchesSingleUpdates() {
+		Aircraft[] single = createFleet(100, 7);
+		Aircraft[] batch = createFleet(100, 7);
+		FleetState fleetState = new FleetState();
+
+		for (int frame = 0; frame < 300; frame++) {
+			for (Aircraft aircraft : single) {
+				aircraft.update(1 / 60d);
+			}
+			fleetState.update(batch, 1 / 60d);
+		}
+
+		assertEquals("Finished and parked aircraft not moved", 50, fleetState.size());
+		for (int i = 0; i < single.length; i++) {
+			assertEquals("Position " + i, single[i].position(), batch[i].position());
+			assertEquals("Velocity " + i, single[i].getVelocity(), batch[i].getVelocity());
+		}
+	}
+
+	/**
+	 * Tests the FleetState.update() method
+	 *
+	 * <p>
+	 * Checks that only aircraft in normal flight change altitude.
+	 * </p>
+	 */
+	@Test
+	public void testOnlyNormalAircraftChangeAltitude() {
+		Aircraft[] fleet = createFleet(4, 11);
+		double[] altitudes = new double[fleet.length];
+		for (int i = 0; i < fleet.length; i++) {
+			altitudes[i] = fleet[i].position().z();
+		}
+
+		new FleetState().update(fleet, 1);
+
+		assertTrue("Normal aircraft changed altitude",
+				altitudes[0] != fleet[0].position().z());
+		for (int i = 1; i < fleet.length; i++) {
+			assertTrue("Aircraft " + i + " kept altitude",
+					altitudes[i] == fleet[i].position().z());
+		}
+	}
+
+	/**
+	 * Tests the FleetState.update() method when given a pool
+	 *
+	 * <p>
+	 * Checks that updating a large fleet in parallel leaves every aircraft with
+	 * exactly the same position and velocity as updating serially.
+	 * </p>
+	 */
+	@Test
+	public void testParallelUpdateMatchesSerial() {
+		Aircraft[] serial = createFleet(2000, 3);
+		Aircraft[] parallel = createFleet(2000, 3);
+		FleetState serialState = new FleetState();
+		FleetState parallelState = new FleetState(new ForkJoinPool(4));
+		assertTrue("Fleet is parallel", parallelState.isParallel());
+
+		for (int frame = 0; frame < 100; frame++) {
+			serialState.update(serial, 1 / 60d);
+			parallelState.update(parallel, 1 / 60d);
+		}
+
+		for (int i = 0; i < serial.length; i++) {
+			assertEquals("Position " + i, serial[i].position(), parallel[i].position());
+			assertEquals("Velocity " + i, serial[i].getVelocity(), parallel[i].getVelocity());
+		}
+	}
+
+	/**
+	 * Tests the FleetState.collectCollisions() method when given a pool
+	 *
+	 * <p>
+	 * Checks that collecting collisions in parallel, then applying them in
+	 * order, reports the same first crash as checking each aircraft in turn,
+	 * and leaves the same aircraft crashed.
+	 * </p>
+	 */
+	@Test
+	public void testParallelCollisionsMatchSerial() {
+		// Packed closely enough that several pairs crash
+		Aircraft[] serial = createFleet(2000, 5);
+		Aircraft[] parallel = createFleet(2000, 5);
+		AircraftBuffer serialAirspace = new AircraftBuffer();
+		AircraftBuffer parallelAirspace = new AircraftBuffer();
+		for (int i = 0; i < serial.length; i++) {
+			serial[i].setStatus(AirportState.NORMAL);
+			parallel[i].setStatus(AirportState.NORMAL);
+			serialAirspace.add(serial[i]);
+			parallelAirspace.add(parallel[i]);
+		}
+
+		CollisionGrid serialGrid = new CollisionGrid();
+		serialGrid.rebuild(serialAirspace, 64);
+		int serialCrasher = -1, serialCrashedInto = -1;
+		for (int i = 0; i < serialGrid.size(); i++) {
+			int crashedInto = serialGrid.get(i).updateCollisions(1 / 60d, serialGrid);
+			if (crashedInto != -1) {
+				serialCrasher = i;
+				serialCrashedInto = crashedInto;
+				break;
+			}
+		}
+
+		CollisionGrid parallelGrid = new CollisionGrid();
+		parallelGrid.rebuild(parallelAirspace, 64);
+		new FleetState(new ForkJoinPool(4)).collectCollisions(parallelGrid);
+		int parallelCrasher = -1, parallelCrashedInto = -1;
+		for (int i = 0; i < parallelGrid.size(); i++) {
+			int crashedInto = parallelGrid.get(i).applyCollisions();
+			if (crashedInto != -1) {
+				parallelCrasher = i;
+				parallelCrashedInto = crashedInto;
+				break;
+			}
+		}
+
+		assertTrue("A crash was found", serialCrasher != -1);
+		assertEquals("Same aircraft crashed", serialCrasher, parallelCrasher);
+		assertEquals("Same aircraft crashed into", serialCrashedInto, parallelCrashedInto);
+		for (int i = 0; i < serial.length; i++) {
+			assertEquals("Status " + i, serial[i].status(), parallel[i].status());
+		}
+	}
+
+	/**
+	 * Tests the FleetState.updateAirports() method when given a pool
+	 *
+	 * <p>
+	 * Checks that updating airports in parallel sends each aircraft taking
+	 * off to the same exit, along the same route, as updating them serially.
+	 * </p>
+	 */
+	@Test
+	public void testParallelAirportsMatchSerial() {
+		SimulationContext serialContext = new SimulationContext(Game.DIFFICULTY_MEDIUM, 9);
+		SimulationContext parallelContext = new SimulationContext(Game.DIFFICULTY_MEDIUM, 9);
+		serialContext.setRoutePlanner(WaypointGraph.Planner.SHORTEST);
+		parallelContext.setRoutePlanner(WaypointGraph.Planner.SHORTEST);
+		Airport[] serialAirports = createAirports(serialContext, 8);
+		Airport[] parallelAirports = createAirports(parallelContext, 8);
+		FleetState serialState = new FleetState();
+		FleetState parallelState = new FleetState(new ForkJoinPool(4));
+
+		for (int round = 0; round < 4; round++) {
+			Aircraft[] serial = new Aircraft[serialAirports.length * 2];
+			Aircraft[] parallel = new Aircraft[parallelAirports.length * 2];
+			for (int i = 0; i < serial.length; i++) {
+				serial[i] = addTakeoffAircraft(serialContext, serialAirports[i / 2]);
+				parallel[i] = addTakeoffAircraft(parallelContext, parallelAirports[i / 2]);
+			}
+
+			serialState.updateAirports(serialAirports, 1 / 60d);
+			parallelState.updateAirports(parallelAirports, 1 / 60d);
+
+			for (int i = 0; i < serial.length; i++) {
+				assertEquals("Aircraft " + i + " left", AirportState.NORMAL, serial[i].status());
+				assertEquals("Status " + i, serial[i].status(), parallel[i].status());
+				assertEquals("Exit " + i, serial[i].destinationName(), parallel[i].destinationName());
+				assertEquals("Target " + i, serial[i].getCurrentTarget(),
+						parallel[i].getCurrentTarget());
+			}
+		}
+	}
+
+}
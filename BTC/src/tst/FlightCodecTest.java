@@ -0,0 +1,205 @@
+package tst;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import cls.Aircraft;
+import cls.Aircraft.AirportState;
+import cls.Aircraft.AltitudeState;
+import cls.Vector;
+import cls.Waypoint;
+import thr.FlightCodec;
+import thr.FlightUpdate;
+import thr.WaypointTable;
+
+/**
+ * Tests for the FlightCodec class
+ *
+ * <p>
+ * Covers:
+ * <ul>
+ * <li>Sending new flights in full</li>
+ * <li>Sending only the fields which changed</li>
+ * <li>Agreeing on fields received from the other player</li>
+ * <li>Rejecting messages of other versions</li>
+ * <li>Rejecting malformed messages</li>
+ * </ul>
+ * </p>
+ */
+public class FlightCodecTest {
+
+	private Waypoint[] waypoints;
+	private WaypointTable table;
+	private FlightCodec sender;
+	private FlightCodec receiver;
+
+	@Before
+	public void setUp() {
+		waypoints = new Waypoint[] {
+			new Waypoint(100, 100, Waypoint.WaypointType.AIRSPACE),
+			new Waypoint(200, 300, Waypoint.WaypointType.AIRSPACE),
+			new Waypoint(400, 200, Waypoint.WaypointType.AIRSPACE),
+		};
+		table = new WaypointTable(waypoints, null);
+		sender = new FlightCodec(table);
+		receiver = new FlightCodec(table);
+	}
+
+	/**
+	 * Creates a 'testing' aircraft
+	 *
+	 * <p>
+	 * Helper method - builds a new aircraft along the test waypoints,
+	 * with one waypoint not in the table, for use with testing methods.
+	 * </p>
+	 * @param name the flight's name
+	 */
+	private Aircraft generateTestAircraft(String name) {
+		Waypoint offTable = new Waypoint(new Vector(50, 60, 0), Waypoint.WaypointType.ENTRY);
+		Aircraft aircraft = new Aircraft(name, "Origin", "Destination", 35,
+				new Waypoint[] { offTable, waypoints[1], waypoints[2] }, waypoints[2], null);
+		aircraft.position().setTo(10, 20, 28000);
+		aircraft.setVelocity(new Vector(3, 4, 0));
+		aircraft.setOwner(1);
+		aircraft.setScore(42);
+		return aircraft;
+	}
+
+	/** Sends aircraft from the sender to the receiver */
+	private ArrayList<FlightUpdate> send(Aircraft... aircraft) throws IOException {
+		return receiver.decode(sender.encode(aircraft));
+	}
+
+	// Test a new flight is sent in full, and recreated with the receiver's waypoints
+	@Test
+	public void testNewFlightIsSentInFull() throws IOException {
+		Aircraft sent = generateTestAircraft("Flight 101");
+		ArrayList<FlightUpdate> updates = send(sent);
+
+		assertEquals(1, updates.size());
+		FlightUpdate update = updates.get(0);
+		assertEquals("Flight 101", update.name());
+		assertTrue(update.isNewFlight());
+
+		Aircraft received = update.createAircraft();
+		assertEquals(sent.name(), received.name());
+		assertEquals(sent.originName(), received.originName());
+		assertEquals(sent.destinationName(), received.destinationName());
+		assertEquals(sent.initialSpeed(), received.initialSpeed(), 0);
+		assertEquals(sent.position(), received.position());
+		assertEquals(sent.getVelocity(), received.getVelocity());
+		assertEquals(sent.getCurrentTarget(), received.getCurrentTarget());
+		assertEquals(sent.owner(), received.owner());
+		assertEquals(sent.score(), received.score());
+		assertEquals(sent.status(), received.status());
+		assertNull(received.altitudeState());
+
+		// Waypoints in the table are the receiver's own
+		assertSame(waypoints[1], received.getRoute()[1]);
+		assertSame(waypoints[2], received.getDestination());
+		// Others are sent in full, without being scaled again
+		assertEquals(new Vector(50, 60, 0), received.getRoute()[0].position());
+		assertEquals(Waypoint.WaypointType.ENTRY, received.getRoute()[0].type());
+	}
+
+	// Test only the fields which have changed are sent
+	@Test
+	public void testOnlyChangesAreSent() throws IOException {
+		Aircraft aircraft = generateTestAircraft("Flight 102");
+		byte[] full = sender.encode(new Aircraft[] { aircraft });
+		receiver.decode(full);
+
+		aircraft.position().setTo(11, 21, 28000);
+		byte[] delta = sender.encode(new Aircraft[] { aircraft });
+		assertTrue(delta.length < full.length);
+		FlightUpdate update = receiver.decode(delta).get(0);
+		assertEquals(FlightUpdate.POSITION, update.fields());
+		assertFalse(update.isNewFlight());
+
+		aircraft.setAltitudeState(AltitudeState.CLIMBING);
+		aircraft.setStatus(AirportState.WAITING);
+		aircraft.setRoute(new Waypoint[] { waypoints[0], waypoints[2] });
+		update = send(aircraft).get(0);
+		assertEquals(FlightUpdate.ALTITUDE_STATE | FlightUpdate.STATUS
+				| FlightUpdate.FLIGHT_PLAN, update.fields());
+
+		Aircraft copy = generateTestAircraft("Flight 102");
+		update.applyTo(copy);
+		assertEquals(AltitudeState.CLIMBING, copy.altitudeState());
+		assertEquals(AirportState.WAITING, copy.status());
+		assertArrayEquals(new Waypoint[] { waypoints[0], waypoints[2] }, copy.getRoute());
+	}
+
+	// Test changes received are agreed on, so reverting them is sent back
+	@Test
+	public void testReceivedChangesAreAgreed() throws IOException {
+		Aircraft aircraft = generateTestAircraft("Flight 103");
+
+		// The receiver takes manual control, and tells the sender
+		Aircraft copy = receiver.decode(sender.encode(new Aircraft[] { aircraft }))
+				.get(0).createAircraft();
+		copy.setManuallyControlled(true);
+		copy.setBearing(1.5);
+		sender.decode(receiver.encode(new Aircraft[] { copy }))
+				.get(0).applyTo(aircraft);
+		assertTrue(aircraft.isManuallyControlled());
+
+		// The sender hands back control, which differs from what was agreed
+		aircraft.setManuallyControlled(false);
+		aircraft.clearManualBearingTarget();
+		FlightUpdate update = send(aircraft).get(0);
+		assertTrue(update.has(FlightUpdate.MANUAL_CONTROL));
+		update.applyTo(copy);
+		assertFalse(copy.isManuallyControlled());
+	}
+
+	// Test flights forgotten are sent in full again
+	@Test
+	public void testResetSendsInFull() throws IOException {
+		Aircraft aircraft = generateTestAircraft("Flight 104");
+		send(aircraft);
+		sender.reset();
+		assertTrue(send(aircraft).get(0).isNewFlight());
+	}
+
+	// Test messages of another version are rejected
+	@Test(expected = IOException.class)
+	public void testOtherVersionIsRejected() throws IOException {
+		byte[] message = sender.encode(new Aircraft[] { generateTestAircraft("Flight 105") });
+		message[0] = (byte) (FlightCodec.VERSION + 1);
+		receiver.decode(message);
+	}
+
+	// Test truncated messages are rejected
+	@Test(expected = IOException.class)
+	public void testTruncatedMessageIsRejected() throws IOException {
+		byte[] message = sender.encode(new Aircraft[] { generateTestAircraft("Flight 106") });
+		receiver.decode(Arrays.copyOf(message, message.length / 2));
+	}
+
+	// Test negative route lengths are rejected, rather than failing to make the route
+	@Test(expected = IOException.class)
+	public void testNegativeRouteLengthIsRejected() throws IOException {
+		byte[] message = sender.encode(new Aircraft[] { generateTestAircraft("Flight 107") });
+		// The route length follows the initial speed
+		byte[] speed = ByteBuffer.allocate(8).putDouble(35).array();
+		int length = -1;
+		for (int i = 0; i + speed.length <= message.length && length == -1; i++) {
+			if (Arrays.equals(speed, Arrays.copyOfRange(message, i, i + speed.length))) {
+				length = i + speed.length;
+			}
+		}
+		assertTrue("Route length found", length != -1);
+		message[length] = (byte) 0xFF;
+		message[length + 1] = (byte) 0xF0;
+		receiver.decode(message);
+	}
+
+}
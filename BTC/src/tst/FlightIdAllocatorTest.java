@@ -0,0 +1,119 @@
+package tst;
+
+import static org.junit.Assert.*;
+
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import cls.FlightIdAllocator;
+
+/**
+ * Tests for the FlightIdAllocator class
+ *
+ * <p>
+ * Covers:
+ * <ul>
+ * <li>Handing out every id in the usual range once</li>
+ * <li>Handing out larger ids once the usual range is used up</li>
+ * <li>Using an id again only after the other free ids</li>
+ * <li>Handing out ids to several threads at once</li>
+ * </ul>
+ * </p>
+ */
+public class FlightIdAllocatorTest {
+
+	private static final int RANGE = FlightIdAllocator.LAST_ID - FlightIdAllocator.FIRST_ID + 1;
+
+	private FlightIdAllocator allocator;
+
+	@Before
+	public void setUp() {
+		allocator = new FlightIdAllocator(new Random(0));
+	}
+
+	// Test every id in the range is handed out once before any larger id
+	@Test
+	public void testAllocatesRangeOnce() {
+		Set<Integer> ids = new HashSet<Integer>();
+		for (int i = 0; i < RANGE; i++) {
+			int id = allocator.allocate();
+			assertTrue("Id " + id + " in range", id >= FlightIdAllocator.FIRST_ID
+					&& id <= FlightIdAllocator.LAST_ID);
+			assertTrue("Id " + id + " handed out once", ids.add(id));
+		}
+		assertEquals("Larger id once the range is used",
+				FlightIdAllocator.LAST_ID + 1, allocator.allocate());
+		assertEquals(RANGE + 1, allocator.inUseCount());
+	}
+
+	// Test an id taken back is used again, but after the other free ids
+	@Test
+	public void testReleasedIdReusedLast() {
+		int first = allocator.allocate();
+		allocator.release(first);
+		assertFalse(allocator.isInUse(first));
+		for (int i = 0; i < RANGE - 1; i++) {
+			assertNotEquals("Other free ids used first", first, allocator.allocate());
+		}
+		assertEquals("Released id used again", first, allocator.allocate());
+	}
+
+	// Test taking back an id twice, or one not in use, changes nothing
+	@Test
+	public void testReleaseIgnoresFreeIds() {
+		int id = allocator.allocate();
+		allocator.release(id);
+		allocator.release(id);
+		allocator.release(-1);
+		allocator.release(FlightIdAllocator.LAST_ID + 50);
+		Set<Integer> ids = new HashSet<Integer>();
+		for (int i = 0; i < RANGE; i++) {
+			assertTrue("No id handed out twice", ids.add(allocator.allocate()));
+		}
+		assertEquals(FlightIdAllocator.LAST_ID + 1, allocator.allocate());
+	}
+
+	// Test ids handed out to several games at once are never shared
+	@Test
+	public void testConcurrentGames() throws InterruptedException {
+		final int games = 4;
+		final int flightsPerGame = 20000;
+		final Set<Integer> held = new HashSet<Integer>();
+		final boolean[] clash = new boolean[1];
+		Thread[] threads = new Thread[games];
+		for (int g = 0; g < games; g++) {
+			threads[g] = new Thread(new Runnable() {
+				@Override
+				public void run() {
+					for (int i = 0; i < flightsPerGame; i++) {
+						int id = allocator.allocate();
+						synchronized (held) {
+							if (!held.add(id)) clash[0] = true;
+						}
+						synchronized (held) {
+							held.remove(id);
+						}
+						allocator.release(id);
+					}
+				}
+			});
+			threads[g].start();
+		}
+		for (Thread thread : threads) {
+			thread.join();
+		}
+		assertFalse("No id held by two games at once", clash[0]);
+		assertEquals("Every id given back", 0, allocator.inUseCount());
+	}
+
+	// Test the name shown is made from the id
+	@Test
+	public void testName() {
+		assertEquals("Flight 123", FlightIdAllocator.name(123));
+	}
+
+}
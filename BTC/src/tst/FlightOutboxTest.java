@@ -0,0 +1,119 @@
+package tst;
+
+import static org.junit.Assert.*;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import cls.Aircraft;
+import cls.Waypoint;
+import thr.FlightOutbox;
+
+/**
+ * Tests for the FlightOutbox class
+ *
+ * <p>
+ * Covers:
+ * <ul>
+ * <li>Coalescing a flight added many times into its latest state</li>
+ * <li>Draining every flight at once</li>
+ * <li>Reporting depth and coalescing</li>
+ * <li>Adding flights while another thread drains</li>
+ * </ul>
+ * </p>
+ */
+public class FlightOutboxTest {
+
+	private Waypoint[] waypoints;
+	private FlightOutbox outbox;
+
+	@Before
+	public void setUp() {
+		waypoints = new Waypoint[] {
+			new Waypoint(100, 100, Waypoint.WaypointType.AIRSPACE),
+			new Waypoint(200, 300, Waypoint.WaypointType.AIRSPACE),
+		};
+		outbox = new FlightOutbox();
+	}
+
+	/**
+	 * Creates a 'testing' aircraft
+	 *
+	 * <p>
+	 * Helper method - builds a new aircraft along the test waypoints
+	 * for use with testing methods.
+	 * </p>
+	 * @param name the flight's name
+	 */
+	private Aircraft generateTestAircraft(String name) {
+		return new Aircraft(name, "Origin", "Destination", 35, waypoints, waypoints[1], null);
+	}
+
+	// Test a flight added again replaces the one waiting, keeping its place
+	@Test
+	public void testCoalescesToLatest() {
+		Aircraft first = generateTestAircraft("Flight 101");
+		Aircraft other = generateTestAircraft("Flight 102");
+		// A new object with the same name, as flights received are
+		Aircraft latest = generateTestAircraft(new String("Flight 101"));
+		outbox.put(first);
+		outbox.put(other);
+		outbox.put(latest);
+
+		assertEquals("Two flights waiting", 2, outbox.size());
+		Aircraft[] drained = outbox.drain();
+		assertArrayEquals(new Aircraft[] { latest, other }, drained);
+	}
+
+	// Test draining takes every flight, leaving the outbox empty
+	@Test
+	public void testDrainEmpties() {
+		outbox.put(generateTestAircraft("Flight 101"));
+		outbox.put(generateTestAircraft("Flight 102"));
+		assertEquals(2, outbox.drain().length);
+		assertEquals("Nothing waiting", 0, outbox.size());
+		assertEquals("Nothing left to drain", 0, outbox.drain().length);
+	}
+
+	// Test the peak depth and coalescing ratio are counted
+	@Test
+	public void testReportsDepthAndCoalescing() {
+		Aircraft flight = generateTestAircraft("Flight 101");
+		assertEquals("No flights added", 0, outbox.coalescingRatio(), 0);
+		outbox.put(flight);
+		outbox.put(flight);
+		outbox.put(flight);
+		outbox.put(generateTestAircraft("Flight 102"));
+		outbox.drain();
+
+		assertEquals("Two of four coalesced", 0.5, outbox.coalescingRatio(), 1e-9);
+		assertEquals("Peak of two waiting", 2, outbox.peakDepth());
+	}
+
+	// Test no flight is lost when added while another thread drains
+	@Test
+	public void testConcurrentDrain() throws InterruptedException {
+		final int flights = 5000;
+		final Aircraft[] sent = new Aircraft[flights];
+		for (int i = 0; i < flights; i++) {
+			sent[i] = generateTestAircraft("Flight " + i);
+		}
+		Thread game = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				for (Aircraft aircraft : sent) {
+					outbox.put(aircraft);
+				}
+			}
+		});
+		game.start();
+		int drained = 0;
+		while (game.isAlive()) {
+			drained += outbox.drain().length;
+		}
+		game.join();
+		drained += outbox.drain().length;
+		assertEquals("Every flight drained once", flights, drained);
+	}
+
+}
@@ -0,0 +1,119 @@
+package tst;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.channels.ServerSocketChannel;
+import java.util.Random;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import thr.NioTransport;
+
+/**
+ * Tests for the NioTransport class
+ *
+ * <p>
+ * Covers:
+ * <ul>
+ * <li>Sending messages both ways in order</li>
+ * <li>Messages larger than the socket's buffers</li>
+ * <li>Closing when the other player disconnects</li>
+ * </ul>
+ * </p>
+ */
+public class NioTransportTest {
+
+	private NioTransport host;
+	private NioTransport client;
+
+	@Before
+	public void setUp() throws Exception {
+		final ServerSocketChannel server = ServerSocketChannel.open();
+		server.socket().bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+		final NioTransport[] accepted = new NioTransport[1];
+		Thread acceptor = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					accepted[0] = NioTransport.accept(server);
+				} catch (IOException e) {
+					e.printStackTrace();
+				}
+			}
+		});
+		acceptor.start();
+		client = NioTransport.connect(InetAddress.getLoopbackAddress().getHostAddress(),
+				server.socket().getLocalPort());
+		acceptor.join(5000);
+		server.close();
+		host = accepted[0];
+		assertNotNull(host);
+	}
+
+	@After
+	public void tearDown() {
+		host.close();
+		client.close();
+	}
+
+	// Test messages arrive whole and in order, in both directions
+	@Test
+	public void testMessagesArriveInOrder() throws Exception {
+		for (int i = 0; i < 100; i++) {
+			client.send(new byte[] { (byte) i, (byte) (i * 2) });
+			host.send(new byte[] { (byte) -i });
+		}
+		for (int i = 0; i < 100; i++) {
+			assertArrayEquals(new byte[] { (byte) i, (byte) (i * 2) }, host.take(5000));
+			assertArrayEquals(new byte[] { (byte) -i }, client.take(5000));
+		}
+		assertNull(host.poll());
+		assertNull(client.take(10));
+	}
+
+	// Test empty and large messages
+	@Test
+	public void testMessageSizes() throws Exception {
+		byte[] large = new byte[NioTransport.MAX_MESSAGE_SIZE];
+		new Random(4).nextBytes(large);
+		client.send(new byte[0]);
+		client.send(large);
+		client.send(new byte[] { 7 });
+		assertArrayEquals(new byte[0], host.take(5000));
+		assertArrayEquals(large, host.take(5000));
+		assertArrayEquals(new byte[] { 7 }, host.take(5000));
+	}
+
+	// Test messages too large to send are refused
+	@Test(expected = IllegalArgumentException.class)
+	public void testOversizedMessageIsRefused() throws IOException {
+		client.send(new byte[NioTransport.MAX_MESSAGE_SIZE + 1]);
+	}
+
+	// Test the transport closes when the other player disconnects
+	@Test
+	public void testClosesOnDisconnect() throws Exception {
+		client.send(new byte[] { 1 });
+		client.close();
+		assertArrayEquals(new byte[] { 1 }, host.take(5000));
+		try {
+			host.take(5000);
+			fail("Expected the transport to close");
+		} catch (IOException e) {
+			assertFalse(host.isOpen());
+			assertNotNull(host.failure());
+		}
+		try {
+			host.send(new byte[] { 2 });
+			fail("Expected sending to fail");
+		} catch (IOException e) {
+			// Expected
+		}
+	}
+
+}
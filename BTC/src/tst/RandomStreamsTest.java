@@ -0,0 +1,86 @@
+package tst;
+
+import static org.junit.Assert.*;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.Test;
+
+import cls.RandomStreams;
+import cls.RandomStreams.Stream;
+
+/**
+ * Tests for the RandomStreams class
+ *
+ * <p>
+ * Covers:
+ * <ul>
+ * <li>Giving the same numbers for the same seed</li>
+ * <li>Giving different numbers for each stream and seed</li>
+ * <li>Keeping streams apart, so using one does not change another</li>
+ * <li>Splitting a stream between its users</li>
+ * </ul>
+ * </p>
+ */
+public class RandomStreamsTest {
+
+	private static long[] take(Random random, int count) {
+		long[] numbers = new long[count];
+		for (int i = 0; i < count; i++) {
+			numbers[i] = random.nextLong();
+		}
+		return numbers;
+	}
+
+	// Test two games with the same seed get the same numbers
+	@Test
+	public void testSameSeedSameNumbers() {
+		RandomStreams first = new RandomStreams(42);
+		RandomStreams second = new RandomStreams(42);
+		assertEquals(42, first.seed());
+		for (Stream stream : Stream.values()) {
+			assertArrayEquals("Same numbers for " + stream,
+					take(first.get(stream), 16), take(second.get(stream), 16));
+		}
+	}
+
+	// Test each stream, and each nearby seed, gets different numbers
+	@Test
+	public void testStreamsAndSeedsDiffer() {
+		RandomStreams streams = new RandomStreams(42);
+		long flights = take(streams.get(Stream.FLIGHTS), 1)[0];
+		assertNotEquals(flights, take(streams.get(Stream.SPAWNS), 1)[0]);
+		assertNotEquals(flights, take(new RandomStreams(43).get(Stream.FLIGHTS), 1)[0]);
+	}
+
+	// Test using one stream more does not change the numbers of another
+	@Test
+	public void testStreamsIndependent() {
+		RandomStreams quiet = new RandomStreams(7);
+		RandomStreams busy = new RandomStreams(7);
+		take(busy.get(Stream.FLIGHTS), 100);
+		assertArrayEquals(take(quiet.get(Stream.SPAWNS), 16), take(busy.get(Stream.SPAWNS), 16));
+	}
+
+	// Test each user of a split stream gets its own numbers, the same for the same seed
+	@Test
+	public void testSplitPerUser() {
+		RandomStreams streams = new RandomStreams(7);
+		long[] first = take(streams.split(Stream.AIRPORTS, 0), 16);
+		assertArrayEquals("Same seed and user", first,
+				take(new RandomStreams(7).split(Stream.AIRPORTS, 0), 16));
+		assertFalse("Other user", Arrays.equals(first,
+				take(streams.split(Stream.AIRPORTS, 1), 16)));
+		assertFalse("Whole stream", Arrays.equals(first,
+				take(streams.get(Stream.AIRPORTS), 16)));
+	}
+
+	// Test the same stream is returned each time, carrying on where it left off
+	@Test
+	public void testStreamReused() {
+		RandomStreams streams = new RandomStreams(7);
+		assertSame(streams.get(Stream.ROUTES), streams.get(Stream.ROUTES));
+	}
+
+}
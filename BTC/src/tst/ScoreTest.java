@@ -5,6 +5,7 @@ import org.junit.Test;
 
 import cls.Aircraft;
 import cls.Aircraft.AirportState;
+import cls.CollisionGrid;
 import cls.Waypoint;
 import static org.junit.Assert.*;
 import scn.Game;
@@ -148,6 +149,19 @@ public class ScoreTest {
 
 	// Test that plane score decrements upon separation violation:
 
+	/**
+	 * Updates an aircraft's collisions with the game's airspace, as one step of the game does.
+	 * <p>
+	 * Helper method - builds the collision grid for the step, then checks the aircraft against it.
+	 * </p>
+	 * @param aircraft the aircraft to update
+	 */
+	private void updateCollisions(Aircraft aircraft) {
+		CollisionGrid grid = new CollisionGrid();
+		grid.rebuild(testGame.aircraftInAirspace(), aircraft.separationRule());
+		aircraft.updateCollisions(1, grid);
+	}
+
 	/**
 	 * Tests that an aircraft's score decrements as a result of a separation violation.
 	 * <p>
@@ -161,7 +175,7 @@ public class ScoreTest {
 		testGame.start();
 		testGame.aircraftInAirspace().add(testAircraft);
 		testGame.aircraftInAirspace().add(testAircraft2);
-		testAircraft.updateCollisions(1, testGame.aircraftInAirspace());
+		updateCollisions(testAircraft);
 
 		assertTrue("Score = 90", testAircraft.score() == 90);
 	}
@@ -180,7 +194,7 @@ public class ScoreTest {
 		testGame.aircraftInAirspace().add(testAircraft);
 		testGame.aircraftInAirspace().add(testAircraft2);
 		testAircraft.setScore(50);
-		testAircraft.updateCollisions(1, testGame.aircraftInAirspace());
+		updateCollisions(testAircraft);
 
 		assertTrue("Score = 45", testAircraft.score() == 45);	
 	}
@@ -199,7 +213,7 @@ public class ScoreTest {
 		testGame.aircraftInAirspace().add(testAircraft);
 		testGame.aircraftInAirspace().add(testAircraft2);
 		testAircraft.setScore(20);
-		testAircraft.updateCollisions(1, testGame.aircraftInAirspace());
+		updateCollisions(testAircraft);
 
 		assertTrue("Score = 19", testAircraft.score() == 19);
 	}	
@@ -218,7 +232,7 @@ public class ScoreTest {
 		testGame.aircraftInAirspace().add(testAircraft);
 		testGame.aircraftInAirspace().add(testAircraft2);
 		testAircraft.setScore(0);
-		testAircraft.updateCollisions(1, testGame.aircraftInAirspace());
+		updateCollisions(testAircraft);
 
 		assertTrue("Score = 0", testAircraft.score() == 0);
 
@@ -234,7 +248,7 @@ public class ScoreTest {
 		testGame.start();
 		testGame.aircraftInAirspace().add(testAircraft);
 		testGame.aircraftInAirspace().add(testAircraft2);
-		testAircraft.updateCollisions(1, testGame.aircraftInAirspace());
+		updateCollisions(testAircraft);
 		assertTrue("", testAircraft2.score() == 100);
 	}
 	
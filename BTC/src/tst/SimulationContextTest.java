@@ -0,0 +1,103 @@
+package tst;
+
+import static org.junit.Assert.*;
+
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Set;
+
+import org.junit.Test;
+
+import cls.Aircraft;
+import cls.Airport;
+import cls.SimulationContext;
+import cls.Waypoint;
+import scn.Game;
+
+/**
+ * Tests for the SimulationContext class
+ *
+ * <p>
+ * Covers:
+ * <ul>
+ * <li>Giving each game its own airspace and airports</li>
+ * <li>Aircraft taking their settings from their own game</li>
+ * <li>Allocating flight ids for each game apart</li>
+ * <li>Sharing a context between aircraft made outside a game</li>
+ * </ul>
+ * </p>
+ */
+public class SimulationContextTest {
+
+	/**
+	 * Creates a 'testing' aircraft
+	 *
+	 * <p>
+	 * Helper method - builds a new aircraft in a game for use with testing
+	 * methods. It is made as received flights are, as planning a route
+	 * needs a window tests don't have.
+	 * </p>
+	 * @param name the flight's name
+	 * @param context the game the aircraft is in
+	 */
+	private Aircraft generateTestAircraft(String name, SimulationContext context) {
+		Waypoint[] route = new Waypoint[] { context.flightExitPoints()[1] };
+		return new Aircraft(name, Game.FLIGHT_ENTRY_POINT_NAMES[0], Game.FLIGHT_EXIT_POINT_NAMES[1],
+				35, route, route[0], null, context);
+	}
+
+	// Test two games share none of their waypoints or airports
+	@Test
+	public void testOwnAirspace() {
+		SimulationContext first = new SimulationContext(Game.DIFFICULTY_EASY, 1);
+		SimulationContext second = new SimulationContext(Game.DIFFICULTY_EASY, 1);
+		Set<Waypoint> waypoints = Collections.newSetFromMap(new IdentityHashMap<Waypoint, Boolean>());
+		Collections.addAll(waypoints, first.airspaceWaypoints());
+		for (Waypoint waypoint : second.airspaceWaypoints()) {
+			assertFalse("Waypoint not shared", waypoints.contains(waypoint));
+		}
+		assertEquals(first.airports().length, second.airports().length);
+		for (int i = 0; i < first.airports().length; i++) {
+			Airport airport = first.airports()[i];
+			assertNotSame("Airport not shared", airport, second.airports()[i]);
+			assertEquals(airport.name(), second.airports()[i].name());
+		}
+	}
+
+	// Test aircraft in games of different difficulties keep their own separation rules
+	@Test
+	public void testDifficultyPerGame() {
+		SimulationContext easy = new SimulationContext(Game.DIFFICULTY_EASY, 1);
+		SimulationContext hard = new SimulationContext(Game.DIFFICULTY_HARD, 1);
+		Aircraft easyFlight = generateTestAircraft("Flight 101", easy);
+		Aircraft hardFlight = generateTestAircraft("Flight 102", hard);
+		assertEquals(64, easyFlight.separationRule());
+		assertEquals(128, hardFlight.separationRule());
+		assertSame(easy, easyFlight.context());
+		assertEquals("Unchanged by the other game", 64, generateTestAircraft("Flight 101", easy).separationRule());
+	}
+
+	// Test each game hands out its own flight ids, in an order set by its seed
+	@Test
+	public void testFlightIdsPerGame() {
+		SimulationContext first = new SimulationContext(Game.DIFFICULTY_MEDIUM, 3);
+		SimulationContext second = new SimulationContext(Game.DIFFICULTY_MEDIUM, 3);
+		int id = first.flightIds().allocate();
+		assertEquals("Same seed, same id", id, second.flightIds().allocate());
+		first.flightIds().release(id);
+		assertFalse("Given back to its own game", first.flightIds().isInUse(id));
+		assertTrue("Other game unchanged", second.flightIds().isInUse(id));
+	}
+
+	// Test aircraft made outside a game share the standalone context
+	@Test
+	public void testStandalone() {
+		Aircraft aircraft = new Aircraft();
+		assertSame(SimulationContext.standalone(), aircraft.context());
+		assertTrue(SimulationContext.standalone().flightIds().isInUse(
+				Integer.parseInt(aircraft.name().substring("Flight ".length()))));
+		aircraft.releaseName();
+		assertEquals(Game.DIFFICULTY_MEDIUM, SimulationContext.standalone().difficulty());
+	}
+
+}
@@ -0,0 +1,82 @@
+package tst;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+import org.junit.Test;
+
+import thr.SyncFrame;
+
+/**
+ * Tests for the SyncFrame class
+ *
+ * <p>
+ * Covers:
+ * <ul>
+ * <li>Writing and reading each kind of frame</li>
+ * <li>Checking the other player's protocol version</li>
+ * <li>Rejecting malformed frames</li>
+ * </ul>
+ * </p>
+ */
+public class SyncFrameTest {
+
+	// Test a sync frame is read back as written
+	@Test
+	public void testSyncRoundTrip() throws IOException {
+		byte[] flights = {1, 2, 3, 4, 5};
+		SyncFrame frame = SyncFrame.decode(SyncFrame.sync(7, 5, 1200, flights).encode());
+		assertEquals("Kind = SYNC", SyncFrame.Kind.SYNC, frame.kind());
+		assertEquals("Sequence = 7", 7, frame.sequence());
+		assertEquals("Acknowledged = 5", 5, frame.acknowledged());
+		assertEquals("Score = 1200", 1200, frame.score());
+		assertTrue("Flights unchanged", Arrays.equals(flights, frame.flights()));
+	}
+
+	// Test frames without flights are read back as written
+	@Test
+	public void testEmptyFrames() throws IOException {
+		assertEquals(SyncFrame.Kind.START, SyncFrame.decode(SyncFrame.start().encode()).kind());
+		assertEquals(SyncFrame.Kind.QUIT, SyncFrame.decode(SyncFrame.quit().encode()).kind());
+		assertEquals("No flights", 0, SyncFrame.decode(SyncFrame.quit().encode()).flights().length);
+	}
+
+	// Test a hello from the same version is accepted
+	@Test
+	public void testHelloAccepted() throws IOException {
+		SyncFrame.decode(SyncFrame.hello().encode()).checkHello();
+	}
+
+	// Test a hello from another version is rejected
+	@Test(expected = IOException.class)
+	public void testHelloVersionMismatch() throws IOException {
+		byte[] hello = SyncFrame.hello().encode();
+		// The protocol version follows the kind
+		hello[4] = (byte) (SyncFrame.PROTOCOL_VERSION + 1);
+		SyncFrame.decode(hello).checkHello();
+	}
+
+	// Test a frame other than a hello is rejected when a hello is expected
+	@Test(expected = IOException.class)
+	public void testHelloExpected() throws IOException {
+		SyncFrame.decode(SyncFrame.start().encode()).checkHello();
+	}
+
+	// Test a truncated frame is rejected
+	@Test(expected = IOException.class)
+	public void testShortFrame() throws IOException {
+		byte[] frame = SyncFrame.sync(1, 0, 0, new byte[0]).encode();
+		SyncFrame.decode(Arrays.copyOf(frame, frame.length - 1));
+	}
+
+	// Test a frame of an unknown kind is rejected
+	@Test(expected = IOException.class)
+	public void testUnknownKind() throws IOException {
+		byte[] frame = SyncFrame.start().encode();
+		frame[0] = (byte) SyncFrame.Kind.values().length;
+		SyncFrame.decode(frame);
+	}
+
+}
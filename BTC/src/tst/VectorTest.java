@@ -147,4 +147,42 @@ public class VectorTest {
 		double angle = Math.PI / 2;
 		assertTrue("Angle = pi/2", angle  ==  testVector.angleBetween(testVector2));	
 	}
+	
+	// Test in place functions
+	@Test 
+	public void testAddInPlace() {
+		Vector testVector = new Vector(2.0, 2.0, 4.0);
+		Vector testVector2 = new Vector(1.0, 3.0, 2.0);
+		Vector resultVector = testVector.addInPlace(testVector2);
+		assertTrue("Result is same vector", resultVector == testVector);
+		assertTrue("Result =  3.0, 5.0, 6.0", (3.0 == testVector.x()) && (5.0 == testVector.y()) && (6.0 == testVector.z()));	
+	}
+	@Test 
+	public void testAddScaledInPlace() {
+		Vector testVector = new Vector(2.0, 2.0, 4.0);
+		Vector testVector2 = new Vector(1.0, 3.0, 2.0);
+		Vector expected = testVector.add(testVector2.scaleBy(0.25));
+		testVector.addScaledInPlace(testVector2, 0.25);
+		assertTrue("Result = add(scaleBy())", expected.equals(testVector));	
+		assertTrue("Added vector unchanged", new Vector(1.0, 3.0, 2.0).equals(testVector2));	
+	}
+	@Test 
+	public void testScaleByInPlace() {
+		Vector testVector = new Vector(1.0, 2.0, 3.0);
+		testVector.scaleByInPlace(2);
+		assertTrue("Result = 2.0, 4.0, 6.0", new Vector(2.0, 4.0, 6.0).equals(testVector));	
+	}
+	@Test 
+	public void testNormaliseInPlace() {
+		Vector testVector = new Vector(1, 4, 8);
+		Vector expected = testVector.normalise();
+		testVector.normaliseInPlace();
+		assertTrue("Result = normalise()", expected.equals(testVector));	
+	}
+	@Test 
+	public void testSetTo() {
+		Vector testVector = new Vector(1, 4, 8);
+		testVector.setTo(3, 2, 1);
+		assertTrue("Result = 3, 2, 1", new Vector(3, 2, 1).equals(testVector));	
+	}
 }
@@ -0,0 +1,211 @@
+package tst;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Random;
+
+import org.junit.Test;
+
+import cls.Waypoint;
+import cls.WaypointGraph;
+
+/**
+ * Tests for the WaypointGraph class
+ *
+ * <p>
+ * Covers:
+ * <ul>
+ * <li>Greedy routes against the original greedy search</li>
+ * <li>Greedy routes ending when the destination can't be picked</li>
+ * <li>Shortest routes reaching their destination</li>
+ * <li>Reusing graphs for the same waypoints</li>
+ * <li>Caching routes</li>
+ * </ul>
+ * </p>
+ */
+public class WaypointGraphTest {
+
+	/**
+	 * Creates airspace waypoints at random positions, some of which share
+	 * a position.
+	 * @param count the number of waypoints
+	 * @param random the generator to place them with
+	 * @return the waypoints
+	 */
+	private Waypoint[] createWaypoints(int count, Random random) {
+		Waypoint[] waypoints = new Waypoint[count];
+		for (int i = 0; i < count; i++) {
+			if (i > 0 && random.nextInt(8) == 0) {
+				Waypoint other = waypoints[random.nextInt(i)];
+				waypoints[i] = new Waypoint(other.position().x(), other.position().y(),
+						Waypoint.WaypointType.AIRSPACE);
+			} else {
+				waypoints[i] = new Waypoint(random.nextInt(1000), random.nextInt(800),
+						Waypoint.WaypointType.AIRSPACE);
+			}
+		}
+		return waypoints;
+	}
+
+	/**
+	 * The greedy search as it was before waypoint graphs, to compare against.
+	 */
+	private Waypoint[] originalGreedyRoute(Waypoint origin, Waypoint destination,
+			Waypoint[] waypoints) {
+		ArrayList<Waypoint> allWaypoints = new ArrayList<Waypoint>();
+		boolean destInWaypoints = false;
+		for (Waypoint waypoint : waypoints) {
+			allWaypoints.add(waypoint);
+			if (waypoint == destination) destInWaypoints = true;
+		}
+		if (!destInWaypoints) allWaypoints.add(destination);
+
+		ArrayList<Waypoint> selectedWaypoints = new ArrayList<Waypoint>();
+		Waypoint currentPos = origin;
+		double cost = 99999999999999.0;
+		Waypoint cheapest = null;
+		boolean atDestination = false;
+
+		while (!atDestination) {
+			for (Waypoint point : allWaypoints) {
+				boolean skip = false;
+				for (Waypoint routePoints : selectedWaypoints) {
+					if (routePoints.position().equals(point.position())) {
+						skip = true;
+						break;
+					}
+				}
+				if (skip
+						|| point.position().equals(currentPos.position())
+						|| point.position().equals(origin.position())
+						|| ((point.type() != Waypoint.WaypointType.AIRSPACE)
+								&& (!point.position().equals(destination.position())))) {
+					continue;
+				}
+				if (point.getCost(currentPos) + 0.5
+						* Waypoint.getCostBetween(point, destination) < cost) {
+					cheapest = point;
+					cost = point.getCost(currentPos) + 0.5
+							* Waypoint.getCostBetween(point, destination);
+				}
+			}
+			if (cheapest.position().equals(destination.position())) {
+				atDestination = true;
+			}
+			selectedWaypoints.add(cheapest);
+			currentPos = cheapest;
+			cost = 99999999999.0;
+		}
+		return selectedWaypoints.toArray(new Waypoint[selectedWaypoints.size()]);
+	}
+
+	// Test greedy routes are the same as the original search's
+	@Test
+	public void testGreedyRouteMatchesOriginal() {
+		Random random = new Random(8);
+		for (int trial = 0; trial < 200; trial++) {
+			Waypoint[] waypoints = createWaypoints(4 + random.nextInt(30), random);
+			WaypointGraph graph = new WaypointGraph(waypoints);
+			Waypoint origin = new Waypoint(random.nextInt(1000), random.nextInt(800),
+					Waypoint.WaypointType.AIRSPACE);
+			// Alternate between destinations in and out of the graph
+			Waypoint destination = trial % 2 == 0
+					? waypoints[random.nextInt(waypoints.length)]
+					: new Waypoint(random.nextInt(1000), random.nextInt(800),
+							Waypoint.WaypointType.AIRSPACE);
+			if (destination.position().equals(origin.position())) continue;
+
+			assertArrayEquals("Route " + trial,
+					originalGreedyRoute(origin, destination, waypoints),
+					graph.greedyRoute(origin, destination));
+		}
+	}
+
+	// Test shortest routes end at the destination, passing through the graph's waypoints once each
+	@Test
+	public void testShortestRouteReachesDestination() {
+		Random random = new Random(9);
+		for (int trial = 0; trial < 200; trial++) {
+			Waypoint[] waypoints = createWaypoints(4 + random.nextInt(30), random);
+			WaypointGraph graph = new WaypointGraph(waypoints);
+			Waypoint origin = new Waypoint(random.nextInt(1000), random.nextInt(800),
+					Waypoint.WaypointType.AIRSPACE);
+			Waypoint destination = new Waypoint(random.nextInt(1000), random.nextInt(800),
+					Waypoint.WaypointType.AIRSPACE);
+
+			Waypoint[] route = graph.shortestRoute(origin, destination);
+			assertTrue(route.length > 0);
+			assertSame(destination, route[route.length - 1]);
+			for (int i = 0; i < route.length - 1; i++) {
+				assertTrue(graph.contains(route[i]));
+				for (int j = 0; j < i; j++) {
+					assertFalse(route[i].position().equals(route[j].position()));
+				}
+			}
+		}
+	}
+
+	// Test the same graph is reused for the same waypoints
+	@Test
+	public void testGraphIsReused() {
+		Random random = new Random(10);
+		Waypoint[] waypoints = createWaypoints(10, random);
+		WaypointGraph graph = WaypointGraph.of(waypoints);
+		assertSame(graph, WaypointGraph.of(waypoints));
+		assertTrue(graph.isOver(waypoints));
+
+		Waypoint[] changed = waypoints.clone();
+		changed[3] = new Waypoint(1, 2, Waypoint.WaypointType.AIRSPACE);
+		assertNotSame(graph, WaypointGraph.of(changed));
+	}
+
+	// Test a greedy route still ends at a destination at the origin, which is never picked
+	@Test
+	public void testGreedyRouteToOriginEnds() {
+		Random random = new Random(12);
+		Waypoint[] waypoints = createWaypoints(10, random);
+		WaypointGraph graph = new WaypointGraph(waypoints);
+		Waypoint origin = new Waypoint(0, 0, Waypoint.WaypointType.ENTRY);
+		Waypoint destination = new Waypoint(0, 0, Waypoint.WaypointType.EXIT);
+
+		Waypoint[] route = graph.greedyRoute(origin, destination);
+		assertSame("Ends at the destination", destination, route[route.length - 1]);
+		assertTrue("Each waypoint at most once", route.length <= waypoints.length + 1);
+	}
+
+	// Test routes are cached by origin position and destination
+	@Test
+	public void testRouteIsCached() {
+		Random random = new Random(11);
+		WaypointGraph graph = new WaypointGraph(createWaypoints(10, random));
+		Waypoint origin = new Waypoint(5, 5, Waypoint.WaypointType.AIRSPACE);
+		Waypoint sameOrigin = new Waypoint(5, 5, Waypoint.WaypointType.AIRSPACE);
+		Waypoint destination = new Waypoint(900, 700, Waypoint.WaypointType.AIRSPACE);
+
+		Waypoint[] route = graph.cachedRoute(WaypointGraph.Planner.GREEDY, origin, destination);
+		assertArrayEquals(graph.greedyRoute(origin, destination), route);
+		assertSame(route, graph.cachedRoute(WaypointGraph.Planner.GREEDY, sameOrigin, destination));
+		assertNotSame(route, graph.cachedRoute(WaypointGraph.Planner.SHORTEST, origin, destination));
+		assertEquals(2, graph.cachedRoutes());
+	}
+
+	// Test the route cache is bounded, and cleared when the graph is invalidated
+	@Test
+	public void testRouteCacheIsBounded() {
+		Random random = new Random(12);
+		Waypoint[] waypoints = createWaypoints(10, random);
+		WaypointGraph graph = WaypointGraph.of(waypoints);
+		Waypoint destination = new Waypoint(900, 700, Waypoint.WaypointType.AIRSPACE);
+		for (int i = 0; i < WaypointGraph.ROUTE_CACHE_SIZE * 2; i++) {
+			graph.cachedRoute(WaypointGraph.Planner.GREEDY,
+					new Waypoint(i, 0, Waypoint.WaypointType.AIRSPACE), destination);
+		}
+		assertEquals(WaypointGraph.ROUTE_CACHE_SIZE, graph.cachedRoutes());
+
+		WaypointGraph.invalidate();
+		assertNotSame(graph, WaypointGraph.of(waypoints));
+		assertEquals(0, WaypointGraph.of(waypoints).cachedRoutes());
+	}
+
+}